@@ -27,6 +27,15 @@ public final class JFunkConstants {
 	public static final String ARCHIVING_MODE_NONE = "none";
 	public static final String ARCHIVE_TYPE = "archive.type";
 	public static final String ARCHIVE_DATASETS = "archive.datasets";
+	public static final String ARCHIVE_ASYNC = "archive.async";
+	public static final String ARCHIVE_ASYNC_THREADS = "archive.async.threads";
+	public static final String ARCHIVE_ZIP_LEVEL = "archive.zip.level";
+	public static final String ARCHIVE_ZIP_STORED_EXTENSIONS = "archive.zip.storedExtensions";
+	public static final String ARCHIVE_DEDUP = "archive.dedup";
+	public static final String ARCHIVE_DEDUP_EXTENSIONS = "archive.dedup.extensions";
+	public static final String REPORT_STREAMING = "report.streaming";
+	public static final String REPORT_STREAMING_BUFFER_SIZE = "report.streaming.bufferSize";
+	public static final String METRICS_DUMP_INTERVAL_SECONDS = "metrics.dumpIntervalSeconds";
 	public static final String ARCHIVE_DO_NOT_SAVE_WHEN_ALERT = "archive.doNotSaveWhenAlert";
 	public static final String LASTPAGE_HTML = "lastpage.html";
 	public static final String STACKTRACE_LOG = "stacktrace.log";
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.common.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ExecutorService} implementation that executes tasks using a fixed number of worker
+ * threads. Other than {@link FixedSizeThreadExecutor}, worker threads are reused. Tasks that cannot
+ * be started immediately are put into an unbounded work queue. The executor keeps track of the
+ * queue depth and the time the workers spend executing tasks, so the number of threads can be sized
+ * from actual data.
+ *
+ */
+public class PooledThreadExecutor extends ThreadPoolExecutor {
+
+	private final long creationNanos = System.nanoTime();
+	private final AtomicLong busyNanos = new AtomicLong();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private final ThreadLocal<Long> taskStartNanos = new ThreadLocal<>();
+	private volatile long terminationNanos;
+
+	/**
+	 * Creates a new instance using the specified number of worker threads.
+	 *
+	 * @param threads
+	 *            The number of worker threads to use
+	 * @param threadFactory
+	 *            The thread factory used to create worker threads
+	 */
+	public PooledThreadExecutor(final int threads, final ThreadFactory threadFactory) {
+		super(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		super.execute(command);
+
+		int queueDepth = getQueue().size();
+		for (;;) {
+			int max = maxQueueDepth.get();
+			if (queueDepth <= max || maxQueueDepth.compareAndSet(max, queueDepth)) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	protected void beforeExecute(final Thread t, final Runnable r) {
+		super.beforeExecute(t, r);
+		taskStartNanos.set(System.nanoTime());
+	}
+
+	@Override
+	protected void afterExecute(final Runnable r, final Throwable t) {
+		try {
+			Long start = taskStartNanos.get();
+			if (start != null) {
+				busyNanos.addAndGet(System.nanoTime() - start);
+			}
+			taskStartNanos.remove();
+		} finally {
+			super.afterExecute(r, t);
+		}
+	}
+
+	@Override
+	protected void terminated() {
+		terminationNanos = System.nanoTime();
+		super.terminated();
+	}
+
+	/**
+	 * @return the number of tasks currently waiting in the work queue
+	 */
+	public int getQueueDepth() {
+		return getQueue().size();
+	}
+
+	/**
+	 * @return the maximum number of tasks that have been waiting in the work queue at the same time
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * @return the accumulated time in milliseconds the worker threads spent executing tasks
+	 */
+	public long getBusyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+	}
+
+	/**
+	 * Computes the worker utilization, i. e. the ratio of the time the worker threads spent executing
+	 * tasks and the total time they were available since the executor was created (or until it
+	 * terminated).
+	 *
+	 * @return the utilization as a value between {@code 0.0} and {@code 1.0}
+	 */
+	public double getUtilization() {
+		long end = isTerminated() ? terminationNanos : System.nanoTime();
+		double available = (double) (end - creationNanos) * getCorePoolSize();
+		return available > 0d ? Math.min(1d, busyNanos.get() / available) : 0d;
+	}
+
+	/**
+	 * @return a one-line summary of the executor's statistics suitable for logging
+	 */
+	public String getStatistics() {
+		return String.format("workers=%d, largestPoolSize=%d, completedTasks=%d, queueDepth=%d, maxQueueDepth=%d, busy=%dms, utilization=%.1f%%",
+				getCorePoolSize(), getLargestPoolSize(), getCompletedTaskCount(), getQueueDepth(), getMaxQueueDepth(),
+				getBusyMillis(), getUtilization() * 100d);
+	}
+}
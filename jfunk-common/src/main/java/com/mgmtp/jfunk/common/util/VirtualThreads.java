@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.common.util;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import com.mgmtp.jfunk.common.exception.JFunkException;
+
+/**
+ * Creates virtual threads if the Java runtime supports them (Java 21+). jFunk is compiled for Java
+ * 8, so the virtual thread API is accessed reflectively. On older runtimes
+ * {@link #isSupported()} returns {@code false}.
+ *
+ */
+public final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL;
+	private static final Method UNSTARTED;
+
+	static {
+		Method ofVirtual = null;
+		Method unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+
+			// Virtual threads are a preview feature in Java 19 and 20 and fail unless enabled.
+			ofVirtual.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			ofVirtual = null;
+			unstarted = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		UNSTARTED = unstarted;
+	}
+
+	private VirtualThreads() {
+		// don't allow instantiation
+	}
+
+	/**
+	 * @return {@code true} if the Java runtime supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates a new unstarted virtual thread.
+	 *
+	 * @param runnable
+	 *            the runnable the thread executes
+	 * @return the thread
+	 * @throws IllegalStateException
+	 *             if virtual threads are not supported by the Java runtime
+	 */
+	public static Thread newThread(final Runnable runnable) {
+		checkState(isSupported(), "Virtual threads require Java 21 or higher (running on Java %s).",
+				System.getProperty("java.version"));
+		try {
+			return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), runnable);
+		} catch (IllegalAccessException ex) {
+			throw new JFunkException("Could not create virtual thread.", ex);
+		} catch (InvocationTargetException ex) {
+			throw new JFunkException("Could not create virtual thread.", ex.getCause());
+		}
+	}
+}
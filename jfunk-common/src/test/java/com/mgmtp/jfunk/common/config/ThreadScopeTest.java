@@ -26,6 +26,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -34,6 +36,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Key;
 import com.google.inject.Provider;
+import com.mgmtp.jfunk.common.util.PooledThreadExecutor;
 
 /**
  * Unit test for {@link ThreadScope}.
@@ -124,6 +127,60 @@ public class ThreadScopeTest {
 		Assert.assertEquals(result.size(), size);
 	}
 
+	/**
+	 * Tests that reused pool threads get a fresh scope map for each task, i. e. objects are never
+	 * shared between tasks executed by the same worker thread.
+	 */
+	@Test
+	public void testThreadScopeWithReusedThreads() throws InterruptedException {
+		final ThreadScope scope = new ThreadScope();
+		scope.disposables = newHashMap();
+
+		int size = 10;
+		PooledThreadExecutor execSrv = new PooledThreadExecutor(2, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				return new Thread(r);
+			}
+		});
+
+		List<Callable<Object>> tasks = Lists.newArrayList();
+		for (int i = 0; i < size; ++i) {
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					scope.enterScope();
+					try {
+						return scope.scope(Key.get(Object.class), new Provider<Object>() {
+							@Override
+							public Object get() {
+								return new Object();
+							}
+						}).get();
+					} finally {
+						scope.exitScope();
+					}
+				}
+			});
+		}
+
+		Set<Object> values = Sets.newIdentityHashSet();
+		for (Future<Object> future : execSrv.invokeAll(tasks)) {
+			try {
+				values.add(future.get());
+			} catch (ExecutionException ex) {
+				Assert.fail(ex.getMessage(), ex);
+			}
+		}
+		execSrv.shutdown();
+		execSrv.awaitTermination(10L, TimeUnit.SECONDS);
+
+		// Each task must have gotten its own object.
+		Assert.assertEquals(values.size(), size);
+		Assert.assertEquals(execSrv.getLargestPoolSize(), 2);
+		Assert.assertEquals(execSrv.getCompletedTaskCount(), size);
+	}
+
 	/**
 	 * Test that after a clean up the cache is empty.
 	 */
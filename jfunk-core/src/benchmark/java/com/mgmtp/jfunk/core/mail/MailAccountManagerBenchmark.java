@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.eventbus.EventBus;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Configuration;
+
+/**
+ * Measures the throughput of reserving, looking up, and releasing mail accounts with many
+ * threads competing for the accounts of a single pool. With fewer accounts than threads, the
+ * benchmark includes waiting for released accounts. The same operations are measured for the
+ * {@link MailAccountManager} of the baseline release, which held a global lock for every
+ * operation. Its classes are loaded from the artifact the {@code benchmark} profile copies to
+ * {@code target/benchmark}. Run with:
+ *
+ * <pre>
+ * mvn -Pbenchmark -pl jfunk-core test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.mgmtp.jfunk.core.mail.MailAccountManagerBenchmark
+ *     [-Dbenchmark.baseline.version=&lt;version&gt;]
+ * </pre>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(16)
+public class MailAccountManagerBenchmark {
+
+	@Param({ "4", "16", "256" })
+	private int accounts;
+
+	private MailAccountManager manager;
+
+	private Object baselineManager;
+	private Method baselineReserve;
+	private Method baselineLookup;
+	private Method baselineRelease;
+
+	@Setup
+	public void setUp() throws Exception {
+		SetMultimap<String, MailAccount> pools = HashMultimap.create();
+		for (int i = 0; i < accounts; ++i) {
+			pools.put("pool", new MailAccount("account_" + i, "account_" + i + "@example.com", "user_" + i, "password"));
+		}
+		manager = new MailAccountManager(pools, new MathRandom(42L), Providers.of(new EventBus()),
+				new Configuration(Charsets.UTF_8));
+
+		ClassLoader loader = new BaselineClassLoader(getBaselineJar(), getClass().getClassLoader());
+		Class<?> accountClass = loader.loadClass(MailAccount.class.getName());
+		Constructor<?> accountConstructor = accountClass.getConstructor(String.class, String.class, String.class,
+				String.class);
+		SetMultimap<String, Object> baselinePools = HashMultimap.create();
+		for (MailAccount account : pools.values()) {
+			baselinePools.put("pool", accountConstructor.newInstance(account.getAccountId(), account.getAddress(),
+					"user_" + account.getAccountId(), "password"));
+		}
+
+		Class<?> managerClass = loader.loadClass(MailAccountManager.class.getName());
+		Constructor<?> constructor = managerClass.getDeclaredConstructor(SetMultimap.class, MathRandom.class,
+				Provider.class, Configuration.class);
+		// package-private, and not in the same runtime package as this class
+		constructor.setAccessible(true);
+		Provider<EventBus> eventBusProvider = Providers.of(new EventBus());
+		baselineManager = constructor.newInstance(baselinePools, new MathRandom(42L), eventBusProvider,
+				new Configuration(Charsets.UTF_8));
+		baselineReserve = managerClass.getMethod("reserveMailAccount", String.class);
+		baselineLookup = managerClass.getMethod("lookupUsedMailAccountForCurrentThread", String.class);
+		baselineRelease = managerClass.getMethod("releaseMailAccountForThread", String.class);
+	}
+
+	private static URL getBaselineJar() throws IOException {
+		try {
+			File testClasses = new File(MailAccountManagerBenchmark.class.getProtectionDomain().getCodeSource()
+					.getLocation().toURI());
+			File jar = new File(testClasses.getParentFile(), "benchmark/jfunk-core-baseline.jar");
+			if (!jar.isFile()) {
+				throw new IOException("Baseline artifact not found: " + jar + ". Build with -Pbenchmark.");
+			}
+			return jar.toURI().toURL();
+		} catch (URISyntaxException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Benchmark
+	public Object baselineReserveAndRelease() throws Exception {
+		Object account = baselineReserve.invoke(baselineManager, "key");
+		baselineLookup.invoke(baselineManager, "key");
+		baselineRelease.invoke(baselineManager, "key");
+		return account;
+	}
+
+	@Benchmark
+	public MailAccount reserveAndRelease() {
+		MailAccount account = manager.reserveMailAccount("key");
+		manager.lookupUsedMailAccountForCurrentThread("key");
+		manager.releaseMailAccountForThread("key");
+		return account;
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(MailAccountManagerBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * Loads the mail classes from the baseline artifact and everything else, e. g.
+	 * {@link Configuration}, from the parent, so the baseline runs against the same dependencies.
+	 * The whole package is loaded from the baseline because its classes access each other's
+	 * package-private members.
+	 */
+	static final class BaselineClassLoader extends URLClassLoader {
+
+		private static final String MAIL_PACKAGE = "com.mgmtp.jfunk.core.mail.";
+
+		BaselineClassLoader(final URL jar, final ClassLoader parent) {
+			super(new URL[] { jar }, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(MAIL_PACKAGE)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					c = findClass(name);
+				}
+				if (resolve) {
+					resolveClass(c);
+				}
+				return c;
+			}
+		}
+	}
+}
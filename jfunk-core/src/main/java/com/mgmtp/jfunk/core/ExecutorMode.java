@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core;
+
+import com.mgmtp.jfunk.common.util.FixedSizeThreadExecutor;
+import com.mgmtp.jfunk.common.util.PooledThreadExecutor;
+import com.mgmtp.jfunk.common.util.VirtualThreads;
+
+/**
+ * Determines how {@link JFunk} executes scripts concurrently.
+ * 
+ */
+public enum ExecutorMode {
+	/**
+	 * Each script is executed in a new thread ({@link FixedSizeThreadExecutor}). This is the
+	 * default.
+	 */
+	fixed,
+
+	/**
+	 * Scripts are executed by a fixed number of reused worker threads taking scripts from a work
+	 * queue ({@link PooledThreadExecutor}).
+	 */
+	pooled,
+
+	/**
+	 * Each script is executed in a new virtual thread ({@link FixedSizeThreadExecutor} with
+	 * {@link VirtualThreads}). The thread count is used as limit for the number of concurrently
+	 * executing scripts, as in the other modes: virtual threads are cheap, but the scripts still
+	 * load the system under test. Requires Java 21 or higher at runtime.
+	 */
+	virtual;
+}
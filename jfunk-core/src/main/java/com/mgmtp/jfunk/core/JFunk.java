@@ -35,6 +35,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.inject.Inject;
 import javax.swing.JFileChooser;
 import javax.swing.SwingUtilities;
 
@@ -47,16 +48,20 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import com.google.inject.Guice;
-import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.util.FixedSizeThreadExecutor;
+import com.mgmtp.jfunk.common.util.PooledThreadExecutor;
+import com.mgmtp.jfunk.common.util.VirtualThreads;
 import com.mgmtp.jfunk.core.config.JFunkDefaultModule;
 import com.mgmtp.jfunk.core.config.ModulesLoader;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
 import com.mgmtp.jfunk.core.event.BeforeRunEvent;
 import com.mgmtp.jfunk.core.exception.JFunkExecutionException;
+import com.mgmtp.jfunk.core.scripting.ArchivingExecutor;
 import com.mgmtp.jfunk.core.scripting.ScriptExecutor;
 
 /**
@@ -69,12 +74,18 @@ public final class JFunk extends JFunkBase {
 	private final List<File> scripts;
 
 	private int threadCount;
+	private final ExecutorMode executorMode;
 	private final Properties scriptProperties;
 	private final ScriptExecutor scriptExecutor;
 	private final String name;
 
+	private volatile String executorStatistics;
+
+	@Inject
+	ArchivingExecutor archivingExecutor;
+
 	/**
-	 * Creates a JFunk instance.
+	 * Creates a JFunk instance using {@link ExecutorMode#fixed}.
 	 * 
 	 * @param scriptExecutor
 	 *            Used to execute the script.
@@ -88,13 +99,41 @@ public final class JFunk extends JFunkBase {
 	 * @param scriptProperties
 	 *            script properties passed in with {@code -S<key>=<value>}
 	 */
-	@Inject
+	@AssistedInject
 	public JFunk(final ScriptExecutor scriptExecutor, final EventBus eventBus, @Assisted final int threadCount,
 			@Assisted final boolean parallel, @Assisted final List<File> scripts, @Assisted final Properties scriptProperties) {
+		this(scriptExecutor, eventBus, threadCount, parallel, ExecutorMode.fixed, scripts, scriptProperties);
+	}
+
+	/**
+	 * Creates a JFunk instance.
+	 * 
+	 * @param scriptExecutor
+	 *            Used to execute the script.
+	 * @param threadCount
+	 *            Number of threads to be used. Allows for parallel execution of test scripts.
+	 * @param parallel
+	 *            Allows a single script to be executed in parallel depending on the number of
+	 *            threads specified. The argument is ignored if multiple scripts are specified.
+	 * @param executorMode
+	 *            Determines how threads for script execution are created.
+	 * @param scripts
+	 *            A list of test scripts. Must contain at least one script.
+	 * @param scriptProperties
+	 *            script properties passed in with {@code -S<key>=<value>}
+	 */
+	@AssistedInject
+	public JFunk(final ScriptExecutor scriptExecutor, final EventBus eventBus, @Assisted final int threadCount,
+			@Assisted final boolean parallel, @Assisted final ExecutorMode executorMode, @Assisted final List<File> scripts,
+			@Assisted final Properties scriptProperties) {
 		super(eventBus);
 
 		this.scriptExecutor = scriptExecutor;
 		this.threadCount = threadCount;
+		this.executorMode = executorMode;
+
+		Preconditions.checkArgument(executorMode != ExecutorMode.virtual || VirtualThreads.isSupported(),
+				"Executor mode 'virtual' requires Java 21 or higher (running on Java %s)", System.getProperty("java.version"));
 		this.scriptProperties = scriptProperties;
 
 		List<File> tmpScripts = Lists.newArrayList();
@@ -158,17 +197,27 @@ public final class JFunk extends JFunkBase {
 	protected BeforeRunEvent createBeforeRunEvent() {
 		BeforeRunEvent event = super.createBeforeRunEvent();
 		event.addParameter("threadCount", threadCount);
+		event.addParameter("executorMode", executorMode);
 		event.addParameter("name", name);
 		return event;
 	}
 
+	@Override
+	protected AfterRunEvent createAfterRunEvent() {
+		AfterRunEvent event = super.createAfterRunEvent();
+		if (executorStatistics != null) {
+			event.addParameter("executorStatistics", executorStatistics);
+		}
+		return event;
+	}
+
 	/**
 	 * Executes the jFunk test. A thread pool ({@link ExecutorService}) is created with the number
 	 * of configured threads, which handles concurrent script execution.
 	 */
 	@Override
 	protected void doExecute() throws Exception {
-		ExecutorService execService = createExecutorService();
+		ExecutorService execService = createExecutorService(executorMode, min(threadCount, scripts.size()));
 		CompletionService<Boolean> completionService = new ExecutorCompletionService<>(execService);
 
 		for (final File script : scripts) {
@@ -208,24 +257,46 @@ public final class JFunk extends JFunkBase {
 
 		shutDownExecutorService(execService);
 
+		// archives written in the background are part of the result
+		if (archivingExecutor != null) {
+			archivingExecutor.awaitTermination();
+			List<String> failedModules = archivingExecutor.getFailedModules();
+			if (!failedModules.isEmpty()) {
+				RESULT_LOG.error("Archiving failed for modules: " + failedModules);
+				overallResult = false;
+			}
+		}
+
 		if (!overallResult) {
 			throw new JFunkExecutionException();
 		}
 	}
 
-	private ExecutorService createExecutorService() {
-		return new FixedSizeThreadExecutor(min(threadCount, scripts.size()), new ThreadFactory() {
+	/**
+	 * Creates the executor for the specified mode. In every mode, at most the specified number of
+	 * scripts are executed concurrently. For virtual threads, this is the only limit, because they
+	 * are not pooled.
+	 */
+	static ExecutorService createExecutorService(final ExecutorMode executorMode, final int threads) {
+		ThreadFactory threadFactory = new ThreadFactory() {
 			private final AtomicInteger threadNumber = new AtomicInteger(1);
 
 			@Override
 			public Thread newThread(final Runnable r) {
 				int id = threadNumber.getAndIncrement();
 				String threadName = StringUtils.leftPad(String.valueOf(id), 2, "0");
-				Thread th = new Thread(r);
+				Thread th = executorMode == ExecutorMode.virtual ? VirtualThreads.newThread(r) : new Thread(r);
 				th.setName(threadName);
 				return th;
 			}
-		});
+		};
+
+		switch (executorMode) {
+			case pooled:
+				return new PooledThreadExecutor(threads, threadFactory);
+			default:
+				return new FixedSizeThreadExecutor(threads, threadFactory);
+		}
 	}
 
 	private void shutDownExecutorService(final ExecutorService execService) {
@@ -235,6 +306,11 @@ public final class JFunk extends JFunkBase {
 		} catch (InterruptedException ex) {
 			LOG.error("Script execution was interrupted.", ex);
 		}
+
+		if (execService instanceof PooledThreadExecutor) {
+			executorStatistics = ((PooledThreadExecutor) execService).getStatistics();
+			RESULT_LOG.info("Executor statistics: " + executorStatistics);
+		}
 	}
 
 	/**
@@ -242,10 +318,18 @@ public final class JFunk extends JFunkBase {
 	 * 
 	 * <pre>
 	 * -threadcount=&lt;count&gt;    Optional    Number of threads to be used. Allows for parallel
-	 *                                     execution of test scripts.
+	 *                                     execution of test scripts. In all executor modes, it is
+	 *                                     the maximum number of concurrently executing scripts.
 	 * -parallel               Optional    Allows a single script to be executed in parallel
 	 *                                     depending on the number of threads specified. The
 	 *                                     argument is ignored if multiple scripts are specified.
+	 * -executor=&lt;mode&gt;      Optional    Determines how script threads are created: 'fixed'
+	 *                                     (default) uses a new thread per script, 'pooled'
+	 *                                     reuses a fixed number of worker threads and logs
+	 *                                     queue depth and worker utilization at the end,
+	 *                                     'virtual' runs each script in a new virtual thread
+	 *                                     (Java 21+) with at most &lt;count&gt; scripts running
+	 *                                     concurrently.
 	 * &lt;script parameters&gt     Optional    Similar to Java system properties they can be provided
 	 *                                     as key-value-pairs preceded by -S, e.g. -Skey=value.
 	 *                                     These parameters are then available in the script as
@@ -271,6 +355,7 @@ public final class JFunk extends JFunkBase {
 
 			int threadCount = 1;
 			boolean parallel = false;
+			ExecutorMode executorMode = ExecutorMode.fixed;
 			Properties scriptProperties = new Properties();
 			List<File> scripts = Lists.newArrayList();
 
@@ -291,6 +376,12 @@ public final class JFunk extends JFunkBase {
 				} else if (arg.equals("-parallel")) {
 					parallel = true;
 					RESULT_LOG.info("Using parallel mode");
+				} else if (arg.startsWith("-executor")) {
+					String[] split = arg.split("=");
+					Preconditions.checkArgument(split.length == 2,
+							"The executor mode must be specified as follows: -executor=<fixed|pooled|virtual>");
+					executorMode = ExecutorMode.valueOf(split[1]);
+					RESULT_LOG.info("Using executor mode " + executorMode);
 				} else {
 					scripts.add(new File(arg));
 				}
@@ -310,7 +401,7 @@ public final class JFunk extends JFunkBase {
 			Injector injector = Guice.createInjector(module);
 
 			JFunkFactory factory = injector.getInstance(JFunkFactory.class);
-			JFunkBase jFunk = factory.create(threadCount, parallel, scripts, scriptProperties);
+			JFunkBase jFunk = factory.create(threadCount, parallel, executorMode, scripts, scriptProperties);
 			jFunk.execute();
 
 			exitWithError = false;
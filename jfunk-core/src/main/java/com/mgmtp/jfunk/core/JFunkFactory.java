@@ -25,4 +25,7 @@ import java.util.Properties;
 public interface JFunkFactory {
 
 	JFunkBase create(int threadCount, boolean parallel, List<File> scripts, Properties scriptProperties);
+
+	JFunkBase create(int threadCount, boolean parallel, ExecutorMode executorMode, List<File> scripts,
+			Properties scriptProperties);
 }
@@ -47,11 +47,13 @@ import com.mgmtp.jfunk.common.config.ThreadScope;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.core.data.DataSetAdapter;
+import com.mgmtp.jfunk.core.data.DataSourceEventHandler;
 import com.mgmtp.jfunk.core.event.AfterCommandEvent;
 import com.mgmtp.jfunk.core.event.BeforeCommandEvent;
 import com.mgmtp.jfunk.core.event.EventHandlers;
 import com.mgmtp.jfunk.core.mail.EmailModule;
 import com.mgmtp.jfunk.core.reporting.ReportContext;
+import com.mgmtp.jfunk.core.scripting.ArchiveSink;
 import com.mgmtp.jfunk.core.scripting.BreakIndex;
 import com.mgmtp.jfunk.core.scripting.Cmd;
 import com.mgmtp.jfunk.core.scripting.ExecutionMode;
@@ -101,6 +103,7 @@ public final class JFunkBaseModule extends BaseJFunkGuiceModule {
 		bind(Charset.class).toInstance(charset);
 
 		install(new DataSourceModule());
+		bindEventHandler().to(DataSourceEventHandler.class);
 		install(new ScriptingModule());
 		install(new EmailModule());
 	}
@@ -202,6 +205,11 @@ public final class JFunkBaseModule extends BaseJFunkGuiceModule {
 		return moduleArchiverProvider.get().getModuleArchiveDir();
 	}
 
+	@Provides
+	ArchiveSink provideArchiveSink(final Provider<ModuleArchiver> moduleArchiverProvider) {
+		return moduleArchiverProvider.get().getArchiveSink();
+	}
+
 	@Provides
 	@ScriptScoped
 	MathRandom provideMathRandom(final Configuration config) {
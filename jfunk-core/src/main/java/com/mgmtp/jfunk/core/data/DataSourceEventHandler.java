@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.data;
+
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.data.source.SharedDataSourceState;
+
+/**
+ * Event handler owning the process-wide state of data sources. After the run, it releases each
+ * bound {@link SharedDataSourceState} once, no matter how many data sources use it, e. g. the
+ * offsets of shared CSV cursors are stored and cached Excel files are freed.
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class DataSourceEventHandler {
+
+	private final Set<SharedDataSourceState> sharedStates;
+
+	@Inject
+	DataSourceEventHandler(final Set<SharedDataSourceState> sharedStates) {
+		this.sharedStates = sharedStates;
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		for (SharedDataSourceState state : sharedStates) {
+			state.release();
+		}
+	}
+}
@@ -33,6 +33,8 @@ public final class EmailConstants {
 	public static final String MAIL_ADDRESS = "mail.address";
 	public static final String MAIL_SSL_TRUST = "mail.ssl.trust";
 	public static final String MAIL_SUBADDRESSING = "mail.subaddressing";
+	public static final String MAIL_WATCHER_ACTIVE = "mail.watcher.active";
+	public static final String MAIL_RESERVATION_TIMEOUT_SECONDS = "mail.reservation.timeout.seconds";
 
 	@Deprecated
 	public static final String MAIL_ACCOUNT = "mail.account";
@@ -75,6 +77,9 @@ public final class EmailConstants {
 	public static final String MAIL_TIMEOUT_SECONDS = "mail.timeout.seconds";
 	public static final String MAIL_CHECK_MAXIMAL = "mail.check.maximal";
 	public static final String MAIL_CHECK_ACTIVE = "mail.check.active";
+	public static final String MAIL_CONNECTIONS_MAX = "mail.connections.max";
+	public static final String MAIL_CONNECTIONS_MAX_IDLE_SECONDS = "mail.connections.maxIdleSeconds";
+	public static final String MAIL_CONNECTIONS_MAX_AGE_SECONDS = "mail.connections.maxAgeSeconds";
 
 	public static final String REPORT_MAIL_RECIPIENTS = "report_email.recipients";
 
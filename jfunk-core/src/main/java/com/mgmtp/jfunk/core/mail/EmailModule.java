@@ -27,6 +27,7 @@ import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_SSL_TRUST;
 import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_STORE_PROTOCOL;
 import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_TIMEOUT_SECONDS;
 import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_TRANSPORT_PROTOCOL;
+import static com.mgmtp.jfunk.core.mail.EmailConstants.MAIL_WATCHER_ACTIVE;
 import static java.lang.String.format;
 import static org.apache.commons.lang3.StringUtils.substringAfterLast;
 import static org.apache.commons.lang3.StringUtils.substringBeforeLast;
@@ -75,6 +76,9 @@ public class EmailModule extends BaseJFunkGuiceModule {
 		bind(MailService.class);
 		bind(MailAccountManager.class);
 		bind(SmtpClient.class);
+		bind(LastSeenUids.class).in(ScriptScoped.class);
+		bind(MailboxWatcher.class);
+		bind(MailConnectionPool.class);
 
 		install(new PrivateModule() {
 			@Override
@@ -89,6 +93,7 @@ public class EmailModule extends BaseJFunkGuiceModule {
 		install(new FactoryModuleBuilder().build(StoreManager.Factory.class));
 		bindEventHandler().to(MailboxPurger.class);
 		bindEventHandler().to(MailAccountReleaser.class);
+		bindEventHandler().to(MailConnectionPool.class);
 	}
 
 	@Provides
@@ -151,6 +156,12 @@ public class EmailModule extends BaseJFunkGuiceModule {
 		return config.getLong(MAIL_SLEEP_MILLIS, 5000);
 	}
 
+	@Provides
+	@MailWatcherActive
+	boolean provideMailWatcherActive(final Configuration config) {
+		return config.getBoolean(MAIL_WATCHER_ACTIVE, false);
+	}
+
 	@Provides
 	@MailDeleteOnReservation
 	boolean provideMailDeleteOnStartup(final Configuration config) {
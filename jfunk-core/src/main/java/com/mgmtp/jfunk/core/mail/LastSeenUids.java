@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the highest message UID seen per mail account and folder, so subsequent polls only need
+ * to fetch newer messages. A remembered UID is only valid as long as the folder's UIDVALIDITY does
+ * not change. Bound in script scope like the mail message cache, which holds the messages fetched
+ * so far.
+ *
+ * @since 3.3.2
+ */
+class LastSeenUids {
+
+	private final ConcurrentMap<String, long[]> uids = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the last seen UID, or {@code -1} if no UID has been seen yet or the UIDVALIDITY has
+	 *         changed since
+	 */
+	long get(final String accountId, final String folderName, final long uidValidity) {
+		long[] entry = uids.get(key(accountId, folderName));
+		return entry != null && entry[0] == uidValidity ? entry[1] : -1L;
+	}
+
+	void put(final String accountId, final String folderName, final long uidValidity, final long uid) {
+		uids.put(key(accountId, folderName), new long[] { uidValidity, uid });
+	}
+
+	private static String key(final String accountId, final String folderName) {
+		return accountId + '|' + folderName;
+	}
+}
@@ -20,17 +20,19 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Maps.filterValues;
-import static com.google.common.collect.Maps.newHashMap;
-import static com.google.common.collect.Maps.transformValues;
 
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -42,14 +44,15 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.SetMultimap;
 import com.google.common.eventbus.EventBus;
 import com.mgmtp.jfunk.common.exception.JFunkException;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.exception.MailException;
 
 /**
  * <p>
@@ -99,6 +102,13 @@ import com.mgmtp.jfunk.common.util.Configuration;
  * A {@link MailAccountReservationEvent} is posted on the {@link EventBus} when an account is newly
  * reserved (and has not already been reserved) by a thread.
  * </p>
+ * <p>
+ * Reservations do not take a global lock. Free accounts are kept in a lock-free queue per pool and
+ * claimed atomically, and the accounts reserved by each thread are indexed by reservation key.
+ * Threads that have to wait for an account are served in FIFO order. By default they wait
+ * indefinitely; a timeout in seconds may be configured using
+ * {@link EmailConstants#MAIL_RESERVATION_TIMEOUT_SECONDS}.
+ * </p>
  * 
  * @author rnaegele
  * @since 3.1.0
@@ -110,23 +120,44 @@ public class MailAccountManager {
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	private final SetMultimap<String, MailAccount> emailAddressPools;
-	private final MathRandom random;
 	private final String defaultPool;
-
-	private final Map<MailAccount, ThreadReservationKeyWrapper> usedAccounts = newHashMap();
-	private final ReentrantLock lock = new ReentrantLock();
-	private final Condition condition = lock.newCondition();
 	private final Provider<EventBus> eventBusProvider;
 	private final Configuration config;
 
+	// Free accounts per pool. An account reserved as fixed account may still be contained. Such
+	// stale entries are dropped when they are polled, the account is added again on release.
+	private final Map<String, Queue<MailAccount>> freeAccounts;
+	private final ImmutableListMultimap<MailAccount, Queue<MailAccount>> poolsByAccount;
+
+	private final ConcurrentMap<MailAccount, Reservation> usedAccounts = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Thread, ConcurrentMap<String, MailAccount>> reservationsByThread = new ConcurrentHashMap<>();
+
+	// fair, so waiting threads are served in FIFO order
+	private final ReentrantLock waitLock = new ReentrantLock(true);
+	private final Condition released = waitLock.newCondition();
+	private final AtomicInteger waiting = new AtomicInteger();
+
 	@Inject
 	MailAccountManager(final SetMultimap<String, MailAccount> emailAddressPools, final MathRandom random,
 			final Provider<EventBus> eventBusProvider, final Configuration config) {
 		this.emailAddressPools = emailAddressPools;
-		this.random = random;
 		this.defaultPool = emailAddressPools.keySet().size() == 1 ? getOnlyElement(emailAddressPools.keySet()) : null;
 		this.eventBusProvider = eventBusProvider;
 		this.config = config;
+
+		ImmutableMap.Builder<String, Queue<MailAccount>> freeAccountsBuilder = ImmutableMap.builder();
+		ImmutableListMultimap.Builder<MailAccount, Queue<MailAccount>> poolsByAccountBuilder = ImmutableListMultimap.builder();
+		for (String pool : emailAddressPools.keySet()) {
+			List<MailAccount> accounts = newArrayList(emailAddressPools.get(pool));
+			Collections.shuffle(accounts, random.getRandom());
+			Queue<MailAccount> queue = new ConcurrentLinkedQueue<>(accounts);
+			freeAccountsBuilder.put(pool, queue);
+			for (MailAccount account : accounts) {
+				poolsByAccountBuilder.put(account, queue);
+			}
+		}
+		this.freeAccounts = freeAccountsBuilder.build();
+		this.poolsByAccount = poolsByAccountBuilder.build();
 	}
 
 	private MailAccount lookupMailAccount(final String accountId) {
@@ -173,6 +204,8 @@ public class MailAccountManager {
 	 * @param accountReservationKey
 	 *            the key under which to reserve the account
 	 * @return the reserved mail account
+	 * @throws MailException
+	 *             if no account became available within the configured timeout
 	 */
 	public MailAccount reserveMailAccount(final String accountReservationKey, final String pool) {
 		if (pool == null && emailAddressPools.keySet().size() > 1) {
@@ -180,95 +213,182 @@ public class MailAccountManager {
 		}
 
 		String poolKey = pool == null ? defaultPool : pool;
-		List<MailAccount> addressPool = newArrayList(emailAddressPools.get(poolKey));
-		Collections.shuffle(addressPool, random.getRandom());
-
-		return reserveAvailableMailAccount(accountReservationKey, addressPool);
+		return reserveAvailableMailAccount(accountReservationKey, poolKey);
 	}
 
-	private MailAccount reserveAvailableMailAccount(final String accountReservationKey, final List<MailAccount> addressPool) {
+	private MailAccount reserveAvailableMailAccount(final String accountReservationKey, final String poolKey) {
 		checkNotNull(accountReservationKey, "'accountReservationKey' must not be null");
-		checkNotNull(addressPool, "'addressPool' must not be null");
 		checkState(emailAddressPools.keySet().size() > 0, "'addressPool' must not be empty.");
 
-		lock.lock();
-		try {
-			while (true) {
-				String fixedAccountId = config.get("mail." + accountReservationKey + ".accountId");
-
-				MailAccount account = lookupUsedMailAccountForCurrentThread(accountReservationKey);
-				if (!isNullOrEmpty(fixedAccountId)) {
-					if (account != null) {
-						checkState(account.getAccountId().equals(fixedAccountId),
-								"Fixed configured mail account does not match that already reserved (configured=%s, reserved=%s)",
-								fixedAccountId, account.getAccountId());
-					} else {
-						account = lookupMailAccount(fixedAccountId);
-						if (isReserved(account)) {
-							// Already reserved by another thread, so we cannot use it.
-							// Set it to null in order to trigger the wait below.
-							account = null;
-						}
-					}
-				} else {
-					checkState(!addressPool.isEmpty(), "No fixed e-mail account configured and specified pool is empty.");
+		String fixedAccountId = config.get("mail." + accountReservationKey + ".accountId");
+		MailAccount account = lookupUsedMailAccountForCurrentThread(accountReservationKey);
+		MailAccount reservedAccount;
+
+		if (!isNullOrEmpty(fixedAccountId)) {
+			if (account != null) {
+				checkState(account.getAccountId().equals(fixedAccountId),
+						"Fixed configured mail account does not match that already reserved (configured=%s, reserved=%s)",
+						fixedAccountId, account.getAccountId());
+				usedAccounts.put(account, new Reservation(Thread.currentThread(), accountReservationKey));
+				reservedAccount = account;
+			} else {
+				reservedAccount = reserve(accountReservationKey, null, lookupMailAccount(fixedAccountId));
+			}
+		} else {
+			Set<MailAccount> addressPool = emailAddressPools.get(poolKey);
+			checkState(!addressPool.isEmpty(), "No fixed e-mail account configured and specified pool is empty.");
 
-					boolean subaddressing = config.getBoolean(EmailConstants.MAIL_SUBADDRESSING);
-					if (subaddressing) {
-						checkState(addressPool.size() == 1, "Mail subaddressing is active, specified pool must contain only one e-mail account.");
-					}
-					if (account != null) {
-						checkState(addressPool.contains(account), "Account '%s' is already reserved under key: %s", account, accountReservationKey);
-						log.info("Using already reserved e-mail account: {}", account.getAccountId());
-						return account;
-					}
+			boolean subaddressing = config.getBoolean(EmailConstants.MAIL_SUBADDRESSING);
+			if (subaddressing) {
+				checkState(addressPool.size() == 1, "Mail subaddressing is active, specified pool must contain only one e-mail account.");
+			}
+			if (account != null) {
+				checkState(addressPool.contains(account), "Account '%s' is already reserved under key: %s", account, accountReservationKey);
+				log.info("Using already reserved e-mail account: {}", account.getAccountId());
+				return account;
+			}
 
-					if (subaddressing) {
-						MailAccount acc = addressPool.get(0);
-						MailAuthenticator auth = (MailAuthenticator) acc.getAuthenticator();
-
-						StringBuilder uniqueAddress = new StringBuilder();
-						uniqueAddress.append(StringUtils.substringBefore(acc.getAddress(), "@"));
-						uniqueAddress.append("+");
-						uniqueAddress.append(UUID.randomUUID());
-						uniqueAddress.append("@");
-						uniqueAddress.append(StringUtils.substringAfter(acc.getAddress(), "@"));
-
-						account = new MailAccount(acc.getAccountId(), uniqueAddress.toString(), auth.getUser(), auth.getPassword());
-					} else {
-						// Try to find a free account.
-						for (MailAccount acc : addressPool) {
-							ThreadReservationKeyWrapper wrapper = usedAccounts.get(acc);
-							if (wrapper == null) {
-								account = acc;
-								break;
-							}
-						}
-					}
-				}
+			if (subaddressing) {
+				MailAccount acc = getOnlyElement(addressPool);
+				MailAuthenticator auth = (MailAuthenticator) acc.getAuthenticator();
+
+				StringBuilder uniqueAddress = new StringBuilder();
+				uniqueAddress.append(StringUtils.substringBefore(acc.getAddress(), "@"));
+				uniqueAddress.append("+");
+				uniqueAddress.append(UUID.randomUUID());
+				uniqueAddress.append("@");
+				uniqueAddress.append(StringUtils.substringAfter(acc.getAddress(), "@"));
+
+				reservedAccount = reserve(accountReservationKey, null,
+						new MailAccount(acc.getAccountId(), uniqueAddress.toString(), auth.getUser(), auth.getPassword()));
+			} else {
+				reservedAccount = reserve(accountReservationKey, poolKey, null);
+			}
+		}
 
-				if (account == null) {
-					// No free account available. We wait and then start over with the loop.
-					log.info("No free e-mail account available. Waiting...");
-					condition.await();
-				} else {
-					// We've found a free account and return it.
-					String accountId = account.getAccountId();
-					log.info("Found free e-mail account={} with address={}", accountId, account.getAddress());
+		log.info("Found free e-mail account={} with address={}", reservedAccount.getAccountId(), reservedAccount.getAddress());
 
-					usedAccounts.put(account, new ThreadReservationKeyWrapper(Thread.currentThread(), accountReservationKey));
+		// Post account reservation outside the lock. Handlers may access the mail server, which
+		// must not block other threads trying to reserve or release accounts.
+		eventBusProvider.get().post(new MailAccountReservationEvent(accountReservationKey, reservedAccount));
 
-					// post account reservation
-					eventBusProvider.get().post(new MailAccountReservationEvent(accountReservationKey, account));
+		return reservedAccount;
+	}
 
-					return account;
+	/**
+	 * Reserves the specified account, or any free account from the specified pool, blocking until
+	 * one is available.
+	 */
+	private MailAccount reserve(final String accountReservationKey, final String poolKey, final MailAccount account) {
+		if (waiting.get() == 0) {
+			// no one is waiting, so we do not overtake anybody
+			MailAccount reservedAccount = tryReserve(accountReservationKey, poolKey, account);
+			if (reservedAccount != null) {
+				return reservedAccount;
+			}
+		}
+
+		long timeoutSeconds = config.getLong(EmailConstants.MAIL_RESERVATION_TIMEOUT_SECONDS, 0L);
+		long nanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		boolean logged = false;
+
+		waitLock.lock();
+		// incremented before trying again, so releasing threads signal us if they miss our attempt
+		waiting.incrementAndGet();
+		try {
+			while (true) {
+				MailAccount reservedAccount = tryReserve(accountReservationKey, poolKey, account);
+				if (reservedAccount != null) {
+					return reservedAccount;
+				}
+
+				if (!logged) {
+					log.info("No free e-mail account available. Waiting...");
+					logged = true;
+				}
+				if (timeoutSeconds <= 0L) {
+					released.await();
+				} else if (nanos > 0L) {
+					nanos = released.awaitNanos(nanos);
+				} else {
+					throw new MailException("No free e-mail account available after " + timeoutSeconds + " s (reservation key: "
+							+ accountReservationKey + ")");
 				}
 			}
 		} catch (InterruptedException ex) {
 			Thread.currentThread().interrupt();
 			throw new JFunkException(ex.getMessage(), ex);
 		} finally {
-			lock.unlock();
+			waiting.decrementAndGet();
+			waitLock.unlock();
+		}
+	}
+
+	private MailAccount tryReserve(final String accountReservationKey, final String poolKey, final MailAccount account) {
+		if (account != null) {
+			if (!claim(account, accountReservationKey)) {
+				// Already reserved by another thread, so we cannot use it.
+				return null;
+			}
+			for (Queue<MailAccount> queue : poolsByAccount.get(account)) {
+				while (queue.remove(account)) {
+					// remove all entries
+				}
+			}
+			return account;
+		}
+
+		Queue<MailAccount> queue = freeAccounts.get(poolKey);
+		for (MailAccount acc; (acc = queue.poll()) != null;) {
+			if (claim(acc, accountReservationKey)) {
+				List<Queue<MailAccount>> pools = poolsByAccount.get(acc);
+				if (pools.size() > 1) {
+					for (Queue<MailAccount> otherQueue : pools) {
+						while (otherQueue.remove(acc)) {
+							// remove all entries
+						}
+					}
+				}
+				return acc;
+			}
+			// stale entry, see freeAccounts
+		}
+		return null;
+	}
+
+	private boolean claim(final MailAccount account, final String accountReservationKey) {
+		Thread thread = Thread.currentThread();
+		if (usedAccounts.putIfAbsent(account, new Reservation(thread, accountReservationKey)) != null) {
+			return false;
+		}
+		ConcurrentMap<String, MailAccount> reservations = reservationsByThread.get(thread);
+		if (reservations == null) {
+			// only the current thread adds its own index
+			reservations = new ConcurrentHashMap<>();
+			reservationsByThread.put(thread, reservations);
+		}
+		reservations.put(accountReservationKey, account);
+		return true;
+	}
+
+	/**
+	 * Makes the specified account, which must have been removed from {@link #usedAccounts},
+	 * available again and notifies waiting threads.
+	 */
+	private void makeAvailable(final MailAccount account) {
+		for (Queue<MailAccount> queue : poolsByAccount.get(account)) {
+			queue.offer(account);
+		}
+	}
+
+	private void signalWaitingThreads() {
+		if (waiting.get() > 0) {
+			waitLock.lock();
+			try {
+				released.signalAll();
+			} finally {
+				waitLock.unlock();
+			}
 		}
 	}
 
@@ -280,21 +400,8 @@ public class MailAccountManager {
 	 * @return the reserved account, or {@code null} if none is found
 	 */
 	public MailAccount lookupUsedMailAccountForCurrentThread(final String accountReservationKey) {
-		lock.lock();
-		try {
-			Map<MailAccount, ThreadReservationKeyWrapper> usedAccountsForThread = filterValues(usedAccounts, new CurrentThreadWrapperPredicate());
-			if (!usedAccountsForThread.isEmpty()) {
-				for (Entry<MailAccount, ThreadReservationKeyWrapper> entry : usedAccountsForThread.entrySet()) {
-					if (entry.getValue().accountReservationKey.equals(accountReservationKey)) {
-						return entry.getKey();
-					}
-				}
-			}
-
-			return null;
-		} finally {
-			lock.unlock();
-		}
+		Map<String, MailAccount> reservations = reservationsByThread.get(Thread.currentThread());
+		return reservations == null || accountReservationKey == null ? null : reservations.get(accountReservationKey);
 	}
 
 	/**
@@ -312,13 +419,8 @@ public class MailAccountManager {
 	 * @return the set of reserved mail accounts
 	 */
 	public Set<MailAccount> getReservedMailAccountsForCurrentThread() {
-		lock.lock();
-		try {
-			Map<MailAccount, ThreadReservationKeyWrapper> accountsForThread = filterValues(usedAccounts, new CurrentThreadWrapperPredicate());
-			return ImmutableSet.copyOf(accountsForThread.keySet());
-		} finally {
-			lock.unlock();
-		}
+		Map<String, MailAccount> reservations = reservationsByThread.get(Thread.currentThread());
+		return reservations == null ? ImmutableSet.<MailAccount>of() : ImmutableSet.copyOf(reservations.values());
 	}
 
 	/**
@@ -327,32 +429,19 @@ public class MailAccountManager {
 	 * @return the set of reservation keys
 	 */
 	public Set<String> getRegisteredAccountReservationKeysForCurrentThread() {
-		lock.lock();
-		try {
-			Map<MailAccount, String> accountsForThread = transformValues(filterValues(usedAccounts, new CurrentThreadWrapperPredicate()),
-					new Function<ThreadReservationKeyWrapper, String>() {
-						@Override
-						public String apply(final ThreadReservationKeyWrapper input) {
-							return input.accountReservationKey;
-						}
-					}
-			);
-
-			return ImmutableSet.copyOf(accountsForThread.values());
-		} finally {
-			lock.unlock();
-		}
+		Map<String, MailAccount> reservations = reservationsByThread.get(Thread.currentThread());
+		return reservations == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(reservations.keySet());
 	}
 
 	public void releaseAllMailAccounts() {
 		log.info("Releasing all mail accounts...");
-		lock.lock();
-		try {
-			usedAccounts.clear();
-			condition.signalAll();
-		} finally {
-			lock.unlock();
+		reservationsByThread.clear();
+		for (Entry<MailAccount, Reservation> entry : usedAccounts.entrySet()) {
+			if (usedAccounts.remove(entry.getKey(), entry.getValue())) {
+				makeAvailable(entry.getKey());
+			}
 		}
+		signalWaitingThreads();
 	}
 
 	/**
@@ -361,18 +450,17 @@ public class MailAccountManager {
 	 */
 	public void releaseAllMailAccountsForThread() {
 		log.info("Releasing all mail accounts for the current thread...");
-		lock.lock();
-		try {
-			for (Iterator<Entry<MailAccount, ThreadReservationKeyWrapper>> it = usedAccounts.entrySet().iterator(); it.hasNext(); ) {
-				ThreadReservationKeyWrapper wrapper = it.next().getValue();
-				if (wrapper.thread == Thread.currentThread()) {
-					it.remove();
+		Thread thread = Thread.currentThread();
+		Map<String, MailAccount> reservations = reservationsByThread.remove(thread);
+		if (reservations != null) {
+			for (MailAccount account : reservations.values()) {
+				Reservation reservation = usedAccounts.get(account);
+				if (reservation != null && reservation.thread == thread && usedAccounts.remove(account, reservation)) {
+					makeAvailable(account);
 				}
 			}
-			condition.signalAll();
-		} finally {
-			lock.unlock();
 		}
+		signalWaitingThreads();
 	}
 
 	/**
@@ -384,20 +472,24 @@ public class MailAccountManager {
 	 */
 	public void releaseMailAccountForThread(final MailAccount account) {
 		log.info("Releasing mail account for the current thread: {}", account);
-		lock.lock();
-		try {
-			ThreadReservationKeyWrapper wrapper = usedAccounts.get(account);
-			if (wrapper != null) {
-				if (wrapper.thread == Thread.currentThread()) {
-					log.debug("Releasing mail account: {}", account);
-					usedAccounts.remove(account);
-					condition.signalAll();
-				} else {
-					log.warn("Cannot release a mail account reserved by a different thread: {}", account);
+		if (account == null) {
+			return;
+		}
+		Reservation reservation = usedAccounts.get(account);
+		if (reservation != null) {
+			if (reservation.thread == Thread.currentThread()) {
+				log.debug("Releasing mail account: {}", account);
+				Map<String, MailAccount> reservations = reservationsByThread.get(reservation.thread);
+				if (reservations != null) {
+					reservations.remove(reservation.accountReservationKey, account);
+				}
+				if (usedAccounts.remove(account, reservation)) {
+					makeAvailable(account);
+					signalWaitingThreads();
 				}
+			} else {
+				log.warn("Cannot release a mail account reserved by a different thread: {}", account);
 			}
-		} finally {
-			lock.unlock();
 		}
 	}
 
@@ -410,27 +502,15 @@ public class MailAccountManager {
 	 *            the reservation key
 	 */
 	public void releaseMailAccountForThread(final String accountReservationKey) {
-		lock.lock();
-		try {
-			MailAccount mailAccount = lookupUsedMailAccountForCurrentThread(accountReservationKey);
-			releaseMailAccountForThread(mailAccount);
-		} finally {
-			lock.unlock();
-		}
-	}
-
-	static class CurrentThreadWrapperPredicate implements Predicate<ThreadReservationKeyWrapper> {
-		@Override
-		public boolean apply(final ThreadReservationKeyWrapper input) {
-			return input.thread == Thread.currentThread();
-		}
+		MailAccount mailAccount = lookupUsedMailAccountForCurrentThread(accountReservationKey);
+		releaseMailAccountForThread(mailAccount);
 	}
 
-	static class ThreadReservationKeyWrapper {
+	static class Reservation {
 		private final Thread thread;
 		private final String accountReservationKey;
 
-		ThreadReservationKeyWrapper(final Thread thread, final String accountReservationKey) {
+		Reservation(final Thread thread, final String accountReservationKey) {
 			this.thread = checkNotNull(thread);
 			this.accountReservationKey = checkNotNull(accountReservationKey);
 		}
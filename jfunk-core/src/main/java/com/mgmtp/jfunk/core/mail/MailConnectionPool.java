@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.mail.MessagingException;
+import javax.mail.Service;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.core.exception.MailException;
+
+/**
+ * <p>
+ * Bounded pool of connected mail {@link Store}s and {@link Transport}s per protocol, host, port,
+ * and user, so that mail access does not need a new login and TLS handshake each time.
+ * </p>
+ * <p>
+ * Borrowed connections must be returned using {@link #release(Service)}, or discarded using
+ * {@link #invalidate(Service)} if they failed. Idle connections are checked with
+ * {@link Service#isConnected()} before they are lent again. Connections that have been idle longer
+ * than {@link EmailConstants#MAIL_CONNECTIONS_MAX_IDLE_SECONDS} or that are older than
+ * {@link EmailConstants#MAIL_CONNECTIONS_MAX_AGE_SECONDS} are closed. At most
+ * {@link EmailConstants#MAIL_CONNECTIONS_MAX} connections are open per key. If the maximum is
+ * {@code 0}, connections are not pooled. Statistics are logged after the run.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class MailConnectionPool {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
+	public static final long DEFAULT_MAX_IDLE_SECONDS = 60L;
+	public static final long DEFAULT_MAX_AGE_SECONDS = 600L;
+
+	private static final long BORROW_TIMEOUT_SECONDS = 120L;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final int maxConnections;
+	private final long maxIdleMillis;
+	private final long maxAgeMillis;
+
+	private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<>();
+	private final Map<Service, Connection> leased = Collections.synchronizedMap(new IdentityHashMap<Service, Connection>());
+
+	@Inject
+	MailConnectionPool(final Configuration config) {
+		this(config.getInteger(EmailConstants.MAIL_CONNECTIONS_MAX, DEFAULT_MAX_CONNECTIONS),
+				config.getLong(EmailConstants.MAIL_CONNECTIONS_MAX_IDLE_SECONDS, DEFAULT_MAX_IDLE_SECONDS),
+				config.getLong(EmailConstants.MAIL_CONNECTIONS_MAX_AGE_SECONDS, DEFAULT_MAX_AGE_SECONDS));
+	}
+
+	MailConnectionPool(final int maxConnections, final long maxIdleSeconds, final long maxAgeSeconds) {
+		this.maxConnections = maxConnections;
+		this.maxIdleMillis = TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+		this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+
+		if (maxConnections > 0) {
+			ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(r, "MailConnectionPool-evictor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.max(1000L, maxIdleMillis / 2);
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictExpired();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Creates the key for connections with the specified session properties and user.
+	 *
+	 * @param sessionProperties
+	 *            the session properties
+	 * @param protocol
+	 *            the protocol
+	 * @param user
+	 *            the user
+	 * @return the key
+	 */
+	static String key(final Properties sessionProperties, final String protocol, final String user) {
+		return Joiner.on('|').useForNull("").join(protocol, sessionProperties.getProperty("mail." + protocol + ".host"),
+				sessionProperties.getProperty("mail." + protocol + ".port"), user);
+	}
+
+	/**
+	 * Borrows a connected store for the specified session.
+	 *
+	 * @param session
+	 *            the session used if a new store must be connected
+	 * @param key
+	 *            the pool key, see {@link #key(Properties, String, String)}
+	 * @return the connected store
+	 */
+	public Store borrowStore(final Session session, final String key) throws MessagingException {
+		return (Store) borrow("store|" + key, new Connector() {
+			@Override
+			public Service connect() throws MessagingException {
+				Store store = session.getStore();
+				store.connect();
+				return store;
+			}
+		});
+	}
+
+	/**
+	 * Borrows a connected transport for the specified session.
+	 *
+	 * @param session
+	 *            the session used if a new transport must be connected
+	 * @param key
+	 *            the pool key, see {@link #key(Properties, String, String)}
+	 * @return the connected transport
+	 */
+	public Transport borrowTransport(final Session session, final String key) throws MessagingException {
+		return (Transport) borrow("transport|" + key, new Connector() {
+			@Override
+			public Service connect() throws MessagingException {
+				Transport transport = session.getTransport();
+				transport.connect();
+				return transport;
+			}
+		});
+	}
+
+	Service borrow(final String key, final Connector connector) throws MessagingException {
+		long start = System.nanoTime();
+		Pool pool = pool(key);
+		try {
+			while (true) {
+				Connection connection = pool.take();
+				if (connection == null) {
+					// a new connection may be opened
+					try {
+						connection = new Connection(pool, connector.connect());
+					} catch (MessagingException | RuntimeException ex) {
+						pool.discard(null);
+						throw ex;
+					}
+					pool.connects.incrementAndGet();
+					log.debug("Opened mail connection {}", key);
+				} else if (isExpired(connection, System.currentTimeMillis()) || !connection.service.isConnected()) {
+					pool.discard(connection);
+					continue;
+				} else {
+					pool.hits.incrementAndGet();
+				}
+				leased.put(connection.service, connection);
+				return connection.service;
+			}
+		} finally {
+			pool.borrows.incrementAndGet();
+			pool.borrowNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns the specified connection to the pool. Connections not borrowed from the pool are
+	 * closed.
+	 *
+	 * @param service
+	 *            the store or transport
+	 */
+	public void release(final Service service) {
+		if (service == null) {
+			return;
+		}
+		Connection connection = leased.remove(service);
+		if (connection == null) {
+			close(service);
+			return;
+		}
+		connection.lastUsed = System.currentTimeMillis();
+		if (maxConnections <= 0 || isExpired(connection, connection.lastUsed)) {
+			connection.pool.discard(connection);
+		} else {
+			connection.pool.giveBack(connection);
+		}
+	}
+
+	/**
+	 * Closes the specified connection and removes it from the pool, e. g. because it failed.
+	 *
+	 * @param service
+	 *            the store or transport
+	 */
+	public void invalidate(final Service service) {
+		if (service == null) {
+			return;
+		}
+		Connection connection = leased.remove(service);
+		if (connection == null) {
+			close(service);
+		} else {
+			connection.pool.discard(connection);
+		}
+	}
+
+	/**
+	 * @return an immutable snapshot of the statistics per pool key
+	 */
+	public Map<String, String> getStatistics() {
+		ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+		for (Map.Entry<String, Pool> entry : pools.entrySet()) {
+			builder.put(entry.getKey(), entry.getValue().toString());
+		}
+		return builder.build();
+	}
+
+	@Subscribe
+	public void handleEvent(final AfterRunEvent event) {
+		for (Map.Entry<String, String> entry : getStatistics().entrySet()) {
+			log.info("Mail connection statistics for {}: {}", entry.getKey(), entry.getValue());
+		}
+		for (Pool pool : pools.values()) {
+			pool.closeIdle(Long.MAX_VALUE);
+		}
+	}
+
+	void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (Pool pool : pools.values()) {
+			pool.closeIdle(now);
+		}
+	}
+
+	private Pool pool(final String key) {
+		Pool pool = pools.get(key);
+		if (pool == null) {
+			Pool newPool = new Pool(key);
+			pool = pools.putIfAbsent(key, newPool);
+			if (pool == null) {
+				pool = newPool;
+			}
+		}
+		return pool;
+	}
+
+	private boolean isExpired(final Connection connection, final long now) {
+		return now - connection.created > maxAgeMillis || now - connection.lastUsed > maxIdleMillis;
+	}
+
+	private void close(final Service service) {
+		try {
+			service.close();
+		} catch (MessagingException ex) {
+			log.warn("Error closing mail connection", ex);
+		}
+	}
+
+	interface Connector {
+		Service connect() throws MessagingException;
+	}
+
+	private static final class Connection {
+		private final Pool pool;
+		private final Service service;
+		private final long created = System.currentTimeMillis();
+		private long lastUsed = created;
+
+		Connection(final Pool pool, final Service service) {
+			this.pool = pool;
+			this.service = service;
+		}
+	}
+
+	private final class Pool {
+		private final String key;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition available = lock.newCondition();
+
+		// guarded by lock
+		private final Deque<Connection> idle = new ArrayDeque<>();
+		private int open;
+
+		private final AtomicLong borrows = new AtomicLong();
+		private final AtomicLong borrowNanos = new AtomicLong();
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong connects = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+
+		Pool(final String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Takes an idle connection or reserves a slot for a new connection, in which case
+		 * {@code null} is returned. Blocks while the maximum number of connections is in use.
+		 */
+		Connection take() {
+			lock.lock();
+			try {
+				long nanos = TimeUnit.SECONDS.toNanos(BORROW_TIMEOUT_SECONDS);
+				while (true) {
+					Connection connection = idle.pollFirst();
+					if (connection != null) {
+						return connection;
+					}
+					if (maxConnections <= 0 || open < maxConnections) {
+						open++;
+						return null;
+					}
+					if (nanos <= 0L) {
+						throw new MailException("No mail connection available for " + key + " after " + BORROW_TIMEOUT_SECONDS
+								+ " s. Are connections not released?");
+					}
+					nanos = available.awaitNanos(nanos);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new JFunkException("Interrupt received.", ex);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void giveBack(final Connection connection) {
+			lock.lock();
+			try {
+				// most recently used first
+				idle.addFirst(connection);
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Closes the specified connection and frees its slot. A {@code null} connection frees a slot
+		 * reserved for a connection that could not be opened.
+		 */
+		void discard(final Connection connection) {
+			lock.lock();
+			try {
+				open--;
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+			if (connection != null) {
+				evictions.incrementAndGet();
+				close(connection.service);
+				log.debug("Closed mail connection {}", key);
+			}
+		}
+
+		void closeIdle(final long now) {
+			List<Connection> expired = newArrayList();
+			lock.lock();
+			try {
+				for (Iterator<Connection> it = idle.iterator(); it.hasNext();) {
+					Connection connection = it.next();
+					if (now == Long.MAX_VALUE || isExpired(connection, now)) {
+						it.remove();
+						expired.add(connection);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			for (Connection connection : expired) {
+				discard(connection);
+			}
+		}
+
+		@Override
+		public String toString() {
+			long borrowCount = borrows.get();
+			return String.format("borrows=%d, hits=%d, connects=%d, evictions=%d, avgBorrowTime=%.2fms", borrowCount, hits.get(),
+					connects.get(), evictions.get(),
+					borrowCount == 0L ? 0d : borrowNanos.get() / (double) borrowCount / TimeUnit.MILLISECONDS.toNanos(1L));
+		}
+	}
+}
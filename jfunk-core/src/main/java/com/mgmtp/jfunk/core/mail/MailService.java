@@ -42,6 +42,11 @@ import com.mgmtp.jfunk.core.mail.StoreManager.Factory;
  * Mail accounts need to be reserved using {@link MailAccountManager} before they can be used with
  * methods taking an {@code accountReservationKey}.
  * </p>
+ * <p>
+ * By default, each thread waiting for messages polls the mailbox itself. If
+ * {@link EmailConstants#MAIL_WATCHER_ACTIVE} is set, a single background thread per physical
+ * mailbox watches for new messages and dispatches them to the waiting threads instead.
+ * </p>
  * 
  * @author rnaegele
  * @since 3.1.0
@@ -54,14 +59,19 @@ public class MailService {
 	private final Factory storeManagerFactory;
 	private final long defaultTimeoutSeconds;
 	private final long defaultSleepMillis;
+	private final MailboxWatcher mailboxWatcher;
+	private final boolean watcherActive;
 
 	@Inject
 	MailService(final MailAccountManager mailAccountManager, final StoreManager.Factory storeManagerFactory,
-			@MailTimeoutSeconds final long defaultTimeoutSeconds, @MailSleepMillis final long defaultSleepMillis) {
+			@MailTimeoutSeconds final long defaultTimeoutSeconds, @MailSleepMillis final long defaultSleepMillis,
+			final MailboxWatcher mailboxWatcher, @MailWatcherActive final boolean watcherActive) {
 		this.mailAccountManager = mailAccountManager;
 		this.storeManagerFactory = storeManagerFactory;
 		this.defaultTimeoutSeconds = defaultTimeoutSeconds;
 		this.defaultSleepMillis = defaultSleepMillis;
+		this.mailboxWatcher = mailboxWatcher;
+		this.watcherActive = watcherActive;
 	}
 
 	/**
@@ -492,6 +502,26 @@ public class MailService {
 		long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
 
 		StoreManager storeManager = storeManagerFactory.create(mailAccount);
+		List<MailMessage> result = watcherActive
+				? watchMessages(storeManager, mailAccount, condition, end, expectedCount)
+				: pollMessages(storeManager, condition, end, sleepMillis, expectedCount);
+		if (expectedCount == -1 ? !result.isEmpty() : result.size() >= expectedCount) {
+			return result;
+		}
+
+		if (expectedCount == -1) {
+			throw new MailException(String.format(
+					"No matching e-mail found [account=%s, timeoutSeconds=%d, sleepMillis=%d, condition=%s]",
+					mailAccount.getAddress(), timeoutSeconds, sleepMillis, condition));
+		} else {
+			throw new MailException(String.format(
+					"Found %d matching e-mail(s) but expected %d [account=%s, timeoutSeconds=%d, sleepMillis=%d, condition=%s]",
+					result.size(), expectedCount, mailAccount.getAddress(), timeoutSeconds, sleepMillis, condition));
+		}
+	}
+
+	private List<MailMessage> pollMessages(final StoreManager storeManager, final Predicate<MailMessage> condition,
+			final long end, final long sleepMillis, final int expectedCount) {
 		List<MailMessage> result = newArrayList();
 		do {
 			List<MailMessage> messages = storeManager.fetchMessages(condition, true);
@@ -511,15 +541,36 @@ public class MailService {
 				}
 			}
 		} while (end > System.currentTimeMillis());
+		return result;
+	}
 
-		if (expectedCount == -1) {
-			throw new MailException(String.format(
-					"No matching e-mail found [account=%s, timeoutSeconds=%d, sleepMillis=%d, condition=%s]",
-					mailAccount.getAddress(), timeoutSeconds, sleepMillis, condition));
-		} else {
-			throw new MailException(String.format(
-					"Found %d matching e-mail(s) but expected %d [account=%s, timeoutSeconds=%d, sleepMillis=%d, condition=%s]",
-					result.size(), expectedCount, mailAccount.getAddress(), timeoutSeconds, sleepMillis, condition));
+	private List<MailMessage> watchMessages(final StoreManager storeManager, final MailAccount mailAccount,
+			final Predicate<MailMessage> condition, final long end, final int expectedCount) {
+		List<MailMessage> result = newArrayList();
+		MailboxWatcher.Subscription subscription = mailboxWatcher.subscribe(mailAccount);
+		try {
+			// messages cached by previous calls
+			List<MailMessage> messages = storeManager.takeMessages(condition);
+			while (true) {
+				if (!messages.isEmpty()) {
+					log.info("Found {} matching e-mail(s).", messages.size());
+					result.addAll(messages);
+					if (expectedCount == -1 || result.size() >= expectedCount) {
+						return result;
+					}
+				}
+				long remaining = end - System.currentTimeMillis();
+				if (remaining <= 0L) {
+					return result;
+				}
+				log.trace("No matching e-mail found. Waiting up to {} ms...", remaining);
+				List<MailMessage> received = subscription.take(remaining, TimeUnit.MILLISECONDS);
+				storeManager.cacheMessages(received);
+				messages = storeManager.takeMessages(condition);
+			}
+		} finally {
+			// keep messages received but not yet taken for subsequent calls
+			storeManager.cacheMessages(subscription.drain());
 		}
 	}
 
@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Arrays.asList;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.mail.Address;
+import javax.mail.FetchProfile;
+import javax.mail.Flags.Flag;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.NoSuchProviderException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.internet.InternetAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.core.exception.MailException;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+/**
+ * <p>
+ * Watches physical mailboxes with a single connection and background thread per mailbox and
+ * dispatches new messages to the accounts waiting for them. This is particularly useful with mail
+ * subaddressing ({@link EmailConstants#MAIL_SUBADDRESSING}), where all accounts share one
+ * mailbox. The watcher is used by {@link MailService} if {@link EmailConstants#MAIL_WATCHER_ACTIVE}
+ * is set.
+ * </p>
+ * <p>
+ * If the server supports IMAP IDLE, the watcher is notified of new messages immediately.
+ * Otherwise, it polls adaptively: the interval starts at {@value #MIN_SLEEP_MILLIS} ms and is
+ * doubled after each poll without new messages up to {@link EmailConstants#MAIL_SLEEP_MILLIS}.
+ * Several subscriptions may wait for the same address, e. g. when the same account is used by
+ * concurrent threads; each of them receives every message for the address. Messages dispatched to
+ * a subscription are deleted from the mailbox. A watcher thread terminates
+ * and closes its connection as soon as no subscriptions are left.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+@Singleton
+class MailboxWatcher {
+
+	static final long MIN_SLEEP_MILLIS = 250L;
+
+	private static final String FOLDER_SEP = "/";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<Properties> sessionPropertiesProvider;
+	private final Provider<String> folderNameProvider;
+	private final Provider<Long> sleepMillisProvider;
+
+	private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+
+	// aborts IDLE commands periodically, so a lost notification delays messages at most by the sleep time
+	private final ScheduledExecutorService idleWatchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable r) {
+			Thread thread = new Thread(r, "MailboxWatcher-idle-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	@Inject
+	MailboxWatcher(@StoreSession final Provider<Properties> sessionPropertiesProvider,
+			@MailFolder final Provider<String> folderNameProvider, @MailSleepMillis final Provider<Long> sleepMillisProvider) {
+		this.sessionPropertiesProvider = sessionPropertiesProvider;
+		this.folderNameProvider = folderNameProvider;
+		this.sleepMillisProvider = sleepMillisProvider;
+	}
+
+	/**
+	 * Subscribes to the messages of the specified mail account. Messages already in the mailbox
+	 * are dispatched to the subscription, too. The subscription must be closed when it is no longer
+	 * needed.
+	 *
+	 * @param mailAccount
+	 *            the mail account
+	 * @return the subscription
+	 */
+	Subscription subscribe(final MailAccount mailAccount) {
+		Properties sessionProperties = sessionPropertiesProvider.get();
+		String folderName = folderNameProvider.get();
+		MailAuthenticator authenticator = (MailAuthenticator) mailAccount.getAuthenticator();
+		String protocol = sessionProperties.getProperty(EmailConstants.MAIL_STORE_PROTOCOL);
+		String key = Joiner.on('|').useForNull("").join(protocol, sessionProperties.getProperty("mail." + protocol + ".host"),
+				sessionProperties.getProperty("mail." + protocol + ".port"), authenticator.getUser(), folderName);
+
+		Subscription subscription = new Subscription(mailAccount.getAddress());
+		while (true) {
+			Watch watch = watches.get(key);
+			if (watch == null) {
+				Watch newWatch = new Watch(key, sessionProperties, folderName, mailAccount, sleepMillisProvider.get());
+				watch = watches.putIfAbsent(key, newWatch);
+				if (watch == null) {
+					watch = newWatch;
+					watch.start();
+				}
+			}
+			if (watch.add(subscription)) {
+				return subscription;
+			}
+			// the watch has just terminated
+			watches.remove(key, watch);
+		}
+	}
+
+	/**
+	 * A subscription to the messages of a mail address.
+	 */
+	final class Subscription implements AutoCloseable {
+		private final String address;
+		private final BlockingQueue<MailMessage> queue = new LinkedBlockingQueue<>();
+		private Watch watch;
+
+		Subscription(final String address) {
+			this.address = address.toLowerCase(Locale.ENGLISH);
+		}
+
+		/**
+		 * Waits for messages until the specified timeout elapses.
+		 *
+		 * @return the messages received, or an empty list if the timeout has elapsed
+		 */
+		List<MailMessage> take(final long timeout, final TimeUnit unit) {
+			try {
+				MailMessage message = queue.poll(timeout, unit);
+				if (message == null) {
+					return Collections.emptyList();
+				}
+				List<MailMessage> result = newArrayList();
+				result.add(message);
+				queue.drainTo(result);
+				return result;
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new JFunkException("Interrupt received.", ex);
+			}
+		}
+
+		/**
+		 * Unsubscribes and returns the messages that have been received but not taken.
+		 */
+		List<MailMessage> drain() {
+			close();
+			List<MailMessage> result = newArrayList();
+			queue.drainTo(result);
+			return result;
+		}
+
+		@Override
+		public void close() {
+			if (watch != null) {
+				watch.remove(this);
+			}
+		}
+	}
+
+	private final class Watch implements Runnable {
+		private final String key;
+		private final Properties sessionProperties;
+		private final String folderName;
+		private final MailAccount mailAccount;
+		private final long maxSleepMillis;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition changed = lock.newCondition();
+
+		// guarded by lock
+		private final ListMultimap<String, Subscription> subscriptions = ArrayListMultimap.create();
+		private final Set<Subscription> pendingScans = new LinkedHashSet<>();
+		private boolean running = true;
+
+		private volatile Folder folder;
+		private volatile boolean idling;
+		private long uidValidity = -1L;
+		private long lastSeenUid = -1L;
+
+		Watch(final String key, final Properties sessionProperties, final String folderName, final MailAccount mailAccount,
+				final long maxSleepMillis) {
+			this.key = key;
+			this.sessionProperties = sessionProperties;
+			this.folderName = folderName;
+			this.mailAccount = mailAccount;
+			this.maxSleepMillis = Math.max(MIN_SLEEP_MILLIS, maxSleepMillis);
+		}
+
+		void start() {
+			Thread thread = new Thread(this, "MailboxWatcher-" + mailAccount.getAccountId());
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		boolean add(final Subscription subscription) {
+			lock.lock();
+			try {
+				if (!running) {
+					return false;
+				}
+				subscription.watch = this;
+				subscriptions.put(subscription.address, subscription);
+				pendingScans.add(subscription);
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			abortIdle();
+			return true;
+		}
+
+		void remove(final Subscription subscription) {
+			lock.lock();
+			try {
+				if (subscriptions.remove(subscription.address, subscription)) {
+					pendingScans.remove(subscription);
+					changed.signalAll();
+				}
+			} finally {
+				lock.unlock();
+			}
+			abortIdle();
+		}
+
+		@Override
+		public void run() {
+			log.info("Watching mailbox {}", key);
+			long sleepMillis = MIN_SLEEP_MILLIS;
+			try {
+				while (true) {
+					lock.lock();
+					try {
+						if (subscriptions.isEmpty()) {
+							running = false;
+							watches.remove(key, this);
+							return;
+						}
+					} finally {
+						lock.unlock();
+					}
+
+					try {
+						if (folder == null) {
+							folder = openFolder();
+						}
+						int dispatched = scan(folder);
+						sleepMillis = dispatched > 0 ? MIN_SLEEP_MILLIS : Math.min(sleepMillis * 2, maxSleepMillis);
+
+						if (!(folder instanceof UIDFolder)) {
+							// e. g. POP3, messages are deleted and new messages become visible only when the folder is reopened
+							closeFolder(folder);
+							folder = null;
+							awaitChange(sleepMillis);
+						} else if (supportsIdle(folder)) {
+							idle((IMAPFolder) folder);
+						} else {
+							awaitChange(sleepMillis);
+						}
+					} catch (MessagingException | MailException ex) {
+						log.warn("Error watching mailbox " + key + ". Reconnecting...", ex);
+						closeFolder(folder);
+						folder = null;
+						awaitChange(maxSleepMillis);
+					}
+				}
+			} finally {
+				closeFolder(folder);
+				folder = null;
+				log.info("Stopped watching mailbox {}", key);
+			}
+		}
+
+		/**
+		 * Dispatches new messages and the messages of new subscriptions.
+		 *
+		 * @return the number of messages dispatched
+		 */
+		private int scan(final Folder f) throws MessagingException {
+			List<Subscription> newSubscriptions;
+			lock.lock();
+			try {
+				newSubscriptions = newArrayList(pendingScans);
+				pendingScans.clear();
+			} finally {
+				lock.unlock();
+			}
+
+			Set<Message> candidates = new LinkedHashSet<>();
+			if (f instanceof UIDFolder) {
+				candidates.addAll(newMessages(f));
+				for (Subscription subscription : newSubscriptions) {
+					candidates.addAll(asList(f.search(MessageUtils.recipientTerm(subscription.address))));
+				}
+			} else {
+				candidates.addAll(asList(f.getMessages()));
+			}
+			if (candidates.isEmpty()) {
+				return 0;
+			}
+
+			Message[] messages = candidates.toArray(new Message[candidates.size()]);
+			FetchProfile envelopeProfile = new FetchProfile();
+			envelopeProfile.add(FetchProfile.Item.ENVELOPE);
+			envelopeProfile.add(FetchProfile.Item.FLAGS);
+			f.fetch(messages, envelopeProfile);
+
+			int dispatched = 0;
+			for (Message message : messages) {
+				if (message.isSet(Flag.DELETED)) {
+					continue;
+				}
+				Address[] recipients = message.getAllRecipients();
+				if (recipients == null || recipients.length == 0 || !hasSubscription(recipients)) {
+					continue;
+				}
+
+				// download the message outside the lock
+				MailMessage mailMessage = MailMessage.fromMessage(message);
+				// a subscription is added once, even if its address is listed as TO and CC
+				Set<Subscription> receivers = new LinkedHashSet<>();
+				lock.lock();
+				try {
+					for (Address recipient : recipients) {
+						receivers.addAll(subscriptions.get(addressOf(recipient)));
+					}
+					for (Subscription subscription : receivers) {
+						subscription.queue.add(mailMessage);
+					}
+				} finally {
+					lock.unlock();
+				}
+				if (!receivers.isEmpty()) {
+					message.setFlag(Flag.DELETED, true);
+					dispatched++;
+				}
+			}
+
+			if (dispatched > 0) {
+				log.debug("Dispatched {} message(s) from mailbox {}", dispatched, key);
+				if (f instanceof UIDFolder) {
+					f.expunge();
+				}
+			}
+			return dispatched;
+		}
+
+		private List<Message> newMessages(final Folder f) throws MessagingException {
+			UIDFolder uidFolder = (UIDFolder) f;
+			long currentUidValidity = uidFolder.getUIDValidity();
+			if (currentUidValidity != uidValidity) {
+				// start watching at the end of the folder, existing messages are found by the initial search per subscription
+				uidValidity = currentUidValidity;
+				int count = f.getMessageCount();
+				lastSeenUid = count > 0 ? uidFolder.getUID(f.getMessage(count)) : 0L;
+				return Collections.emptyList();
+			}
+
+			Message[] messages = uidFolder.getMessagesByUID(lastSeenUid + 1L, UIDFolder.LASTUID);
+			FetchProfile uidProfile = new FetchProfile();
+			uidProfile.add(UIDFolder.FetchProfileItem.UID);
+			f.fetch(messages, uidProfile);
+
+			// the range n:* always includes the last message, even if its UID is lower than n
+			List<Message> result = newArrayList();
+			long maxUid = lastSeenUid;
+			for (Message message : messages) {
+				long uid = uidFolder.getUID(message);
+				if (uid > lastSeenUid) {
+					result.add(message);
+					maxUid = Math.max(maxUid, uid);
+				}
+			}
+			lastSeenUid = maxUid;
+			return result;
+		}
+
+		private boolean hasSubscription(final Address[] recipients) {
+			lock.lock();
+			try {
+				for (Address recipient : recipients) {
+					if (subscriptions.containsKey(addressOf(recipient))) {
+						return true;
+					}
+				}
+				return false;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean supportsIdle(final Folder f) throws MessagingException {
+			return f instanceof IMAPFolder && f.getStore() instanceof IMAPStore && ((IMAPStore) f.getStore()).hasCapability("IDLE");
+		}
+
+		private void idle(final IMAPFolder f) throws MessagingException {
+			lock.lock();
+			try {
+				if (!pendingScans.isEmpty() || subscriptions.isEmpty()) {
+					return;
+				}
+				idling = true;
+			} finally {
+				lock.unlock();
+			}
+			ScheduledFuture<?> abort = idleWatchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					abortIdle();
+				}
+			}, maxSleepMillis, TimeUnit.MILLISECONDS);
+			try {
+				// returns as soon as the server reports changes or another thread uses the folder
+				f.idle();
+			} finally {
+				idling = false;
+				abort.cancel(false);
+			}
+		}
+
+		private void abortIdle() {
+			Folder f = folder;
+			if (idling && f != null) {
+				try {
+					// any command on the folder terminates the IDLE command
+					f.getMessageCount();
+				} catch (MessagingException ex) {
+					log.debug("Could not abort IDLE command", ex);
+				}
+			}
+		}
+
+		private void awaitChange(final long millis) {
+			lock.lock();
+			try {
+				if (pendingScans.isEmpty() && !subscriptions.isEmpty()) {
+					changed.await(millis, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new JFunkException("Interrupt received.", ex);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private Folder openFolder() throws MessagingException {
+			Session session = Session.getInstance(sessionProperties, mailAccount.getAuthenticator());
+			Store store = getStore(session);
+			store.connect();
+			Folder f = store.getDefaultFolder();
+			String[] subFolderNames = folderName == null || folderName.indexOf(FOLDER_SEP) < 0
+					? new String[] { folderName }
+					: folderName.split(FOLDER_SEP);
+			for (String subFolderName : subFolderNames) {
+				f = f.getFolder(subFolderName);
+			}
+			f.open(Folder.READ_WRITE);
+			uidValidity = -1L;
+
+			// all current subscriptions need an initial search on a new connection
+			lock.lock();
+			try {
+				pendingScans.addAll(subscriptions.values());
+			} finally {
+				lock.unlock();
+			}
+			return f;
+		}
+
+		private void closeFolder(final Folder f) {
+			if (f == null) {
+				return;
+			}
+			Store store = f.getStore();
+			try {
+				if (f.isOpen()) {
+					f.close(true);
+				}
+			} catch (MessagingException ex) {
+				log.error("Could not close folder: " + f.getName(), ex);
+			}
+			try {
+				store.close();
+			} catch (MessagingException ex) {
+				log.error("Could not close mail store", ex);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new, unconnected store for the specified session.
+	 */
+	Store getStore(final Session session) throws NoSuchProviderException {
+		return session.getStore();
+	}
+
+	/**
+	 * @return the number of mailboxes currently watched
+	 */
+	int getWatchCount() {
+		return watches.size();
+	}
+
+	private static String addressOf(final Address address) {
+		String result = address instanceof InternetAddress ? ((InternetAddress) address).getAddress() : address.toString();
+		return result == null ? "" : result.toLowerCase(Locale.ENGLISH);
+	}
+}
@@ -24,6 +24,9 @@ import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.internet.MimeBodyPart;
+import javax.mail.search.OrTerm;
+import javax.mail.search.RecipientStringTerm;
+import javax.mail.search.SearchTerm;
 
 import org.apache.commons.lang3.text.StrBuilder;
 
@@ -37,6 +40,22 @@ import com.mgmtp.jfunk.core.exception.MailException;
  */
 public class MessageUtils {
 
+	/**
+	 * Creates a search term for messages that have the specified address in their TO, CC, or BCC
+	 * recipients. The term matches substrings, so the exact address should be checked with
+	 * {@link MessagePredicates#forRecipient(String)} on the messages found.
+	 * 
+	 * @param address
+	 *            the mail address
+	 * @return the search term
+	 */
+	public static SearchTerm recipientTerm(final String address) {
+		return new OrTerm(new SearchTerm[] {
+				new RecipientStringTerm(Message.RecipientType.TO, address),
+				new RecipientStringTerm(Message.RecipientType.CC, address),
+				new RecipientStringTerm(Message.RecipientType.BCC, address) });
+	}
+
 	/**
 	 * Returns the specified message as text, including headers.
 	 * 
@@ -17,6 +17,8 @@ package com.mgmtp.jfunk.core.mail;
 
 import static com.google.common.base.Joiner.on;
 
+import java.util.Properties;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
@@ -31,7 +33,7 @@ import org.slf4j.LoggerFactory;
 import com.mgmtp.jfunk.core.exception.MailException;
 
 /**
- * An SMTP client.
+ * An SMTP client. Connected transports are borrowed from the {@link MailConnectionPool}.
  * 
  * @author rnaegele
  * @since 3.1.0
@@ -41,14 +43,18 @@ public class SmtpClient {
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	private final Provider<Session> sessionProvider;
+	private final MailConnectionPool connectionPool;
 
 	/**
 	 * @param sessionProvider
 	 *            provides the {@link Session} used to send messages
+	 * @param connectionPool
+	 *            the pool connected transports are borrowed from
 	 */
 	@Inject
-	SmtpClient(@TransportSession final Provider<Session> sessionProvider) {
+	SmtpClient(@TransportSession final Provider<Session> sessionProvider, final MailConnectionPool connectionPool) {
 		this.sessionProvider = sessionProvider;
+		this.connectionPool = connectionPool;
 	}
 
 	/**
@@ -61,21 +67,27 @@ public class SmtpClient {
 	 */
 	public void send(final Message msg) throws MailException {
 		Transport transport = null;
+		boolean sent = false;
 		try {
 			if (log.isDebugEnabled()) {
 				log.debug("Sending mail message [subject={}, recipients={}]", msg.getSubject(),
 						on(", ").join(msg.getAllRecipients()));
 			}
-			transport = sessionProvider.get().getTransport();
-			transport.connect();
+			Session session = sessionProvider.get();
+			Properties props = session.getProperties();
+			String protocol = props.getProperty(EmailConstants.MAIL_TRANSPORT_PROTOCOL);
+			transport = connectionPool.borrowTransport(session,
+					MailConnectionPool.key(props, protocol, props.getProperty("mail." + protocol + ".user")));
 			transport.sendMessage(msg, msg.getAllRecipients());
+			sent = true;
 		} catch (MessagingException ex) {
 			throw new MailException("Error sending mail message", ex);
 		} finally {
-			try {
-				transport.close();
-			} catch (MessagingException ex) {
-				log.error(ex.getMessage(), ex);
+			if (sent) {
+				connectionPool.release(transport);
+			} else {
+				// the connection may be in an undefined state
+				connectionPool.invalidate(transport);
 			}
 		}
 	}
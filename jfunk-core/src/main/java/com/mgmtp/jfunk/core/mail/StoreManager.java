@@ -26,12 +26,14 @@ import java.util.List;
 import java.util.Properties;
 
 import javax.inject.Inject;
+import javax.mail.FetchProfile;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,8 +46,21 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Table;
 import com.google.inject.assistedinject.Assisted;
 import com.mgmtp.jfunk.core.exception.MailException;
+import com.sun.mail.imap.IMAPFolder;
 
 /**
+ * <p>
+ * Fetches messages for a mail account from the configured folder.
+ * </p>
+ * <p>
+ * Only messages for the account's address are fetched. The recipient filter is passed to the
+ * server as search term. The envelopes and headers of the messages found are then fetched in a
+ * single request, and the messages are checked against the exact address before their bodies are
+ * downloaded. If the folder supports UIDs, the last
+ * seen UID is remembered per account and folder, so subsequent polls only examine new messages.
+ * Stores are borrowed from the {@link MailConnectionPool}.
+ * </p>
+ *
  * @author rnaegele
  * @since 3.1.0
  */
@@ -60,6 +75,8 @@ class StoreManager {
 	private final MailAccount mailAccount;
 	private final MailArchiver mailArchiver;
 	private final Table<String, String, FileMessageWrapper> mailMessageCache;
+	private final LastSeenUids lastSeenUids;
+	private final MailConnectionPool connectionPool;
 
 	static interface Factory {
 		StoreManager create(MailAccount mailAccount);
@@ -68,12 +85,15 @@ class StoreManager {
 	@Inject
 	StoreManager(@StoreSession final Properties sessionProperties, @MailFolder final String folderName,
 			final MailArchiver mailArchiver, @Assisted final MailAccount mailAccount,
-			final Table<String, String, FileMessageWrapper> mailMessageCache) {
+			final Table<String, String, FileMessageWrapper> mailMessageCache, final LastSeenUids lastSeenUids,
+			final MailConnectionPool connectionPool) {
 		this.sessionProperties = sessionProperties;
 		this.folderName = folderName;
 		this.mailArchiver = mailArchiver;
 		this.mailAccount = mailAccount;
 		this.mailMessageCache = mailMessageCache;
+		this.lastSeenUids = lastSeenUids;
+		this.connectionPool = connectionPool;
 	}
 
 	List<MailMessage> fetchMessages(final Predicate<MailMessage> condition, final boolean deleteAfterFetch) {
@@ -88,52 +108,122 @@ class StoreManager {
 	private List<MailMessage> fetchMessages(final Folder folder, final Predicate<MailMessage> condition,
 			final boolean deleteAfterFetch) {
 		try {
-			List<Message> messages = FluentIterable.from(asList(folder.getMessages()))
-					.filter(MessagePredicates.forRecipient(mailAccount.getAddress())).toList();
+			List<Message> messages = searchNewMessages(folder);
 			List<MailMessage> mailMessages = FluentIterable.from(messages).transform(MessageFunctions.toMailMessage()).toList();
 
-			for (MailMessage message : mailMessages) {
-				// archive all messages
-				File mailFile = mailArchiver.archiveMessage(message);
-
-				// add messages to cache
-				String messageId = getOnlyElement(message.getHeaders().get("Message-ID"));
-				FileMessageWrapper wrapper = new FileMessageWrapper(mailFile, message);
-				mailMessageCache.put(mailAccount.getAccountId(), messageId, wrapper);
-			}
+			cacheMessages(mailMessages);
 
 			if (deleteAfterFetch) {
 				doDeleteMessages(folder, messages);
 			}
 
-			List<MailMessage> result = newArrayList();
-			log.debug("Cached messages after fetch: {}", mailMessageCache.row(mailAccount.getAccountId()));
-
-			// Iterate over the cache, which include messages just fetched now and those already cached by previous fetches
-			for (Iterator<FileMessageWrapper> it = mailMessageCache.row(mailAccount.getAccountId()).values().iterator(); it
-					.hasNext();) {
-				FileMessageWrapper wrapper = it.next();
-				MailMessage message = wrapper.message;
-				if (condition.apply(message)) {
-					// messages matching the condition are removed from the cache
-					// and added to the result
-					it.remove();
-					result.add(message);
-
-					// rename archive file, so it can be seen if a mail has been processed
-					File mailFile = wrapper.file;
-					File readDir = new File(mailFile.getParentFile().getParentFile(), "read");
-					readDir.mkdir();
-					mailFile.renameTo(new File(readDir, mailFile.getName()));
-				}
+			return takeMessages(condition);
+		} catch (MessagingException e) {
+			throw new MailException("Error while retrieving mails from folder " + folder.getName(), e);
+		}
+	}
+
+	/**
+	 * Archives and caches the specified messages, which have been fetched from the mailbox.
+	 *
+	 * @param mailMessages
+	 *            the messages fetched
+	 */
+	void cacheMessages(final List<MailMessage> mailMessages) {
+		for (MailMessage message : mailMessages) {
+			// archive all messages
+			File mailFile = mailArchiver.archiveMessage(message);
+
+			// add messages to cache
+			String messageId = getOnlyElement(message.getHeaders().get("Message-ID"));
+			FileMessageWrapper wrapper = new FileMessageWrapper(mailFile, message);
+			mailMessageCache.put(mailAccount.getAccountId(), messageId, wrapper);
+		}
+	}
+
+	/**
+	 * Removes the cached messages meeting the specified condition from the cache and returns them.
+	 *
+	 * @param condition
+	 *            the condition a message must meet
+	 * @return an immutable list of the messages meeting the condition
+	 */
+	List<MailMessage> takeMessages(final Predicate<MailMessage> condition) {
+		List<MailMessage> result = newArrayList();
+		log.debug("Cached messages after fetch: {}", mailMessageCache.row(mailAccount.getAccountId()));
+
+		// Iterate over the cache, which include messages just fetched now and those already cached by previous fetches
+		for (Iterator<FileMessageWrapper> it = mailMessageCache.row(mailAccount.getAccountId()).values().iterator(); it
+				.hasNext();) {
+			FileMessageWrapper wrapper = it.next();
+			MailMessage message = wrapper.message;
+			if (condition.apply(message)) {
+				// messages matching the condition are removed from the cache
+				// and added to the result
+				it.remove();
+				result.add(message);
+
+				// rename archive file, so it can be seen if a mail has been processed
+				File mailFile = wrapper.file;
+				File readDir = new File(mailFile.getParentFile().getParentFile(), "read");
+				readDir.mkdir();
+				mailFile.renameTo(new File(readDir, mailFile.getName()));
 			}
+		}
 
-			log.debug("Cached messages after applying condition: {}", mailMessageCache.row(mailAccount.getAccountId()));
+		log.debug("Cached messages after applying condition: {}", mailMessageCache.row(mailAccount.getAccountId()));
 
-			return ImmutableList.copyOf(result);
-		} catch (MessagingException e) {
-			throw new MailException("Error while retrieving mails from folder " + folder.getName(), e);
+		return ImmutableList.copyOf(result);
+	}
+
+	/**
+	 * Searches the messages for the account's address that have not been seen by previous polls.
+	 * Only the envelopes and headers of the messages are fetched, their bodies are not loaded.
+	 */
+	List<Message> searchNewMessages(final Folder folder) throws MessagingException {
+		Message[] candidates;
+		if (folder instanceof UIDFolder) {
+			UIDFolder uidFolder = (UIDFolder) folder;
+			String fullName = folder.getFullName();
+			long uidValidity = uidFolder.getUIDValidity();
+			long lastSeenUid = lastSeenUids.get(mailAccount.getAccountId(), fullName, uidValidity);
+
+			candidates = lastSeenUid < 0L ? folder.getMessages() : uidFolder.getMessagesByUID(lastSeenUid + 1L, UIDFolder.LASTUID);
+			FetchProfile uidProfile = new FetchProfile();
+			uidProfile.add(UIDFolder.FetchProfileItem.UID);
+			folder.fetch(candidates, uidProfile);
+
+			// the range n:* always includes the last message, even if its UID is lower than n
+			List<Message> newMessages = newArrayList();
+			long maxUid = lastSeenUid;
+			for (Message message : candidates) {
+				long uid = uidFolder.getUID(message);
+				if (uid > lastSeenUid) {
+					newMessages.add(message);
+					maxUid = Math.max(maxUid, uid);
+				}
+			}
+			if (maxUid > lastSeenUid) {
+				lastSeenUids.put(mailAccount.getAccountId(), fullName, uidValidity, maxUid);
+			}
+			log.debug("{} new message(s) in folder {} since UID {}", newMessages.size(), fullName, lastSeenUid);
+			candidates = newMessages.toArray(new Message[newMessages.size()]);
+		} else {
+			candidates = folder.getMessages();
+		}
+
+		if (candidates.length == 0) {
+			return ImmutableList.of();
 		}
+
+		Message[] messages = folder.search(MessageUtils.recipientTerm(mailAccount.getAddress()), candidates);
+		// the recipient check reads headers beyond the envelope, e. g. Newsgroups, which would
+		// otherwise be loaded message by message; other providers ignore the IMAP item
+		FetchProfile headerProfile = new FetchProfile();
+		headerProfile.add(FetchProfile.Item.ENVELOPE);
+		headerProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
+		folder.fetch(messages, headerProfile);
+		return FluentIterable.from(asList(messages)).filter(MessagePredicates.forRecipient(mailAccount.getAddress())).toList();
 	}
 
 	void deleteAllMessages() {
@@ -151,7 +241,7 @@ class StoreManager {
 
 	private void deleteMessages(final Folder folder, final Predicate<Message> condition) {
 		try {
-			List<Message> messages = FluentIterable.from(asList(folder.getMessages())).filter(condition).toList();
+			List<Message> messages = FluentIterable.from(asList(folder.search(MessageUtils.recipientTerm(mailAccount.getAddress())))).filter(condition).toList();
 			doDeleteMessages(folder, messages);
 		} catch (MessagingException ex) {
 			throw new MailException(ex.getMessage(), ex);
@@ -178,51 +268,59 @@ class StoreManager {
 	}
 
 	private Folder openFolder() {
-		Folder folder = null;
+		Store store = openStore();
 		try {
-			folder = openStore().getDefaultFolder();
-		} catch (MessagingException e) {
-			throw new MailException("Could not open default folder", e);
-		}
-
-		String[] subFolderNames = getSubFolderNames(folderName);
-		for (String subFolderName : subFolderNames) {
+			Folder folder = null;
 			try {
-				log.debug("Opening folder " + subFolderName);
-				folder = folder.getFolder(subFolderName);
+				folder = store.getDefaultFolder();
 			} catch (MessagingException e) {
-				throw new MailException("Could not open folder " + subFolderName, e);
+				throw new MailException("Could not open default folder", e);
 			}
+
+			String[] subFolderNames = getSubFolderNames(folderName);
+			for (String subFolderName : subFolderNames) {
+				try {
+					log.debug("Opening folder " + subFolderName);
+					folder = folder.getFolder(subFolderName);
+				} catch (MessagingException e) {
+					throw new MailException("Could not open folder " + subFolderName, e);
+				}
+			}
+			try {
+				folder.open(Folder.READ_WRITE);
+			} catch (MessagingException ex) {
+				throw new MailException("Error while opening INBOX for read-write-access", ex);
+			}
+			return folder;
+		} catch (RuntimeException ex) {
+			connectionPool.invalidate(store);
+			throw ex;
 		}
-		try {
-			folder.open(Folder.READ_WRITE);
-		} catch (MessagingException ex) {
-			throw new MailException("Error while opening INBOX for read-write-access", ex);
-		}
-		return folder;
 	}
 
+	/**
+	 * Closes the specified folder, expunging deleted messages, and returns its store to the
+	 * connection pool. The folder may already have been closed by an expunge.
+	 */
 	private void closeFolder(final Folder folder) {
-		if (folder != null && folder.isOpen()) {
-			Store store = folder.getStore();
+		Store store = folder.getStore();
+		if (folder.isOpen()) {
 			try {
 				folder.close(true);
 			} catch (MessagingException ex) {
 				log.error("Could not close folder: " + folder.getName(), ex);
-			}
-			try {
-				store.close();
-			} catch (MessagingException ex) {
-				log.error("Could not close mail store", ex);
+				connectionPool.invalidate(store);
+				return;
 			}
 		}
+		connectionPool.release(store);
 	}
 
 	private Store openStore() {
 		try {
 			Session session = Session.getInstance(sessionProperties, mailAccount.getAuthenticator());
-			Store store = session.getStore();
-			store.connect();
+			Store store = connectionPool.borrowStore(session, MailConnectionPool.key(sessionProperties,
+					sessionProperties.getProperty(EmailConstants.MAIL_STORE_PROTOCOL), mailAccount.getAccountId()));
 			log.debug("Successfully connected to email store for account {}", mailAccount.getAccountId());
 			return store;
 		} catch (MessagingException ex) {
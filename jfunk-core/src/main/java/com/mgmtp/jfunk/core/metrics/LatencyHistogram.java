@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>
+ * Histogram of non-negative values with a relative precision of about 3 %, similar to an HDR
+ * histogram. Values below 32 are counted exactly. Larger values are counted in 32 linear
+ * sub-buckets per power of two.
+ * </p>
+ * <p>
+ * The counts for a power of two are allocated when the first value in its range is recorded.
+ * After that, recording a value does not allocate and does not lock.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+	private final AtomicReferenceArray<AtomicLongArray> buckets = new AtomicReferenceArray<>(MAGNITUDES);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *            the value; negative values are recorded as {@code 0}
+	 */
+	public void record(final long value) {
+		long v = Math.max(0L, value);
+		int magnitude = magnitude(v);
+		bucket(magnitude).incrementAndGet(subBucket(v, magnitude));
+
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		for (long current = min.get(); v < current && !min.compareAndSet(current, v); current = min.get()) {
+			// retry
+		}
+		for (long current = max.get(); v > current && !max.compareAndSet(current, v); current = max.get()) {
+			// retry
+		}
+	}
+
+	/**
+	 * Adds the values recorded by the specified histogram to this histogram.
+	 *
+	 * @param other
+	 *            the other histogram
+	 */
+	public void add(final LatencyHistogram other) {
+		for (int magnitude = 0; magnitude < MAGNITUDES; ++magnitude) {
+			AtomicLongArray otherCounts = other.buckets.get(magnitude);
+			if (otherCounts != null) {
+				AtomicLongArray counts = bucket(magnitude);
+				for (int i = 0; i < SUB_BUCKETS; ++i) {
+					counts.addAndGet(i, otherCounts.get(i));
+				}
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		for (long current = min.get(), v = other.min.get(); v < current && !min.compareAndSet(current, v); current = min.get()) {
+			// retry
+		}
+		for (long current = max.get(), v = other.max.get(); v > current && !max.compareAndSet(current, v); current = max.get()) {
+			// retry
+		}
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the smallest recorded value, or {@code 0} if no value has been recorded
+	 */
+	public long getMin() {
+		return count.get() == 0L ? 0L : min.get();
+	}
+
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of the recorded values
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0L ? 0d : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns the value below or at which the specified percentage of the recorded values lie.
+	 * The result is the highest value counted in the same sub-bucket, but at most the largest
+	 * recorded value.
+	 *
+	 * @param percentile
+	 *            the percentile, e. g. {@code 99.0}
+	 * @return the value at the percentile, or {@code 0} if no value has been recorded
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		long total = 0L;
+		for (int magnitude = 0; magnitude < MAGNITUDES; ++magnitude) {
+			AtomicLongArray counts = buckets.get(magnitude);
+			if (counts != null) {
+				for (int i = 0; i < SUB_BUCKETS; ++i) {
+					total += counts.get(i);
+				}
+			}
+		}
+		if (total == 0L) {
+			return 0L;
+		}
+
+		long rank = Math.max(1L, (long) Math.ceil(Math.min(100d, percentile) / 100d * total));
+		long seen = 0L;
+		for (int magnitude = 0; magnitude < MAGNITUDES; ++magnitude) {
+			AtomicLongArray counts = buckets.get(magnitude);
+			if (counts != null) {
+				for (int i = 0; i < SUB_BUCKETS; ++i) {
+					seen += counts.get(i);
+					if (seen >= rank) {
+						return Math.min(highestEquivalentValue(magnitude, i), getMax());
+					}
+				}
+			}
+		}
+		return getMax();
+	}
+
+	private AtomicLongArray bucket(final int magnitude) {
+		AtomicLongArray counts = buckets.get(magnitude);
+		if (counts == null) {
+			buckets.compareAndSet(magnitude, null, new AtomicLongArray(SUB_BUCKETS));
+			counts = buckets.get(magnitude);
+		}
+		return counts;
+	}
+
+	/**
+	 * Magnitude {@code 0} holds the values below 32, magnitude {@code m > 0} the values from
+	 * {@code 2^(m + 4)} to {@code 2^(m + 5) - 1}.
+	 */
+	private static int magnitude(final long value) {
+		return Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+	}
+
+	private static int subBucket(final long value, final int magnitude) {
+		return magnitude == 0 ? (int) value : (int) (value >>> magnitude - 1) - SUB_BUCKETS;
+	}
+
+	private static long highestEquivalentValue(final int magnitude, final int subBucket) {
+		return magnitude == 0 ? subBucket : ((long) (subBucket + SUB_BUCKETS + 1) << magnitude - 1) - 1L;
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.metrics;
+
+import static com.google.common.collect.Maps.newEnumMap;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newTreeMap;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.event.AfterModuleEvent;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.core.event.AfterScriptEvent;
+import com.mgmtp.jfunk.core.event.AfterStepEvent;
+import com.mgmtp.jfunk.core.event.BeforeModuleEvent;
+import com.mgmtp.jfunk.core.event.BeforeScriptEvent;
+import com.mgmtp.jfunk.core.event.BeforeStepEvent;
+
+/**
+ * <p>
+ * Event handler measuring the execution times of scripts, modules, and steps. Times are recorded
+ * in {@link LatencyHistogram}s per script, module name, and step class. After the run, a summary
+ * with counts, errors, throughput, and percentiles is logged for each script, module, and step
+ * class.
+ * </p>
+ * <p>
+ * If {@link JFunkConstants#METRICS_DUMP_INTERVAL_SECONDS} is set to a positive value, the summary
+ * is also logged periodically while the run is in progress.
+ * </p>
+ * <p>
+ * Each thread times its events using a stack of its own and records them in series of its own, so
+ * recording an event does not lock and, once a module or step has been seen during a script, does
+ * not allocate either. When the script of a thread has finished, its series are merged into the
+ * totals, so the number of series does not grow with the number of threads.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class MetricsEventHandler {
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<Configuration> configProvider;
+
+	// series of scripts in progress, each recorded by a single thread
+	private final Queue<Series> liveSeries = new ConcurrentLinkedQueue<>();
+	// guarded by this, the series of finished scripts
+	private final Map<Category, Map<String, Series>> mergedSeries = newEnumMap(Category.class);
+	private final ThreadLocal<ThreadMetrics> threadMetrics = new ThreadLocal<ThreadMetrics>() {
+		@Override
+		protected ThreadMetrics initialValue() {
+			return new ThreadMetrics();
+		}
+	};
+	private final AtomicLong runStartNanos = new AtomicLong();
+
+	// guarded by this
+	private ScheduledExecutorService dumper;
+
+	@Inject
+	MetricsEventHandler(final Provider<Configuration> configProvider) {
+		this.configProvider = configProvider;
+	}
+
+	static enum Category {
+		SCRIPT("Script"), MODULE("Module"), STEP("Step");
+
+		private final String label;
+
+		private Category(final String label) {
+			this.label = label;
+		}
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(@SuppressWarnings("unused") final BeforeScriptEvent event) {
+		startDumperIfConfigured();
+		start(Category.SCRIPT);
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(final AfterScriptEvent event) {
+		stop(Category.SCRIPT, new File(event.getScriptFileOrTestMethod()).getName(), event.isSuccess());
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(@SuppressWarnings("unused") final BeforeModuleEvent event) {
+		start(Category.MODULE);
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(final AfterModuleEvent event) {
+		stop(Category.MODULE, event.getModule().getName(), event.isSuccess());
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(@SuppressWarnings("unused") final BeforeStepEvent event) {
+		start(Category.STEP);
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleEvent(final AfterStepEvent event) {
+		stop(Category.STEP, event.getStep().getClass().getName(), event.isSuccess());
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		synchronized (this) {
+			if (dumper != null) {
+				dumper.shutdownNow();
+				dumper = null;
+			}
+		}
+		logSummary("Metrics summary");
+	}
+
+	void start(final Category category) {
+		long now = System.nanoTime();
+		if (runStartNanos.get() == 0L) {
+			runStartNanos.compareAndSet(0L, now);
+		}
+		threadMetrics.get().push(category, now);
+	}
+
+	void stop(final Category category, final String name, final boolean success) {
+		long now = System.nanoTime();
+		ThreadMetrics metrics = threadMetrics.get();
+		long start = metrics.pop(category);
+		if (start == 0L) {
+			// no matching start event on this thread
+			return;
+		}
+		Series series = metrics.getSeries(category, name);
+		series.histogram.record(TimeUnit.NANOSECONDS.toMicros(now - start));
+		if (!success) {
+			series.errors.incrementAndGet();
+		}
+		if (category == Category.SCRIPT && metrics.isIdle()) {
+			merge(metrics);
+			threadMetrics.remove();
+		}
+	}
+
+	private synchronized void merge(final ThreadMetrics metrics) {
+		for (Map<String, Series> categorySeries : metrics.series.values()) {
+			for (Series series : categorySeries.values()) {
+				Map<String, Series> merged = mergedSeries.get(series.category);
+				if (merged == null) {
+					merged = newHashMap();
+					mergedSeries.put(series.category, merged);
+				}
+				Series total = merged.get(series.name);
+				if (total == null) {
+					total = new Series(series.category, series.name);
+					merged.put(series.name, total);
+				}
+				total.add(series);
+				liveSeries.remove(series);
+			}
+		}
+	}
+
+	/**
+	 * Sums up the series of finished scripts and those of scripts in progress.
+	 *
+	 * @return the totals by category and name
+	 */
+	synchronized Map<Category, SortedMap<String, Series>> getTotals() {
+		Map<Category, SortedMap<String, Series>> totals = newEnumMap(Category.class);
+		for (Map<String, Series> merged : mergedSeries.values()) {
+			for (Series series : merged.values()) {
+				getTotal(totals, series).add(series);
+			}
+		}
+		for (Series series : liveSeries) {
+			getTotal(totals, series).add(series);
+		}
+		return totals;
+	}
+
+	private static Series getTotal(final Map<Category, SortedMap<String, Series>> totals, final Series series) {
+		SortedMap<String, Series> byName = totals.get(series.category);
+		if (byName == null) {
+			byName = newTreeMap();
+			totals.put(series.category, byName);
+		}
+		Series total = byName.get(series.name);
+		if (total == null) {
+			total = new Series(series.category, series.name);
+			byName.put(series.name, total);
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of series of scripts in progress
+	 */
+	int getLiveSeriesCount() {
+		return liveSeries.size();
+	}
+
+	private synchronized void startDumperIfConfigured() {
+		if (dumper != null) {
+			return;
+		}
+		long interval = configProvider.get().getLong(JFunkConstants.METRICS_DUMP_INTERVAL_SECONDS, 0L);
+		if (interval <= 0L) {
+			return;
+		}
+		dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread thread = new Thread(r, "MetricsEventHandler-dumper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		dumper.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				logSummary("Metrics so far");
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Logs the summary of all metrics recorded so far.
+	 *
+	 * @param title
+	 *            the title of the summary
+	 */
+	void logSummary(final String title) {
+		Map<Category, SortedMap<String, Series>> totals = getTotals();
+		if (totals.isEmpty()) {
+			return;
+		}
+		double elapsedSeconds = (System.nanoTime() - runStartNanos.get()) / 1e9d;
+
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append(title).append(" (after ").append(format(elapsedSeconds * 1000d)).append(" ms, times in ms):");
+		for (Map.Entry<Category, SortedMap<String, Series>> categoryEntry : totals.entrySet()) {
+			for (Series series : categoryEntry.getValue().values()) {
+				sb.append("\n").append(categoryEntry.getKey().label).append(' ').append(series.name).append(": ");
+				appendStats(sb, series.histogram, series.errors.get(), elapsedSeconds);
+			}
+		}
+		log.info(sb.toString());
+	}
+
+	private static void appendStats(final StringBuilder sb, final LatencyHistogram histogram, final long errors,
+			final double elapsedSeconds) {
+		long count = histogram.getCount();
+		sb.append("count=").append(count);
+		sb.append(", errors=").append(errors);
+		sb.append(", throughput=").append(format(elapsedSeconds > 0d ? count / elapsedSeconds : 0d)).append("/s");
+		sb.append(", min=").append(format(histogram.getMin() / 1000d));
+		sb.append(", mean=").append(format(histogram.getMean() / 1000d));
+		sb.append(", p50=").append(format(histogram.getValueAtPercentile(50d) / 1000d));
+		sb.append(", p90=").append(format(histogram.getValueAtPercentile(90d) / 1000d));
+		sb.append(", p99=").append(format(histogram.getValueAtPercentile(99d) / 1000d));
+		sb.append(", max=").append(format(histogram.getMax() / 1000d));
+	}
+
+	private static String format(final double value) {
+		return String.format(Locale.ENGLISH, "%.1f", value);
+	}
+
+	/**
+	 * The values recorded for a script, module, or step class.
+	 */
+	static final class Series {
+		final Category category;
+		final String name;
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final AtomicLong errors = new AtomicLong();
+
+		Series(final Category category, final String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		void add(final Series other) {
+			histogram.add(other.histogram);
+			errors.addAndGet(other.errors.get());
+		}
+	}
+
+	/**
+	 * Start times and series of a thread for the script in progress. Only accessed by the thread
+	 * itself until the series are merged.
+	 */
+	private final class ThreadMetrics {
+		private final Map<Category, Map<String, Series>> series = newEnumMap(Category.class);
+		private final long[][] starts = new long[Category.values().length][8];
+		private final int[] depths = new int[Category.values().length];
+
+		ThreadMetrics() {
+			for (Category category : Category.values()) {
+				series.put(category, newHashMap());
+			}
+		}
+
+		void push(final Category category, final long nanos) {
+			int i = category.ordinal();
+			if (depths[i] == starts[i].length) {
+				starts[i] = Arrays.copyOf(starts[i], depths[i] * 2);
+			}
+			starts[i][depths[i]++] = nanos;
+		}
+
+		long pop(final Category category) {
+			int i = category.ordinal();
+			return depths[i] == 0 ? 0L : starts[i][--depths[i]];
+		}
+
+		boolean isIdle() {
+			for (int depth : depths) {
+				if (depth > 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Series getSeries(final Category category, final String name) {
+			Map<String, Series> categorySeries = series.get(category);
+			Series result = categorySeries.get(name);
+			if (result == null) {
+				result = new Series(category, name);
+				categorySeries.put(name, result);
+				liveSeries.add(result);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.metrics;
+
+import com.mgmtp.jfunk.core.config.BaseJFunkGuiceModule;
+
+/**
+ * Enables the {@link MetricsEventHandler}, which measures the execution times of scripts, modules,
+ * and steps.
+ *
+ * @since 3.3.2
+ */
+public class MetricsModule extends BaseJFunkGuiceModule {
+
+	@Override
+	protected void doConfigure() {
+		bind(MetricsEventHandler.class);
+		bindEventHandler().to(MetricsEventHandler.class);
+	}
+}
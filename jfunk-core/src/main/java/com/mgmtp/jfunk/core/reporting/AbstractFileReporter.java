@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.exception.JFunkException;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.core.config.ArchiveDir;
 
@@ -43,6 +44,12 @@ import com.mgmtp.jfunk.core.config.ArchiveDir;
  * Base class for reporters that write a report file.
  * </p>
  * <p>
+ * If {@link JFunkConstants#REPORT_STREAMING} is enabled, report lines are not kept in memory
+ * but appended to a file in the archive directory as they are added. The file is synced to disk
+ * and renamed to the report file when the report is created. The maximum number of lines not yet
+ * written is configured using {@link JFunkConstants#REPORT_STREAMING_BUFFER_SIZE}.
+ * </p>
+ * <p>
  * Requires members injection.
  * </p>
  * 
@@ -50,6 +57,7 @@ import com.mgmtp.jfunk.core.config.ArchiveDir;
  */
 @ThreadSafe
 public abstract class AbstractFileReporter implements Reporter {
+	private static final int DEFAULT_STREAMING_BUFFER_SIZE = 1024;
 
 	protected Logger log = LoggerFactory.getLogger(getClass());
 
@@ -57,6 +65,9 @@ public abstract class AbstractFileReporter implements Reporter {
 	protected final String fileName;
 	protected final Deque<String> reportLines = newLinkedList();
 
+	// guarded by this
+	private StreamingReportWriter streamingWriter;
+
 	@Inject
 	@ArchiveDir
 	protected Provider<File> archiveDir;
@@ -94,12 +105,58 @@ public abstract class AbstractFileReporter implements Reporter {
 		return null;
 	}
 
+	/**
+	 * Adds a line to the report. Subclasses should build the line before calling this method in
+	 * order to keep the time spent holding the reporter's lock short.
+	 *
+	 * @param line
+	 *            the report line
+	 */
+	protected synchronized void addReportLine(final String line) {
+		if (streamingWriter == null) {
+			if (!reportLines.isEmpty() || !configProvider.get().getBoolean(JFunkConstants.REPORT_STREAMING, false)) {
+				reportLines.add(line);
+				return;
+			}
+			streamingWriter = createStreamingWriter();
+		}
+		streamingWriter.add(line);
+	}
+
+	private StreamingReportWriter createStreamingWriter() {
+		File dir = archiveDir.get();
+		dir.mkdirs();
+		try {
+			File partFile = File.createTempFile(getName() + "-", ".part", dir);
+			int bufferSize = configProvider.get().getInteger(JFunkConstants.REPORT_STREAMING_BUFFER_SIZE,
+					DEFAULT_STREAMING_BUFFER_SIZE);
+			return new StreamingReportWriter(partFile, getCharset(), Math.max(1, bufferSize), getHeaderLine());
+		} catch (IOException ex) {
+			throw new JFunkException("Could not create report file in " + dir, ex);
+		}
+	}
+
+	private Charset getCharset() {
+		return charset == null ? defaultCharset : charset;
+	}
+
 	/**
 	 * Writes the report to a file. The report is written to the archive direcory as specified by
 	 * the property {@link JFunkConstants#ARCHIVE_DIR}.
 	 */
 	@Override
 	public synchronized void createReport() throws IOException {
+		if (streamingWriter != null) {
+			File reportFile = new File(archiveDir.get(), createFileName());
+			log.debug("Finishing streamed report: {}", reportFile);
+			try {
+				streamingWriter.finish(reportFile);
+			} finally {
+				streamingWriter = null;
+			}
+			return;
+		}
+
 		if (reportLines.isEmpty()) {
 			log.debug("No data to report. Skipping report generation.");
 			return;
@@ -113,7 +170,7 @@ public abstract class AbstractFileReporter implements Reporter {
 		if (header != null) {
 			reportLines.addFirst(header);
 		}
-		FileUtils.writeLines(reportFile, charset == null ? defaultCharset.name() : charset.name(), reportLines);
+		FileUtils.writeLines(reportFile, getCharset().name(), reportLines);
 
 		reportLines.clear();
 	}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.reporting;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ComparisonChain;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.util.Configuration;
+
+/**
+ * <p>
+ * Global reporter that aggregates the results of all threads into a single report for the whole
+ * run, sorted by start time. The report is written to the archive directory as CSV file
+ * ({@value #CSV_FILE}) and in a compact columnar binary format ({@value #BINARY_FILE}, see
+ * {@link ColumnarReportFile}).
+ * </p>
+ * <p>
+ * Each thread collects its results in a buffer of its own, so threads do not contend for a lock
+ * when adding results. The buffers are merged when the report is created after the run. Use
+ * {@link AggregatedReportModule} to enable the reporter.
+ * </p>
+ * <p>
+ * The report is written to the archive directory of the run, i. e. the one configured in
+ * {@value com.mgmtp.jfunk.common.JFunkConstants#SCRIPT_PROPERTIES} or as system property, not to
+ * an archive directory an individual script may have configured.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+@Singleton
+@ThreadSafe
+public class AggregatingReporter implements Reporter {
+	public static final String CSV_FILE = "aggregated-report.csv";
+	public static final String BINARY_FILE = "aggregated-report.bin";
+
+	private static final FastDateFormat TIMESTAMP_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS");
+
+	private static final Comparator<ReportRow> BY_START = new Comparator<ReportRow>() {
+		@Override
+		public int compare(final ReportRow r1, final ReportRow r2) {
+			return ComparisonChain.start()
+					.compare(r1.getStartMillis(), r2.getStartMillis())
+					.compare(r1.getThreadName(), r2.getThreadName())
+					.compare(r1.getStopMillis(), r2.getStopMillis())
+					.result();
+		}
+	};
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<File> archiveDirProvider;
+	private final Charset charset;
+
+	private final Queue<List<ReportRow>> buffers = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<List<ReportRow>> buffer = new ThreadLocal<List<ReportRow>>() {
+		@Override
+		protected List<ReportRow> initialValue() {
+			List<ReportRow> result = newArrayList();
+			buffers.add(result);
+			return result;
+		}
+	};
+
+	@Inject
+	public AggregatingReporter(final Charset charset) {
+		this(new Provider<File>() {
+			@Override
+			public File get() {
+				return getRunArchiveDir(charset);
+			}
+		}, charset);
+	}
+
+	AggregatingReporter(final Provider<File> archiveDirProvider, final Charset charset) {
+		this.archiveDirProvider = archiveDirProvider;
+		this.charset = charset;
+	}
+
+	/**
+	 * Loads the configuration of the run, which is not affected by properties set by scripts, and
+	 * gets the archive directory from it.
+	 */
+	static File getRunArchiveDir(final Charset charset) {
+		Configuration config = new Configuration(charset);
+		config.load(JFunkConstants.SCRIPT_PROPERTIES, false);
+		File archiveDir = new File(config.get(JFunkConstants.ARCHIVE_DIR, JFunkConstants.ARCHIVE_DIR_DEFAULT))
+				.getAbsoluteFile();
+		archiveDir.mkdirs();
+		checkState(archiveDir.exists(), "Could not create archive directory: %s", archiveDir);
+		return archiveDir;
+	}
+
+	@Override
+	public String getName() {
+		return "Aggregated Report";
+	}
+
+	@Override
+	public void addResult(final ReportContext reportContext) {
+		ReportRow row = ReportRow.of(reportContext);
+		List<ReportRow> rows = buffer.get();
+		// only contended while the report is created
+		synchronized (rows) {
+			rows.add(row);
+		}
+	}
+
+	@Override
+	public synchronized void createReport() throws IOException {
+		List<ReportRow> rows = newArrayList();
+		for (List<ReportRow> threadRows : buffers) {
+			synchronized (threadRows) {
+				rows.addAll(threadRows);
+				threadRows.clear();
+			}
+		}
+		if (rows.isEmpty()) {
+			log.debug("No data to report. Skipping report generation.");
+			return;
+		}
+
+		Collections.sort(rows, BY_START);
+
+		File dir = archiveDirProvider.get();
+		File csvFile = new File(dir, CSV_FILE);
+		log.info("Writing aggregated report with {} results to {}", rows.size(), csvFile);
+		writeCsv(csvFile, rows);
+		ColumnarReportFile.write(new File(dir, BINARY_FILE), rows);
+	}
+
+	private void writeCsv(final File file, final List<ReportRow> rows) throws IOException {
+		try (Writer writer = Files.newWriter(file, charset)) {
+			StringBuilder sb = new StringBuilder(255);
+			List<String> values = newArrayListWithCapacity(8);
+			Collections.addAll(values, "start", "finish", "duration", "thread", "type", "test object", "result",
+					"error message");
+			writeLine(writer, sb, values);
+
+			for (ReportRow row : rows) {
+				values.clear();
+				values.add(TIMESTAMP_FORMAT.format(row.getStartMillis()));
+				values.add(TIMESTAMP_FORMAT.format(row.getStopMillis()));
+				values.add(DurationFormatUtils.formatDurationHMS(row.getStopMillis() - row.getStartMillis()));
+				values.add(row.getThreadName());
+				values.add(row.getTestObjectType());
+				values.add(row.getTestObjectName());
+				values.add(row.isSuccess() ? JFunkConstants.OK : JFunkConstants.ERROR);
+				values.add(row.getErrorMessage());
+				writeLine(writer, sb, values);
+			}
+		}
+	}
+
+	private static void writeLine(final Writer writer, final StringBuilder sb, final List<String> values)
+			throws IOException {
+		sb.setLength(0);
+		for (String value : values) {
+			SimpleReporter.appendCsvValue(sb, value);
+		}
+		sb.append(IOUtils.LINE_SEPARATOR);
+		writer.write(sb.toString());
+	}
+}
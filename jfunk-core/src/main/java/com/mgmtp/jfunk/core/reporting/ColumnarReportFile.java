@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.reporting;
+
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Reads and writes {@link ReportRow}s in a compact columnar binary format. Each column is written
+ * separately. Strings are stored once in a dictionary and referenced by index, start times are
+ * delta-encoded, and numbers are written as variable-length integers. The success column is a bit
+ * set, and error messages are only written for failed rows.
+ * </p>
+ * <p>
+ * Layout: magic, version, row count, dictionary size, dictionary entries (length and UTF-8 bytes), thread
+ * column, type column, name column, start column, duration column, success bit set, error column.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+public final class ColumnarReportFile {
+	private static final int MAGIC = 0x4A46524C; // "JFRL"
+	private static final int VERSION = 1;
+
+	private ColumnarReportFile() {
+		// don't allow instantiation
+	}
+
+	/**
+	 * Writes the specified rows to a file.
+	 *
+	 * @param file
+	 *            the file
+	 * @param rows
+	 *            the rows
+	 */
+	public static void write(final File file, final List<ReportRow> rows) throws IOException {
+		Map<String, Integer> indexes = newHashMap();
+		List<String> dictionary = newArrayListWithCapacity(64);
+		for (ReportRow row : rows) {
+			addToDictionary(row.getThreadName(), indexes, dictionary);
+			addToDictionary(row.getTestObjectType(), indexes, dictionary);
+			addToDictionary(row.getTestObjectName(), indexes, dictionary);
+			addToDictionary(row.getErrorMessage(), indexes, dictionary);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeVarLong(out, rows.size());
+			writeVarLong(out, dictionary.size());
+			for (String s : dictionary) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				writeVarLong(out, bytes.length);
+				out.write(bytes);
+			}
+
+			for (ReportRow row : rows) {
+				writeVarLong(out, indexOf(row.getThreadName(), indexes));
+			}
+			for (ReportRow row : rows) {
+				writeVarLong(out, indexOf(row.getTestObjectType(), indexes));
+			}
+			for (ReportRow row : rows) {
+				writeVarLong(out, indexOf(row.getTestObjectName(), indexes));
+			}
+			long previous = 0L;
+			for (ReportRow row : rows) {
+				writeVarLong(out, zigZag(row.getStartMillis() - previous));
+				previous = row.getStartMillis();
+			}
+			for (ReportRow row : rows) {
+				writeVarLong(out, zigZag(row.getStopMillis() - row.getStartMillis()));
+			}
+			byte[] bits = new byte[(rows.size() + 7) / 8];
+			for (int i = 0; i < rows.size(); ++i) {
+				if (rows.get(i).isSuccess()) {
+					bits[i >> 3] |= 1 << (i & 7);
+				}
+			}
+			out.write(bits);
+			for (ReportRow row : rows) {
+				if (!row.isSuccess()) {
+					writeVarLong(out, indexOf(row.getErrorMessage(), indexes));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads rows from a file written by {@link #write(File, List)}.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the rows
+	 */
+	public static List<ReportRow> read(final File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a columnar report file: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported columnar report version " + version + ": " + file);
+			}
+
+			int size = (int) readVarLong(in);
+			String[] dictionary = new String[(int) readVarLong(in) + 1];
+			// index 0 is null
+			for (int i = 1; i < dictionary.length; ++i) {
+				byte[] bytes = new byte[(int) readVarLong(in)];
+				in.readFully(bytes);
+				dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			String[] threads = readStrings(in, size, dictionary);
+			String[] types = readStrings(in, size, dictionary);
+			String[] names = readStrings(in, size, dictionary);
+			long[] starts = new long[size];
+			long previous = 0L;
+			for (int i = 0; i < size; ++i) {
+				previous += unZigZag(readVarLong(in));
+				starts[i] = previous;
+			}
+			long[] durations = new long[size];
+			for (int i = 0; i < size; ++i) {
+				durations[i] = unZigZag(readVarLong(in));
+			}
+			byte[] bits = new byte[(size + 7) / 8];
+			in.readFully(bits);
+
+			List<ReportRow> rows = newArrayListWithCapacity(size);
+			for (int i = 0; i < size; ++i) {
+				boolean success = (bits[i >> 3] & 1 << (i & 7)) != 0;
+				String errorMessage = success ? null : dictionary[(int) readVarLong(in)];
+				rows.add(new ReportRow(threads[i], types[i], names[i], starts[i], starts[i] + durations[i], success,
+						errorMessage));
+			}
+			return rows;
+		}
+	}
+
+	private static void addToDictionary(final String s, final Map<String, Integer> indexes, final List<String> dictionary) {
+		if (s != null && !indexes.containsKey(s)) {
+			dictionary.add(s);
+			indexes.put(s, dictionary.size());
+		}
+	}
+
+	private static int indexOf(final String s, final Map<String, Integer> indexes) {
+		return s == null ? 0 : indexes.get(s);
+	}
+
+	private static String[] readStrings(final DataInput in, final int size, final String[] dictionary) throws IOException {
+		String[] result = new String[size];
+		for (int i = 0; i < size; ++i) {
+			result[i] = dictionary[(int) readVarLong(in)];
+		}
+		return result;
+	}
+
+	private static long zigZag(final long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+	private static long unZigZag(final long value) {
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	private static void writeVarLong(final DataOutput out, final long value) throws IOException {
+		long v = value;
+		while ((v & ~0x7FL) != 0L) {
+			out.writeByte((int) (v & 0x7F | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	private static long readVarLong(final DataInput in) throws IOException {
+		long result = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+}
@@ -151,6 +151,13 @@ public class CsvReporter extends AbstractFileReporter {
 		return header;
 	}
 
+	private synchronized List<Column> getColumns() {
+		if (columns == null) {
+			initColumns();
+		}
+		return columns;
+	}
+
 	@Override
 	public void addResult(final ReportContext context) {
 		if (!(TestModule.class.isAssignableFrom(context.getTestObjectType()))) {
@@ -160,62 +167,57 @@ public class CsvReporter extends AbstractFileReporter {
 
 		log.debug("Adding result to reporter '{}'", getName());
 
-		synchronized (this) {
-			if (columns == null) {
-				initColumns();
+		// the line is built without holding the lock, so threads do not have to wait for each other
+		List<Column> cols = getColumns();
+		Map<String, DataSet> dataSets = currentDataSetsProvider.get();
+		StrBuilder sb = new StrBuilder(256);
+		for (Column column : cols) {
+			String dsKey = column.dataSetKey;
+			String value;
+
+			if (StringUtils.isNotBlank(dsKey)) {
+				// get value from data set
+				DataSet ds = dataSets.get(dsKey);
+				checkNotNull(ds, "No data set available for key: " + dsKey);
+				value = ds.getValue(column.key);
+			} else {
+				// get property
+				value = configProvider.get().get(column.key);
 			}
 
-			Map<String, DataSet> dataSets = currentDataSetsProvider.get();
-			StrBuilder sb = new StrBuilder(256);
-			for (Column column : columns) {
-				String dsKey = column.dataSetKey;
-				String value;
-
-				if (StringUtils.isNotBlank(dsKey)) {
-					// get value from data set
-					DataSet ds = dataSets.get(dsKey);
-					checkNotNull(ds, "No data set available for key: " + dsKey);
-					value = ds.getValue(column.key);
-				} else {
-					// get property
-					value = configProvider.get().get(column.key);
-				}
-
-				appendEscapedAndQuoted(sb, value);
-			}
+			appendEscapedAndQuoted(sb, value);
+		}
 
-			// additional result column
-			appendEscapedAndQuoted(sb, context.getTestObjectName());
-			appendEscapedAndQuoted(sb, context.isSuccess() ? JFunkConstants.OK : JFunkConstants.ERROR);
+		// additional result column
+		appendEscapedAndQuoted(sb, context.getTestObjectName());
+		appendEscapedAndQuoted(sb, context.isSuccess() ? JFunkConstants.OK : JFunkConstants.ERROR);
 
-			if (context.isSuccess()) {
-				appendEscapedAndQuoted(sb, "");
-			} else {
-				Throwable th = context.getThrowable();
-				String msg = th.getMessage();
-
-				Throwable root = th;
-				while (root.getCause() != null) {
-					root = root.getCause();
-				}
+		if (context.isSuccess()) {
+			appendEscapedAndQuoted(sb, "");
+		} else {
+			Throwable th = context.getThrowable();
+			String msg = th.getMessage();
 
-				String rootMsg = root.getMessage();
-				if (rootMsg != null && !rootMsg.equals(msg)) {
-					msg += " - Root Message: " + rootMsg;
-				}
+			Throwable root = th;
+			while (root.getCause() != null) {
+				root = root.getCause();
+			}
 
-				if (isBlank(msg)) {
-					msg = th.getClass().getName();
-				}
-				appendEscapedAndQuoted(sb, msg);
+			String rootMsg = root.getMessage();
+			if (rootMsg != null && !rootMsg.equals(msg)) {
+				msg += " - Root Message: " + rootMsg;
 			}
 
-			if (sb.isEmpty()) {
-				log.info("Ignoring empty row in report");
-			} else {
-				String line = sb.toString();
-				reportLines.add(line);
+			if (isBlank(msg)) {
+				msg = th.getClass().getName();
 			}
+			appendEscapedAndQuoted(sb, msg);
+		}
+
+		if (sb.isEmpty()) {
+			log.info("Ignoring empty row in report");
+		} else {
+			addReportLine(sb.toString());
 		}
 	}
 
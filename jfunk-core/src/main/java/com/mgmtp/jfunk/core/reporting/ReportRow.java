@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.reporting;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An immutable result collected by the {@link AggregatingReporter}.
+ *
+ * @since 3.3.2
+ */
+@Immutable
+public final class ReportRow {
+
+	private final String threadName;
+	private final String testObjectType;
+	private final String testObjectName;
+	private final long startMillis;
+	private final long stopMillis;
+	private final boolean success;
+	private final String errorMessage;
+
+	public ReportRow(final String threadName, final String testObjectType, final String testObjectName,
+			final long startMillis, final long stopMillis, final boolean success, final String errorMessage) {
+		this.threadName = threadName;
+		this.testObjectType = testObjectType;
+		this.testObjectName = testObjectName;
+		this.startMillis = startMillis;
+		this.stopMillis = stopMillis;
+		this.success = success;
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * Creates a row for the specified result reported by the current thread.
+	 *
+	 * @param context
+	 *            the report context
+	 * @return the row
+	 */
+	static ReportRow of(final ReportContext context) {
+		return new ReportRow(Thread.currentThread().getName(), context.getTestObjectType().getSimpleName(),
+				context.getTestObjectName(), context.getStartMillis(), context.getStopMillis(), context.isSuccess(),
+				errorMessage(context.getThrowable()));
+	}
+
+	private static String errorMessage(final Throwable th) {
+		if (th == null) {
+			return null;
+		}
+
+		String msg = th.getMessage();
+
+		Throwable root = th;
+		while (root.getCause() != null) {
+			root = root.getCause();
+		}
+
+		String rootMsg = root.getMessage();
+		if (rootMsg != null && !rootMsg.equals(msg)) {
+			msg += " - Root Message: " + rootMsg;
+		}
+
+		if (isBlank(msg)) {
+			msg = th.getClass().getName();
+		}
+		return msg;
+	}
+
+	/**
+	 * @return the name of the thread that reported the result
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * @return the simple class name of the test object
+	 */
+	public String getTestObjectType() {
+		return testObjectType;
+	}
+
+	/**
+	 * @return the testObjectName
+	 */
+	public String getTestObjectName() {
+		return testObjectName;
+	}
+
+	/**
+	 * @return the startMillis
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return the stopMillis
+	 */
+	public long getStopMillis() {
+		return stopMillis;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * @return the error message, or {@code null} if the test object was executed successfully
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+}
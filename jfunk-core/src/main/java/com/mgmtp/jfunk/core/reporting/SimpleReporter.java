@@ -159,9 +159,7 @@ public class SimpleReporter extends AbstractFileReporter {
 			appendEscapedAndQuoted(sb, null);
 		}
 
-		synchronized (this) {
-			reportLines.add(sb.toString());
-		}
+		addReportLine(sb.toString());
 	}
 
 	/**
@@ -179,6 +177,14 @@ public class SimpleReporter extends AbstractFileReporter {
 	 *            the input string to transform
 	 */
 	protected void appendEscapedAndQuoted(final StringBuilder sb, final String value) {
+		appendCsvValue(sb, value);
+	}
+
+	/**
+	 * Static variant of {@link #appendEscapedAndQuoted(StringBuilder, String)}, which is shared
+	 * with the {@link AggregatingReporter} so both reports use the same format.
+	 */
+	static void appendCsvValue(final StringBuilder sb, final String value) {
 		boolean foundLineBreak = false;
 
 		if (sb.length() > 0) {
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.reporting;
+
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.io.IOUtils;
+
+import com.mgmtp.jfunk.common.exception.JFunkException;
+
+/**
+ * Appends report lines to a file as they are added. Lines are passed to a single background
+ * thread through a bounded queue, so adding a line only blocks if the thread cannot keep up. The
+ * thread flushes the file whenever the queue is drained, so lines are not lost if the VM crashes.
+ *
+ * @since 3.3.2
+ */
+class StreamingReportWriter {
+	// compared by identity
+	private static final String END = new String("END");
+
+	private final File partFile;
+	private final BlockingQueue<String> queue;
+	private final Thread flusher;
+
+	private volatile IOException failure;
+
+	/**
+	 * @param partFile
+	 *            the file lines are appended to until the report is finished
+	 * @param charset
+	 *            the charset
+	 * @param bufferSize
+	 *            the maximum number of lines that have not yet been written
+	 * @param header
+	 *            the header line; if {@code null}, no header line is written
+	 */
+	StreamingReportWriter(final File partFile, final Charset charset, final int bufferSize, final String header)
+			throws IOException {
+		this.partFile = partFile;
+		this.queue = new ArrayBlockingQueue<>(bufferSize);
+
+		final FileOutputStream fos = new FileOutputStream(partFile);
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(fos, charset));
+		try {
+			if (header != null) {
+				writer.write(header);
+				writer.write(IOUtils.LINE_SEPARATOR);
+				writer.flush();
+			}
+		} catch (IOException ex) {
+			closeQuietly(writer);
+			throw ex;
+		}
+
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeLines(writer);
+					if (failure == null) {
+						fos.getFD().sync();
+					}
+				} catch (IOException ex) {
+					failure = ex;
+				} finally {
+					closeQuietly(writer);
+				}
+			}
+		}, "report-writer-" + partFile.getName());
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	private void writeLines(final Writer writer) {
+		List<String> lines = newArrayListWithCapacity(queue.remainingCapacity());
+		try {
+			for (;;) {
+				lines.add(queue.take());
+				queue.drainTo(lines);
+				boolean end = lines.get(lines.size() - 1) == END;
+				if (end) {
+					lines.remove(lines.size() - 1);
+				}
+				// after an error, lines are still taken, so producers do not block forever
+				if (failure == null) {
+					try {
+						for (String line : lines) {
+							writer.write(line);
+							writer.write(IOUtils.LINE_SEPARATOR);
+						}
+						writer.flush();
+					} catch (IOException ex) {
+						failure = ex;
+					}
+				}
+				if (end) {
+					return;
+				}
+				lines.clear();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Adds a line to the report, blocking if too many lines have not yet been written.
+	 *
+	 * @param line
+	 *            the line
+	 */
+	void add(final String line) {
+		try {
+			queue.put(line);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new JFunkException("Interrupted while adding report line", ex);
+		}
+	}
+
+	/**
+	 * Writes all pending lines, syncs the file to disk, and moves it to the specified report file.
+	 *
+	 * @param reportFile
+	 *            the report file
+	 */
+	void finish(final File reportFile) throws IOException {
+		add(END);
+		try {
+			flusher.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new JFunkException("Interrupted while finishing report " + reportFile, ex);
+		}
+		if (failure != null) {
+			throw new IOException("Error writing report lines to " + partFile, failure);
+		}
+		Files.move(partFile.toPath(), reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Receives the files archived for the current module. Depending on the configured archive type,
+ * entries are streamed directly into the module's zip archive or written to the module's archive
+ * directory, so they do not have to be written to the directory first and zipped up later. Paths
+ * are relative to the archive root and use {@code /} as separator. Implementations are
+ * thread-safe.
+ *
+ * @since 3.3.2
+ */
+public interface ArchiveSink {
+
+	/**
+	 * Writes the specified content to the archive.
+	 *
+	 * @param path
+	 *            the path of the entry relative to the archive root
+	 * @param content
+	 *            the content
+	 * @throws IOException
+	 *             if an IO error occurs
+	 */
+	void write(String path, byte[] content) throws IOException;
+
+	/**
+	 * Copies the specified file to the archive.
+	 *
+	 * @param path
+	 *            the path of the entry relative to the archive root
+	 * @param file
+	 *            the file to copy
+	 * @throws IOException
+	 *             if an IO error occurs
+	 */
+	void write(String path, File file) throws IOException;
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+
+/**
+ * Writes and packs module archives in the background if {@link JFunkConstants#ARCHIVE_ASYNC} is
+ * enabled. The number of threads is configured using {@link JFunkConstants#ARCHIVE_ASYNC_THREADS}.
+ * Only a few tasks per thread are queued. If the queue is full, because the disk cannot keep up,
+ * the module's thread archives itself. All pending tasks are finished after the run. Modules whose
+ * archives could not be written are recorded, so the run can report them.
+ *
+ */
+@Singleton
+public class ArchivingExecutor {
+	private static final int DEFAULT_THREADS = 2;
+	private static final int QUEUED_TASKS_PER_THREAD = 4;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<Configuration> configProvider;
+	private final AtomicInteger threadCount = new AtomicInteger();
+	private final List<String> failedModules = new CopyOnWriteArrayList<>();
+
+	// guarded by this
+	private ThreadPoolExecutor executor;
+
+	@Inject
+	ArchivingExecutor(final Provider<Configuration> configProvider) {
+		this.configProvider = configProvider;
+	}
+
+	/**
+	 * Executes the specified archiving task in the background. Errors are logged and the module is
+	 * recorded as failed.
+	 *
+	 * @param moduleName
+	 *            the name of the module archived
+	 * @param task
+	 *            the task
+	 */
+	void execute(final String moduleName, final Runnable task) {
+		getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} catch (RuntimeException ex) {
+					failedModules.add(moduleName);
+					log.error("Error archiving module " + moduleName, ex);
+				}
+			}
+		});
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int threads = Math.max(1, configProvider.get().getInteger(JFunkConstants.ARCHIVE_ASYNC_THREADS, DEFAULT_THREADS));
+			executor = new ThreadPoolExecutor(threads, threads, 10L, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(threads * QUEUED_TASKS_PER_THREAD), new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable r) {
+							// not a daemon, so archives are completed before the VM exits
+							return new Thread(r, "archiver-" + threadCount.incrementAndGet());
+						}
+					}, new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(final Runnable r, final ThreadPoolExecutor e) {
+							// back-pressure: the queue is full or the executor has just been shut down
+							r.run();
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/**
+	 * Blocks until all pending archiving tasks are finished.
+	 */
+	public synchronized void awaitTermination() {
+		if (executor == null) {
+			return;
+		}
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+				log.info("Waiting for {} pending archiving task(s)...", executor.getQueue().size() + executor.getActiveCount());
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			log.error("Interrupted while waiting for archiving tasks", ex);
+		}
+		executor = null;
+	}
+
+	/**
+	 * @return the names of the modules whose archives could not be written in the background
+	 */
+	public List<String> getFailedModules() {
+		return ImmutableList.copyOf(failedModules);
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		awaitTermination();
+		if (!failedModules.isEmpty()) {
+			log.error("Archiving failed for {} module(s): {}", failedModules.size(), failedModules);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Singleton;
+import javax.script.ScriptException;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+
+/**
+ * Thread-safe cache for compiled Groovy scripts. Scripts are compiled once per file and content
+ * and shared across all threads. A cached script is invalidated when the file's modification date
+ * or size changes and its content hash differs from that of the cached script. Compilation and
+ * execution times are tracked per script and logged after the run.
+ *
+ */
+@Singleton
+public class CompiledScriptCache {
+	private static final String CODE_BASE = "/groovy/shell";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final ConcurrentMap<File, Entry> cache = new ConcurrentHashMap<>();
+	private final GroovyClassLoader classLoader;
+
+	public CompiledScriptCache() {
+		ClassLoader parent = Thread.currentThread().getContextClassLoader();
+		this.classLoader = new GroovyClassLoader(parent != null ? parent : getClass().getClassLoader());
+	}
+
+	/**
+	 * @return the class loader compiled scripts are loaded with
+	 */
+	public GroovyClassLoader getClassLoader() {
+		return classLoader;
+	}
+
+	/**
+	 * Gets the compiled script class for the specified script file, compiling it if it has not yet
+	 * been compiled or has changed since.
+	 *
+	 * @param script
+	 *            the script file
+	 * @param charset
+	 *            the charset used to read the script
+	 * @return the compiled script class
+	 * @throws IOException
+	 *             if the script cannot be read
+	 * @throws ScriptException
+	 *             if the script cannot be compiled
+	 */
+	public Class<?> getScriptClass(final File script, final Charset charset) throws IOException, ScriptException {
+		File key = script.getAbsoluteFile();
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			Entry newEntry = new Entry(key);
+			entry = cache.putIfAbsent(key, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		return entry.getScriptClass(charset);
+	}
+
+	/**
+	 * Records the execution time of the specified script.
+	 *
+	 * @param script
+	 *            the script file
+	 * @param nanos
+	 *            the execution time in nanoseconds
+	 */
+	public void recordExecution(final File script, final long nanos) {
+		Entry entry = cache.get(script.getAbsoluteFile());
+		if (entry != null) {
+			entry.executions.incrementAndGet();
+			entry.executionNanos.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * @return an immutable snapshot of the statistics per script file
+	 */
+	public Map<File, String> getStatistics() {
+		ImmutableMap.Builder<File, String> builder = ImmutableMap.builder();
+		for (Entry entry : cache.values()) {
+			builder.put(entry.file, entry.toString());
+		}
+		return builder.build();
+	}
+
+	@Subscribe
+	public void handleEvent(final AfterRunEvent event) {
+		for (Map.Entry<File, String> entry : getStatistics().entrySet()) {
+			log.info("Script statistics for {}: {}", entry.getKey(), entry.getValue());
+		}
+	}
+
+	private final class Entry {
+		private final File file;
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private long lastModified;
+		private long length;
+		private HashCode hash;
+		private Class<?> scriptClass;
+
+		private final AtomicLong compilations = new AtomicLong();
+		private final AtomicLong compileNanos = new AtomicLong();
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong executions = new AtomicLong();
+		private final AtomicLong executionNanos = new AtomicLong();
+
+		Entry(final File file) {
+			this.file = file;
+		}
+
+		Class<?> getScriptClass(final Charset charset) throws IOException, ScriptException {
+			lock.lock();
+			try {
+				long currentLastModified = file.lastModified();
+				long currentLength = file.length();
+				if (scriptClass != null && currentLastModified == lastModified && currentLength == length) {
+					hits.incrementAndGet();
+					return scriptClass;
+				}
+
+				String source = Files.asCharSource(file, charset).read();
+				HashCode currentHash = Hashing.sha256().hashString(source, charset);
+				lastModified = currentLastModified;
+				length = currentLength;
+
+				if (scriptClass != null && currentHash.equals(hash)) {
+					hits.incrementAndGet();
+					return scriptClass;
+				}
+
+				long start = System.nanoTime();
+				try {
+					GroovyCodeSource codeSource = new GroovyCodeSource(source, file.getName(), CODE_BASE);
+					scriptClass = classLoader.parseClass(codeSource, false);
+					hash = currentHash;
+				} catch (CompilationFailedException ex) {
+					scriptClass = null;
+					throw new ScriptException(ex);
+				} finally {
+					long nanos = System.nanoTime() - start;
+					compilations.incrementAndGet();
+					compileNanos.addAndGet(nanos);
+					log.info("Compiled script {} (took {} ms)", file, TimeUnit.NANOSECONDS.toMillis(nanos));
+				}
+				return scriptClass;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("compilations=%d, compileTime=%dms, cacheHits=%d, executions=%d, executionTime=%dms",
+					compilations.get(), TimeUnit.NANOSECONDS.toMillis(compileNanos.get()), hits.get(), executions.get(),
+					TimeUnit.NANOSECONDS.toMillis(executionNanos.get()));
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static com.google.common.io.Files.createParentDirs;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.common.util.ExtendedProperties;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+
+/**
+ * <p>
+ * Content-addressed store for archived files that are often identical across modules, such as
+ * HTML pages and screenshots. Each file is stored only once under
+ * {@code content/<first two hash characters>/<SHA-256 hash>.<extension>} in the archive
+ * directory. Module archives reference stored files by their path relative to the archive
+ * directory, see {@link DeduplicatingArchiveSink}. A reference is only handed out once the file
+ * is in place. References of archives that are discarded are released with
+ * {@link #release(File, String)}.
+ * </p>
+ * <p>
+ * After the run, files written during the run that are no longer referenced are deleted, an index ({@code content/index.properties}) mapping each reference to the
+ * archives referencing it is written to each archive directory used, and statistics are logged.
+ * </p>
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class ContentStore {
+	static final String CONTENT_DIR = "content";
+	static final String INDEX_FILE = "index.properties";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	// stored files, by archive directory and reference
+	private final ConcurrentMap<File, ConcurrentMap<String, Entry>> indexes = new ConcurrentHashMap<>();
+
+	private final AtomicLong stored = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong bytesSaved = new AtomicLong();
+
+	/**
+	 * Stores the specified content, unless identical content has already been stored.
+	 *
+	 * @param archiveDir
+	 *            the archive directory
+	 * @param content
+	 *            the content
+	 * @param extension
+	 *            the file extension of the content
+	 * @param archiveName
+	 *            the name of the archive referencing the content
+	 * @return the reference to the stored file, i. e. its path relative to the archive directory
+	 */
+	public String store(final File archiveDir, final byte[] content, final String extension, final String archiveName)
+			throws IOException {
+		String reference = reference(Hashing.sha256().hashBytes(content), extension);
+		addReference(archiveDir, reference, archiveName, content, null, content.length);
+		return reference;
+	}
+
+	/**
+	 * Stores the content of the specified file, unless identical content has already been stored.
+	 *
+	 * @param archiveDir
+	 *            the archive directory
+	 * @param file
+	 *            the file
+	 * @param extension
+	 *            the file extension of the content
+	 * @param archiveName
+	 *            the name of the archive referencing the content
+	 * @return the reference to the stored file, i. e. its path relative to the archive directory
+	 */
+	public String store(final File archiveDir, final File file, final String extension, final String archiveName)
+			throws IOException {
+		String reference = reference(Files.asByteSource(file).hash(Hashing.sha256()), extension);
+		addReference(archiveDir, reference, archiveName, null, file, file.length());
+		return reference;
+	}
+
+	/**
+	 * Resolves a reference returned by one of the {@code store} methods.
+	 *
+	 * @param archiveDir
+	 *            the archive directory
+	 * @param reference
+	 *            the reference
+	 * @return the stored file
+	 */
+	public static File resolve(final File archiveDir, final String reference) {
+		return new File(archiveDir, reference);
+	}
+
+	/**
+	 * @param archiveDir
+	 *            the archive directory
+	 * @return an immutable snapshot of the archives referencing each stored file
+	 */
+	public Map<String, Set<String>> getIndex(final File archiveDir) {
+		ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
+		Map<String, Entry> index = indexes.get(archiveDir.getAbsoluteFile());
+		if (index != null) {
+			for (Map.Entry<String, Entry> entry : index.entrySet()) {
+				Set<String> archives = entry.getValue().archives;
+				if (!archives.isEmpty()) {
+					builder.put(entry.getKey(), ImmutableSet.copyOf(archives));
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Releases the references of an archive that is discarded, e. g. because only archives of
+	 * failed modules are kept. Stored files that are no longer referenced are deleted after the
+	 * run.
+	 *
+	 * @param archiveDir
+	 *            the archive directory
+	 * @param archiveName
+	 *            the name of the archive
+	 */
+	public void release(final File archiveDir, final String archiveName) {
+		Map<String, Entry> index = indexes.get(archiveDir.getAbsoluteFile());
+		if (index != null) {
+			for (Entry entry : index.values()) {
+				entry.archives.remove(archiveName);
+			}
+		}
+	}
+
+	/**
+	 * Adds a reference to the stored content, writing it first if it has not yet been stored.
+	 * Other threads storing identical content wait until the file is in place. If writing fails,
+	 * the next thread storing the content tries again.
+	 */
+	private void addReference(final File archiveDir, final String reference, final String archiveName,
+			final byte[] content, final File source, final long size) throws IOException {
+		File dir = archiveDir.getAbsoluteFile();
+		ConcurrentMap<String, Entry> index = indexes.get(dir);
+		if (index == null) {
+			ConcurrentMap<String, Entry> newIndex = new ConcurrentHashMap<>();
+			index = indexes.putIfAbsent(dir, newIndex);
+			if (index == null) {
+				index = newIndex;
+			}
+		}
+
+		while (true) {
+			Entry newEntry = new Entry();
+			Entry entry = index.putIfAbsent(reference, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+				try {
+					File target = new File(dir, reference);
+					// the file may exist from a previous run
+					boolean isNew = !target.exists();
+					if (isNew) {
+						writeAtomically(target, content, source);
+						stored.incrementAndGet();
+					} else {
+						duplicates.incrementAndGet();
+						bytesSaved.addAndGet(size);
+					}
+					entry.archives.add(archiveName);
+					entry.written.set(isNew);
+					return;
+				} catch (IOException | RuntimeException | Error ex) {
+					index.remove(reference, entry);
+					entry.written.setException(ex);
+					throw ex;
+				}
+			}
+
+			try {
+				entry.written.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + reference + " to be stored");
+			} catch (ExecutionException ex) {
+				// the entry has been removed, so try to write the content ourselves
+				continue;
+			}
+			entry.archives.add(archiveName);
+			duplicates.incrementAndGet();
+			bytesSaved.addAndGet(size);
+			return;
+		}
+	}
+
+	private static String reference(final HashCode hash, final String extension) {
+		String hex = hash.toString();
+		return CONTENT_DIR + '/' + hex.substring(0, 2) + '/' + hex + '.' + extension;
+	}
+
+	/**
+	 * Writes to a temporary file first, so readers never see partially written content.
+	 */
+	private static void writeAtomically(final File target, final byte[] content, final File source) throws IOException {
+		createParentDirs(target);
+		File tmpFile = new File(target.getPath() + '.' + Thread.currentThread().getId() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmpFile);
+			if (content != null) {
+				out.write(content);
+			} else {
+				Files.copy(source, out);
+			}
+		} finally {
+			closeQuietly(out);
+		}
+		if (!tmpFile.renameTo(target)) {
+			tmpFile.delete();
+			if (!target.exists()) {
+				throw new IOException("Could not rename " + tmpFile + " to " + target);
+			}
+		}
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		if (indexes.isEmpty()) {
+			return;
+		}
+		int deleted = 0;
+		for (Map.Entry<File, ConcurrentMap<String, Entry>> index : indexes.entrySet()) {
+			for (Map.Entry<String, Entry> entry : index.getValue().entrySet()) {
+				Entry value = entry.getValue();
+				// files that existed before the run may be referenced by archives of previous runs
+				if (value.archives.isEmpty() && value.written.isDone() && isWrittenInRun(value)) {
+					index.getValue().remove(entry.getKey());
+					if (new File(index.getKey(), entry.getKey()).delete()) {
+						++deleted;
+					}
+				}
+			}
+		}
+		log.info("Content store statistics: stored={}, duplicates={}, bytesSaved={}, deletedUnreferenced={}", stored.get(),
+				duplicates.get(), bytesSaved.get(), deleted);
+
+		for (File archiveDir : indexes.keySet()) {
+			ExtendedProperties props = new ExtendedProperties();
+			for (Map.Entry<String, Set<String>> entry : getIndex(archiveDir).entrySet()) {
+				props.put(entry.getKey(), Joiner.on(',').join(Sets.newTreeSet(entry.getValue())));
+			}
+
+			File indexFile = new File(archiveDir, CONTENT_DIR + '/' + INDEX_FILE);
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(indexFile);
+				props.store(out, "Archives referencing stored files", true, false);
+			} catch (IOException ex) {
+				throw new JFunkException("Could not write content index " + indexFile, ex);
+			} finally {
+				closeQuietly(out);
+			}
+		}
+	}
+
+	private static boolean isWrittenInRun(final Entry entry) {
+		try {
+			return Futures.getDone(entry.written);
+		} catch (ExecutionException ex) {
+			return false;
+		}
+	}
+
+	private static final class Entry {
+		// archives referencing the stored file
+		final Set<String> archives = Sets.newConcurrentHashSet();
+		// completed with whether the file was written in this run, once it is in place
+		final SettableFuture<Boolean> written = SettableFuture.create();
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.mgmtp.jfunk.common.util.ExtendedProperties;
+
+/**
+ * {@link ArchiveSink} putting files with one of the configured extensions into the
+ * {@link ContentStore}. Instead of the file, the module archive contains an entry in
+ * {@code content-manifest.properties}, which maps the file's path to the stored file's path
+ * relative to the archive directory. Other files are passed on to the module's archive sink.
+ *
+ * @since 3.3.2
+ */
+class DeduplicatingArchiveSink implements ArchiveSink {
+	static final String MANIFEST = "content-manifest.properties";
+
+	private final ArchiveSink delegate;
+	private final ContentStore contentStore;
+	private final File archiveDir;
+	private final String archiveName;
+	private final Set<String> extensions;
+
+	// guarded by this
+	private final Map<String, String> manifest = newLinkedHashMap();
+
+	DeduplicatingArchiveSink(final ArchiveSink delegate, final ContentStore contentStore, final File archiveDir,
+			final String archiveName, final Set<String> extensions) {
+		this.delegate = delegate;
+		this.contentStore = contentStore;
+		this.archiveDir = archiveDir;
+		this.archiveName = archiveName;
+		this.extensions = extensions;
+	}
+
+	@Override
+	public void write(final String path, final byte[] content) throws IOException {
+		String extension = extension(path);
+		if (extensions.contains(extension)) {
+			addToManifest(path, contentStore.store(archiveDir, content, extension, archiveName));
+		} else {
+			delegate.write(path, content);
+		}
+	}
+
+	@Override
+	public void write(final String path, final File file) throws IOException {
+		String extension = extension(path);
+		if (extensions.contains(extension)) {
+			addToManifest(path, contentStore.store(archiveDir, file, extension, archiveName));
+		} else {
+			delegate.write(path, file);
+		}
+	}
+
+	private synchronized void addToManifest(final String path, final String reference) {
+		manifest.put(FilenameUtils.separatorsToUnix(path), reference);
+	}
+
+	/**
+	 * Writes the manifest to the module's archive sink, if any files have been stored.
+	 */
+	synchronized void writeManifest() throws IOException {
+		if (manifest.isEmpty()) {
+			return;
+		}
+		ExtendedProperties props = new ExtendedProperties();
+		props.putAll(manifest);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		props.store(out, "UTF-8", "Archived files in the content store", true, false);
+		delegate.write(MANIFEST, out.toByteArray());
+	}
+
+	/**
+	 * Releases the references to stored files, if the module's archive is discarded.
+	 */
+	void release() {
+		contentStore.release(archiveDir, archiveName);
+	}
+
+	private static String extension(final String path) {
+		return FilenameUtils.getExtension(path).toLowerCase(Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static com.google.common.io.Files.createParentDirs;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.io.Files;
+
+/**
+ * {@link ArchiveSink} writing entries as files to a directory.
+ *
+ * @since 3.3.2
+ */
+public class DirectoryArchiveSink implements ArchiveSink {
+
+	private final File dir;
+
+	/**
+	 * @param dir
+	 *            the archive root directory
+	 */
+	public DirectoryArchiveSink(final File dir) {
+		this.dir = dir;
+	}
+
+	@Override
+	public void write(final String path, final byte[] content) throws IOException {
+		File file = new File(dir, path);
+		createParentDirs(file);
+		Files.write(content, file);
+	}
+
+	@Override
+	public void write(final String path, final File file) throws IOException {
+		File target = new File(dir, path);
+		createParentDirs(target);
+		Files.copy(file, target);
+	}
+}
@@ -17,14 +17,15 @@ package com.mgmtp.jfunk.core.scripting;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
 import static org.apache.commons.io.FileUtils.copyDirectory;
 import static org.apache.commons.io.FileUtils.copyFileToDirectory;
 import static org.apache.commons.io.FileUtils.deleteQuietly;
 import static org.apache.commons.io.IOUtils.closeQuietly;
-import static org.apache.commons.io.IOUtils.copy;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -32,9 +33,10 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.text.Format;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Set;
+import java.util.zip.Deflater;
 
 import javax.inject.Inject;
 
@@ -48,6 +50,7 @@ import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.FileAppender;
 
+import com.google.common.base.Splitter;
 import com.google.common.io.Files;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ModuleScoped;
@@ -70,6 +73,15 @@ import com.mgmtp.jfunk.data.source.DataSource;
  * </li>
  * <li>{@link JFunkConstants#ARCHIVING_MODE_NONE NONE} - no archiving happens at all</li>
  * </ul>
+ * Files written through the {@link #getArchiveSink() archive sink} are streamed directly into the
+ * module's zip archive. The compression level is configured using
+ * {@link JFunkConstants#ARCHIVE_ZIP_LEVEL}; files with one of the extensions configured using
+ * {@link JFunkConstants#ARCHIVE_ZIP_STORED_EXTENSIONS} are stored without compression.
+ * If {@link JFunkConstants#ARCHIVE_ASYNC} is enabled, the archive files are written and zipped up by
+ * the {@link ArchivingExecutor} in the background, so the next module does not have to wait for it.
+ * If {@link JFunkConstants#ARCHIVE_DEDUP} is enabled, files written through the archive sink with
+ * one of the extensions configured using {@link JFunkConstants#ARCHIVE_DEDUP_EXTENSIONS} are put
+ * into the run's {@link ContentStore} and only referenced from the module archive.
  * 
  * @author rnaegele
  */
@@ -77,6 +89,9 @@ import com.mgmtp.jfunk.data.source.DataSource;
 public class ModuleArchiver {
 	private static final Format FORMAT = FastDateFormat.getInstance("yyyyMMdd_HHmmss", Locale.GERMANY);
 	private static final String DIR_PATTERN = "%s_%s_[%s]";
+	private static final String DEFAULT_STORED_EXTENSIONS = "png,jpg,jpeg,gif,zip,gz";
+	private static final String DEFAULT_DEDUP_EXTENSIONS = "html,png";
+	private static final int MAX_STAGING_DIRS = 100;
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -89,9 +104,14 @@ public class ModuleArchiver {
 	private File moduleArchiveDir;
 
 	private FileAppender<ILoggingEvent> moduleAppender;
+	private ArchiveSink archiveSink;
+	private DeduplicatingArchiveSink deduplicatingSink;
 	private final MathRandom random;
 	private final ArchivingMode archivingMode;
 	private final ModuleMetaData moduleMetaData;
+	private final ScriptMetaData scriptMetaData;
+	private final ArchivingExecutor archivingExecutor;
+	private final ContentStore contentStore;
 
 	/**
 	 * Creates a new instance.
@@ -106,7 +126,8 @@ public class ModuleArchiver {
 	@Inject
 	ModuleArchiver(final Configuration configuration, final DataSource dataSource, @ArchiveDir final File archiveDir,
 			final Charset charset, final MathRandom random, final ArchivingMode archivingMode,
-			final ModuleMetaData moduleMetaData) {
+			final ModuleMetaData moduleMetaData, final ScriptMetaData scriptMetaData, final ArchivingExecutor archivingExecutor,
+			final ContentStore contentStore) {
 		this.configuration = configuration;
 		this.dataSource = dataSource;
 		this.archiveDir = archiveDir;
@@ -114,6 +135,9 @@ public class ModuleArchiver {
 		this.random = random;
 		this.archivingMode = archivingMode;
 		this.moduleMetaData = moduleMetaData;
+		this.scriptMetaData = scriptMetaData;
+		this.archivingExecutor = archivingExecutor;
+		this.contentStore = contentStore;
 	}
 
 	/**
@@ -126,7 +150,12 @@ public class ModuleArchiver {
 
 		String archiveName = configuration.get(JFunkConstants.ARCHIVE_FILE);
 		if (StringUtils.isBlank(archiveName)) {
-			archiveName = String.format(DIR_PATTERN, moduleMetaData.getModuleName(), Thread.currentThread().getName(),
+			String threadName = Thread.currentThread().getName();
+			// a reused worker thread may run the same module again within the same second
+			if (scriptMetaData.getThreadScriptNumber() > 1) {
+				threadName += "-" + scriptMetaData.getThreadScriptNumber();
+			}
+			archiveName = String.format(DIR_PATTERN, moduleMetaData.getModuleName(), threadName,
 					FORMAT.format(moduleMetaData.getStartDate()));
 		}
 
@@ -137,10 +166,42 @@ public class ModuleArchiver {
 			moduleArchiveDir.mkdirs();
 		}
 
+		archiveSink = createArchiveSink(archiveName);
+		if (configuration.getBoolean(JFunkConstants.ARCHIVE_DEDUP, false)) {
+			deduplicatingSink = new DeduplicatingArchiveSink(archiveSink, contentStore, archiveDir, archiveName,
+					extensions(configuration.get(JFunkConstants.ARCHIVE_DEDUP_EXTENSIONS, DEFAULT_DEDUP_EXTENSIONS)));
+		}
 		addModuleAppender();
 		log.info("Started archiving: (module={}, moduleArchiveDir={})", moduleMetaData.getModuleName(), moduleArchiveDir);
 	}
 
+	private ArchiveSink createArchiveSink(final String archiveName) {
+		if ("dir".equals(configuration.get(JFunkConstants.ARCHIVE_TYPE, "zip"))) {
+			return new DirectoryArchiveSink(moduleArchiveDir);
+		}
+
+		Set<String> storedExtensions = extensions(configuration.get(JFunkConstants.ARCHIVE_ZIP_STORED_EXTENSIONS,
+				DEFAULT_STORED_EXTENSIONS));
+		// the part file is unique, because a module with the same archive name may start while this
+		// one is still being archived asynchronously
+		File partFile;
+		try {
+			partFile = File.createTempFile(archiveName + "-", ".zip.part", archiveDir);
+		} catch (IOException ex) {
+			throw new JFunkException("Could not create zip part file in archive dir " + archiveDir, ex);
+		}
+		return new ZipArchiveSink(partFile,
+				configuration.getInteger(JFunkConstants.ARCHIVE_ZIP_LEVEL, Deflater.DEFAULT_COMPRESSION), storedExtensions);
+	}
+
+	private static Set<String> extensions(final String extensions) {
+		Set<String> result = newHashSet();
+		for (String extension : Splitter.on(',').trimResults().omitEmptyStrings().split(extensions)) {
+			result.add(extension.toLowerCase(Locale.ENGLISH));
+		}
+		return result;
+	}
+
 	private void addModuleAppender() {
 		final Thread thread = Thread.currentThread();
 
@@ -176,8 +237,13 @@ public class ModuleArchiver {
 		}
 
 		boolean success = !moduleMetaData.isError();
+		boolean async = configuration.getBoolean(JFunkConstants.ARCHIVE_ASYNC, false);
+		ArchiveTask task = new ArchiveTask(moduleArchiveDir, archiveSink, success, archivingMode == ArchivingMode.error && success);
 		try {
-			if (archivingMode == ArchivingMode.error && success) {
+			if (task.discard) {
+				if (deduplicatingSink != null) {
+					deduplicatingSink.release();
+				}
 				return;
 			}
 
@@ -187,9 +253,20 @@ public class ModuleArchiver {
 			configClone.put(JFunkConstants.TESTMODULE_CLASS, moduleMetaData.getModuleClass().getName());
 			configClone.put(JFunkConstants.RANDOM_SEED, String.valueOf(random.getSeed()));
 
-			saveDataSets(configClone);
-			saveConfiguration(configClone);
-			saveStackTrace(moduleMetaData.getThrowable());
+			// data sets change when the next module runs, so they are copied before writing them asynchronously
+			task.dataSets = copyDataSets(configClone);
+			task.config = configClone;
+			task.throwable = moduleMetaData.getThrowable();
+			if (!async) {
+				task.writeFiles();
+			}
+			if (deduplicatingSink != null) {
+				try {
+					deduplicatingSink.writeManifest();
+				} catch (IOException ex) {
+					throw new JFunkException("Could not write content manifest", ex);
+				}
+			}
 
 			log.info("Finished archiving: (module={}, moduleArchiveDir={})", moduleMetaData.getModuleName(), moduleArchiveDir);
 		} finally {
@@ -199,17 +276,14 @@ public class ModuleArchiver {
 				loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).detachAppender(moduleAppender);
 			}
 
-			if (archivingMode == ArchivingMode.error && success) {
-				deleteQuietly(moduleArchiveDir);
+			if (async && task.stage()) {
+				archivingExecutor.execute(moduleMetaData.getModuleName(), task);
+			} else if (async) {
+				// the next module may use the same archive directory, so it cannot be archived later
+				log.warn("Could not move archive directory {} out of the way, archiving synchronously", moduleArchiveDir);
+				task.run();
 			} else {
-				String archiveType = configuration.get(JFunkConstants.ARCHIVE_TYPE, "zip");
-				if ("dir".equals(archiveType)) {
-					File dest = new File(moduleArchiveDir.getParent(), moduleArchiveDir.getName() + (success ? "_ok" : "_error"));
-					moduleArchiveDir.renameTo(dest);
-				} else {
-					zipUpArchive(success);
-					deleteQuietly(moduleArchiveDir);
-				}
+				task.pack();
 			}
 		}
 	}
@@ -223,6 +297,21 @@ public class ModuleArchiver {
 		return moduleArchiveDir;
 	}
 
+	/**
+	 * Gets the sink for writing files to the module's archive. Files written to the sink are
+	 * streamed directly into the module's zip archive, if the archive is zipped up, or put into the
+	 * {@link ContentStore}, if deduplication is enabled.
+	 *
+	 * @return the archive sink
+	 */
+	public ArchiveSink getArchiveSink() {
+		if (deduplicatingSink != null) {
+			return deduplicatingSink;
+		}
+		// if archiving is disabled, files are written relative to the current directory as before
+		return archiveSink != null ? archiveSink : new DirectoryArchiveSink(moduleArchiveDir);
+	}
+
 	/**
 	 * Adds a file to the archive directory if it is not already present in the archive directory.
 	 * 
@@ -268,49 +357,138 @@ public class ModuleArchiver {
 		}
 	}
 
-	private void saveConfiguration(final Configuration config) {
-		/*
-		 * If the execution mode is set to "start" it will be set to "finish" so that the archived
-		 * run will be continued upon the next execution.
-		 */
-		if (JFunkConstants.EXECUTION_MODE_START.equals(config.get(JFunkConstants.EXECUTION_MODE))) {
-			config.put(JFunkConstants.EXECUTION_MODE, JFunkConstants.EXECUTION_MODE_FINISH);
+	public boolean isArchivingDisabled() {
+		return archivingMode == ArchivingMode.none;
+	}
+
+	/**
+	 * Copies the current data sets by file name, or returns {@code null} if data sets are not
+	 * archived.
+	 */
+	private Map<String, ExtendedProperties> copyDataSets(final Configuration config) {
+		if (!config.getBoolean(JFunkConstants.ARCHIVE_DATASETS, true)) {
+			return null;
 		}
 
-		File f = new File(moduleArchiveDir, JFunkConstants.SCRIPT_PROPERTIES);
-		Writer out = null;
-		try {
-			out = Files.newWriter(f, charset);
-			config.store(out, "Archived testing properties", true, false);
-		} catch (IOException e) {
-			throw new JFunkException("Could not write testing properties " + f.getName(), e);
-		} finally {
-			closeQuietly(out);
+		Map<String, ExtendedProperties> result = newLinkedHashMap();
+		for (Entry<String, DataSet> entry : dataSource.getCurrentDataSets().entrySet()) {
+			DataSet data = entry.getValue();
+			// May be null, if configured in script.properties but no data
+			// available for the key.
+			if (data != null) {
+				String fileName = entry.getKey() + JFunkConstants.FORM_PROPERTIES_ENDING;
+				config.put(JFunkConstants.FORM_DATA_PREFIX + entry.getKey() + JFunkConstants.PROPERTIES_ENDING,
+						"formdata/" + fileName);
+				result.put(fileName, new ExtendedProperties(newHashMap(data.getDataView())));
+			}
 		}
+		return result;
 	}
 
-	public boolean isArchivingDisabled() {
-		return archivingMode == ArchivingMode.none;
-	}
+	/**
+	 * Writes the archived files to a module's archive directory and packs it up.
+	 */
+	private final class ArchiveTask implements Runnable {
+		private final String name;
+		private final ArchiveSink sink;
+		private final boolean success;
+		private final boolean discard;
+		private File dir;
+
+		private Configuration config;
+		private Map<String, ExtendedProperties> dataSets;
+		private Throwable throwable;
+
+		ArchiveTask(final File dir, final ArchiveSink sink, final boolean success, final boolean discard) {
+			this.dir = dir;
+			this.name = dir.getName();
+			this.sink = sink;
+			this.success = success;
+			this.discard = discard;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (!discard) {
+					writeFiles();
+				}
+			} finally {
+				pack();
+			}
+		}
+
+		/**
+		 * Moves the archive directory out of the way, so the next module may use the same name
+		 * while this one is still being archived. Several modules with the same name may be
+		 * archived at the same time.
+		 *
+		 * @return {@code false} if the directory could not be moved, so it must be archived right away
+		 */
+		boolean stage() {
+			for (int i = 0; i < MAX_STAGING_DIRS; ++i) {
+				File staging = new File(dir.getParentFile(), name + ".archiving" + (i == 0 ? "" : "." + i));
+				if (!staging.exists() && dir.renameTo(staging)) {
+					dir = staging;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void writeFiles() {
+			saveDataSets();
+			saveConfiguration();
+			saveStackTrace();
+		}
+
+		void pack() {
+			if (discard) {
+				deleteQuietly(dir);
+				if (sink instanceof ZipArchiveSink) {
+					((ZipArchiveSink) sink).discard();
+				}
+			} else if (!(sink instanceof ZipArchiveSink)) {
+				File dest = new File(dir.getParent(), name + (success ? "_ok" : "_error"));
+				dir.renameTo(dest);
+			} else {
+				zipUpArchive();
+				deleteQuietly(dir);
+			}
+		}
+
+		private void saveConfiguration() {
+			/*
+			 * If the execution mode is set to "start" it will be set to "finish" so that the archived
+			 * run will be continued upon the next execution.
+			 */
+			if (JFunkConstants.EXECUTION_MODE_START.equals(config.get(JFunkConstants.EXECUTION_MODE))) {
+				config.put(JFunkConstants.EXECUTION_MODE, JFunkConstants.EXECUTION_MODE_FINISH);
+			}
+
+			File f = new File(dir, JFunkConstants.SCRIPT_PROPERTIES);
+			Writer out = null;
+			try {
+				out = Files.newWriter(f, charset);
+				config.store(out, "Archived testing properties", true, false);
+			} catch (IOException e) {
+				throw new JFunkException("Could not write testing properties " + f.getName(), e);
+			} finally {
+				closeQuietly(out);
+			}
+		}
 
-	private void saveDataSets(final Configuration config) {
-		if (config.getBoolean(JFunkConstants.ARCHIVE_DATASETS, true)) {
-			File dir = new File(moduleArchiveDir, "formdata");
-			checkState(dir.mkdir(), "Could not create directory " + dir.getPath() + " in archive dir " + this);
-
-			for (Entry<String, DataSet> entry : dataSource.getCurrentDataSets().entrySet()) {
-				DataSet data = entry.getValue();
-				// May be null, if configured in script.properties but no data
-				// available for the key.
-				if (data != null) {
-					File f = new File(dir, entry.getKey() + JFunkConstants.FORM_PROPERTIES_ENDING);
-					config.put(JFunkConstants.FORM_DATA_PREFIX + entry.getKey() + JFunkConstants.PROPERTIES_ENDING,
-							"formdata/" + f.getName());
+		private void saveDataSets() {
+			if (dataSets != null) {
+				File formDataDir = new File(dir, "formdata");
+				checkState(formDataDir.mkdir(), "Could not create directory " + formDataDir.getPath() + " in archive dir " + dir);
+
+				for (Entry<String, ExtendedProperties> entry : dataSets.entrySet()) {
+					File f = new File(formDataDir, entry.getKey());
 					FileOutputStream out = null;
 					try {
 						out = new FileOutputStream(f);
-						ExtendedProperties p = new ExtendedProperties(data.getDataView());
-						p.store(out, "Archived form data", true, false);
+						entry.getValue().store(out, "Archived form data", true, false);
 					} catch (IOException ex) {
 						throw new JFunkException("Could not write FormData properties " + f.getName(), ex);
 					} finally {
@@ -319,61 +497,33 @@ public class ModuleArchiver {
 				}
 			}
 		}
-	}
 
-	private void saveStackTrace(final Throwable throwable) {
-		if (throwable != null) {
-			PrintWriter pr = null;
-			try {
-				pr = new PrintWriter(new File(moduleArchiveDir, JFunkConstants.STACKTRACE_LOG), "UTF-8");
-				throwable.printStackTrace(pr);
-			} catch (IOException ex) {
-				throw new JFunkException("Error writing stacktrace log to archive.", ex);
-			} finally {
-				closeQuietly(pr);
+		private void saveStackTrace() {
+			if (throwable != null) {
+				PrintWriter pr = null;
+				try {
+					pr = new PrintWriter(new File(dir, JFunkConstants.STACKTRACE_LOG), "UTF-8");
+					throwable.printStackTrace(pr);
+				} catch (IOException ex) {
+					throw new JFunkException("Error writing stacktrace log to archive.", ex);
+				} finally {
+					closeQuietly(pr);
+				}
 			}
 		}
-	}
 
-	private void zipUpArchive(final boolean success) {
-		File[] files = moduleArchiveDir.listFiles();
-		if (files.length == 0) {
-			return;
-		}
+		private void zipUpArchive() {
+			ZipArchiveSink zipSink = (ZipArchiveSink) sink;
+			File zipFile = new File(dir.getParentFile(), name + (success ? "_ok.zip" : "_error.zip"));
+			log.info("Creating zip file: {}", zipFile);
 
-		File zipFile = new File(moduleArchiveDir.getParentFile(), moduleArchiveDir.getName()
-				+ (success ? "_ok.zip" : "_error.zip"));
-		log.info("Creating zip file: {}", zipFile);
-
-		ZipOutputStream zipOut = null;
-		try {
-			zipOut = new ZipOutputStream(new FileOutputStream(zipFile));
-			for (File file : files) {
-				zip("", file, zipOut);
-			}
-		} catch (IOException ex) {
-			throw new JFunkException("Error creating archive zip: " + zipFile, ex);
-		} finally {
-			closeQuietly(zipOut);
-		}
-	}
-
-	private void zip(final String prefix, final File file, final ZipOutputStream zipOut) throws IOException {
-		if (file.isDirectory()) {
-			String recursePrefix = prefix + file.getName() + '/';
-			for (File child : file.listFiles()) {
-				zip(recursePrefix, child, zipOut);
-			}
-		} else {
-			FileInputStream in = null;
 			try {
-				in = new FileInputStream(file);
-				zipOut.putNextEntry(new ZipEntry(prefix + file.getName()));
-				copy(in, zipOut);
-			} finally {
-				closeQuietly(in);
-				zipOut.flush();
-				zipOut.closeEntry();
+				// adds the files not written through the sink, e. g. the module log
+				zipSink.writeDirectory(dir);
+				zipSink.finish(zipFile);
+			} catch (IOException ex) {
+				zipSink.discard();
+				throw new JFunkException("Error creating archive zip: " + zipFile, ex);
 			}
 		}
 	}
@@ -16,27 +16,26 @@
 package com.mgmtp.jfunk.core.scripting;
 
 import static com.google.common.base.Preconditions.checkState;
-import static org.apache.commons.io.IOUtils.closeQuietly;
 import groovy.lang.MetaProperty;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import org.apache.log4j.Logger;
+import org.codehaus.groovy.jsr223.GroovyCompiledScript;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 
 import com.google.common.eventbus.EventBus;
-import com.google.common.io.Files;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ThreadScope;
 import com.mgmtp.jfunk.core.event.AfterScriptEvent;
@@ -45,7 +44,9 @@ import com.mgmtp.jfunk.core.reporting.SimpleReporter;
 import com.mgmtp.jfunk.core.scripting.groovy.Commands;
 
 /**
- * Executes Groovy scripts.
+ * Executes Groovy scripts. Compiled scripts are shared across threads using the
+ * {@link CompiledScriptCache}, so each execution only needs a fresh script engine with its own
+ * bindings.
  *
  */
 @Singleton
@@ -58,6 +59,15 @@ public class ScriptExecutor {
 	private final Charset charset;
 
 	private final Provider<ScriptMetaData> scriptMetaDataProvider;
+	private final CompiledScriptCache compiledScriptCache;
+
+	// counts the scripts run by each thread, worker threads of the pooled executor run several
+	private final ThreadLocal<Integer> threadScriptCount = new ThreadLocal<Integer>() {
+		@Override
+		protected Integer initialValue() {
+			return 0;
+		}
+	};
 
 	/**
 	 * Creates a new instance.
@@ -68,15 +78,19 @@ public class ScriptExecutor {
 	 *            the event bus
 	 * @param scriptScope
 	 *            the script scope instance
+	 * @param compiledScriptCache
+	 *            the cache for compiled scripts
 	 */
 	@Inject
 	public ScriptExecutor(final Provider<ScriptContext> scriptContextProvider, final EventBus eventBus,
-			final ThreadScope scriptScope, final Charset charset, final Provider<ScriptMetaData> scriptMetaDataProvider) {
+			final ThreadScope scriptScope, final Charset charset, final Provider<ScriptMetaData> scriptMetaDataProvider,
+			final CompiledScriptCache compiledScriptCache) {
 		this.scriptContextProvider = scriptContextProvider;
 		this.eventBus = eventBus;
 		this.scriptScope = scriptScope;
 		this.charset = charset;
 		this.scriptMetaDataProvider = scriptMetaDataProvider;
+		this.compiledScriptCache = compiledScriptCache;
 	}
 
 	/**
@@ -93,16 +107,18 @@ public class ScriptExecutor {
 		checkState(script.exists(), "Script file does not exist: %s", script);
 		checkState(script.canRead(), "Script file is not readable: %s", script);
 
-		Reader reader = null;
 		boolean success = false;
 		Throwable throwable = null;
 
 		scriptScope.enterScope();
 		ScriptContext ctx = scriptContextProvider.get();
+		long executionStart = 0L;
 		try {
-			reader = Files.newReader(script, charset);
+			long compileStart = System.nanoTime();
+			Class<?> scriptClass = compiledScriptCache.getScriptClass(script, charset);
+			long compileMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - compileStart);
 
-			ScriptEngine scriptEngine = new ScriptEngineManager().getEngineByExtension("groovy");
+			GroovyScriptEngineImpl scriptEngine = new GroovyScriptEngineImpl(compiledScriptCache.getClassLoader());
 			ctx.setScript(script);
 			ctx.load(JFunkConstants.SCRIPT_PROPERTIES, false);
 			ctx.registerReporter(new SimpleReporter());
@@ -110,6 +126,9 @@ public class ScriptExecutor {
 			initScriptProperties(scriptEngine, scriptProperties);
 			ScriptMetaData scriptMetaData = scriptMetaDataProvider.get();
 			scriptMetaData.setScriptName(script.getPath());
+			int threadScriptNumber = threadScriptCount.get() + 1;
+			threadScriptCount.set(threadScriptNumber);
+			scriptMetaData.setThreadScriptNumber(threadScriptNumber);
 
 			Date startDate = new Date();
 			scriptMetaData.setStartDate(startDate);
@@ -117,8 +136,13 @@ public class ScriptExecutor {
 
 			eventBus.post(scriptEngine);
 			eventBus.post(new BeforeScriptEvent(script.getAbsolutePath()));
-			scriptEngine.eval(reader);
+
+			executionStart = System.nanoTime();
+			new GroovyCompiledScript(scriptEngine, scriptClass).eval(scriptEngine.getContext());
 			success = true;
+
+			log.info("Script " + script + " executed (compilation/lookup took " + compileMillis + " ms, execution took "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - executionStart) + " ms)");
 		} catch (IOException ex) {
 			throwable = ex;
 			log.error("Error loading script: " + script, ex);
@@ -140,6 +164,9 @@ public class ScriptExecutor {
 				th = th.getCause();
 			}
 		} finally {
+			if (executionStart > 0L) {
+				compiledScriptCache.recordExecution(script, System.nanoTime() - executionStart);
+			}
 			try {
 				ScriptMetaData scriptMetaData = scriptMetaDataProvider.get();
 
@@ -151,7 +178,6 @@ public class ScriptExecutor {
 				eventBus.post(new AfterScriptEvent(script.getAbsolutePath(), success));
 			} finally {
 				scriptScope.exitScope();
-				closeQuietly(reader);
 			}
 		}
 
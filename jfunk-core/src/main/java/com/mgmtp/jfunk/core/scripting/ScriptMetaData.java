@@ -34,6 +34,7 @@ import com.mgmtp.jfunk.common.config.ScriptScoped;
 public class ScriptMetaData extends ExecutionMetaData {
 
 	private String scriptName;
+	private int threadScriptNumber;
 	private final List<ModuleMetaData> moduleMetaDataList = new LinkedList<>();
 
 	/**
@@ -51,6 +52,26 @@ public class ScriptMetaData extends ExecutionMetaData {
 		this.scriptName = scriptName;
 	}
 
+	/**
+	 * Returns the number of scripts the executing thread has run so far, including this one. It is
+	 * greater than one only for reused threads, i.e. the worker threads of the pooled executor mode.
+	 * 
+	 * @return the number of this script on its thread
+	 * @since 3.3.2
+	 */
+	public int getThreadScriptNumber() {
+		return threadScriptNumber;
+	}
+
+	/**
+	 * @param threadScriptNumber
+	 *            the number of this script on its thread
+	 * @since 3.3.2
+	 */
+	public void setThreadScriptNumber(final int threadScriptNumber) {
+		this.threadScriptNumber = threadScriptNumber;
+	}
+
 	/**
 	 * Adds a module meta data object.
 	 * 
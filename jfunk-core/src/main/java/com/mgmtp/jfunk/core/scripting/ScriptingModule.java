@@ -27,9 +27,15 @@ public class ScriptingModule extends BaseJFunkGuiceModule {
 		bind(StepExecutor.class);
 		bind(ScriptContext.class);
 		bind(ModuleArchiver.class);
+		bind(ArchivingExecutor.class);
+		bind(ContentStore.class);
 		bind(ScriptExecutor.class);
+		bind(CompiledScriptCache.class);
 		bind(ModuleBuilder.class);
 
 		bindEventHandler().to(InternalEventHandler.class);
+		bindEventHandler().to(CompiledScriptCache.class);
+		bindEventHandler().to(ArchivingExecutor.class);
+		bindEventHandler().to(ContentStore.class);
 	}
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * {@link ArchiveSink} streaming entries into a zip file. The zip file is opened for writing when
+ * the first entry is written. It may already exist, e. g. as empty file created to reserve a unique
+ * name, and is deleted when the sink is finished without any entries. Files with one of the
+ * configured extensions, which usually are already compressed, are stored without compression.
+ * Each path may only be written once, later entries with the same path are ignored.
+ *
+ * @since 3.3.2
+ */
+class ZipArchiveSink implements ArchiveSink {
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final File zipFile;
+	private final int level;
+	private final Set<String> storedExtensions;
+
+	// guarded by this
+	private final Set<String> entries = newHashSet();
+	private ZipOutputStream zipOut;
+
+	/**
+	 * @param zipFile
+	 *            the zip file to write
+	 * @param level
+	 *            the compression level (0-9, or -1 for the default level)
+	 * @param storedExtensions
+	 *            the lower-case extensions of files stored without compression
+	 */
+	ZipArchiveSink(final File zipFile, final int level, final Set<String> storedExtensions) {
+		this.zipFile = zipFile;
+		this.level = level;
+		this.storedExtensions = storedExtensions;
+	}
+
+	@Override
+	public synchronized void write(final String path, final byte[] content) throws IOException {
+		ZipEntry entry = newEntry(path);
+		if (entry == null) {
+			return;
+		}
+		if (entry.getMethod() == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			setStored(entry, content.length, crc.getValue());
+		}
+		zipOut().putNextEntry(entry);
+		zipOut.write(content);
+		zipOut.closeEntry();
+	}
+
+	@Override
+	public synchronized void write(final String path, final File file) throws IOException {
+		ZipEntry entry = newEntry(path);
+		if (entry == null) {
+			return;
+		}
+		if (entry.getMethod() == ZipEntry.STORED) {
+			setStored(entry, file.length(), Files.asByteSource(file).hash(Hashing.crc32()).padToLong());
+		}
+		zipOut().putNextEntry(entry);
+		Files.copy(file, zipOut);
+		zipOut.closeEntry();
+	}
+
+	/**
+	 * Adds the contents of the specified directory, except for paths that have already been
+	 * written.
+	 *
+	 * @param dir
+	 *            the directory
+	 */
+	synchronized void writeDirectory(final File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				writeRecursively("", file);
+			}
+		}
+	}
+
+	private void writeRecursively(final String prefix, final File file) throws IOException {
+		if (file.isDirectory()) {
+			String recursePrefix = prefix + file.getName() + '/';
+			for (File child : file.listFiles()) {
+				writeRecursively(recursePrefix, child);
+			}
+		} else {
+			write(prefix + file.getName(), file);
+		}
+	}
+
+	/**
+	 * Closes the zip file and moves it to the specified file.
+	 *
+	 * @param target
+	 *            the final zip file, which is replaced if it exists
+	 * @return {@code true} if the zip file has been created, i. e. at least one entry has been
+	 *         written
+	 */
+	synchronized boolean finish(final File target) throws IOException {
+		if (zipOut == null) {
+			// the zip file may have been created empty up front
+			zipFile.delete();
+			return false;
+		}
+		try {
+			zipOut.close();
+		} finally {
+			zipOut = null;
+		}
+		target.delete();
+		Files.move(zipFile, target);
+		return true;
+	}
+
+	/**
+	 * Closes and deletes the zip file.
+	 */
+	synchronized void discard() {
+		closeQuietly(zipOut);
+		zipOut = null;
+		zipFile.delete();
+	}
+
+	private ZipEntry newEntry(final String path) {
+		String name = FilenameUtils.separatorsToUnix(path);
+		while (name.startsWith("./") || name.startsWith("/")) {
+			name = name.substring(name.indexOf('/') + 1);
+		}
+		if (!entries.add(name)) {
+			log.warn("Entry already in archive, ignoring it: {}", name);
+			return null;
+		}
+		ZipEntry entry = new ZipEntry(name);
+		if (storedExtensions.contains(FilenameUtils.getExtension(name).toLowerCase(Locale.ENGLISH))) {
+			entry.setMethod(ZipEntry.STORED);
+		}
+		return entry;
+	}
+
+	private static void setStored(final ZipEntry entry, final long size, final long crc) {
+		entry.setSize(size);
+		entry.setCompressedSize(size);
+		entry.setCrc(crc);
+	}
+
+	private ZipOutputStream zipOut() throws IOException {
+		if (zipOut == null) {
+			zipOut = new ZipOutputStream(new FileOutputStream(zipFile));
+			zipOut.setLevel(level);
+		}
+		return zipOut;
+	}
+}
@@ -23,6 +23,7 @@ import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Set;
@@ -40,9 +41,9 @@ import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.mgmtp.jfunk.common.exception.JFunkException;
-import com.mgmtp.jfunk.core.config.ModuleArchiveDir;
 import com.mgmtp.jfunk.core.event.AbstractBaseEvent;
 import com.mgmtp.jfunk.core.event.AfterModuleEvent;
+import com.mgmtp.jfunk.core.scripting.ArchiveSink;
 
 /**
  * <p>
@@ -85,16 +86,16 @@ public class ScreenCapturer {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ScreenCapturer.class);
 	private static final String SCREENSHOT_PATH_FORMAT = "screenshots/%04d_%s.png";
 
-	private final Provider<File> moduleArchiveDirProvider;
+	private final Provider<ArchiveSink> archiveSinkProvider;
 	private final Set<Class<? extends AbstractBaseEvent>> screenCaptureEvents;
 	private final Provider<MutableInt> counterProvider;
 	private final boolean captureScreenOnError;
 
 	@Inject
-	public ScreenCapturer(@ModuleArchiveDir final Provider<File> moduleArchiveDirProvider,
+	public ScreenCapturer(final Provider<ArchiveSink> archiveSinkProvider,
 			final Set<Class<? extends AbstractBaseEvent>> screenCaptureEvents, final Provider<MutableInt> counterProvider,
 			@CaptureScreenOnError final boolean captureScreenOnError) {
-		this.moduleArchiveDirProvider = moduleArchiveDirProvider;
+		this.archiveSinkProvider = archiveSinkProvider;
 		this.screenCaptureEvents = screenCaptureEvents;
 		this.counterProvider = counterProvider;
 		this.captureScreenOnError = captureScreenOnError;
@@ -129,15 +130,20 @@ public class ScreenCapturer {
 
 		try {
 			createParentDirs(file);
-			BufferedImage capture = new Robot().createScreenCapture(rectangle);
-			ImageIO.write(capture, "png", file);
-		} catch (AWTException ex) {
-			throw new JFunkException("Error capturing screen", ex);
+			ImageIO.write(createScreenCapture(rectangle), "png", file);
 		} catch (IOException ex) {
 			throw new JFunkException("Error saving screenshot", ex);
 		}
 	}
 
+	private static BufferedImage createScreenCapture(final Rectangle rectangle) {
+		try {
+			return new Robot().createScreenCapture(rectangle);
+		} catch (AWTException ex) {
+			throw new JFunkException("Error capturing screen", ex);
+		}
+	}
+
 	/**
 	 * Event handler method used by the {@link EventBus}. If configured for the given event's class,
 	 * a screenshot is taken and stored in folder {@code screenshots} in the current module's
@@ -173,8 +179,9 @@ public class ScreenCapturer {
 
 	/**
 	 * Takes a screenshot and stores it in folder {@code screenshots} in the current module's
-	 * archive directory. The screenshot image is named by the specified screenshot name, prefixed
-	 * with a left-padded four-digit integer counter (format: {@code %04d_%s.png}).
+	 * archive using the {@link ArchiveSink}. The screenshot image is named by the specified
+	 * screenshot name, prefixed with a left-padded four-digit integer counter (format:
+	 * {@code %04d_%s.png}).
 	 * 
 	 * @param screenshotName
 	 *            the name of the screenshot
@@ -182,7 +189,16 @@ public class ScreenCapturer {
 	public void captureAndArchiveScreen(final String screenshotName) {
 		MutableInt counter = counterProvider.get();
 		String relativePath = String.format(SCREENSHOT_PATH_FORMAT, counter.intValue(), screenshotName);
-		captureScreen(new File(moduleArchiveDirProvider.get(), relativePath));
+		LOGGER.trace("Creating screenshot: {}", relativePath);
+
+		try {
+			Rectangle screen = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(createScreenCapture(screen), "png", out);
+			archiveSinkProvider.get().write(relativePath, out.toByteArray());
+		} catch (IOException ex) {
+			throw new JFunkException("Error saving screenshot", ex);
+		}
 		counter.increment();
 	}
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.mgmtp.jfunk.common.util.VirtualThreads;
+
+/**
+ * @since 3.3.2
+ */
+public class JFunkTest {
+
+	@DataProvider(name = "executorModes")
+	public Object[][] createExecutorModes() {
+		ExecutorMode[] modes = ExecutorMode.values();
+		Object[][] result = new Object[modes.length][];
+		for (int i = 0; i < modes.length; ++i) {
+			result[i] = new Object[] { modes[i] };
+		}
+		return result;
+	}
+
+	@Test(dataProvider = "executorModes")
+	public void testThreadCountLimitsConcurrentScripts(final ExecutorMode executorMode) throws InterruptedException {
+		if (executorMode == ExecutorMode.virtual && !VirtualThreads.isSupported()) {
+			throw new SkipException("Virtual threads require Java 21 or higher");
+		}
+
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		ExecutorService executor = JFunk.createExecutorService(executorMode, 3);
+		for (int i = 0; i < 12; ++i) {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					int current = running.incrementAndGet();
+					int max;
+					while (current > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, current)) {
+						// retry
+					}
+					try {
+						Thread.sleep(20L);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					} finally {
+						running.decrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30L, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(maxRunning.get()).isEqualTo(3);
+	}
+}
@@ -25,7 +25,15 @@ import static org.mockito.Mockito.verify;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -42,6 +50,7 @@ import com.google.common.eventbus.EventBus;
 import com.google.inject.util.Providers;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.exception.MailException;
 
 /**
  * Unit test for the DefaultMailHandler.
@@ -265,4 +274,110 @@ public class MailAccountManagerTest {
 		MailAccount expected = Iterables.getOnlyElement(manager.getReservedMailAccountsForCurrentThread());
 		assertThat(actual).isSameAs(expected);
 	}
+
+	@Test(expectedExceptions = MailException.class)
+	public void reservationShouldTimeOutIfNoAccountIsReleased() throws InterruptedException {
+		init(1);
+		config.put(EmailConstants.MAIL_RESERVATION_TIMEOUT_SECONDS, "1");
+
+		Thread th = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < ACCOUNTS_PER_POOL; ++i) {
+					manager.reserveMailAccount("key_" + i);
+				}
+			}
+		};
+		th.start();
+		th.join();
+
+		manager.reserveMailAccount();
+	}
+
+	@Test
+	public void waitingThreadsShouldBeServedInFifoOrder() throws InterruptedException {
+		init(1);
+		for (int i = 0; i < ACCOUNTS_PER_POOL; ++i) {
+			manager.reserveMailAccount("key_" + i, "pool_0");
+		}
+
+		final List<String> served = newCopyOnWriteArrayList();
+		List<Thread> waiters = newArrayList();
+		for (int i = 0; i < ACCOUNTS_PER_POOL; ++i) {
+			Thread th = new Thread("waiter_" + i) {
+				@Override
+				public void run() {
+					manager.reserveMailAccount("waiter_key", "pool_0");
+					served.add(getName());
+				}
+			};
+			th.start();
+			// start the next waiter only after this one is queued, so the order is defined
+			awaitWaiting(th);
+			waiters.add(th);
+		}
+
+		for (int i = 0; i < ACCOUNTS_PER_POOL; ++i) {
+			manager.releaseMailAccountForThread("key_" + i);
+			Thread th = waiters.get(i);
+			th.join(5000L);
+			assertThat(th.isAlive()).describedAs("The longest waiting thread was not served: " + th.getName()).isFalse();
+		}
+		assertThat(served).containsExactly("waiter_0", "waiter_1", "waiter_2");
+	}
+
+	@Test
+	public void concurrentReservationsShouldNeverShareAnAccount() throws Exception {
+		init(1);
+		final int threads = 8;
+		final int iterations = 500;
+
+		final ConcurrentMap<MailAccount, Thread> holders = new ConcurrentHashMap<>();
+		final AtomicInteger conflicts = new AtomicInteger();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> results = newArrayList();
+		for (int i = 0; i < threads; ++i) {
+			results.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws InterruptedException {
+					startLatch.await();
+					for (int j = 0; j < iterations; ++j) {
+						MailAccount account = manager.reserveMailAccount("key", "pool_0");
+						if (holders.putIfAbsent(account, Thread.currentThread()) != null) {
+							conflicts.incrementAndGet();
+						}
+						assertThat(manager.lookupUsedMailAccountForCurrentThread("key")).isSameAs(account);
+						// removed before the release, so the next holder does not see us
+						holders.remove(account);
+						manager.releaseMailAccountForThread("key");
+					}
+					return iterations;
+				}
+			}));
+		}
+		startLatch.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1L, TimeUnit.MINUTES)).describedAs("Reservations did not complete").isTrue();
+
+		int completed = 0;
+		for (Future<Integer> result : results) {
+			// rethrows failures of the reserving threads
+			completed += result.get();
+		}
+		assertThat(completed).isEqualTo(threads * iterations);
+		assertThat(conflicts.get()).describedAs("Accounts reserved by two threads at once").isZero();
+		for (MailAccount account : emailAddressPools.get("pool_0")) {
+			assertThat(manager.isReserved(account)).describedAs("Account still reserved: " + account).isFalse();
+		}
+	}
+
+	private static void awaitWaiting(final Thread th) throws InterruptedException {
+		for (int i = 0; i < 500 && th.getState() != Thread.State.WAITING; ++i) {
+			Thread.sleep(10L);
+		}
+		assertThat(th.getState()).describedAs("Thread is not waiting for an account: " + th.getName())
+				.isEqualTo(Thread.State.WAITING);
+	}
 }
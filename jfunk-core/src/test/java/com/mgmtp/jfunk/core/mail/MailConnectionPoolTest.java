@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Service;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.Transport;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicates;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.core.exception.MailException;
+import com.mgmtp.jfunk.core.mail.MailConnectionPool.Connector;
+
+/**
+ * @since 3.3.2
+ */
+public class MailConnectionPoolTest {
+
+	@Test
+	public void testBorrowAndRelease() throws MessagingException {
+		MailConnectionPool pool = new MailConnectionPool(2, 60L, 600L);
+		StoreConnector connector = new StoreConnector(store(), store());
+
+		Service first = pool.borrow("key", connector);
+		pool.release(first);
+		assertThat(pool.borrow("key", connector)).isSameAs(first);
+		assertThat(connector.connects).isEqualTo(1);
+
+		// connections are per key
+		Service other = pool.borrow("other", connector);
+		assertThat(other).isNotSameAs(first);
+		assertThat(connector.connects).isEqualTo(2);
+		verify(first, never()).close();
+
+		assertThat(pool.getStatistics().get("key")).startsWith("borrows=2, hits=1, connects=1, evictions=0");
+	}
+
+	@Test
+	public void testMaxConnections() throws Exception {
+		final MailConnectionPool pool = new MailConnectionPool(1, 60L, 600L);
+		final StoreConnector connector = new StoreConnector(store(), store());
+
+		Service first = pool.borrow("key", connector);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Service> second = executor.submit(new Callable<Service>() {
+				@Override
+				public Service call() throws MessagingException {
+					return pool.borrow("key", connector);
+				}
+			});
+			try {
+				second.get(200L, TimeUnit.MILLISECONDS);
+				throw new AssertionError("Borrowing must block while the maximum number of connections is in use.");
+			} catch (TimeoutException ex) {
+				// expected
+			}
+
+			pool.release(first);
+			assertThat(second.get(5L, TimeUnit.SECONDS)).isSameAs(first);
+			assertThat(connector.connects).isEqualTo(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testNoPooling() throws MessagingException {
+		MailConnectionPool pool = new MailConnectionPool(0, 60L, 600L);
+		StoreConnector connector = new StoreConnector(store(), store());
+
+		Service first = pool.borrow("key", connector);
+		pool.release(first);
+		verify(first).close();
+		assertThat(pool.borrow("key", connector)).isNotSameAs(first);
+	}
+
+	@Test
+	public void testInvalidate() throws MessagingException {
+		MailConnectionPool pool = new MailConnectionPool(1, 60L, 600L);
+		StoreConnector connector = new StoreConnector(store(), store());
+
+		Service first = pool.borrow("key", connector);
+		pool.invalidate(first);
+		verify(first).close();
+
+		// the slot has been freed, so this does not block
+		assertThat(pool.borrow("key", connector)).isNotSameAs(first);
+		assertThat(connector.connects).isEqualTo(2);
+	}
+
+	@Test
+	public void testEvictIdle() throws Exception {
+		MailConnectionPool pool = new MailConnectionPool(1, 0L, 600L);
+		StoreConnector connector = new StoreConnector(store(), store());
+
+		Service first = pool.borrow("key", connector);
+		pool.release(first);
+		Thread.sleep(10L);
+		pool.evictExpired();
+		verify(first).close();
+
+		assertThat(pool.borrow("key", connector)).isNotSameAs(first);
+		assertThat(connector.connects).isEqualTo(2);
+	}
+
+	@Test
+	public void testEvictBroken() throws MessagingException {
+		MailConnectionPool pool = new MailConnectionPool(1, 60L, 600L);
+		StoreConnector connector = new StoreConnector(store(), store());
+
+		Service first = pool.borrow("key", connector);
+		pool.release(first);
+		when(first.isConnected()).thenReturn(false);
+
+		Service second = pool.borrow("key", connector);
+		assertThat(second).isNotSameAs(first);
+		verify(first).close();
+		assertThat(pool.getStatistics().get("key")).startsWith("borrows=2, hits=0, connects=2, evictions=1");
+	}
+
+	@Test
+	public void testFailedConnectFreesSlot() throws MessagingException {
+		MailConnectionPool pool = new MailConnectionPool(1, 60L, 600L);
+		Connector failing = new Connector() {
+			@Override
+			public Service connect() throws MessagingException {
+				throw new MessagingException("connection refused");
+			}
+		};
+		try {
+			pool.borrow("key", failing);
+			throw new AssertionError("MessagingException expected");
+		} catch (MessagingException ex) {
+			// expected
+		}
+		assertThat(pool.borrow("key", new StoreConnector(store()))).isNotNull();
+	}
+
+	@Test
+	public void testKey() {
+		Properties props = new Properties();
+		props.setProperty("mail.imaps.host", "mail.example.com");
+		props.setProperty("mail.imaps.port", "993");
+		assertThat(MailConnectionPool.key(props, "imaps", "account")).isEqualTo("imaps|mail.example.com|993|account");
+		assertThat(MailConnectionPool.key(props, "smtp", null)).isEqualTo("smtp|||");
+	}
+
+	@Test
+	public void testStoreManagerKeyIsAccountId() throws MessagingException {
+		Properties props = new Properties();
+		props.setProperty(EmailConstants.MAIL_STORE_PROTOCOL, "imaps");
+		props.setProperty("mail.imaps.host", "mail.example.com");
+		props.setProperty("mail.imaps.port", "993");
+
+		MailConnectionPool pool = mock(MailConnectionPool.class);
+		Store store = store();
+		when(pool.borrowStore(any(Session.class), eq("imaps|mail.example.com|993|account"))).thenReturn(store);
+		when(store.getDefaultFolder()).thenThrow(new MessagingException("broken"));
+
+		StoreManager storeManager = new StoreManager(props, "INBOX", null, new MailAccount("account", "address@example.com",
+				"user", "password"), null, null, pool);
+		try {
+			storeManager.fetchMessages(Predicates.<MailMessage>alwaysTrue(), false);
+			throw new AssertionError("MailException expected");
+		} catch (MailException ex) {
+			// expected
+		}
+		// the store failed, so it must not be lent again
+		verify(pool).invalidate(store);
+		verify(pool, never()).release(any(Service.class));
+	}
+
+	@Test
+	public void testSmtpClientKeyIsUser() throws MessagingException {
+		Properties props = new Properties();
+		props.setProperty(EmailConstants.MAIL_TRANSPORT_PROTOCOL, "smtp");
+		props.setProperty("mail.smtp.host", "smtp.example.com");
+		props.setProperty("mail.smtp.port", "25");
+		props.setProperty("mail.smtp.user", "user");
+		Session session = Session.getInstance(props);
+
+		MailConnectionPool pool = mock(MailConnectionPool.class);
+		Transport transport = mock(Transport.class);
+		when(pool.borrowTransport(session, "smtp|smtp.example.com|25|user")).thenReturn(transport);
+		Message message = mock(Message.class);
+		Address[] recipients = new Address[0];
+		when(message.getAllRecipients()).thenReturn(recipients);
+
+		new SmtpClient(Providers.of(session), pool).send(message);
+		verify(transport).sendMessage(message, recipients);
+		verify(pool).release(transport);
+		verify(pool, never()).invalidate(any(Service.class));
+	}
+
+	private static Store store() {
+		Store store = mock(Store.class);
+		when(store.isConnected()).thenReturn(true);
+		return store;
+	}
+
+	private static final class StoreConnector implements Connector {
+		private final Deque<Store> stores = new ArrayDeque<>();
+		private int connects;
+
+		StoreConnector(final Store... stores) {
+			for (Store store : stores) {
+				this.stores.add(store);
+			}
+		}
+
+		@Override
+		public synchronized Service connect() {
+			connects++;
+			return stores.removeFirst();
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.mail.Flags.Flag;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.search.SearchTerm;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.core.mail.MailboxWatcher.Subscription;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+/**
+ * @since 3.3.2
+ */
+public class MailboxWatcherTest {
+
+	@Test
+	public void testDispatchToMatchingSubscription() throws Exception {
+		Folder folder = mock(Folder.class);
+		Message forA = message("a@example.com", "for a");
+		Message forB = message("b@example.com", "for b");
+		Message forOther = message("other@example.com", "for other");
+		when(folder.getMessages()).thenReturn(new Message[] { forA, forB, forOther });
+
+		MailboxWatcher watcher = watcher(store(folder));
+		Subscription a = watcher.subscribe(account("a", "A@example.com"));
+		Subscription b = watcher.subscribe(account("b", "b@example.com"));
+		try {
+			// both accounts share the mailbox
+			assertThat(watcher.getWatchCount()).isEqualTo(1);
+
+			List<MailMessage> messagesA = a.take(5L, TimeUnit.SECONDS);
+			assertThat(messagesA).hasSize(1);
+			assertThat(messagesA.get(0).getSubject()).isEqualTo("for a");
+			List<MailMessage> messagesB = b.take(5L, TimeUnit.SECONDS);
+			assertThat(messagesB).hasSize(1);
+			assertThat(messagesB.get(0).getSubject()).isEqualTo("for b");
+
+			assertThat(a.take(300L, TimeUnit.MILLISECONDS)).isEmpty();
+
+			// dispatched messages are deleted, others are left alone
+			assertThat(forA.isSet(Flag.DELETED)).isTrue();
+			assertThat(forB.isSet(Flag.DELETED)).isTrue();
+			assertThat(forOther.isSet(Flag.DELETED)).isFalse();
+		} finally {
+			a.close();
+			b.close();
+		}
+		awaitNoWatches(watcher);
+	}
+
+	@Test
+	public void testPollingWithoutIdle() throws Exception {
+		IMAPFolder folder = imapFolder(false);
+		Message message = message("a@example.com", "existing");
+		when(folder.search(any(SearchTerm.class))).thenReturn(new Message[] { message });
+
+		MailboxWatcher watcher = watcher(folder.getStore());
+		Subscription subscription = watcher.subscribe(account("a", "a@example.com"));
+		try {
+			// messages already in the mailbox are found by a search
+			assertThat(subscription.take(5L, TimeUnit.SECONDS)).hasSize(1);
+			verify(folder, timeout(5000)).expunge();
+
+			// new messages are polled for
+			verify(folder, timeout(5000).atLeast(2)).getMessagesByUID(anyLong(), anyLong());
+			verify(folder, never()).idle();
+		} finally {
+			subscription.close();
+		}
+		awaitNoWatches(watcher);
+	}
+
+	@Test
+	public void testIdle() throws Exception {
+		IMAPFolder folder = imapFolder(true);
+
+		MailboxWatcher watcher = watcher(folder.getStore());
+		Subscription subscription = watcher.subscribe(account("a", "a@example.com"));
+		try {
+			verify(folder, timeout(5000)).idle();
+		} finally {
+			subscription.close();
+		}
+		awaitNoWatches(watcher);
+	}
+
+	@Test
+	public void testSubscriptionsForSameAddress() throws Exception {
+		Folder folder = mock(Folder.class);
+		final AtomicReference<Message[]> messages = new AtomicReference<>(new Message[0]);
+		when(folder.getMessages()).thenAnswer(new Answer<Message[]>() {
+			@Override
+			public Message[] answer(final InvocationOnMock invocation) {
+				return messages.get();
+			}
+		});
+
+		MailboxWatcher watcher = watcher(store(folder));
+		Subscription first = watcher.subscribe(account("a", "a@example.com"));
+		Subscription second = watcher.subscribe(account("a", "A@EXAMPLE.COM"));
+		try {
+			Message message = message("a@example.com", "for a");
+			messages.set(new Message[] { message });
+
+			// both threads waiting for the address receive the message
+			List<MailMessage> messagesFirst = first.take(5L, TimeUnit.SECONDS);
+			assertThat(messagesFirst).hasSize(1);
+			assertThat(messagesFirst.get(0).getSubject()).isEqualTo("for a");
+			List<MailMessage> messagesSecond = second.take(5L, TimeUnit.SECONDS);
+			assertThat(messagesSecond).hasSize(1);
+			assertThat(messagesSecond.get(0).getSubject()).isEqualTo("for a");
+
+			// closing one subscription keeps the other one
+			first.close();
+			Message next = message("a@example.com", "next");
+			messages.set(new Message[] { next });
+			assertThat(second.take(5L, TimeUnit.SECONDS).get(0).getSubject()).isEqualTo("next");
+			assertThat(first.take(300L, TimeUnit.MILLISECONDS)).isEmpty();
+		} finally {
+			first.close();
+			second.close();
+		}
+		awaitNoWatches(watcher);
+	}
+
+	private static MailboxWatcher watcher(final Store store) {
+		Properties props = new Properties();
+		props.setProperty(EmailConstants.MAIL_STORE_PROTOCOL, "imap");
+		props.setProperty("mail.imap.host", "mail.example.com");
+		return new MailboxWatcher(Providers.of(props), Providers.of("INBOX"), Providers.of(MailboxWatcher.MIN_SLEEP_MILLIS)) {
+			@Override
+			Store getStore(final Session session) {
+				return store;
+			}
+		};
+	}
+
+	private static Store store(final Folder folder) throws MessagingException {
+		Store store = mock(Store.class);
+		Folder defaultFolder = mock(Folder.class);
+		when(store.getDefaultFolder()).thenReturn(defaultFolder);
+		when(defaultFolder.getFolder(anyString())).thenReturn(folder);
+		when(folder.getStore()).thenReturn(store);
+		return store;
+	}
+
+	private static IMAPFolder imapFolder(final boolean idle) throws MessagingException {
+		IMAPFolder folder = mock(IMAPFolder.class);
+		IMAPStore store = mock(IMAPStore.class);
+		Folder defaultFolder = mock(Folder.class);
+		when(store.getDefaultFolder()).thenReturn(defaultFolder);
+		when(store.hasCapability("IDLE")).thenReturn(idle);
+		when(defaultFolder.getFolder(anyString())).thenReturn(folder);
+		when(folder.getStore()).thenReturn(store);
+		when(folder.search(any(SearchTerm.class))).thenReturn(new Message[0]);
+		when(folder.getMessagesByUID(anyLong(), anyLong())).thenReturn(new Message[0]);
+		// IDLE waits until the server reports changes
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+				Thread.sleep(100L);
+				return null;
+			}
+		}).when(folder).idle();
+		return folder;
+	}
+
+	private static Message message(final String recipient, final String subject) throws MessagingException {
+		MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+		message.setFrom(new InternetAddress("sender@example.com"));
+		message.setRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+		message.setSubject(subject);
+		message.setText("text");
+		message.saveChanges();
+		return message;
+	}
+
+	private static MailAccount account(final String accountId, final String address) {
+		// all accounts share one mailbox user
+		return new MailAccount(accountId, address, "user", "password");
+	}
+
+	private static void awaitNoWatches(final MailboxWatcher watcher) throws InterruptedException {
+		for (int i = 0; i < 100 && watcher.getWatchCount() > 0; i++) {
+			Thread.sleep(50L);
+		}
+		assertThat(watcher.getWatchCount()).isEqualTo(0);
+	}
+}
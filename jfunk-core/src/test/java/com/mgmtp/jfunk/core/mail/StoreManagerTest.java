@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.mail;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+
+import javax.mail.Address;
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import javax.mail.internet.InternetAddress;
+import javax.mail.search.SearchTerm;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.mail.imap.IMAPFolder;
+
+/**
+ * @since 3.3.2
+ */
+public class StoreManagerTest {
+
+	private static final String ADDRESS = "account@example.com";
+
+	private Folder folder;
+	private UIDFolder uidFolder;
+	private LastSeenUids lastSeenUids;
+	private StoreManager storeManager;
+
+	@BeforeMethod
+	public void setUp() throws MessagingException {
+		folder = mock(Folder.class, withSettings().extraInterfaces(UIDFolder.class));
+		uidFolder = (UIDFolder) folder;
+		when(folder.getFullName()).thenReturn("INBOX");
+		when(uidFolder.getUIDValidity()).thenReturn(1L);
+		// the server search finds all candidates, the exact recipient is checked locally
+		when(folder.search(any(SearchTerm.class), any(Message[].class))).thenAnswer(new Answer<Message[]>() {
+			@Override
+			public Message[] answer(final InvocationOnMock invocation) {
+				return (Message[]) invocation.getArguments()[1];
+			}
+		});
+		lastSeenUids = new LastSeenUids();
+		storeManager = new StoreManager(null, "INBOX", null, new MailAccount("account", ADDRESS, "user", "password"), null,
+				lastSeenUids, null);
+	}
+
+	@Test
+	public void testIncrementalPollingByUid() throws MessagingException, IOException {
+		Message first = message(1L, ADDRESS);
+		Message second = message(2L, ADDRESS);
+		Message other = message(3L, "other@example.com");
+		when(folder.getMessages()).thenReturn(new Message[] { first, second, other });
+
+		assertThat(storeManager.searchNewMessages(folder)).containsExactly(first, second);
+		assertThat(lastSeenUids.get("account", "INBOX", 1L)).isEqualTo(3L);
+		// the headers of the messages found are fetched in one request before the recipient check
+		ArgumentCaptor<FetchProfile> profiles = ArgumentCaptor.forClass(FetchProfile.class);
+		verify(folder, times(2)).fetch(any(Message[].class), profiles.capture());
+		assertThat(profiles.getAllValues().get(1).contains(IMAPFolder.FetchProfileItem.HEADERS)).isTrue();
+
+		// the range n:* always includes the last message
+		when(uidFolder.getMessagesByUID(4L, UIDFolder.LASTUID)).thenReturn(new Message[] { other });
+		assertThat(storeManager.searchNewMessages(folder)).isEmpty();
+		verify(folder, times(1)).search(any(SearchTerm.class), any(Message[].class));
+
+		Message third = message(4L, ADDRESS);
+		when(uidFolder.getMessagesByUID(4L, UIDFolder.LASTUID)).thenReturn(new Message[] { third });
+		assertThat(storeManager.searchNewMessages(folder)).containsExactly(third);
+		assertThat(lastSeenUids.get("account", "INBOX", 1L)).isEqualTo(4L);
+		verify(folder, times(1)).getMessages();
+		verify(third, never()).getContent();
+	}
+
+	@Test
+	public void testUidValidityChange() throws MessagingException {
+		Message first = message(1L, ADDRESS);
+		when(folder.getMessages()).thenReturn(new Message[] { first });
+		assertThat(storeManager.searchNewMessages(folder)).containsExactly(first);
+
+		// UIDs of the old UIDVALIDITY are meaningless, so all messages are examined again
+		Message renumbered = message(1L, ADDRESS);
+		when(uidFolder.getUIDValidity()).thenReturn(2L);
+		when(folder.getMessages()).thenReturn(new Message[] { renumbered });
+		assertThat(storeManager.searchNewMessages(folder)).containsExactly(renumbered);
+		assertThat(lastSeenUids.get("account", "INBOX", 2L)).isEqualTo(1L);
+		assertThat(lastSeenUids.get("account", "INBOX", 1L)).isEqualTo(-1L);
+		verify(uidFolder, never()).getMessagesByUID(any(Long.class), any(Long.class));
+	}
+
+	private Message message(final long uid, final String recipient) throws MessagingException {
+		Message message = mock(Message.class);
+		when(message.getAllRecipients()).thenReturn(new Address[] { new InternetAddress(recipient) });
+		when(uidFolder.getUID(message)).thenReturn(uid);
+		return message;
+	}
+}
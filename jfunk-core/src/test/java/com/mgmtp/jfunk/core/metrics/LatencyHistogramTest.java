@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.metrics;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.offset;
+
+import org.testng.annotations.Test;
+
+/**
+ * @since 3.3.2
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentilesAreWithinPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1L; value <= 100000L; ++value) {
+			histogram.record(value);
+		}
+
+		assertThat(histogram.getCount()).isEqualTo(100000L);
+		assertThat(histogram.getMin()).isEqualTo(1L);
+		assertThat(histogram.getMax()).isEqualTo(100000L);
+		assertThat(histogram.getMean()).isEqualTo(50000.5d, offset(0.001d));
+		assertThat((double) histogram.getValueAtPercentile(50d)).isEqualTo(50000d, offset(50000d * 0.032d));
+		assertThat((double) histogram.getValueAtPercentile(99d)).isEqualTo(99000d, offset(99000d * 0.032d));
+		assertThat(histogram.getValueAtPercentile(100d)).isEqualTo(100000L);
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5L);
+		histogram.record(3L);
+		histogram.record(31L);
+
+		assertThat(histogram.getMin()).isEqualTo(0L);
+		assertThat(histogram.getValueAtPercentile(50d)).isEqualTo(3L);
+		assertThat(histogram.getValueAtPercentile(100d)).isEqualTo(31L);
+	}
+
+	@Test
+	public void testAdd() {
+		LatencyHistogram first = new LatencyHistogram();
+		first.record(10L);
+		first.record(Long.MAX_VALUE / 2);
+		LatencyHistogram second = new LatencyHistogram();
+		second.record(5L);
+
+		LatencyHistogram total = new LatencyHistogram();
+		total.add(first);
+		total.add(second);
+
+		assertThat(total.getCount()).isEqualTo(3L);
+		assertThat(total.getMin()).isEqualTo(5L);
+		assertThat(total.getMax()).isEqualTo(Long.MAX_VALUE / 2);
+		assertThat(total.getValueAtPercentile(50d)).isEqualTo(10L);
+	}
+}
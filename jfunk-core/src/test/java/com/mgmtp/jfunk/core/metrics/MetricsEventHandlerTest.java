@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.metrics;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.metrics.MetricsEventHandler.Category;
+import com.mgmtp.jfunk.core.metrics.MetricsEventHandler.Series;
+
+/**
+ * @since 3.3.2
+ */
+public class MetricsEventHandlerTest {
+
+	@Test
+	public void testSeriesAreMergedWhenScriptsFinish() throws InterruptedException {
+		final MetricsEventHandler handler = new MetricsEventHandler(Providers.of(new Configuration(Charsets.UTF_8)));
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; ++i) {
+			final boolean success = i % 2 == 0;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					handler.start(Category.SCRIPT);
+					handler.start(Category.MODULE);
+					handler.stop(Category.MODULE, "module", true);
+					handler.stop(Category.SCRIPT, "script.groovy", success);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(handler.getLiveSeriesCount()).isEqualTo(0);
+		Map<Category, SortedMap<String, Series>> totals = handler.getTotals();
+		Series script = totals.get(Category.SCRIPT).get("script.groovy");
+		assertThat(script.histogram.getCount()).isEqualTo(4L);
+		assertThat(script.errors.get()).isEqualTo(2L);
+		assertThat(totals.get(Category.MODULE).get("module").histogram.getCount()).isEqualTo(4L);
+
+		// series of a script in progress are included in the totals
+		handler.start(Category.SCRIPT);
+		handler.start(Category.MODULE);
+		handler.stop(Category.MODULE, "module", false);
+		assertThat(handler.getLiveSeriesCount()).isEqualTo(1);
+		Series module = handler.getTotals().get(Category.MODULE).get("module");
+		assertThat(module.histogram.getCount()).isEqualTo(5L);
+		assertThat(module.errors.get()).isEqualTo(1L);
+
+		handler.stop(Category.SCRIPT, "script.groovy", true);
+		assertThat(handler.getLiveSeriesCount()).isEqualTo(0);
+		assertThat(handler.getTotals().get(Category.SCRIPT).get("script.groovy").histogram.getCount()).isEqualTo(5L);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.reporting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.core.module.TestModule;
+
+/**
+ * @since 3.3.2
+ */
+public class AggregatingReporterTest {
+
+	private File tempDir;
+
+	@BeforeMethod
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@AfterMethod
+	public void cleanUp() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testResultsOfAllThreadsAreMerged() throws IOException, InterruptedException {
+		final AggregatingReporter reporter = new AggregatingReporter(Providers.of(tempDir), Charsets.UTF_8);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 100; ++i) {
+			final int index = i;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					ReportContext context = new ReportContext();
+					context.setTestObjectName("module" + index);
+					context.setTestObjectType(TestModule.class);
+					context.setStartMillis(1000L - index);
+					context.setStopMillis(2000L);
+					if (index % 10 == 0) {
+						context.setThrowable(new IllegalStateException("failed\n\"badly\""));
+					}
+					reporter.addResult(context);
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1L, TimeUnit.MINUTES)).isTrue();
+
+		reporter.createReport();
+
+		List<String> lines = Files.readLines(new File(tempDir, AggregatingReporter.CSV_FILE), Charsets.UTF_8);
+		assertThat(lines).hasSize(101);
+		assertThat(lines.get(1)).contains("\"module99\"");
+		assertThat(lines.get(100)).contains("\"module0\"").endsWith("\"error\";\"failed \"\"badly\"\"\"");
+
+		List<ReportRow> rows = ColumnarReportFile.read(new File(tempDir, AggregatingReporter.BINARY_FILE));
+		assertThat(rows).hasSize(100);
+		ReportRow first = rows.get(0);
+		assertThat(first.getTestObjectName()).isEqualTo("module99");
+		assertThat(first.getTestObjectType()).isEqualTo("TestModule");
+		assertThat(first.getStartMillis()).isEqualTo(901L);
+		assertThat(first.getStopMillis()).isEqualTo(2000L);
+		assertThat(first.isSuccess()).isTrue();
+		assertThat(first.getErrorMessage()).isNull();
+		ReportRow last = rows.get(99);
+		assertThat(last.isSuccess()).isFalse();
+		assertThat(last.getErrorMessage()).isEqualTo("failed\n\"badly\"");
+		assertThat(last.getThreadName()).startsWith("pool-");
+	}
+
+	@Test
+	public void testArchiveDirIsTakenFromRunConfiguration() throws IOException {
+		File archiveDir = new File(tempDir, "archive");
+		Files.write(JFunkConstants.ARCHIVE_DIR + "=" + archiveDir.getPath().replace('\\', '/'),
+				new File(tempDir, JFunkConstants.SCRIPT_PROPERTIES), Charsets.UTF_8);
+
+		String configDir = System.getProperty("config.dir");
+		System.setProperty("config.dir", tempDir.getPath());
+		try {
+			assertThat(AggregatingReporter.getRunArchiveDir(Charsets.UTF_8)).isEqualTo(archiveDir.getAbsoluteFile());
+			assertThat(archiveDir.isDirectory()).isTrue();
+		} finally {
+			if (configDir == null) {
+				System.clearProperty("config.dir");
+			} else {
+				System.setProperty("config.dir", configDir);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.reporting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @since 3.3.2
+ */
+public class StreamingReportWriterTest {
+
+	private File tempDir;
+
+	@BeforeMethod
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@AfterMethod
+	public void cleanUp() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testLinesFromManyThreadsAreWritten() throws IOException, InterruptedException {
+		File partFile = new File(tempDir, "report.part");
+		final StreamingReportWriter writer = new StreamingReportWriter(partFile, Charsets.UTF_8, 4, "header");
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 1000; ++i) {
+			final String line = "line" + i;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					writer.add(line);
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1L, TimeUnit.MINUTES)).isTrue();
+
+		File reportFile = new File(tempDir, "report.csv");
+		writer.finish(reportFile);
+
+		assertThat(partFile).doesNotExist();
+		List<String> lines = Files.readLines(reportFile, Charsets.UTF_8);
+		assertThat(lines).hasSize(1001);
+		assertThat(lines.get(0)).isEqualTo("header");
+		assertThat(lines).contains("line0", "line999");
+	}
+}
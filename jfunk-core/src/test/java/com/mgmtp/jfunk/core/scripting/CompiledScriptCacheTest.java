@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import groovy.lang.Script;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.script.ScriptException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @since 3.3.2
+ */
+public class CompiledScriptCacheTest {
+
+	private File tempDir;
+	private File script;
+	private CompiledScriptCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		tempDir = Files.createTempDir();
+		script = new File(tempDir, "test.groovy");
+		cache = new CompiledScriptCache();
+	}
+
+	@AfterMethod
+	public void cleanUp() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testCacheHit() throws Exception {
+		writeScript("return 'first'", 100000L);
+		Class<?> scriptClass = cache.getScriptClass(script, Charsets.UTF_8);
+		assertThat((Object) cache.getScriptClass(script, Charsets.UTF_8)).isSameAs(scriptClass);
+		assertThat(run(scriptClass)).isEqualTo("first");
+		assertThat(cache.getStatistics().get(script.getAbsoluteFile())).contains("compilations=1,").contains("cacheHits=1,");
+	}
+
+	@Test
+	public void testTouchedFileIsNotRecompiled() throws Exception {
+		writeScript("return 'first'", 100000L);
+		Class<?> scriptClass = cache.getScriptClass(script, Charsets.UTF_8);
+
+		writeScript("return 'first'", 200000L);
+		assertThat((Object) cache.getScriptClass(script, Charsets.UTF_8)).isSameAs(scriptClass);
+		assertThat(cache.getStatistics().get(script.getAbsoluteFile())).contains("compilations=1,").contains("cacheHits=1,");
+	}
+
+	@Test
+	public void testChangedFileIsRecompiled() throws Exception {
+		writeScript("return 'first'", 100000L);
+		Class<?> scriptClass = cache.getScriptClass(script, Charsets.UTF_8);
+
+		writeScript("return 'second'", 200000L);
+		Class<?> changedClass = cache.getScriptClass(script, Charsets.UTF_8);
+		assertThat((Object) changedClass).isNotSameAs(scriptClass);
+		assertThat(run(changedClass)).isEqualTo("second");
+		assertThat(cache.getStatistics().get(script.getAbsoluteFile())).contains("compilations=2,").contains("cacheHits=0,");
+	}
+
+	@Test(expectedExceptions = ScriptException.class)
+	public void testCompilationError() throws Exception {
+		writeScript("return 'unterminated", 100000L);
+		cache.getScriptClass(script, Charsets.UTF_8);
+	}
+
+	private void writeScript(final String source, final long lastModified) throws IOException {
+		Files.asCharSink(script, Charsets.UTF_8).write(source);
+		assertThat(script.setLastModified(lastModified)).isTrue();
+	}
+
+	private static Object run(final Class<?> scriptClass) throws ReflectiveOperationException {
+		return ((Script) scriptClass.newInstance()).run();
+	}
+}
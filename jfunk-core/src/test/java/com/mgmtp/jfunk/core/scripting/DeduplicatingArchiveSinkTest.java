@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.common.util.ExtendedProperties;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+
+/**
+ * @since 3.3.2
+ */
+public class DeduplicatingArchiveSinkTest {
+
+	private File tempDir;
+
+	@BeforeMethod
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@AfterMethod
+	public void cleanUp() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testIdenticalContentIsStoredOnce() throws IOException {
+		ContentStore store = new ContentStore();
+		DeduplicatingArchiveSink first = createSink(store, "first");
+		DeduplicatingArchiveSink second = createSink(store, "second");
+
+		byte[] page = "<html/>".getBytes(Charsets.UTF_8);
+		first.write("html/0000_page.html", page);
+		first.write("module.txt", page);
+		second.write("html/0001_page.html", page);
+		first.writeManifest();
+		second.writeManifest();
+
+		Map<String, Set<String>> index = store.getIndex(tempDir);
+		assertThat(index).hasSize(1);
+		String reference = index.keySet().iterator().next();
+		assertThat(index.get(reference)).containsOnly("first", "second");
+		assertThat(Files.toString(ContentStore.resolve(tempDir, reference), Charsets.UTF_8)).isEqualTo("<html/>");
+
+		File firstDir = new File(tempDir, "first");
+		assertThat(new File(firstDir, "html/0000_page.html")).doesNotExist();
+		assertThat(new File(firstDir, "module.txt")).exists();
+		assertThat(load(new File(firstDir, DeduplicatingArchiveSink.MANIFEST)).get("html/0000_page.html")).isEqualTo(reference);
+		assertThat(load(new File(tempDir, "second/" + DeduplicatingArchiveSink.MANIFEST)).get("html/0001_page.html")).isEqualTo(reference);
+
+		store.handleEvent(new AfterRunEvent());
+		ExtendedProperties runIndex = load(new File(tempDir, ContentStore.CONTENT_DIR + '/' + ContentStore.INDEX_FILE));
+		assertThat(runIndex.get(reference)).isEqualTo("first,second");
+	}
+
+	@Test
+	public void testContentOfDiscardedArchivesIsDeleted() throws IOException {
+		byte[] shared = "<html/>".getBytes(Charsets.UTF_8);
+		byte[] unshared = "<html><body/></html>".getBytes(Charsets.UTF_8);
+		byte[] old = "<p/>".getBytes(Charsets.UTF_8);
+
+		ContentStore previousRun = new ContentStore();
+		String oldReference = previousRun.store(tempDir, old, "html", "previous");
+		previousRun.handleEvent(new AfterRunEvent());
+
+		ContentStore store = new ContentStore();
+		DeduplicatingArchiveSink kept = createSink(store, "kept");
+		DeduplicatingArchiveSink discarded = createSink(store, "discarded");
+		kept.write("0000_page.html", shared);
+		discarded.write("0000_page.html", shared);
+		discarded.write("0001_page.html", unshared);
+		discarded.write("0002_page.html", old);
+		String sharedReference = store.store(tempDir, shared, "html", "kept");
+		String unsharedReference = store.store(tempDir, unshared, "html", "discarded");
+
+		discarded.release();
+		store.handleEvent(new AfterRunEvent());
+
+		assertThat(ContentStore.resolve(tempDir, sharedReference)).exists();
+		assertThat(ContentStore.resolve(tempDir, unsharedReference)).doesNotExist();
+		// content stored before the run may be referenced by archives of previous runs
+		assertThat(ContentStore.resolve(tempDir, oldReference)).exists();
+
+		assertThat(store.getIndex(tempDir).keySet()).containsOnly(sharedReference);
+		ExtendedProperties runIndex = load(new File(tempDir, ContentStore.CONTENT_DIR + '/' + ContentStore.INDEX_FILE));
+		assertThat(runIndex.keySet()).containsOnly(sharedReference);
+		assertThat(runIndex.get(sharedReference)).isEqualTo("kept");
+	}
+
+	@Test
+	public void testReferenceIsNotPublishedIfWritingFails() throws IOException {
+		ContentStore store = new ContentStore();
+		byte[] page = "<html/>".getBytes(Charsets.UTF_8);
+		String hex = Hashing.sha256().hashBytes(page).toString();
+
+		// a file in place of the content subdirectory lets writing fail
+		File blocker = new File(tempDir, ContentStore.CONTENT_DIR + '/' + hex.substring(0, 2));
+		Files.createParentDirs(blocker);
+		Files.touch(blocker);
+		try {
+			createSink(store, "first").write("0000_page.html", page);
+			fail("IOException expected");
+		} catch (IOException ex) {
+			// expected
+		}
+		assertThat(store.getIndex(tempDir)).isEmpty();
+
+		assertThat(blocker.delete()).isTrue();
+		String reference = store.store(tempDir, page, "html", "second");
+		assertThat(Files.toString(ContentStore.resolve(tempDir, reference), Charsets.UTF_8)).isEqualTo("<html/>");
+		assertThat(store.getIndex(tempDir).get(reference)).containsOnly("second");
+	}
+
+	private DeduplicatingArchiveSink createSink(final ContentStore store, final String archiveName) {
+		return new DeduplicatingArchiveSink(new DirectoryArchiveSink(new File(tempDir, archiveName)), store, tempDir,
+				archiveName, ImmutableSet.of("html", "png"));
+	}
+
+	private static ExtendedProperties load(final File file) throws IOException {
+		ExtendedProperties props = new ExtendedProperties();
+		try (Reader reader = Files.newReader(file, Charsets.UTF_8)) {
+			props.load(reader);
+		}
+		return props;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newTreeMap;
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.JFunkConstants;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.module.DummyModule;
+import com.mgmtp.jfunk.core.scripting.ModuleArchiver.ArchivingMode;
+import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.data.DefaultDataSet;
+import com.mgmtp.jfunk.data.source.DataSource;
+
+/**
+ * @since 3.3.2
+ */
+public class ModuleArchiverTest {
+
+	private File tempDir;
+
+	@BeforeMethod
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@AfterMethod
+	public void cleanUp() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testAsyncArchivesWithSameName() throws IOException {
+		File syncDir = new File(tempDir, "sync");
+		File asyncDir = new File(tempDir, "async");
+		Throwable failure = new IllegalStateException("second failed");
+		archiveTwoModules(syncDir, false, failure);
+		archiveTwoModules(asyncDir, true, failure);
+
+		for (String zip : new String[] { "module_ok.zip", "module_error.zip" }) {
+			SortedMap<String, Object> syncContent = readZip(new File(syncDir, zip));
+			SortedMap<String, Object> asyncContent = readZip(new File(asyncDir, zip));
+			assertThat(asyncContent).isEqualTo(syncContent);
+		}
+
+		SortedMap<String, Object> ok = readZip(new File(asyncDir, "module_ok.zip"));
+		assertThat(ok.get("page.html")).isEqualTo("first");
+		assertThat(ok.get("formdata/customer.form.properties")).isEqualTo(ImmutableMap.of("name", "first"));
+		assertThat(ok.containsKey(JFunkConstants.STACKTRACE_LOG)).isFalse();
+		SortedMap<String, Object> error = readZip(new File(asyncDir, "module_error.zip"));
+		assertThat(error.get("page.html")).isEqualTo("second");
+		assertThat((String) error.get(JFunkConstants.STACKTRACE_LOG)).contains("second failed");
+
+		// no part files or staging directories are left
+		assertThat(asyncDir.list()).containsOnly("module_ok.zip", "module_error.zip");
+	}
+
+	@Test
+	public void testReusedThreadsGetUniqueArchiveNames() throws IOException {
+		Configuration config = new Configuration(Charsets.UTF_8);
+		ArchivingExecutor executor = new ArchivingExecutor(Providers.of(config));
+		Date startDate = new Date();
+		archiveModule(tempDir, config, executor, "first", null, startDate, 1);
+		archiveModule(tempDir, config, executor, "second", null, startDate, 2);
+
+		String prefix = "module_" + Thread.currentThread().getName();
+		String suffix = "_[" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.GERMANY).format(startDate) + "]_ok.zip";
+		assertThat(readZip(new File(tempDir, prefix + suffix)).get("page.html")).isEqualTo("first");
+		assertThat(readZip(new File(tempDir, prefix + "-2" + suffix)).get("page.html")).isEqualTo("second");
+	}
+
+	@Test
+	public void testSyncArchivingIfStagingFails() throws IOException {
+		File archiveDir = new File(tempDir, "async");
+		for (int i = 0; i < 100; ++i) {
+			assertThat(new File(archiveDir, "module.archiving" + (i == 0 ? "" : "." + i)).mkdirs()).isTrue();
+		}
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.put(JFunkConstants.ARCHIVE_FILE, "module");
+		config.put(JFunkConstants.ARCHIVE_ASYNC, "true");
+
+		final List<Runnable> tasks = newArrayList();
+		ArchivingExecutor executor = new ArchivingExecutor(Providers.of(config)) {
+			@Override
+			void execute(final String moduleName, final Runnable task) {
+				tasks.add(task);
+			}
+		};
+		archiveModule(archiveDir, config, executor, "first", null);
+
+		// the module is archived on its own thread
+		assertThat(tasks).isEmpty();
+		assertThat(readZip(new File(archiveDir, "module_ok.zip")).get("page.html")).isEqualTo("first");
+	}
+
+	@Test
+	public void testAsyncErrorsAreRecorded() {
+		Configuration config = new Configuration(Charsets.UTF_8);
+		ArchivingExecutor executor = new ArchivingExecutor(Providers.of(config));
+		executor.execute("module", new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("disk full");
+			}
+		});
+		executor.awaitTermination();
+		assertThat(executor.getFailedModules()).containsExactly("module");
+	}
+
+	/**
+	 * Archives two modules with the same archive name, the second one failing. In async mode, the archiving tasks are only
+	 * run after both modules have finished.
+	 */
+	private void archiveTwoModules(final File archiveDir, final boolean async, final Throwable failure) throws IOException {
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.put(JFunkConstants.ARCHIVE_FILE, "module");
+		config.put(JFunkConstants.ARCHIVE_ASYNC, String.valueOf(async));
+
+		final List<Runnable> tasks = newArrayList();
+		ArchivingExecutor executor = new ArchivingExecutor(Providers.of(config)) {
+			@Override
+			void execute(final String moduleName, final Runnable task) {
+				tasks.add(task);
+			}
+		};
+
+		archiveModule(archiveDir, config, executor, "first", null);
+		archiveModule(archiveDir, config, executor, "second", failure);
+
+		assertThat(tasks).hasSize(async ? 2 : 0);
+		for (Runnable task : tasks) {
+			task.run();
+		}
+	}
+
+	private void archiveModule(final File archiveDir, final Configuration config, final ArchivingExecutor executor,
+			final String content, final Throwable throwable) throws IOException {
+		archiveModule(archiveDir, config, executor, content, throwable, new Date(), 1);
+	}
+
+	private void archiveModule(final File archiveDir, final Configuration config, final ArchivingExecutor executor,
+			final String content, final Throwable throwable, final Date startDate, final int threadScriptNumber)
+			throws IOException {
+		DataSet dataSet = new DefaultDataSet();
+		dataSet.setValue("name", content);
+		DataSource dataSource = mock(DataSource.class);
+		when(dataSource.getCurrentDataSets()).thenReturn(ImmutableMap.of("customer", dataSet));
+
+		ModuleMetaData moduleMetaData = new ModuleMetaData();
+		moduleMetaData.setModuleName("module");
+		moduleMetaData.setModuleClass(DummyModule.class);
+		moduleMetaData.setStartDate(startDate);
+		moduleMetaData.setThrowable(throwable);
+		ScriptMetaData scriptMetaData = new ScriptMetaData();
+		scriptMetaData.setThreadScriptNumber(threadScriptNumber);
+
+		ModuleArchiver archiver = new ModuleArchiver(config, dataSource, archiveDir, Charsets.UTF_8, new MathRandom(42L),
+				ArchivingMode.all, moduleMetaData, scriptMetaData, executor, new ContentStore());
+		archiver.startArchiving();
+		archiver.getArchiveSink().write("page.html", content.getBytes(Charsets.UTF_8));
+		archiver.finishArchiving();
+	}
+
+	/**
+	 * Reads the entries of a zip file. Properties files are loaded, so their time stamp comments are
+	 * ignored, as is the module log.
+	 */
+	private static SortedMap<String, Object> readZip(final File file) throws IOException {
+		assertThat(file).exists();
+		SortedMap<String, Object> result = newTreeMap();
+		try (ZipFile zipFile = new ZipFile(file)) {
+			for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				try (InputStream in = zipFile.getInputStream(entry)) {
+					if (entry.getName().endsWith(".properties")) {
+						Properties props = new Properties();
+						props.load(in);
+						props.remove(JFunkConstants.ARCHIVE_ASYNC);
+						result.put(entry.getName(), toMap(props));
+					} else if (entry.getName().equals("module.log")) {
+						result.put(entry.getName(), "");
+					} else {
+						result.put(entry.getName(), new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Map<String, String> toMap(final Properties props) {
+		Map<String, String> result = newTreeMap();
+		for (String key : props.stringPropertyNames()) {
+			result.put(key, props.getProperty(key));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.core.scripting;
+
+import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * @since 3.3.2
+ */
+public class ZipArchiveSinkTest {
+
+	private File tempDir;
+
+	@BeforeMethod
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@AfterMethod
+	public void cleanUp() {
+		deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void testEntriesAreStreamedIntoZip() throws IOException {
+		File moduleDir = new File(tempDir, "module");
+		File logFile = new File(moduleDir, "module.log");
+		Files.createParentDirs(logFile);
+		Files.write("log", logFile, Charsets.UTF_8);
+
+		File part = new File(tempDir, "module.zip.part");
+		ZipArchiveSink sink = new ZipArchiveSink(part, Deflater.BEST_SPEED, ImmutableSet.of("png"));
+		sink.write("html/0000_page.html", "<html/>".getBytes(Charsets.UTF_8));
+		sink.write("screenshots/0000_shot.png", new byte[] { 1, 2, 3 });
+		sink.write("html/0000_page.html", "duplicate".getBytes(Charsets.UTF_8));
+		sink.writeDirectory(moduleDir);
+
+		File zip = new File(tempDir, "module_ok.zip");
+		assertThat(sink.finish(zip)).isTrue();
+		assertThat(part).doesNotExist();
+
+		try (ZipFile zipFile = new ZipFile(zip)) {
+			assertThat(zipFile.size()).isEqualTo(3);
+			assertThat(content(zipFile, "html/0000_page.html")).isEqualTo("<html/>");
+			assertThat(content(zipFile, "module.log")).isEqualTo("log");
+			assertThat(zipFile.getEntry("screenshots/0000_shot.png").getMethod()).isEqualTo(ZipEntry.STORED);
+			assertThat(zipFile.getEntry("html/0000_page.html").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+		}
+	}
+
+	@Test
+	public void testNoZipWithoutEntries() throws IOException {
+		ZipArchiveSink sink = new ZipArchiveSink(new File(tempDir, "module.zip.part"), Deflater.DEFAULT_COMPRESSION,
+				ImmutableSet.<String>of());
+		sink.writeDirectory(tempDir);
+		File zip = new File(tempDir, "module_ok.zip");
+		assertThat(sink.finish(zip)).isFalse();
+		assertThat(zip).doesNotExist();
+	}
+
+	private static String content(final ZipFile zipFile, final String name) throws IOException {
+		return new String(ByteStreams.toByteArray(zipFile.getInputStream(zipFile.getEntry(name))), Charsets.UTF_8);
+	}
+}
@@ -35,6 +35,8 @@ import com.mgmtp.jfunk.core.event.AbstractBaseEvent;
 import com.mgmtp.jfunk.core.event.AfterModuleEvent;
 import com.mgmtp.jfunk.core.event.BeforeModuleEvent;
 import com.mgmtp.jfunk.core.module.DummyModule;
+import com.mgmtp.jfunk.core.scripting.ArchiveSink;
+import com.mgmtp.jfunk.core.scripting.DirectoryArchiveSink;
 
 /**
  * @author rnaegele
@@ -68,7 +70,9 @@ public class ScreenCapturerTest {
 
 		Set<Class<? extends AbstractBaseEvent>> eventClasses =
 				ImmutableSet.<Class<? extends AbstractBaseEvent>>of(BeforeModuleEvent.class);
-		ScreenCapturer capturer = new ScreenCapturer(Providers.of(testFileOrDir), eventClasses, Providers.of(counter), ex != null);
+		ArchiveSink archiveSink = new DirectoryArchiveSink(testFileOrDir);
+		ScreenCapturer capturer = new ScreenCapturer(Providers.of(archiveSink), eventClasses, Providers.of(counter),
+				ex != null);
 
 		// get value before it is incremented
 		int c = counter.intValue();
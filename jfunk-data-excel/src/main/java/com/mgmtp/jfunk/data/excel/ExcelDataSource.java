@@ -24,8 +24,10 @@ import static org.apache.commons.lang3.StringUtils.trimToNull;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
@@ -52,6 +54,21 @@ import com.mgmtp.jfunk.data.source.DataSource;
 
 /**
  * {@link DataSource} implementation for reading test data from Excel files.
+ * <p>
+ * Excel files are configured using {@code dataSource.excel.<i>.path}, where {@code <i>} is a
+ * zero-based index. Each file may be configured further:
+ * </p>
+ * <ul>
+ * <li>{@code dataSource.excel.<i>.dataOrientation}: {@code rowbased} or {@code columnbased}
+ * (default: {@code rowbased})</li>
+ * <li>{@code dataSource.excel.<i>.streaming}: if {@code true}, XLSX files are read using the
+ * event-based SAX API and each sheet is loaded only when data is requested from it for the first
+ * time (default: {@code false}). This considerably reduces memory consumption and load time for
+ * large workbooks. Other file formats are always loaded completely.</li>
+ * <li>{@code dataSource.excel.<i>.cache}: if {@code true}, the loaded file is shared with the
+ * data sources of other scripts using the {@link ExcelFileCache}, so it is parsed only once per
+ * run (default: {@code true})</li>
+ * </ul>
  * 
  * @author rnaegele
  */
@@ -65,17 +82,34 @@ public class ExcelDataSource extends BaseDataSource {
 	private final Map<String, MutableInt> dataSetIndices = newHashMap();
 
 	private final DataFormatter dataFormatter;
+	private final ExcelFileCache excelFileCache;
 
 	/**
+	 * Creates a data source that does not share loaded Excel files with other data sources.
+	 * 
 	 * @param configuration
 	 *            the configuration
 	 * @param dataFormatter
 	 *            used for formatting cell values
 	 */
-	@Inject
 	public ExcelDataSource(final Configuration configuration, final DataFormatter dataFormatter) {
+		this(configuration, dataFormatter, null);
+	}
+
+	/**
+	 * @param configuration
+	 *            the configuration
+	 * @param dataFormatter
+	 *            used for formatting cell values
+	 * @param excelFileCache
+	 *            the process-wide cache for loaded Excel files, may be {@code null}
+	 */
+	@Inject
+	public ExcelDataSource(final Configuration configuration, final DataFormatter dataFormatter,
+			final ExcelFileCache excelFileCache) {
 		super(configuration);
 		this.dataFormatter = dataFormatter;
+		this.excelFileCache = excelFileCache;
 	}
 
 	/**
@@ -89,22 +123,24 @@ public class ExcelDataSource extends BaseDataSource {
 
 			for (int i = 0;; ++i) {
 				String baseKey = String.format("dataSource.%s.%d", getName(), i);
-				String path = configuration.get(baseKey + ".path");
+				final String path = configuration.get(baseKey + ".path");
 				if (path == null) {
 					break;
 				}
 				String doString = configuration.get(baseKey + ".dataOrientation", "rowbased");
-				DataOrientation dataOrientation = DataOrientation.valueOf(doString);
-
-				log.info("Opening Excel file: {}", path);
-				ExcelFile file = new ExcelFile(new File(path), dataOrientation, dataFormatter);
-
-				try {
-					file.load();
-				} catch (InvalidFormatException ex) {
-					throw new JFunkException(ex.getMessage(), ex);
-				} catch (IOException ex) {
-					throw new JFunkException(ex.getMessage(), ex);
+				final DataOrientation dataOrientation = DataOrientation.valueOf(doString);
+				final boolean streaming = configuration.getBoolean(baseKey + ".streaming", false);
+
+				ExcelFile file;
+				if (excelFileCache != null && configuration.getBoolean(baseKey + ".cache", true)) {
+					file = excelFileCache.get(new File(path), dataOrientation, streaming, new Callable<ExcelFile>() {
+						@Override
+						public ExcelFile call() {
+							return loadExcelFile(path, dataOrientation, streaming);
+						}
+					});
+				} else {
+					file = loadExcelFile(path, dataOrientation, streaming);
 				}
 
 				excelFiles.add(file);
@@ -113,6 +149,28 @@ public class ExcelDataSource extends BaseDataSource {
 		return excelFiles;
 	}
 
+	private ExcelFile loadExcelFile(final String path, final DataOrientation dataOrientation, final boolean streaming) {
+		log.info("Opening Excel file: {}", path);
+		ExcelFile file;
+		if (streaming && StreamingExcelFile.isSupported(path)) {
+			file = new StreamingExcelFile(new File(path), dataOrientation, dataFormatter);
+		} else {
+			if (streaming) {
+				log.warn("Streaming is only supported for XLSX files. Loading {} completely.", path);
+			}
+			file = new ExcelFile(new File(path), dataOrientation, dataFormatter);
+		}
+
+		try {
+			file.load();
+		} catch (InvalidFormatException ex) {
+			throw new JFunkException(ex.getMessage(), ex);
+		} catch (IOException ex) {
+			throw new JFunkException(ex.getMessage(), ex);
+		}
+		return file;
+	}
+
 	/**
 	 * Goes through all configured Excel files until data for the specified key is found. All sheets
 	 * of a file a check before the next file is considered.
@@ -120,8 +178,7 @@ public class ExcelDataSource extends BaseDataSource {
 	@Override
 	protected DataSet getNextDataSetImpl(final String dataSetKey) {
 		for (ExcelFile excelFile : getExcelFiles()) {
-			Map<String, List<Map<String, String>>> data = excelFile.getData();
-			List<Map<String, String>> dataList = data.get(dataSetKey);
+			List<Map<String, String>> dataList = excelFile.getSheetData(dataSetKey);
 
 			if (dataList != null) {
 				MutableInt counter = dataSetIndices.get(dataSetKey);
@@ -151,8 +208,7 @@ public class ExcelDataSource extends BaseDataSource {
 	@Override
 	public boolean hasMoreData(final String dataSetKey) {
 		for (ExcelFile excelFile : getExcelFiles()) {
-			Map<String, List<Map<String, String>>> data = excelFile.getData();
-			List<Map<String, String>> dataList = data.get(dataSetKey);
+			List<Map<String, String>> dataList = excelFile.getSheetData(dataSetKey);
 
 			if (dataList != null) {
 				MutableInt counter = dataSetIndices.get(dataSetKey);
@@ -179,6 +235,7 @@ public class ExcelDataSource extends BaseDataSource {
 
 		// lists of data maps by data set key
 		private Map<String, List<Map<String, String>>> data;
+		private long cellCount;
 
 		public ExcelFile(final File file, final DataOrientation dataOrientation, final DataFormatter dataFormatter) {
 			this.file = file;
@@ -186,7 +243,7 @@ public class ExcelDataSource extends BaseDataSource {
 			this.dataFormatter = dataFormatter;
 		}
 
-		public final void load() throws IOException, InvalidFormatException {
+		public void load() throws IOException, InvalidFormatException {
 			FileInputStream fis = null;
 			Workbook excelWorkbook;
 			try {
@@ -281,11 +338,42 @@ public class ExcelDataSource extends BaseDataSource {
 					}
 				}
 
-				dataMapListMap.put(sheetName, dataMapList);
+				List<Map<String, String>> unmodifiableDataMapList = newArrayListWithCapacity(dataMapList.size());
+				for (Map<String, String> dataMap : dataMapList) {
+					unmodifiableDataMapList.add(Collections.unmodifiableMap(dataMap));
+				}
+				dataMapListMap.put(sheetName, Collections.unmodifiableList(unmodifiableDataMapList));
 			}
 
 			// we have empty keys for empty rows/columns in the Excel sheet, which we need to filter out
-			data = Maps.filterKeys(dataMapListMap, Predicates.notNull());
+			// the data is not modified after loading, so the file may be shared by multiple threads
+			data = Collections.unmodifiableMap(Maps.filterKeys(dataMapListMap, Predicates.notNull()));
+			long count = 0L;
+			for (List<Map<String, String>> dataList : data.values()) {
+				count += countCells(dataList);
+			}
+			cellCount = count;
+		}
+
+		/**
+		 * @param dataList
+		 *            the data maps of a sheet
+		 * @return the number of cells in the data maps
+		 */
+		protected static long countCells(final List<Map<String, String>> dataList) {
+			long count = 0L;
+			for (Map<String, String> dataMap : dataList) {
+				count += dataMap.size();
+			}
+			return count;
+		}
+
+		/**
+		 * @return the number of cells loaded so far, which is used as the file's weight in the
+		 *         {@link ExcelFileCache}
+		 */
+		public long getCellCount() {
+			return cellCount;
 		}
 
 		/**
@@ -295,6 +383,37 @@ public class ExcelDataSource extends BaseDataSource {
 			return data;
 		}
 
+		/**
+		 * @param sheetName
+		 *            the name of the sheet
+		 * @return the list of data maps of the specified sheet, or {@code null} if the file has no
+		 *         sheet with this name or the sheet contains no data
+		 */
+		public List<Map<String, String>> getSheetData(final String sheetName) {
+			return data.get(sheetName);
+		}
+
+		/**
+		 * @return the Excel file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the data orientation
+		 */
+		public DataOrientation getDataOrientation() {
+			return dataOrientation;
+		}
+
+		/**
+		 * @return the data formatter used for formatting cell values
+		 */
+		public DataFormatter getDataFormatter() {
+			return dataFormatter;
+		}
+
 		public static enum DataOrientation {
 			rowbased,
 			columnbased
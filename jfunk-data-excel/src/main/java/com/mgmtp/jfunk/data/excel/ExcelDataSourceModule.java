@@ -29,6 +29,8 @@ public class ExcelDataSourceModule extends BaseDataSourceModule {
 	@Override
 	protected void doConfigure() {
 		bind(DataFormatter.class);
+		bind(ExcelFileCache.class);
 		bindDataSource("excel").to(ExcelDataSource.class);
+		bindSharedState().to(ExcelFileCache.class);
 	}
 }
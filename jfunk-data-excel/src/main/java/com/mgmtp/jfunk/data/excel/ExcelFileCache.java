@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.data.excel.ExcelDataSource.ExcelFile;
+import com.mgmtp.jfunk.data.excel.ExcelDataSource.ExcelFile.DataOrientation;
+import com.mgmtp.jfunk.data.source.SharedDataSourceState;
+
+/**
+ * Process-wide cache of loaded {@link ExcelFile}s, so a workbook is parsed only once per run
+ * instead of once per script. Cached files are shared by all threads and must only be read. Each
+ * {@link ExcelDataSource} keeps its own data set indices.
+ * <p>
+ * Files are cached by canonical path, modification date, data orientation, and reader mode, so a
+ * file that is modified during a run is parsed again. The cache is bounded by the total number of
+ * loaded cells, since the size of a compressed workbook file says little about the memory its
+ * parsed content takes. Streaming files are weighed again on the next access after further sheets
+ * have been read. Least recently used files are evicted first. After the run, cache statistics are
+ * logged and the cache is cleared.
+ * </p>
+ *
+ */
+@Singleton
+public class ExcelFileCache implements SharedDataSourceState {
+
+	/**
+	 * The default maximum total number of cached cells.
+	 */
+	public static final long DEFAULT_MAX_CELLS = 10000000L;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Cache<Key, Entry> cache;
+
+	public ExcelFileCache() {
+		this(DEFAULT_MAX_CELLS);
+	}
+
+	/**
+	 * @param maxCells
+	 *            the maximum total number of cached cells, {@code 0} disables caching
+	 */
+	public ExcelFileCache(final long maxCells) {
+		cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxCells)
+				.weigher(new Weigher<Key, Entry>() {
+					@Override
+					public int weigh(final Key key, final Entry value) {
+						return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, value.cellCount));
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Gets the loaded Excel file from the cache, loading it if necessary. Concurrent requests for
+	 * the same file wait until the file has been loaded by one of them.
+	 *
+	 * @param file
+	 *            the Excel file
+	 * @param dataOrientation
+	 *            the data orientation
+	 * @param streaming
+	 *            whether the file is read in streaming mode
+	 * @param loader
+	 *            creates and loads the Excel file if it is not cached
+	 * @return the loaded Excel file
+	 */
+	public ExcelFile get(final File file, final DataOrientation dataOrientation, final boolean streaming,
+			final Callable<ExcelFile> loader) {
+		Key key = new Key(file, dataOrientation, streaming);
+		try {
+			Entry entry = cache.get(key, new Callable<Entry>() {
+				@Override
+				public Entry call() throws Exception {
+					return new Entry(loader.call());
+				}
+			});
+			if (entry.file.getCellCount() != entry.cellCount) {
+				// further sheets of a streaming file have been read
+				cache.asMap().replace(key, entry, new Entry(entry.file));
+			}
+			return entry.file;
+		} catch (ExecutionException | UncheckedExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof JFunkException) {
+				throw (JFunkException) cause;
+			}
+			throw new JFunkException("Could not load Excel file " + file + ": " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Removes all files from the cache.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * @return the cache statistics, i. e. hit, miss, and eviction counts
+	 */
+	public CacheStats getStatistics() {
+		return cache.stats();
+	}
+
+	/**
+	 * @return the total number of cached cells as weighed by the cache
+	 */
+	public long getCachedCellCount() {
+		long count = 0L;
+		for (Entry entry : cache.asMap().values()) {
+			count += entry.cellCount;
+		}
+		return count;
+	}
+
+	/**
+	 * Logs the cache statistics and removes all files from the cache.
+	 */
+	@Override
+	public void release() {
+		log.info("Excel file cache statistics: {}", getStatistics());
+		invalidateAll();
+	}
+
+	private static final class Entry {
+		private final ExcelFile file;
+		private final long cellCount;
+
+		Entry(final ExcelFile file) {
+			this.file = file;
+			this.cellCount = file.getCellCount();
+		}
+	}
+
+	static final class Key {
+		private final String path;
+		private final long lastModified;
+		private final long length;
+		private final DataOrientation dataOrientation;
+		private final boolean streaming;
+
+		Key(final File file, final DataOrientation dataOrientation, final boolean streaming) {
+			this.path = canonicalPath(file);
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			this.dataOrientation = dataOrientation;
+			this.streaming = streaming;
+		}
+
+		private static String canonicalPath(final File file) {
+			try {
+				return file.getCanonicalPath();
+			} catch (IOException ex) {
+				return file.getAbsolutePath();
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(path, lastModified, length, dataOrientation, streaming);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return path.equals(other.path) && lastModified == other.lastModified && length == other.length
+					&& dataOrientation == other.dataOrientation && streaming == other.streaming;
+		}
+
+		@Override
+		public String toString() {
+			return path + " (" + dataOrientation + (streaming ? ", streaming)" : ")");
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.excel;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.apache.commons.lang3.StringUtils.endsWithIgnoreCase;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFReader.SheetIterator;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.google.common.collect.ImmutableSet;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.data.excel.ExcelDataSource.ExcelFile;
+
+/**
+ * {@link ExcelFile} implementation that reads XLSX files using the event-based SAX API of POI
+ * instead of building the complete workbook object model. {@link #load()} only reads the sheet
+ * names. A sheet's data is read on first access and cached afterwards, so sheets that are not
+ * needed are never parsed. The workbook is only opened while a sheet is read. Loaded data is
+ * unmodifiable, so instances may be shared by multiple threads.
+ *
+ */
+public class StreamingExcelFile extends ExcelFile {
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private Set<String> sheetNames;
+
+	// lists of data maps by sheet name for the sheets read so far, null values for sheets without data
+	private final Map<String, List<Map<String, String>>> sheetData = newHashMap();
+	private long cellCount;
+
+	private ReadOnlySharedStringsTable sharedStrings;
+	private StylesTable styles;
+
+	public StreamingExcelFile(final File file, final ExcelFile.DataOrientation dataOrientation,
+			final DataFormatter dataFormatter) {
+		super(file, dataOrientation, dataFormatter);
+	}
+
+	/**
+	 * Checks whether the specified file can be read in streaming mode. Only Office Open XML
+	 * workbooks are supported.
+	 *
+	 * @param path
+	 *            the path of the Excel file
+	 * @return {@code true} if the file can be read in streaming mode
+	 */
+	public static boolean isSupported(final String path) {
+		return endsWithIgnoreCase(path, ".xlsx") || endsWithIgnoreCase(path, ".xlsm");
+	}
+
+	/**
+	 * Reads the names of the workbook's sheets. The sheets' data are not read.
+	 */
+	@Override
+	public void load() throws IOException, InvalidFormatException {
+		OPCPackage pkg = OPCPackage.open(getFile().getPath(), PackageAccess.READ);
+		try {
+			SheetIterator it = (SheetIterator) newReader(pkg).getSheetsData();
+			ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+			while (it.hasNext()) {
+				closeQuietly(it.next());
+				builder.add(it.getSheetName());
+			}
+			sheetNames = builder.build();
+		} finally {
+			pkg.revert();
+		}
+	}
+
+	/**
+	 * Reads all sheets that have not yet been read. Use {@link #getSheetData(String)} in order to
+	 * read only the sheets that are actually needed.
+	 */
+	@Override
+	public Map<String, List<Map<String, String>>> getData() {
+		Map<String, List<Map<String, String>>> data = newLinkedHashMap();
+		for (String sheetName : sheetNames) {
+			List<Map<String, String>> dataList = getSheetData(sheetName);
+			if (dataList != null) {
+				data.put(sheetName, dataList);
+			}
+		}
+		return Collections.unmodifiableMap(data);
+	}
+
+	/**
+	 * Reads the specified sheet if it has not yet been read. Safe for use by multiple threads.
+	 */
+	@Override
+	public synchronized List<Map<String, String>> getSheetData(final String sheetName) {
+		if (sheetNames == null) {
+			throw new IllegalStateException("Excel file has not been loaded: " + getFile());
+		}
+		if (!sheetNames.contains(sheetName)) {
+			return null;
+		}
+		if (!sheetData.containsKey(sheetName)) {
+			List<Map<String, String>> dataList = readSheet(sheetName);
+			if (dataList != null) {
+				cellCount += countCells(dataList);
+			}
+			sheetData.put(sheetName, dataList);
+		}
+		return sheetData.get(sheetName);
+	}
+
+	/**
+	 * Only counts the cells of the sheets read so far.
+	 */
+	@Override
+	public synchronized long getCellCount() {
+		return cellCount;
+	}
+
+	private List<Map<String, String>> readSheet(final String sheetName) {
+		long start = System.currentTimeMillis();
+		OPCPackage pkg = null;
+		InputStream is = null;
+		try {
+			pkg = OPCPackage.open(getFile().getPath(), PackageAccess.READ);
+			XSSFReader reader = newReader(pkg);
+			if (sharedStrings == null) {
+				sharedStrings = new ReadOnlySharedStringsTable(pkg);
+				styles = reader.getStylesTable();
+			}
+
+			SheetIterator it = (SheetIterator) reader.getSheetsData();
+			while (it.hasNext()) {
+				InputStream sheetStream = it.next();
+				if (sheetName.equals(it.getSheetName())) {
+					is = sheetStream;
+					break;
+				}
+				closeQuietly(sheetStream);
+			}
+
+			CellCollector collector = new CellCollector();
+			XMLReader xmlReader = newXMLReader();
+			xmlReader.setContentHandler(new XSSFSheetXMLHandler(styles, sharedStrings, collector, getDataFormatter(), false));
+			xmlReader.parse(new InputSource(is));
+
+			List<Map<String, String>> dataList = createDataList(collector.rows);
+			log.debug("Read sheet '{}' of Excel file {} (took {} ms)", sheetName, getFile(),
+					System.currentTimeMillis() - start);
+			return dataList;
+		} catch (IOException | SAXException | OpenXML4JException | ParserConfigurationException ex) {
+			throw new JFunkException("Could not read sheet '" + sheetName + "' of Excel file " + getFile(), ex);
+		} finally {
+			closeQuietly(is);
+			if (pkg != null) {
+				pkg.revert();
+			}
+		}
+	}
+
+	private List<Map<String, String>> createDataList(final List<List<String>> rows) {
+		switch (getDataOrientation()) {
+			case rowbased:
+				return createDataList(rows, false);
+			case columnbased:
+				return createDataList(rows, true);
+			default:
+				throw new IllegalStateException("Invalid data orientation type.");
+		}
+	}
+
+	/**
+	 * Turns the rows read from a sheet into data maps. The first row (or column, if transposed)
+	 * contains the keys.
+	 */
+	private static List<Map<String, String>> createDataList(final List<List<String>> rows, final boolean transpose) {
+		if (rows.size() < 2) {
+			// sheet has no data, we need at least two rows,
+			// i. e. a header row and at least one data row
+			return null;
+		}
+
+		int maxColumns = 0;
+		for (List<String> row : rows) {
+			maxColumns = Math.max(maxColumns, row.size());
+		}
+
+		int headerCount = transpose ? rows.size() : maxColumns;
+		int dataCount = transpose ? maxColumns - 1 : rows.size() - 1;
+
+		List<String> headers = newArrayListWithCapacity(headerCount);
+		for (int i = 0; i < headerCount; ++i) {
+			headers.add(trimToNull(transpose ? valueAt(rows, i, 0) : valueAt(rows, 0, i)));
+		}
+
+		List<Map<String, String>> dataList = newArrayListWithCapacity(dataCount);
+		for (int d = 1; d <= dataCount; ++d) {
+			Map<String, String> dataMap = newHashMapWithExpectedSize(headerCount);
+			for (int h = 0; h < headerCount; ++h) {
+				String key = headers.get(h);
+				String value = transpose ? valueAt(rows, h, d) : valueAt(rows, d, h);
+				if (key != null && value != null) {
+					dataMap.put(key, value);
+				}
+			}
+			dataList.add(Collections.unmodifiableMap(dataMap));
+		}
+		return Collections.unmodifiableList(dataList);
+	}
+
+	private static String valueAt(final List<List<String>> rows, final int rowIndex, final int columnIndex) {
+		List<String> row = rows.get(rowIndex);
+		return columnIndex < row.size() ? row.get(columnIndex) : null;
+	}
+
+	private static XSSFReader newReader(final OPCPackage pkg) throws IOException {
+		try {
+			return new XSSFReader(pkg);
+		} catch (OpenXML4JException ex) {
+			throw new JFunkException("Could not open Excel file: " + ex.getMessage(), ex);
+		}
+	}
+
+	private static XMLReader newXMLReader() throws ParserConfigurationException, SAXException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newSAXParser().getXMLReader();
+	}
+
+	/**
+	 * Collects the formatted cell values of a sheet. Missing cells within a row are filled with
+	 * empty strings, so blank cells yield the same values as with the non-streaming mode. Missing
+	 * rows are added as empty rows.
+	 */
+	static class CellCollector implements SheetContentsHandler {
+		final List<List<String>> rows = newArrayList();
+		private List<String> currentRow;
+
+		@Override
+		public void startRow(final int rowNum) {
+			while (rows.size() < rowNum) {
+				rows.add(Collections.<String>emptyList());
+			}
+			currentRow = newArrayList();
+		}
+
+		@Override
+		public void endRow() {
+			rows.add(currentRow);
+			currentRow = null;
+		}
+
+		@Override
+		public void cell(final String cellReference, final String formattedValue) {
+			int columnIndex = new CellReference(cellReference).getCol();
+			while (currentRow.size() < columnIndex) {
+				currentRow.add("");
+			}
+			currentRow.add(formattedValue == null ? "" : formattedValue);
+		}
+
+		@Override
+		public void headerFooter(final String text, final boolean isHeader, final String tagName) {
+			// not relevant for data
+		}
+	}
+}
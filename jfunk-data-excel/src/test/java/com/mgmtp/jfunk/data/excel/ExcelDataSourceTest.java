@@ -70,8 +70,21 @@ public class ExcelDataSourceTest {
 		assertThat(actualData).isEqualTo(expectedData);
 	}
 
+	private void testStreamingExcelFile(final String path, final DataOrientation dataOrientation) throws InvalidFormatException,
+			IOException {
+		ExcelFile excelFile = new StreamingExcelFile(new File(path), dataOrientation, new DataFormatter());
+		excelFile.load();
+		assertThat(excelFile.getSheetData("sheet_1")).isEqualTo(expectedData.get("sheet_1"));
+		assertThat(excelFile.getSheetData("no_such_sheet")).isNull();
+		assertThat(excelFile.getData()).isEqualTo(expectedData);
+	}
+
 	private void testGetNextDataSet(final String path, final DataOrientation dataOrientation) {
-		ExcelDataSource ds = createDataSource(path, dataOrientation);
+		testGetNextDataSet(path, dataOrientation, false);
+	}
+
+	private void testGetNextDataSet(final String path, final DataOrientation dataOrientation, final boolean streaming) {
+		ExcelDataSource ds = createDataSource(path, dataOrientation, streaming);
 
 		Map<String, List<Map<String, String>>> actualData = newHashMapWithExpectedSize(3);
 
@@ -90,9 +103,14 @@ public class ExcelDataSourceTest {
 	}
 
 	private ExcelDataSource createDataSource(final String path, final DataOrientation dataOrientation) {
+		return createDataSource(path, dataOrientation, false);
+	}
+
+	private ExcelDataSource createDataSource(final String path, final DataOrientation dataOrientation, final boolean streaming) {
 		Configuration config = new Configuration(Charsets.UTF_8);
 		config.put("dataSource.excel.0.path", path);
 		config.put("dataSource.excel.0.dataOrientation", dataOrientation.name());
+		config.put("dataSource.excel.0.streaming", String.valueOf(streaming));
 
 		return new ExcelDataSource(config, new DataFormatter());
 	}
@@ -107,6 +125,22 @@ public class ExcelDataSourceTest {
 		testExcelFile("src/test/resources/columnbased.xlsx", DataOrientation.columnbased);
 	}
 
+	@Test
+	public void testStreamingRowBasedExcelFile() throws InvalidFormatException, IOException {
+		testStreamingExcelFile("src/test/resources/rowbased.xlsx", DataOrientation.rowbased);
+	}
+
+	@Test
+	public void testStreamingColBasedExcelFile() throws InvalidFormatException, IOException {
+		testStreamingExcelFile("src/test/resources/columnbased.xlsx", DataOrientation.columnbased);
+	}
+
+	@Test
+	public void testGetNextDataSetStreaming() {
+		testGetNextDataSet("src/test/resources/rowbased.xlsx", DataOrientation.rowbased, true);
+		testGetNextDataSet("src/test/resources/columnbased.xlsx", DataOrientation.columnbased, true);
+	}
+
 	@Test
 	public void testGetNextDataSetRowBased() {
 		testGetNextDataSet("src/test/resources/rowbased.xlsx", DataOrientation.rowbased);
@@ -117,6 +151,48 @@ public class ExcelDataSourceTest {
 		testGetNextDataSet("src/test/resources/columnbased.xlsx", DataOrientation.columnbased);
 	}
 
+	@Test
+	public void testSharedExcelFileCache() {
+		ExcelFileCache cache = new ExcelFileCache();
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.put("dataSource.excel.0.path", "src/test/resources/rowbased.xlsx");
+
+		ExcelDataSource ds1 = new ExcelDataSource(config, new DataFormatter(), cache);
+		ExcelDataSource ds2 = new ExcelDataSource(config, new DataFormatter(), cache);
+
+		assertThat(ds1.getNextDataSet("sheet_0").getDataView()).isEqualTo(expectedData.get("sheet_0").get(0));
+		assertThat(ds1.getNextDataSet("sheet_0").getDataView()).isEqualTo(expectedData.get("sheet_0").get(1));
+
+		// each data source keeps its own index
+		assertThat(ds2.getNextDataSet("sheet_0").getDataView()).isEqualTo(expectedData.get("sheet_0").get(0));
+
+		assertThat(ds1.getExcelFiles().get(0)).isSameAs(ds2.getExcelFiles().get(0));
+		assertThat(cache.getStatistics().missCount()).isEqualTo(1L);
+		assertThat(cache.getStatistics().hitCount()).isEqualTo(1L);
+	}
+
+	@Test
+	public void testExcelFileCacheWeighsCells() {
+		ExcelFileCache cache = new ExcelFileCache();
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.put("dataSource.excel.0.path", "src/test/resources/rowbased.xlsx");
+		config.put("dataSource.excel.1.path", "src/test/resources/columnbased.xlsx");
+		config.put("dataSource.excel.1.dataOrientation", "columnbased");
+		config.put("dataSource.excel.1.streaming", "true");
+
+		ExcelDataSource ds1 = new ExcelDataSource(config, new DataFormatter(), cache);
+		ds1.getExcelFiles();
+		// only the sheet names of the streaming file have been read
+		assertThat(cache.getCachedCellCount()).isEqualTo(18L);
+
+		ds1.getExcelFiles().get(1).getSheetData("sheet_0");
+		new ExcelDataSource(config, new DataFormatter(), cache).getExcelFiles();
+		assertThat(cache.getCachedCellCount()).isEqualTo(18L + 9L);
+
+		cache.release();
+		assertThat(cache.getCachedCellCount()).isEqualTo(0L);
+	}
+
 	@Test
 	public void testHasMoreData() {
 		ExcelDataSource dataSource = createDataSource("src/test/resources/rowbased.xlsx", DataOrientation.rowbased);
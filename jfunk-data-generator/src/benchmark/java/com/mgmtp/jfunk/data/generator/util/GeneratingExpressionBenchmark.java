@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mgmtp.jfunk.common.random.MathRandom;
+
+/**
+ * Compares the throughput of generating values with a new {@link GeneratingExpression} per value,
+ * which is how the fields use it, with that of a shared {@link CompiledExpression} and with the
+ * {@link GeneratingExpression} of the baseline release, which parsed the expression for every
+ * value. The baseline classes are loaded from the artifact the {@code benchmark} profile copies to
+ * {@code target/benchmark}. The expressions only use syntax the baseline supports, i.e. unnested
+ * groups with two alternatives. Run with:
+ *
+ * <pre>
+ * mvn -Pbenchmark -pl jfunk-data-generator test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.mgmtp.jfunk.data.generator.util.GeneratingExpressionBenchmark
+ *     [-Dbenchmark.baseline.version=&lt;version&gt;]
+ * </pre>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GeneratingExpressionBenchmark {
+
+	private static final String GOOD_EXP_LATIN_1 = "[^\\x00-\\x1F\\x7F\\x80-\\x9F¤¦¨´¸¼½¾­]";
+	private static final String BAD_EXP_LATIN_1 = "[[^\\x00-\\x1F\\x7F\\x80-\\x9F\\s­][ ]]";
+
+	@Param({ "[A-Z]{3,5}-?[0-9]{3,}", "(Herr|Frau)_[A-Z][a-z]{2,10}_(von|zu)" })
+	private String expression;
+
+	private CharacterSet set;
+	private MathRandom random;
+	private CompiledExpression compiled;
+	private StringBuilder sb;
+
+	private Object baselineSet;
+	private Constructor<?> baselineConstructor;
+	private Method baselineGenerate;
+
+	@Setup
+	public void setUp() throws Exception {
+		set = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		random = new MathRandom(42L);
+		compiled = CompiledExpression.compile(expression, set);
+		sb = new StringBuilder();
+
+		ClassLoader loader = new BaselineClassLoader(getBaselineJar(), getClass().getClassLoader());
+		Class<?> setClass = loader.loadClass(CharacterSet.class.getName());
+		Class<?> expressionClass = loader.loadClass(GeneratingExpression.class.getName());
+		baselineSet = setClass.getMethod("createCharacterSet", String.class, String.class, String.class, String.class)
+				.invoke(null, "ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		baselineConstructor = expressionClass.getConstructor(MathRandom.class, String.class, setClass);
+		baselineGenerate = expressionClass.getMethod("generate", int.class, int.class);
+	}
+
+	private static URL getBaselineJar() throws IOException {
+		try {
+			File testClasses = new File(GeneratingExpressionBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			File jar = new File(testClasses.getParentFile(), "benchmark/jfunk-data-generator-baseline.jar");
+			if (!jar.isFile()) {
+				throw new IOException("Baseline artifact not found: " + jar + ". Build with -Pbenchmark.");
+			}
+			return jar.toURI().toURL();
+		} catch (URISyntaxException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Benchmark
+	public Object baselineGeneratingExpression() throws Exception {
+		return baselineGenerate.invoke(baselineConstructor.newInstance(random, expression, baselineSet), 12, 0);
+	}
+
+	@Benchmark
+	public String generatingExpression() throws IOException {
+		return new GeneratingExpression(random, expression, set).generate(12, 0);
+	}
+
+	@Benchmark
+	public String compiledExpression() {
+		sb.setLength(0);
+		compiled.generate(random, 12, sb);
+		return sb.toString();
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(GeneratingExpressionBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * Loads the generator classes from the baseline artifact and everything else, e. g.
+	 * {@link MathRandom}, from the parent, so the baseline runs against the same dependencies.
+	 */
+	static final class BaselineClassLoader extends URLClassLoader {
+
+		private static final String GENERATOR_PACKAGE = "com.mgmtp.jfunk.data.generator.";
+
+		BaselineClassLoader(final URL jar, final ClassLoader parent) {
+			super(new URL[] { jar }, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(GENERATOR_PACKAGE)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					c = findClass(name);
+				}
+				if (resolve) {
+					resolveClass(c);
+				}
+				return c;
+			}
+		}
+	}
+}
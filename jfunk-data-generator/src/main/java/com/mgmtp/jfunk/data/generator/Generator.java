@@ -15,32 +15,18 @@
  */
 package com.mgmtp.jfunk.data.generator;
 
-import static org.apache.commons.io.FileUtils.toFile;
-import static org.apache.commons.io.FilenameUtils.removeExtension;
-import static org.apache.commons.io.IOUtils.closeQuietly;
-
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
 import java.util.Collection;
 import java.util.List;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
-import org.jdom.input.SAXBuilder;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.inject.Injector;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Configuration;
-import com.mgmtp.jfunk.common.util.ResourceLoader;
 import com.mgmtp.jfunk.data.generator.constraint.Constraint;
 import com.mgmtp.jfunk.data.generator.constraint.ConstraintFactory;
 import com.mgmtp.jfunk.data.generator.control.ControlFactory;
@@ -48,13 +34,12 @@ import com.mgmtp.jfunk.data.generator.data.IndexedFields;
 import com.mgmtp.jfunk.data.generator.exception.IdNotFoundException;
 import com.mgmtp.jfunk.data.generator.field.FieldFactory;
 import com.mgmtp.jfunk.data.generator.util.CharacterSet;
-import com.mgmtp.jfunk.data.generator.util.XMLTags;
 
 /**
  * The jFunk data generator provides an easy way to generate data which can then be used to fill web
  * forms. The data generation is performed on-the-fly during the test execution. This class is the
- * starting point for generating data. The method {@link #parseXml(IndexedFields)} reads a XML based
- * configuration file and initializes all constraint- and field objects. Constraint objects can be
+ * starting point for generating data. The method {@link #init(GeneratorModel)} initializes all
+ * constraint- and field objects from a parsed XML based configuration file. Constraint objects can be
  * obtained using {@link #getConstraint(String)}. All available constraints can be found in the
  * subpackage {@code constraint}.
  * 
@@ -90,48 +75,31 @@ public class Generator {
 	}
 
 	public void parseXml(final IndexedFields theIndexedFields) throws IOException, JDOMException {
-		this.indexedFields = theIndexedFields;
-		final String generatorFile = configuration.get(GeneratorConstants.GENERATOR_CONFIG_FILE);
-		if (StringUtils.isBlank(generatorFile)) {
+		init(GeneratorModel.parse(configuration, theIndexedFields));
+	}
+
+	/**
+	 * Initializes the generator from the given model. Character sets are registered for the
+	 * current thread and new constraint objects are created from the model's constraint elements.
+	 * 
+	 * @param model
+	 *            the parsed generator configuration, possibly shared with other generators
+	 */
+	public void init(final GeneratorModel model) {
+		this.indexedFields = model.getIndexedFields();
+		if (!model.isConfigured()) {
 			LOGGER.info("No generator configuration file found");
 			return;
 		}
-		SAXBuilder builder = new SAXBuilder();
-		builder.setValidation(true);
-		builder.setIgnoringElementContentWhitespace(false);
-		builder.setFeature("http://apache.org/xml/features/validation/schema/normalized-value", false);
-		builder.setEntityResolver(new EntityResolver() {
-			@Override
-			public InputSource resolveEntity(final String publicId, final String systemId) throws IOException {
-				String resolvedSystemId = configuration.processPropertyValue(systemId);
-				URI uri = URI.create(resolvedSystemId);
-				File file = uri.isAbsolute() ? toFile(uri.toURL()) : new File(uri.toString());
-				return new InputSource(ResourceLoader.getBufferedReader(file, Charsets.UTF_8.name()));
-			}
-		});
-
-		InputStream in = ResourceLoader.getConfigInputStream(generatorFile);
-		Document doc = null;
-		try {
-			String systemId = ResourceLoader.getConfigDir() + '/' + removeExtension(generatorFile) + ".dtd";
-			doc = builder.build(in, systemId);
-			Element root = doc.getRootElement();
-
-			Element charsetsElement = root.getChild(XMLTags.CHARSETS);
-			@SuppressWarnings("unchecked")
-			List<Element> charsetElements = charsetsElement.getChildren(XMLTags.CHARSET);
-			for (Element element : charsetElements) {
-				CharacterSet.initCharacterSet(element);
-			}
-
-			@SuppressWarnings("unchecked")
-			List<Element> constraintElements = root.getChild(XMLTags.CONSTRAINTS).getChildren(XMLTags.CONSTRAINT);
-			constraints = Lists.newArrayListWithExpectedSize(constraintElements.size());
-			for (Element element : constraintElements) {
-				constraints.add(constraintFactory.createModel(random, element));
-			}
-		} finally {
-			closeQuietly(in);
+
+		for (CharacterSet characterSet : model.getCharacterSets().values()) {
+			CharacterSet.registerCharacterSet(characterSet);
+		}
+
+		List<Element> constraintElements = model.getConstraintElements();
+		constraints = Lists.newArrayListWithExpectedSize(constraintElements.size());
+		for (Element element : constraintElements) {
+			constraints.add(constraintFactory.createModel(random, element));
 		}
 
 		LOGGER.info("Generator was successfully initialized");
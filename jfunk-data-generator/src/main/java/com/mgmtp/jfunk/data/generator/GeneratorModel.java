@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator;
+
+import static org.apache.commons.io.FileUtils.toFile;
+import static org.apache.commons.io.FilenameUtils.removeExtension;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.common.util.ResourceLoader;
+import com.mgmtp.jfunk.data.generator.data.IndexedFields;
+import com.mgmtp.jfunk.data.generator.util.CharacterSet;
+import com.mgmtp.jfunk.data.generator.util.XMLTags;
+
+/**
+ * The parsed generator configuration, i. e. the validated constraint elements, the character sets,
+ * and the indexed fields. A model is not modified after parsing and may thus be shared by multiple
+ * threads. Each {@link Generator} creates its own constraints from the model, because constraints
+ * hold the state of the data generation.
+ *
+ * @see GeneratorModelCache
+ */
+public final class GeneratorModel {
+
+	private final String generatorFile;
+	private final List<Element> constraintElements;
+	private final Map<String, CharacterSet> characterSets;
+	private final IndexedFields indexedFields;
+
+	// files the model was parsed from with their modification dates
+	private final Map<File, Long> dependencies;
+
+	private GeneratorModel(final String generatorFile, final List<Element> constraintElements,
+			final Map<String, CharacterSet> characterSets, final IndexedFields indexedFields, final Map<File, Long> dependencies) {
+		this.generatorFile = generatorFile;
+		this.constraintElements = constraintElements;
+		this.characterSets = characterSets;
+		this.indexedFields = indexedFields;
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * Parses the generator configuration file ({@link GeneratorConstants#GENERATOR_CONFIG_FILE})
+	 * and the indexed fields file ({@link GeneratorConstants#INDEXED_FIELDS_FILE}) specified in the
+	 * given configuration.
+	 *
+	 * @param configuration
+	 *            the configuration
+	 * @return the model
+	 */
+	public static GeneratorModel parse(final Configuration configuration) throws IOException, JDOMException {
+		Map<File, Long> dependencies = Maps.newLinkedHashMap();
+
+		IndexedFields indexedFields = new IndexedFields();
+		String indexedFieldsFile = getResolved(configuration, GeneratorConstants.INDEXED_FIELDS_FILE);
+		if (indexedFieldsFile != null) {
+			indexedFields = IndexedFields.load(indexedFieldsFile);
+			addDependency(dependencies, ResourceLoader.getConfigFile(indexedFieldsFile));
+		}
+
+		return parse(configuration, indexedFields, dependencies);
+	}
+
+	/**
+	 * Gets a property with all placeholders resolved against the given configuration. Values
+	 * inherited from defaults are not resolved by {@link Configuration#get(Object)}.
+	 */
+	static String getResolved(final Configuration configuration, final String key) {
+		return configuration.processPropertyValue(configuration.get(key));
+	}
+
+	/**
+	 * Parses the generator configuration file ({@link GeneratorConstants#GENERATOR_CONFIG_FILE})
+	 * specified in the given configuration.
+	 *
+	 * @param configuration
+	 *            the configuration
+	 * @param indexedFields
+	 *            the indexed fields
+	 * @return the model
+	 */
+	public static GeneratorModel parse(final Configuration configuration, final IndexedFields indexedFields)
+			throws IOException, JDOMException {
+		return parse(configuration, indexedFields, Maps.<File, Long>newLinkedHashMap());
+	}
+
+	private static GeneratorModel parse(final Configuration configuration, final IndexedFields indexedFields,
+			final Map<File, Long> dependencies) throws IOException, JDOMException {
+		final String generatorFile = getResolved(configuration, GeneratorConstants.GENERATOR_CONFIG_FILE);
+		if (StringUtils.isBlank(generatorFile)) {
+			return new GeneratorModel(null, Collections.<Element>emptyList(), Collections.<String, CharacterSet>emptyMap(),
+					indexedFields, ImmutableMap.copyOf(dependencies));
+		}
+		addDependency(dependencies, ResourceLoader.getConfigFile(generatorFile));
+
+		SAXBuilder builder = new SAXBuilder();
+		builder.setValidation(true);
+		builder.setIgnoringElementContentWhitespace(false);
+		builder.setFeature("http://apache.org/xml/features/validation/schema/normalized-value", false);
+		builder.setEntityResolver(new EntityResolver() {
+			@Override
+			public InputSource resolveEntity(final String publicId, final String systemId) throws IOException {
+				String resolvedSystemId = configuration.processPropertyValue(systemId);
+				URI uri = URI.create(resolvedSystemId);
+				File file = uri.isAbsolute() ? toFile(uri.toURL()) : new File(uri.toString());
+				addDependency(dependencies, file);
+				return new InputSource(ResourceLoader.getBufferedReader(file, Charsets.UTF_8.name()));
+			}
+		});
+
+		InputStream in = ResourceLoader.getConfigInputStream(generatorFile);
+		try {
+			String systemId = ResourceLoader.getConfigDir() + '/' + removeExtension(generatorFile) + ".dtd";
+			Document doc = builder.build(in, systemId);
+			Element root = doc.getRootElement();
+
+			ImmutableMap.Builder<String, CharacterSet> characterSets = ImmutableMap.builder();
+			@SuppressWarnings("unchecked")
+			List<Element> charsetElements = root.getChild(XMLTags.CHARSETS).getChildren(XMLTags.CHARSET);
+			for (Element element : charsetElements) {
+				CharacterSet characterSet = CharacterSet.newCharacterSet(element);
+				characterSets.put(characterSet.getId(), characterSet);
+			}
+
+			@SuppressWarnings("unchecked")
+			List<Element> constraintElements = root.getChild(XMLTags.CONSTRAINTS).getChildren(XMLTags.CONSTRAINT);
+
+			return new GeneratorModel(generatorFile, ImmutableList.copyOf(constraintElements), characterSets.build(),
+					indexedFields, ImmutableMap.copyOf(dependencies));
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	private static void addDependency(final Map<File, Long> dependencies, final File file) {
+		// resources loaded from the classpath do not change
+		if (file.isFile()) {
+			dependencies.put(file.getAbsoluteFile(), file.lastModified());
+		}
+	}
+
+	/**
+	 * @return {@code true} if a generator configuration file is configured
+	 */
+	public boolean isConfigured() {
+		return generatorFile != null;
+	}
+
+	/**
+	 * @return the generator configuration file
+	 */
+	public String getGeneratorFile() {
+		return generatorFile;
+	}
+
+	/**
+	 * @return the validated constraint elements; the elements must not be modified
+	 */
+	public List<Element> getConstraintElements() {
+		return constraintElements;
+	}
+
+	/**
+	 * @return the character sets by id
+	 */
+	public Map<String, CharacterSet> getCharacterSets() {
+		return characterSets;
+	}
+
+	/**
+	 * @return the indexed fields
+	 */
+	public IndexedFields getIndexedFields() {
+		return indexedFields;
+	}
+
+	/**
+	 * @return {@code true} if none of the files the model was parsed from has been modified since
+	 */
+	public boolean isUpToDate() {
+		for (Map.Entry<File, Long> entry : dependencies.entrySet()) {
+			if (entry.getKey().lastModified() != entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the SHA-256 hash over the contents of the files the model was parsed from
+	 */
+	public HashCode computeHash() throws IOException {
+		List<HashCode> hashes = Lists.newArrayListWithCapacity(dependencies.size() + 1);
+		hashes.add(Hashing.sha256().hashString(String.valueOf(generatorFile), Charsets.UTF_8));
+		for (File file : dependencies.keySet()) {
+			hashes.add(Files.asByteSource(file).hash(Hashing.sha256()));
+		}
+		return Hashing.combineOrdered(hashes);
+	}
+
+	/**
+	 * Creates a copy of this model with the current modification dates of its files.
+	 */
+	GeneratorModel touch() {
+		Map<File, Long> touched = Maps.newLinkedHashMap();
+		for (File file : dependencies.keySet()) {
+			touched.put(file, file.lastModified());
+		}
+		return new GeneratorModel(generatorFile, constraintElements, characterSets, indexedFields, ImmutableMap.copyOf(touched));
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Singleton;
+
+import org.apache.log4j.Logger;
+import org.jdom.JDOMException;
+
+import com.google.common.hash.HashCode;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.common.util.ResourceLoader;
+
+/**
+ * Thread-safe cache for {@link GeneratorModel}s, so the generator configuration is parsed and
+ * validated only once instead of once per script. Models are cached per generator configuration
+ * file, indexed fields file, and config directory, with placeholders in the file names resolved.
+ * A cached model is parsed again when one of its
+ * files has been modified and the files' content hash differs from that of the cached model.
+ *
+ */
+@Singleton
+public class GeneratorModelCache {
+	private static final Logger LOG = Logger.getLogger(GeneratorModelCache.class);
+
+	private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong parses = new AtomicLong();
+
+	/**
+	 * Gets the model for the generator configuration specified in the given configuration, parsing
+	 * it if it has not yet been parsed or has changed since.
+	 *
+	 * @param configuration
+	 *            the configuration
+	 * @return the model
+	 */
+	public GeneratorModel getModel(final Configuration configuration) throws IOException, JDOMException {
+		// the model is parsed from the resolved file names, so configurations resolving placeholders
+		// differently must not share it
+		String key = ResourceLoader.getConfigDir() + '|'
+				+ GeneratorModel.getResolved(configuration, GeneratorConstants.GENERATOR_CONFIG_FILE) + '|'
+				+ GeneratorModel.getResolved(configuration, GeneratorConstants.INDEXED_FIELDS_FILE);
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			Entry newEntry = new Entry();
+			entry = cache.putIfAbsent(key, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		return entry.getModel(configuration);
+	}
+
+	/**
+	 * @return the number of requests served from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of times a generator configuration was parsed
+	 */
+	public long getParseCount() {
+		return parses.get();
+	}
+
+	private final class Entry {
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private GeneratorModel model;
+		private HashCode hash;
+
+		GeneratorModel getModel(final Configuration configuration) throws IOException, JDOMException {
+			lock.lock();
+			try {
+				if (model != null) {
+					if (model.isUpToDate()) {
+						hits.incrementAndGet();
+						return model;
+					}
+					if (model.computeHash().equals(hash)) {
+						model = model.touch();
+						hits.incrementAndGet();
+						return model;
+					}
+					LOG.info("Generator configuration has changed: " + model.getGeneratorFile());
+				}
+
+				long start = System.currentTimeMillis();
+				model = GeneratorModel.parse(configuration);
+				hash = model.computeHash();
+				parses.incrementAndGet();
+				LOG.info("Parsed generator configuration " + model.getGeneratorFile() + " (took "
+						+ (System.currentTimeMillis() - start) + " ms)");
+				return model;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -30,6 +30,7 @@ import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.random.MathRandom;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.data.generator.Generator;
+import com.mgmtp.jfunk.data.generator.GeneratorModelCache;
 import com.mgmtp.jfunk.data.generator.data.FieldGenerator;
 import com.mgmtp.jfunk.data.generator.data.FormDataFactory;
 import com.mgmtp.jfunk.data.generator.data.GeneratorDataSource;
@@ -55,6 +56,7 @@ public class GeneratorModule extends AbstractModule {
 		dataSources.addBinding("generator").to(GeneratorDataSource.class);
 
 		bind(LoremIpsumGenerator.class);
+		bind(GeneratorModelCache.class);
 	}
 
 	@Provides
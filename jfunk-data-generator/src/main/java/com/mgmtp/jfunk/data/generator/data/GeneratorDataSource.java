@@ -17,7 +17,6 @@ package com.mgmtp.jfunk.data.generator.data;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,20 +24,17 @@ import javax.inject.Provider;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.input.SAXBuilder;
 
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ScriptScoped;
 import com.mgmtp.jfunk.common.util.Configuration;
-import com.mgmtp.jfunk.common.util.ResourceLoader;
 import com.mgmtp.jfunk.data.DataSet;
 import com.mgmtp.jfunk.data.DefaultDataSet;
 import com.mgmtp.jfunk.data.generator.Generator;
 import com.mgmtp.jfunk.data.generator.GeneratorConstants;
+import com.mgmtp.jfunk.data.generator.GeneratorModelCache;
 import com.mgmtp.jfunk.data.generator.constraint.Constraint;
 import com.mgmtp.jfunk.data.generator.constraint.base.BaseConstraint;
 import com.mgmtp.jfunk.data.source.BaseDataSource;
@@ -56,13 +52,16 @@ public final class GeneratorDataSource extends BaseDataSource {
 	private Generator generator;
 	private final FormDataFactory formDataFactory;
 	private final Provider<Generator> generatorProvider;
+	private final GeneratorModelCache generatorModelCache;
 	private final Set<String> dataSetKeys = Sets.newHashSet();
 
 	@Inject
-	public GeneratorDataSource(final Configuration configuration, final FormDataFactory formDataFactory, final Provider<Generator> generatorProvider) {
+	public GeneratorDataSource(final Configuration configuration, final FormDataFactory formDataFactory, final Provider<Generator> generatorProvider,
+			final GeneratorModelCache generatorModelCache) {
 		super(configuration);
 		this.formDataFactory = formDataFactory;
 		this.generatorProvider = generatorProvider;
+		this.generatorModelCache = generatorModelCache;
 	}
 
 	@Override
@@ -158,39 +157,10 @@ public final class GeneratorDataSource extends BaseDataSource {
 			GeneratorState state = GeneratorState.currentState();
 			state.initMathRandom(seed);
 
-			String indexedFieldsFile = configuration.get(GeneratorConstants.INDEXED_FIELDS_FILE);
-
 			generator = generatorProvider.get();
 
 			try {
-				// Load configuration for indexed fields
-				SAXBuilder builder = new SAXBuilder();
-				IndexedFields indexedFields = new IndexedFields();
-
-				if (indexedFieldsFile != null) {
-					Document doc = builder.build(ResourceLoader.getConfigInputStream(indexedFieldsFile));
-
-					@SuppressWarnings("unchecked")
-					List<Element> elements = doc.getRootElement().getChildren("field-set");
-					for (Element fieldSetElem : elements) {
-						String id = fieldSetElem.getAttributeValue("id");
-						String dataKey = fieldSetElem.getAttributeValue("dataKey");
-						String dependsOn = fieldSetElem.getAttributeValue("dependsOn", "");
-						FieldSet fieldSet = new FieldSet(id, dataKey, dependsOn);
-						indexedFields.addFieldSet(fieldSet);
-
-						@SuppressWarnings("unchecked")
-						List<Element> fieldElems = fieldSetElem.getChildren("field");
-						for (Element fieldElem : fieldElems) {
-							String fieldId = fieldElem.getAttributeValue("id");
-							boolean unique = Boolean.parseBoolean(fieldElem.getAttributeValue("unique"));
-							String className = fieldElem.getAttributeValue("class", "");
-							Field field = new Field(fieldId, unique, className);
-							fieldSet.addField(field);
-						}
-					}
-				}
-				generator.parseXml(indexedFields);
+				generator.init(generatorModelCache.getModel(configuration));
 			} catch (Exception ex) {
 				throw new IllegalStateException("Error initializing generator.", ex);
 			}
@@ -15,16 +15,26 @@
  */
 package com.mgmtp.jfunk.data.generator.data;
 
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.mgmtp.jfunk.common.util.ResourceLoader;
 import com.mgmtp.jfunk.data.generator.GeneratorConstants;
 
 /**
@@ -36,6 +46,46 @@ public class IndexedFields {
 
 	private final Map<String, Set<FieldSet>> fieldSetsMap = Maps.newHashMap();
 
+	/**
+	 * Loads the indexed fields from the specified configuration file. The result is not modified
+	 * afterwards and may thus be shared by multiple threads.
+	 * 
+	 * @param indexedFieldsFile
+	 *            the configuration file, relative to the config directory
+	 * @return the indexed fields
+	 */
+	public static IndexedFields load(final String indexedFieldsFile) throws IOException, JDOMException {
+		IndexedFields indexedFields = new IndexedFields();
+
+		InputStream in = ResourceLoader.getConfigInputStream(indexedFieldsFile);
+		try {
+			Document doc = new SAXBuilder().build(in);
+
+			@SuppressWarnings("unchecked")
+			List<Element> elements = doc.getRootElement().getChildren("field-set");
+			for (Element fieldSetElem : elements) {
+				String id = fieldSetElem.getAttributeValue("id");
+				String dataKey = fieldSetElem.getAttributeValue("dataKey");
+				String dependsOn = fieldSetElem.getAttributeValue("dependsOn", "");
+				FieldSet fieldSet = new FieldSet(id, dataKey, dependsOn);
+				indexedFields.addFieldSet(fieldSet);
+
+				@SuppressWarnings("unchecked")
+				List<Element> fieldElems = fieldSetElem.getChildren("field");
+				for (Element fieldElem : fieldElems) {
+					String fieldId = fieldElem.getAttributeValue("id");
+					boolean unique = Boolean.parseBoolean(fieldElem.getAttributeValue("unique"));
+					String className = fieldElem.getAttributeValue("class", "");
+					Field field = new Field(fieldId, unique, className);
+					fieldSet.addField(field);
+				}
+			}
+		} finally {
+			closeQuietly(in);
+		}
+		return indexedFields;
+	}
+
 	public void addFieldSet(final FieldSet fieldSet) {
 		Set<FieldSet> fieldSets = fieldSetsMap.get(fieldSet.getDataKey());
 		if (fieldSets == null) {
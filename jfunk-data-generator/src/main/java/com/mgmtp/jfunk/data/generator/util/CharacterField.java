@@ -78,6 +78,15 @@ class CharacterField {
 		forbidden = new RandomCollection<Character>(random, forbiddenChars);
 	}
 
+	/**
+	 * Initializes the new instance using precomputed allowed and forbidden characters.
+	 */
+	CharacterField(final MathRandom random, final Collection<Character> allowedChars, final Collection<Character> forbiddenChars) {
+		canBad = !forbiddenChars.isEmpty();
+		allowed = new RandomCollection<Character>(random, allowedChars);
+		forbidden = new RandomCollection<Character>(random, forbiddenChars);
+	}
+
 	/**
 	 * Provides a random allowed character
 	 * 
@@ -18,11 +18,18 @@ package com.mgmtp.jfunk.data.generator.util;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,12 +40,23 @@ import org.jdom.Element;
 /**
  * This class represents all characters supported by a given encoding. It can be limited further
  * using a regular expression, so only characters matching the expression will be retained.
+ * <p>
+ * Instances are immutable and may be shared by multiple threads. Character sets created via
+ * {@link #newCharacterSet(Element)} or
+ * {@link #createCharacterSet(String, String, String, String)} are built only once per definition
+ * and shared process-wide. Only the mapping of ids to character sets used by
+ * {@link #getCharacterSet(String)} is kept per thread, because each script may use its own
+ * generator configuration.
+ * </p>
  * 
  */
 public class CharacterSet {
 
 	public static final Logger LOG = Logger.getLogger(CharacterSet.class);
 
+	// shared instances by encoding, good expression, bad expression, and id
+	private static final ConcurrentMap<List<String>, CharacterSet> INSTANCES = new ConcurrentHashMap<List<String>, CharacterSet>();
+
 	private static ThreadLocal<Map<String, CharacterSet>> characterSets = new ThreadLocal<Map<String, CharacterSet>>() {
 		@Override
 		protected Map<String, CharacterSet> initialValue() {
@@ -46,80 +64,159 @@ public class CharacterSet {
 		}
 	};
 
-	private String characterSetId;
-	private final Map<Character, Boolean> map = new HashMap<Character, Boolean>();
-	private char[] characters;
-	private char[] forbiddenCharacters;
+	private static final AtomicLong SERIAL = new AtomicLong();
+
+	// identifies this instance in caches, which must not keep it reachable as a key
+	private final long serial = SERIAL.incrementAndGet();
+	private final String characterSetId;
+	// all characters of the encoding
+	private final BitSet contained;
+	// the characters of the encoding matching the good expression
+	private final BitSet allowed;
+	private final char[] characters;
+	private final char[] forbiddenCharacters;
 
 	/**
-	 * Used only internally to initialize an empty instance.
+	 * Used only internally to initialize an inverse instance.
 	 * 
 	 * @see #getInverse()
 	 */
-	private CharacterSet() {
-		// Used only internally to initialize an empty instance.
+	private CharacterSet(final String characterSetId, final BitSet contained, final BitSet allowed, final char[] characters,
+			final char[] forbiddenCharacters) {
+		this.characterSetId = characterSetId;
+		this.contained = contained;
+		this.allowed = allowed;
+		this.characters = characters;
+		this.forbiddenCharacters = forbiddenCharacters;
 	}
 
 	/**
 	 * Creates a new instance. All characters matching the given regular expression will be added to
 	 * the character array. If the expression is null all characters supported by this encoding will
-	 * be used. The encoding used must only use one Byte per character as simply all 0-255 char
-	 * values are used to determine the associated character. Should the encoding use more than 1
-	 * Byte an IllegalArgumentException is thrown.
+	 * be used. For encodings using one byte per character, all 0-255 byte values are decoded to
+	 * determine the associated characters. For encodings using more than one byte per character,
+	 * all characters of the Basic Multilingual Plane the encoding can encode are used.
 	 */
 	CharacterSet(final String encoding, final String goodExpression, final String badExpression, final String characterSetId)
 			throws UnsupportedEncodingException {
 		this.characterSetId = characterSetId;
-		Charset charset = Charset.forName(encoding);
-		CharsetEncoder encoder = charset.newEncoder();
-		int bytesPerChar = (int) (encoder.maxBytesPerChar() + 0.5);
-		if (bytesPerChar > 1) {
-			throw new IllegalArgumentException("this characterset class can currently handle only one byte charsets!");
-		}
-		characters = new char[256];
-		for (int i = 0; i < characters.length; i++) {
-			String s = new String(new byte[] { (byte) i }, encoding);
-			characters[i] = s.charAt(0);
+		char[] all = encodingCharacters(Charset.forName(encoding));
+
+		contained = new BitSet(Character.MAX_VALUE + 1);
+		for (char character : all) {
+			contained.set(character);
 		}
-		forbiddenCharacters = new char[0];
+
 		if (goodExpression != null && goodExpression.length() > 0 && badExpression != null && badExpression.length() > 0) {
-			ArrayList<Character> list = new ArrayList<Character>(characters.length);
-			ArrayList<Character> exList = new ArrayList<Character>(characters.length);
-			Pattern goodPattern = Pattern.compile(goodExpression);
-			Pattern badPattern = Pattern.compile(badExpression);
-			for (char character : characters) {
-				Matcher goodM = goodPattern.matcher(Character.toString(character));
-				Matcher badM = badPattern.matcher(Character.toString(character));
-				if (goodM.matches()) {
-					map.put(character, Boolean.TRUE);
-					list.add(character);
-				} else {
-					map.put(character, Boolean.FALSE);
+			allowed = new BitSet(Character.MAX_VALUE + 1);
+			char[] goodChars = new char[all.length];
+			char[] badChars = new char[all.length];
+			int goodCount = 0;
+			int badCount = 0;
+			Matcher goodM = Pattern.compile(goodExpression).matcher("");
+			Matcher badM = Pattern.compile(badExpression).matcher("");
+			for (char character : all) {
+				String s = String.valueOf(character);
+				if (goodM.reset(s).matches()) {
+					allowed.set(character);
+					goodChars[goodCount++] = character;
 				}
-				if (badM.matches()) {
-					exList.add(character);
+				if (badM.reset(s).matches()) {
+					badChars[badCount++] = character;
 				}
 			}
-			characters = new char[list.size()];
-			for (int i = 0; i < characters.length; i++) {
-				characters[i] = list.get(i);
+			characters = Arrays.copyOf(goodChars, goodCount);
+			forbiddenCharacters = Arrays.copyOf(badChars, badCount);
+		} else {
+			allowed = contained;
+			characters = all;
+			forbiddenCharacters = new char[0];
+		}
+	}
+
+	private static char[] encodingCharacters(final Charset charset) {
+		CharsetEncoder encoder = charset.newEncoder();
+		int bytesPerChar = (int) (encoder.maxBytesPerChar() + 0.5);
+		if (bytesPerChar <= 1) {
+			char[] result = new char[256];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = new String(new byte[] { (byte) i }, charset).charAt(0);
 			}
-			forbiddenCharacters = new char[exList.size()];
-			for (int i = 0; i < forbiddenCharacters.length; i++) {
-				forbiddenCharacters[i] = exList.get(i);
+			return result;
+		}
+
+		char[] result = new char[Character.MAX_VALUE + 1];
+		int count = 0;
+		for (int i = Character.MIN_VALUE; i <= Character.MAX_VALUE; i++) {
+			char character = (char) i;
+			if (!Character.isSurrogate(character) && Character.isDefined(character) && encoder.canEncode(character)) {
+				result[count++] = character;
 			}
 		}
+		return Arrays.copyOf(result, count);
 	}
 
 	public static void initCharacterSet(final Element characterSetElement) throws UnsupportedEncodingException {
+		registerCharacterSet(newCharacterSet(characterSetElement));
+	}
+
+	/**
+	 * Returns the CharacterSet for the given element without registering it for the current
+	 * thread. Instances are built only once per definition and may be shared by multiple threads.
+	 * 
+	 * @see #registerCharacterSet(CharacterSet)
+	 */
+	public static CharacterSet newCharacterSet(final Element characterSetElement) throws UnsupportedEncodingException {
 		String characterSetId = characterSetElement.getAttributeValue(XMLTags.ID);
 		String encoding = characterSetElement.getChildText(XMLTags.ENCODING);
 		String goodExpression = characterSetElement.getChildText(XMLTags.GOOD_EXPRESSION);
 		String badExpression = characterSetElement.getChildText(XMLTags.BAD_EXPRESSION);
 
-		CharacterSet cs = new CharacterSet(encoding, goodExpression, badExpression, characterSetId);
-		characterSets.get().put(characterSetId, cs);
-		LOG.info("Added " + cs);
+		return sharedCharacterSet(encoding, goodExpression, badExpression, characterSetId);
+	}
+
+	private static CharacterSet sharedCharacterSet(final String encoding, final String goodExpression, final String badExpression,
+			final String characterSetId) throws UnsupportedEncodingException {
+		List<String> key = Arrays.asList(encoding, goodExpression, badExpression, characterSetId);
+		CharacterSet cs = INSTANCES.get(key);
+		if (cs == null) {
+			CharacterSet newCs = new CharacterSet(encoding, goodExpression, badExpression, characterSetId);
+			cs = INSTANCES.putIfAbsent(key, newCs);
+			if (cs == null) {
+				cs = newCs;
+				LOG.info("Created " + cs);
+			}
+		}
+		return cs;
+	}
+
+	/**
+	 * Registers the given CharacterSet for the current thread, so it can be retrieved using
+	 * {@link #getCharacterSet(String)}.
+	 */
+	public static void registerCharacterSet(final CharacterSet characterSet) {
+		CharacterSet previous = characterSets.get().put(characterSet.getId(), characterSet);
+		if (previous != characterSet) {
+			LOG.info("Added character set " + characterSet.getId());
+		}
+	}
+
+	/**
+	 * Returns the id of this CharacterSet.
+	 * 
+	 * @return the id of this CharacterSet
+	 */
+	public String getId() {
+		return characterSetId;
+	}
+
+	/**
+	 * Returns the serial number, which is unique for each instance.
+	 * 
+	 * @return the serial number of this CharacterSet
+	 */
+	long getSerial() {
+		return serial;
 	}
 
 	/**
@@ -130,10 +227,11 @@ public class CharacterSet {
 	 *         this instance
 	 */
 	public CharacterSet getInverse() {
-		CharacterSet n = new CharacterSet();
-		n.forbiddenCharacters = characters;
-		n.characters = forbiddenCharacters;
-		return n;
+		BitSet inverseAllowed = new BitSet(Character.MAX_VALUE + 1);
+		for (char character : forbiddenCharacters) {
+			inverseAllowed.set(character);
+		}
+		return new CharacterSet(null, contained, inverseAllowed, forbiddenCharacters, characters);
 	}
 
 	/**
@@ -170,45 +268,99 @@ public class CharacterSet {
 		return characters[index];
 	}
 
+	/**
+	 * Returns an unmodifiable view of all characters of the encoding.
+	 * 
+	 * @return all characters of the encoding
+	 */
 	public Set<Character> getCharacters() {
-		return Collections.unmodifiableSet(map.keySet());
+		return new AbstractSet<Character>() {
+			@Override
+			public boolean contains(final Object o) {
+				return o instanceof Character && contained.get((Character) o);
+			}
+
+			@Override
+			public int size() {
+				return contained.cardinality();
+			}
+
+			@Override
+			public Iterator<Character> iterator() {
+				return new Iterator<Character>() {
+					private int next = contained.nextSetBit(0);
+
+					@Override
+					public boolean hasNext() {
+						return next >= 0;
+					}
+
+					@Override
+					public Character next() {
+						if (next < 0) {
+							throw new NoSuchElementException();
+						}
+						char result = (char) next;
+						next = contained.nextSetBit(next + 1);
+						return result;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns whether the given character is a character of the encoding.
+	 * 
+	 * @return {@code true} if the character is part of this CharacterSet
+	 */
+	public boolean contains(final char ch) {
+		return contained.get(ch);
 	}
 
 	@Override
 	public String toString() {
-		StringBuffer buf = new StringBuffer(characters.length * 4 + 33);
+		StringBuilder buf = new StringBuilder(Math.min(characters.length, 256) * 4 + 64);
 
 		buf.append("CharacterSet [id=");
 		buf.append(characterSetId);
-		buf.append(", \n\tgood: (");
-		for (int i = 0; i < characters.length; i++) {
-			if (i > 0) {
-				buf.append(',');
-			}
-			buf.append('\'');
-			buf.append(characters[i]);
-			buf.append('\'');
+		buf.append(", \n\tgood: ");
+		appendCharacters(buf, characters);
+		buf.append("\n\tbad: ");
+		appendCharacters(buf, forbiddenCharacters);
+		buf.append("\n]");
+
+		return buf.toString();
+	}
+
+	private static void appendCharacters(final StringBuilder buf, final char[] chars) {
+		if (chars.length > 256) {
+			// do not list the characters of multi-byte encodings
+			buf.append(chars.length).append(" characters");
+			return;
 		}
-		buf.append(")\n\tbad: (");
-		for (int i = 0; i < forbiddenCharacters.length; i++) {
+		buf.append('(');
+		for (int i = 0; i < chars.length; i++) {
 			if (i > 0) {
 				buf.append(',');
 			}
 			buf.append('\'');
-			buf.append(forbiddenCharacters[i]);
+			buf.append(chars[i]);
 			buf.append('\'');
 		}
-		buf.append(")\n]");
-
-		return buf.toString();
+		buf.append(')');
 	}
 
 	public boolean isAllowed(final char ch) {
-		Boolean allowed = map.get(ch);
-		if (allowed == null) {
+		if (!contained.get(ch)) {
 			throw new IllegalArgumentException("The character" + ch + " is not part of the CharacterSet.");
 		}
-		return allowed;
+		return allowed.get(ch);
 	}
 
 	/**
@@ -231,9 +383,8 @@ public class CharacterSet {
 			LOG.info("CharacterSet with id=" + characterSetId + " already created");
 			return characterSets.get().get(characterSetId);
 		}
-		CharacterSet cs = new CharacterSet(encoding, goodExpression, badExpression, characterSetId);
-		characterSets.get().put(characterSetId, cs);
-		LOG.info("Added " + cs);
+		CharacterSet cs = sharedCharacterSet(encoding, goodExpression, badExpression, characterSetId);
+		registerCharacterSet(cs);
 		return cs;
 	}
 }
\ No newline at end of file
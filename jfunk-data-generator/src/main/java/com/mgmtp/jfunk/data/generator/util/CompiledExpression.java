@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Chars;
+import com.mgmtp.jfunk.common.random.MathRandom;
+import com.mgmtp.jfunk.common.util.Range;
+
+/**
+ * Compiled form of a {@link GeneratingExpression}. The expression is parsed once into an immutable
+ * tree whose alternations ({@code (a|b)}) are branches. Each distinct combination of chosen
+ * branches is parsed into nodes only once, and the allowed and forbidden characters of each node
+ * are computed only once, too. Instances hold no generation state and may be shared by multiple
+ * threads. Compiled expressions are cached per {@link CharacterSet} and expression.
+ * <p>
+ * Other than with {@link GeneratingExpression}, alternations are chosen anew for each generated
+ * value and characters are chosen uniformly from the allowed characters of a node.
+ * </p>
+ *
+ */
+public final class CompiledExpression {
+
+	private static final Logger LOG = Logger.getLogger(CompiledExpression.class);
+
+	static final int MAX_CACHED_EXPRESSIONS = 1000;
+
+	// compiled expressions by character set serial and expression, i. e. character sets are compared
+	// by identity; compiled expressions of character sets no longer used are evicted by size
+	private static final Cache<List<Object>, CompiledExpression> CACHE = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_EXPRESSIONS).build();
+
+	private final CharacterSet set;
+	private final Group root;
+
+	// parsed nodes by expression with resolved alternations
+	private final ConcurrentMap<String, Atom[]> atoms = new ConcurrentHashMap<String, Atom[]>();
+
+	private CompiledExpression(final String expression, final CharacterSet set) {
+		this.set = set;
+		int[] pos = { 0 };
+		List<Object[]> alternatives = parseAlternatives(expression, pos, false);
+		this.root = new Group(alternatives);
+	}
+
+	/**
+	 * Compiles the given expression or returns the cached compiled expression.
+	 *
+	 * @param expression
+	 *            the regular expression that determines the allowed character strings
+	 * @param set
+	 *            the CharacterSet that determines the basic set of characters
+	 * @return the compiled expression
+	 */
+	public static CompiledExpression compile(final String expression, final CharacterSet set) {
+		List<Object> key = Arrays.<Object>asList(set.getSerial(), expression);
+		CompiledExpression compiled = CACHE.getIfPresent(key);
+		if (compiled == null) {
+			CompiledExpression newCompiled = new CompiledExpression(expression, set);
+			compiled = CACHE.asMap().putIfAbsent(key, newCompiled);
+			if (compiled == null) {
+				compiled = newCompiled;
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * Generates a string of the given length consisting only of allowed characters.
+	 *
+	 * @param random
+	 *            the random source
+	 * @param total
+	 *            the desired length
+	 * @return the generated string
+	 */
+	public String generate(final MathRandom random, final int total) {
+		StringBuilder sb = new StringBuilder(Math.max(16, total));
+		generate(random, total, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Generates a string of the given length consisting only of allowed characters and appends it
+	 * to the given builder, which may be reused for subsequent calls.
+	 *
+	 * @param random
+	 *            the random source
+	 * @param total
+	 *            the desired length
+	 * @param out
+	 *            the builder to append the generated characters to
+	 */
+	public void generate(final MathRandom random, final int total, final StringBuilder out) {
+		Atom[] nodes = chooseAtoms(random, out);
+		if (nodes.length == 0) {
+			return;
+		}
+
+		int[] lengths = new int[nodes.length];
+		int length = 0;
+		int max = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			lengths[i] = nodes[i].range.getMin();
+			length += lengths[i];
+			max += nodes[i].range.getMax();
+		}
+		// distribute the remaining characters randomly, ignoring the local maxima only if necessary
+		boolean maxedOut = total > max;
+		while (length < total) {
+			int index = random.getInt(nodes.length - 1);
+			if (maxedOut || nodes[index].range.getMax() > lengths[index]) {
+				lengths[index]++;
+				length++;
+			}
+		}
+		// the total length is below the minimum, so the local minima are ignored
+		while (length > Math.max(total, 0)) {
+			int index = random.getInt(nodes.length - 1);
+			if (lengths[index] > 0) {
+				lengths[index]--;
+				length--;
+			}
+		}
+
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i].appendAllowedCharacters(random, lengths[i], out);
+		}
+	}
+
+	/**
+	 * Chooses the alternations and returns the corresponding nodes.
+	 *
+	 * @param random
+	 *            the random source used to choose the alternations
+	 * @param buffer
+	 *            a builder used temporarily; its length is restored before the method returns
+	 */
+	Atom[] chooseAtoms(final MathRandom random, final StringBuilder buffer) {
+		int start = buffer.length();
+		root.appendChoice(random, buffer);
+		String reduced = buffer.substring(start);
+		buffer.setLength(start);
+
+		Atom[] result = atoms.get(reduced);
+		if (result == null) {
+			result = parseAtoms(reduced);
+			Atom[] existing = atoms.putIfAbsent(reduced, result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	private Atom[] parseAtoms(final String expression) {
+		try {
+			List<Atom> result = new ArrayList<Atom>();
+			CharacterPushbackReader in = new CharacterPushbackReader(expression);
+			while (in.ready()) {
+				String characterExpression = parseNextCharacterExpression(in);
+				Range r = parseNextNumberExpression(in);
+				result.add(new Atom(characterExpression, r, set));
+			}
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Compiled expression " + expression + " into " + result.size() + " nodes");
+			}
+			return result.toArray(new Atom[result.size()]);
+		} catch (IOException ex) {
+			// cannot happen with a string reader
+			throw new IllegalArgumentException("Error parsing expression " + expression, ex);
+		}
+	}
+
+	/**
+	 * Parses the alternatives up to the closing bracket of the current group or the end of the
+	 * expression. An alternative is a sequence of literal strings and nested {@link Group}s.
+	 */
+	private static List<Object[]> parseAlternatives(final String expression, final int[] pos, final boolean inGroup) {
+		List<Object[]> alternatives = new ArrayList<Object[]>(2);
+		List<Object> current = new ArrayList<Object>();
+		StringBuilder literal = new StringBuilder();
+
+		while (pos[0] < expression.length()) {
+			char c = expression.charAt(pos[0]);
+			if (c == '\\' && pos[0] + 1 < expression.length()) {
+				literal.append(c).append(expression.charAt(pos[0] + 1));
+				pos[0] += 2;
+			} else if (c == '[') {
+				// pipes and brackets within character classes are no alternations
+				int openBraces = 0;
+				do {
+					c = expression.charAt(pos[0]++);
+					literal.append(c);
+					if (c == '[') {
+						openBraces++;
+					} else if (c == ']') {
+						openBraces--;
+					}
+				} while (openBraces > 0 && pos[0] < expression.length());
+			} else if (c == '(') {
+				pos[0]++;
+				List<Object[]> groupAlternatives = parseAlternatives(expression, pos, true);
+				if (groupAlternatives.size() > 1) {
+					flush(literal, current);
+					current.add(new Group(groupAlternatives));
+				} else {
+					// not an alternation, brackets are retained
+					literal.append('(');
+					for (Object part : groupAlternatives.get(0)) {
+						if (part instanceof String) {
+							literal.append(part);
+						} else {
+							flush(literal, current);
+							current.add(part);
+						}
+					}
+					literal.append(')');
+				}
+			} else if (c == ')' && inGroup) {
+				pos[0]++;
+				break;
+			} else if (c == '|') {
+				flush(literal, current);
+				alternatives.add(current.toArray());
+				current.clear();
+				pos[0]++;
+			} else {
+				literal.append(c);
+				pos[0]++;
+			}
+		}
+		flush(literal, current);
+		alternatives.add(current.toArray());
+		return alternatives;
+	}
+
+	private static void flush(final StringBuilder literal, final List<Object> parts) {
+		if (literal.length() > 0) {
+			parts.add(literal.toString());
+			literal.setLength(0);
+		}
+	}
+
+	static String parseNextCharacterExpression(final CharacterPushbackReader in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char c = in.readChar();
+		sb.append(c);
+		if ('[' == c) {
+			int openBraces = 1;
+			while (in.ready() && openBraces > 0) {
+				c = in.readChar();
+				sb.append(c);
+				if ('[' == c) {
+					openBraces++;
+				} else if (']' == c) {
+					openBraces--;
+				}
+			}
+			if (openBraces > 0) {
+				throw new IllegalArgumentException("the given regular expression was not valid; missing ]");
+			}
+		} else if ('\\' == c) {
+			c = in.readChar();
+			sb.append(c);
+			if ('p' == c) {
+				// read \p{...} class definition
+				c = in.readChar();
+				sb.append(c);
+				if ('{' == c) {
+					while (in.ready() && c != '}') {
+						c = in.readChar();
+						sb.append(c);
+					}
+					if (c != '}') {
+						throw new IllegalArgumentException("the given regular expression was not valid; missing }");
+					}
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	static Range parseNextNumberExpression(final CharacterPushbackReader in) throws IOException {
+		char c = in.readChar();
+		int[] ar = new int[2];
+		ar[0] = -1;
+		ar[1] = -1;
+		if ('{' == c) {
+			StringBuilder sb = new StringBuilder();
+			c = in.readChar();
+			// after { now so min number is coming
+			while (c != '}' && in.ready()) {
+				if (',' == c) {
+					try {
+						ar[0] = Integer.parseInt(sb.toString());
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("if giving number of occurrences with {n,m} you must specify a value for n", e);
+					}
+					sb.setLength(0);
+				} else {
+					sb.append(c);
+				}
+				c = in.readChar();
+			}
+			if (sb.length() > 0) {
+				ar[1] = Integer.parseInt(sb.toString());
+			}
+			if (ar[0] == -1) {
+				ar[0] = ar[1];
+			}
+		} else if ('?' == c) {
+			ar[0] = 0;
+			ar[1] = 1;
+		} else if ('+' == c) {
+			ar[0] = 1;
+		} else if ('*' == c) {
+			ar[0] = 0;
+		} else {
+			ar[0] = 1;
+			ar[1] = 1;
+			in.unread(c);
+		}
+		return new Range(ar[0], ar[1]);
+	}
+
+	/**
+	 * An alternation. Each alternative is a sequence of literal strings and nested groups.
+	 * <p>
+	 * Alternatives are chosen the way jFunk always resolved them, so seeded values do not change:
+	 * the groups of an alternative are resolved first, then a coin toss decides whether it is taken
+	 * or the next one is considered, i.e. of {@code (a|b|c)} {@code a} is chosen with a probability
+	 * of 1/2, {@code b} and {@code c} with 1/4 each.
+	 * </p>
+	 */
+	private static final class Group {
+		private final Object[][] alternatives;
+
+		Group(final List<Object[]> alternatives) {
+			this.alternatives = alternatives.toArray(new Object[alternatives.size()][]);
+		}
+
+		void appendChoice(final MathRandom random, final StringBuilder sb) {
+			int start = sb.length();
+			for (int i = 0; i < alternatives.length - 1; i++) {
+				appendAlternative(alternatives[i], random, sb);
+				if (random.getBoolean()) {
+					return;
+				}
+				sb.setLength(start);
+			}
+			appendAlternative(alternatives[alternatives.length - 1], random, sb);
+		}
+
+		private static void appendAlternative(final Object[] alternative, final MathRandom random, final StringBuilder sb) {
+			for (Object part : alternative) {
+				if (part instanceof Group) {
+					((Group) part).appendChoice(random, sb);
+				} else {
+					sb.append((String) part);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A character class with the allowed number of occurrences. The allowed and forbidden
+	 * characters are computed from the {@link CharacterSet} when the node is created.
+	 */
+	static final class Atom {
+		private final Range range;
+		private final char[] allowed;
+		private final char[] forbidden;
+
+		Atom(final String expression, final Range range, final CharacterSet set) {
+			this.range = range;
+
+			Pattern pattern = Pattern.compile(expression);
+			StringBuilder forbiddenChars = new StringBuilder(256);
+			for (int i = 0; i < set.getForbiddenCharacterCount(); i++) {
+				char character = set.getForbiddenChar(i);
+				// Characters that are also within the allowed range are only excluded from the local expression.
+				// If the character is marked as forbidden globally, it is also a forbidden character for this field.
+				if (!set.isAllowed(character) || !pattern.matcher(String.valueOf(character)).matches()) {
+					forbiddenChars.append(character);
+				}
+			}
+			StringBuilder allowedChars = new StringBuilder(256);
+			for (int i = 0; i < set.getCharacterCount(); i++) {
+				char character = set.getCharacter(i);
+				if (pattern.matcher(String.valueOf(character)).matches()) {
+					allowedChars.append(character);
+				}
+			}
+			if (allowedChars.length() == 0) {
+				LOG.warn("No character allowed for expression " + expression);
+			}
+			this.allowed = allowedChars.toString().toCharArray();
+			this.forbidden = forbiddenChars.toString().toCharArray();
+		}
+
+		Range getRange() {
+			return range;
+		}
+
+		List<Character> getAllowedCharacters() {
+			return ImmutableList.copyOf(Chars.asList(allowed));
+		}
+
+		List<Character> getForbiddenCharacters() {
+			return ImmutableList.copyOf(Chars.asList(forbidden));
+		}
+
+		void appendAllowedCharacters(final MathRandom random, final int size, final StringBuilder out) {
+			if (size == 0 || allowed.length == 0) {
+				return;
+			}
+			int start = out.length();
+			for (int i = 0; i < size; i++) {
+				out.append(allowed[random.getInt(allowed.length - 1)]);
+			}
+			// avoid leading and trailing blanks
+			for (int i = 0; i < 10 && Character.isSpaceChar(out.charAt(start)); i++) {
+				out.setCharAt(start, allowed[random.getInt(allowed.length - 1)]);
+			}
+			int end = out.length() - 1;
+			for (int i = 0; i < 10 && Character.isSpaceChar(out.charAt(end)); i++) {
+				out.setCharAt(end, allowed[random.getInt(allowed.length - 1)]);
+			}
+		}
+	}
+}
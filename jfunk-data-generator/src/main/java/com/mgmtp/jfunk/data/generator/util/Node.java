@@ -45,6 +45,12 @@ public class Node {
 		rnd = random;
 	}
 
+	Node(final CompiledExpression.Atom atom, final MathRandom random) {
+		range = atom.getRange();
+		field = new CharacterField(random, atom.getAllowedCharacters(), atom.getForbiddenCharacters());
+		rnd = random;
+	}
+
 	public boolean canBad() {
 		return field.canBad();
 	}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.jdom.JDOMException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.common.util.Configuration;
+
+/**
+ * Unit test for {@link GeneratorModelCache}
+ *
+ */
+public class GeneratorModelCacheTest {
+
+	private File configDir;
+	private String oldConfigDir;
+	private Configuration config;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		configDir = Files.createTempDir();
+		FileUtils.copyDirectory(new File("src/test/resources/generator"), new File(configDir, "generator"));
+		oldConfigDir = System.getProperty("config.dir");
+		System.setProperty("config.dir", configDir.getPath());
+
+		config = new Configuration(Charsets.UTF_8);
+		config.put(GeneratorConstants.GENERATOR_CONFIG_FILE, "generator/generator.xml");
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		if (oldConfigDir == null) {
+			System.clearProperty("config.dir");
+		} else {
+			System.setProperty("config.dir", oldConfigDir);
+		}
+		FileUtils.deleteDirectory(configDir);
+	}
+
+	@Test
+	public void testModelIsParsedOnce() throws IOException, JDOMException {
+		GeneratorModelCache cache = new GeneratorModelCache();
+		GeneratorModel model = cache.getModel(config);
+
+		assertTrue(model.isConfigured());
+		assertEquals(model.getConstraintElements().size(), 1);
+		assertTrue(model.getCharacterSets().containsKey("iso-8859-1"));
+
+		assertSame(cache.getModel(config), model);
+		assertEquals(cache.getParseCount(), 1L);
+		assertEquals(cache.getHitCount(), 1L);
+	}
+
+	@Test
+	public void testModelIsParsedAgainWhenEntityChanges() throws IOException, JDOMException {
+		GeneratorModelCache cache = new GeneratorModelCache();
+		GeneratorModel model = cache.getModel(config);
+
+		// only the modification date changes
+		File fields = new File(configDir, "generator/fields.xml");
+		assertTrue(fields.setLastModified(fields.lastModified() - 10000L));
+		GeneratorModel touchedModel = cache.getModel(config);
+		assertSame(touchedModel.getConstraintElements(), model.getConstraintElements());
+		assertEquals(cache.getParseCount(), 1L);
+
+		// the content changes
+		Files.append("<!-- changed -->", fields, Charsets.UTF_8);
+		assertTrue(fields.setLastModified(fields.lastModified() + 10000L));
+		assertNotSame(cache.getModel(config), touchedModel);
+		assertEquals(cache.getParseCount(), 2L);
+	}
+
+	@Test
+	public void testKeyUsesResolvedFileNames() throws IOException, JDOMException {
+		FileUtils.copyDirectory(new File(configDir, "generator"), new File(configDir, "generator2"));
+		// placeholders in defaults are not resolved by Configuration.get
+		Map<String, String> defaults = ImmutableMap.of(GeneratorConstants.GENERATOR_CONFIG_FILE,
+				"${generator.dir}/generator.xml");
+
+		Configuration first = new Configuration(defaults, Charsets.UTF_8);
+		first.put("generator.dir", "generator");
+		Configuration second = new Configuration(defaults, Charsets.UTF_8);
+		second.put("generator.dir", "generator2");
+
+		GeneratorModelCache cache = new GeneratorModelCache();
+		GeneratorModel model = cache.getModel(first);
+		assertEquals(model.getGeneratorFile(), "generator/generator.xml");
+		assertSame(cache.getModel(config), model);
+
+		GeneratorModel otherModel = cache.getModel(second);
+		assertNotSame(otherModel, model);
+		assertEquals(otherModel.getGeneratorFile(), "generator2/generator.xml");
+		assertEquals(cache.getParseCount(), 2L);
+	}
+}
@@ -15,7 +15,10 @@
  */
 package com.mgmtp.jfunk.data.generator.util;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 import java.io.UnsupportedEncodingException;
 
@@ -69,6 +72,49 @@ public class CharacterSetTest {
 		assertBadChars(charSet);
 	}
 
+	@Test
+	public void testMultiByteEncoding() throws UnsupportedEncodingException {
+		CharacterSet charSet = new CharacterSet("UTF-8", "[\\p{L}]", "[\\p{Cntrl}]", "UTF-8");
+		assertTrue(charSet.getCharacterCount() > 256);
+		assertTrue(charSet.isAllowed('\u4e2d'));
+		assertFalse(charSet.isAllowed('1'));
+		assertTrue(charSet.getCharacters().contains('\u20ac'));
+		assertFalse(charSet.contains('\ud800'));
+		for (int i = 0; i < charSet.getForbiddenCharacterCount(); i++) {
+			assertTrue(Character.isISOControl(charSet.getForbiddenChar(i)));
+		}
+	}
+
+	@Test
+	public void testInverse() throws UnsupportedEncodingException {
+		CharacterSet charSet = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		CharacterSet inverse = charSet.getInverse();
+		assertEquals(inverse.getCharacterCount(), charSet.getForbiddenCharacterCount());
+		assertEquals(inverse.getForbiddenCharacterCount(), charSet.getCharacterCount());
+		assertTrue(inverse.isAllowed(' '));
+		assertFalse(inverse.isAllowed('\u0001'));
+	}
+
+	@Test
+	public void testCharacterSetIsShared() throws Exception {
+		final CharacterSet charSet = CharacterSet.createCharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "shared");
+		final CharacterSet[] otherCharSet = new CharacterSet[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					otherCharSet[0] = CharacterSet.createCharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "shared");
+				} catch (UnsupportedEncodingException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		assertSame(otherCharSet[0], charSet);
+		assertSame(CharacterSet.getCharacterSet("shared"), charSet);
+	}
+
 	private void assertBadChars(final CharacterSet charSet) {
 		for (char ch : BAD_CHARS) {
 			assertFalse(charSet.getCharacters().contains(ch) && charSet.isAllowed(ch));
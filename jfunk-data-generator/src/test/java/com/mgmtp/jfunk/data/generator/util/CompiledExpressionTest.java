@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.generator.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.mgmtp.jfunk.common.random.MathRandom;
+
+/**
+ * Unit test for {@link CompiledExpression}
+ *
+ */
+public class CompiledExpressionTest {
+
+	private static final String GOOD_EXP_LATIN_1 = "[^\\x00-\\x1F\\x7F\\x80-\\x9F¤¦¨´¸¼½¾­]";
+	private static final String BAD_EXP_LATIN_1 = "[[^\\x00-\\x1F\\x7F\\x80-\\x9F\\s­][ ]]";
+
+	private CharacterSet charSet;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		charSet = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+	}
+
+	@Test
+	public void testCompiledExpressionIsCached() throws IOException {
+		CompiledExpression compiled = CompiledExpression.compile("[A-Z]{3}", charSet);
+		assertSame(CompiledExpression.compile("[A-Z]{3}", charSet), compiled);
+		assertNotSame(CompiledExpression.compile("[A-Z]{4}", charSet), compiled);
+
+		CharacterSet otherCharSet = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		assertNotSame(CompiledExpression.compile("[A-Z]{3}", otherCharSet), compiled);
+	}
+
+	@Test
+	public void testCacheIsBounded() throws IOException {
+		CharacterSet otherCharSet = new CharacterSet("ISO-8859-1", GOOD_EXP_LATIN_1, BAD_EXP_LATIN_1, "Latin-1");
+		CompiledExpression compiled = CompiledExpression.compile("[A-Z]{3}", otherCharSet);
+		for (int i = 0; i < 2 * CompiledExpression.MAX_CACHED_EXPRESSIONS; i++) {
+			CompiledExpression.compile("[0-9]{" + i + "}", otherCharSet);
+		}
+		assertNotSame(CompiledExpression.compile("[A-Z]{3}", otherCharSet), compiled);
+	}
+
+	@Test
+	public void testGenerate() {
+		CompiledExpression compiled = CompiledExpression.compile("[A-Z]{3,5}-?[0-9]{3,}", charSet);
+		MathRandom random = new MathRandom(42L);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			int total = 6 + random.getInt(10);
+			sb.setLength(0);
+			compiled.generate(random, total, sb);
+			String value = sb.toString();
+			assertEquals(value.length(), total, value);
+			assertTrue(value.matches("[A-Z]{3,5}-?[0-9]{3,}"), value);
+		}
+	}
+
+	@Test
+	public void testAlternations() {
+		CompiledExpression compiled = CompiledExpression.compile("(A|B(C|D)|E)[0-9]{1,3}", charSet);
+		MathRandom random = new MathRandom(42L);
+		Set<String> prefixes = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			String value = compiled.generate(random, 3);
+			assertTrue(value.matches("(A[0-9]{2}|B[CD][0-9]|E[0-9]{2})"), value);
+			prefixes.add(value.substring(0, value.charAt(0) == 'B' ? 2 : 1));
+		}
+		assertEquals(prefixes.size(), 4, prefixes.toString());
+	}
+
+	@Test
+	public void testSeededAlternationsAreUnchanged() throws IOException {
+		// alternatives chosen for seed 42 before expressions were compiled
+		assertPrefixes("(ab|c)[0-9]{2,4}", "ab", "c", "ab", "c", "c", "ab", "c", "ab", "ab", "c", "ab", "c");
+		assertPrefixes("((a|b)c|d)x[0-9]", "d", "d", "bc", "bc", "d", "d", "d", "bc", "bc", "ac", "d", "d");
+		assertPrefixes("(Herr|Frau) (Dr\\.|Prof\\.) [A-Z]", "Herr Prof", "Herr Prof", "Herr Dr", "Herr Dr", "Herr Dr",
+				"Frau Prof", "Herr Prof", "Frau Prof", "Herr Dr", "Herr Dr", "Frau Dr", "Herr Prof");
+	}
+
+	private void assertPrefixes(final String exp, final String... prefixes) throws IOException {
+		MathRandom random = new MathRandom(42L);
+		for (String prefix : prefixes) {
+			String value = new GeneratingExpression(random, exp, charSet).generate(0);
+			assertTrue(value.startsWith(prefix), value + " should start with " + prefix);
+		}
+	}
+
+	@Test
+	public void testAlternativeDistribution() {
+		CompiledExpression compiled = CompiledExpression.compile("(A|B|C)", charSet);
+		MathRandom random = new MathRandom(42L);
+		int[] counts = new int[3];
+		for (int i = 0; i < 4000; i++) {
+			counts[compiled.generate(random, 1).charAt(0) - 'A']++;
+		}
+		assertTrue(Math.abs(counts[0] - 2000) < 200, Arrays.toString(counts));
+		assertTrue(Math.abs(counts[1] - 1000) < 150, Arrays.toString(counts));
+		assertTrue(Math.abs(counts[2] - 1000) < 150, Arrays.toString(counts));
+	}
+
+	@Test
+	public void testAlternationsWithinCharacterClassesAreIgnored() {
+		CompiledExpression compiled = CompiledExpression.compile("[|(]{2}(x|\\|)", charSet);
+		MathRandom random = new MathRandom(42L);
+		for (int i = 0; i < 100; i++) {
+			String value = compiled.generate(random, 3);
+			assertTrue(value.matches("[|(]{2}[x|]"), value);
+		}
+	}
+
+	@Test
+	public void testGeneratingExpressionUsesCompiledExpression() throws IOException {
+		MathRandom random = new MathRandom(42L);
+		for (int i = 0; i < 100; i++) {
+			GeneratingExpression expression = new GeneratingExpression(random, "(ab|c)[0-9]{2,4}", charSet);
+			String value = expression.generate(0);
+			assertTrue(value.matches("(ab|c)[0-9]{2,4}"), value);
+		}
+	}
+}
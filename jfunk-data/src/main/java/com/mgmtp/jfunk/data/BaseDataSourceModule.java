@@ -16,10 +16,14 @@
 package com.mgmtp.jfunk.data;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
 import com.google.inject.binder.LinkedBindingBuilder;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
+import com.mgmtp.jfunk.common.util.Disposable;
 import com.mgmtp.jfunk.data.source.DataSource;
+import com.mgmtp.jfunk.data.source.SharedDataSourceState;
 
 /**
  * Base class for guice modules for data source bindings.
@@ -29,10 +33,18 @@ import com.mgmtp.jfunk.data.source.DataSource;
 public abstract class BaseDataSourceModule extends AbstractModule {
 
 	protected MapBinder<String, DataSource> dataSourcesBinder;
+	protected Multibinder<SharedDataSourceState> sharedStateBinder;
+	protected MapBinder<Key<?>, Disposable<?>> disposablesBinder;
 
 	@Override
 	protected void configure() {
 		dataSourcesBinder = MapBinder.newMapBinder(binder(), String.class, DataSource.class);
+		sharedStateBinder = Multibinder.newSetBinder(binder(), SharedDataSourceState.class);
+		disposablesBinder = MapBinder.newMapBinder(binder(), new TypeLiteral<Key<?>>() {
+			//
+		}, new TypeLiteral<Disposable<?>>() {
+			//
+		});
 		doConfigure();
 	}
 
@@ -50,4 +62,24 @@ public abstract class BaseDataSourceModule extends AbstractModule {
 	protected LinkedBindingBuilder<DataSource> bindDataSource(final String key) {
 		return dataSourcesBinder.addBinding(key);
 	}
+
+	/**
+	 * Binds process-wide state of data sources, which is released after the run.
+	 * 
+	 * @see Multibinder#addBinding()
+	 * @return a binding build used to add a {@link SharedDataSourceState}
+	 */
+	protected LinkedBindingBuilder<SharedDataSourceState> bindSharedState() {
+		return sharedStateBinder.addBinding();
+	}
+
+	/**
+	 * Binds a {@link Disposable} for a scoped data source, which is called when its scope is exited.
+	 * 
+	 * @see MapBinder#addBinding(Object)
+	 * @return a binding build used to add a {@link Disposable}
+	 */
+	protected LinkedBindingBuilder<Disposable<?>> bindDisposable(final Key<?> key) {
+		return disposablesBinder.addBinding(key);
+	}
 }
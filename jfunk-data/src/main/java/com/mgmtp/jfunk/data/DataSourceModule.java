@@ -22,15 +22,19 @@ import java.util.Map;
 
 import javax.inject.Provider;
 
+import com.google.inject.Key;
 import com.google.inject.Provides;
 import com.google.inject.ProvisionException;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ScriptScoped;
 import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.common.util.Disposable;
 import com.mgmtp.jfunk.data.source.ArchiveDataSource;
 import com.mgmtp.jfunk.data.source.ContainerDataSource;
 import com.mgmtp.jfunk.data.source.CsvDataSource;
 import com.mgmtp.jfunk.data.source.DataSource;
+import com.mgmtp.jfunk.data.source.SharedCsvCursors;
+import com.mgmtp.jfunk.data.source.SharedCsvDataSource;
 
 /**
  * Guice module for the standard data sources.
@@ -42,8 +46,17 @@ public class DataSourceModule extends BaseDataSourceModule {
 	@Override
 	protected void doConfigure() {
 		bindDataSource("csv").to(CsvDataSource.class);
+		bindDataSource("sharedCsv").to(SharedCsvDataSource.class);
 		bindDataSource("container").to(ContainerDataSource.class);
 		bindDataSource("archive").to(ArchiveDataSource.class);
+		bindSharedState().to(SharedCsvCursors.class);
+		// streamed CSV files are kept open while being read
+		bindDisposable(Key.get(CsvDataSource.class)).toInstance(new Disposable<CsvDataSource>() {
+			@Override
+			public void dispose(final CsvDataSource source) {
+				source.close();
+			}
+		});
 	}
 
 	@Provides
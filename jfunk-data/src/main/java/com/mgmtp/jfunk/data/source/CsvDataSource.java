@@ -15,13 +15,19 @@
  */
 package com.mgmtp.jfunk.data.source;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 
@@ -29,6 +35,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrTokenizer;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
@@ -41,16 +48,42 @@ import com.mgmtp.jfunk.data.DefaultDataSet;
  * {@link DataSource} implementation for CSV files. CSV files must be valid and especially comply
  * with the following rules:
  * <ul>
- * <li>The separator character is a semicolon.</li>
+ * <li>The separator character is a semicolon (unless configured otherwise).</li>
  * <li>Values may be quoted with double quotes. Quotes must be escaped with the quote symbol itself.
  * </li>
  * <li>Empty lines, lines containing whitespace only, and lines starting with a "#" symbol are
  * ignored.</li>
  * </ul>
+ * <p>
+ * CSV files are configured per data set key using {@code dataSource.csv.<dataSetKey>=<file>}. The
+ * following keys are reserved for options and are not interpreted as data set keys:
+ * </p>
+ * <ul>
+ * <li>{@code dataSource.csv.streaming}: if {@code true}, files are not loaded into memory but
+ * read on demand with a small read-ahead buffer (default: {@code false})</li>
+ * <li>{@code dataSource.csv.readAhead}: the number of lines read ahead in streaming mode (default:
+ * {@code 64})</li>
+ * <li>{@code dataSource.csv.charset}: the charset of the files (default: the platform's default
+ * charset)</li>
+ * <li>{@code dataSource.csv.delimiter}: the separator character, {@code \t} for tabs (default:
+ * {@code ;})</li>
+ * </ul>
+ * <p>
+ * Files read in streaming mode are kept open until they are read completely or the data source is
+ * closed or reset.
+ * </p>
  * 
  */
 @ScriptScoped
-public class CsvDataSource extends BaseDataSource {
+public class CsvDataSource extends BaseDataSource implements Closeable {
+
+	static final String OPTION_STREAMING = "streaming";
+	static final String OPTION_READ_AHEAD = "readAhead";
+	static final String OPTION_CHARSET = "charset";
+	static final String OPTION_DELIMITER = "delimiter";
+
+	private static final Set<String> OPTIONS = ImmutableSet.of(OPTION_STREAMING, OPTION_READ_AHEAD, OPTION_CHARSET,
+			OPTION_DELIMITER);
 
 	private Map<String, CsvFile> csvFiles;
 
@@ -67,18 +100,33 @@ public class CsvDataSource extends BaseDataSource {
 			String fileName = null;
 			csvFiles = Maps.newHashMap();
 
-			Set<String> keys = configuration.keySet();
 			String prefix = "dataSource." + getName() + ".";
+			boolean streaming = configuration.getBoolean(prefix + OPTION_STREAMING, false);
+			int readAhead = configuration.getInteger(prefix + OPTION_READ_AHEAD, 64);
+			String charsetName = configuration.get(prefix + OPTION_CHARSET);
+			Charset charset = StringUtils.isBlank(charsetName) ? Charset.defaultCharset() : Charset.forName(charsetName);
+			String delimiter = configuration.get(prefix + OPTION_DELIMITER, ";");
+			checkArgument(delimiter.length() == 1 || "\\t".equals(delimiter),
+					"The delimiter configured by %s must be a single character or \\t, but was '%s'", prefix + OPTION_DELIMITER,
+					delimiter);
+			char delimiterChar = "\\t".equals(delimiter) ? '\t' : delimiter.charAt(0);
+
+			Set<String> keys = configuration.keySet();
 			for (String key : keys) {
 				if (key.startsWith(prefix)) {
 					String dataKey = key.substring(key.indexOf(prefix) + prefix.length());
+					if (OPTIONS.contains(dataKey)) {
+						continue;
+					}
 					fileName = configuration.get(key);
 					if (StringUtils.isEmpty(fileName)) {
 						// no CSV file configured
 						continue;
 					}
 					log.debug("Loading file " + fileName + " for dataKey=" + dataKey);
-					CsvFile csvFile = new CsvFile(fileName);
+					CsvFile csvFile = streaming
+							? new StreamingCsvFile(fileName, charset, delimiterChar, readAhead)
+							: new CsvFile(fileName, charset, delimiterChar);
 					csvFiles.put(dataKey, csvFile);
 				}
 			}
@@ -93,7 +141,7 @@ public class CsvDataSource extends BaseDataSource {
 	protected DataSet getNextDataSetImpl(final String key) {
 		CsvFile csvFile = getCsvFiles().get(key);
 		if (csvFile != null) {
-			if (csvFile.lines == null) {
+			if (!csvFile.isLoaded()) {
 				try {
 					csvFile.load();
 				} catch (IOException e) {
@@ -115,7 +163,7 @@ public class CsvDataSource extends BaseDataSource {
 	public boolean hasMoreData(final String dataSetKey) {
 		if (getCsvFiles().containsKey(dataSetKey)) {
 			CsvFile csvFile = getCsvFiles().get(dataSetKey);
-			if (csvFile.lines == null) {
+			if (!csvFile.isLoaded()) {
 				try {
 					csvFile.load();
 				} catch (IOException e) {
@@ -129,26 +177,67 @@ public class CsvDataSource extends BaseDataSource {
 
 	@Override
 	public void doReset() {
+		close();
 		csvFiles = null;
 	}
 
+	/**
+	 * Closes the files which are still open in streaming mode.
+	 */
+	@Override
+	public void close() {
+		if (csvFiles != null) {
+			for (CsvFile csvFile : csvFiles.values()) {
+				csvFile.close();
+			}
+		}
+	}
+
 	/**
 	 * Represents a CSV file. The file may only be processed once after calling the {@link #load()}
-	 * method.
+	 * method. This implementation loads the whole file into memory.
 	 */
 	static class CsvFile {
-		private List<String> headers;
 		protected final String fileName;
-		protected Queue<List<String>> lines;
+		protected final Charset charset;
+		protected final char delimiter;
+		protected String[] headers;
+		protected Queue<String[]> lines;
+
+		private StrTokenizer tokenizer;
 
 		/**
-		 * Creates a new CsvFile instance.
+		 * Creates a new CsvFile instance using the platform's default charset and a semicolon as
+		 * separator.
 		 * 
 		 * @param fileName
 		 *            The file name.
 		 */
 		public CsvFile(final String fileName) {
+			this(fileName, Charset.defaultCharset(), ';');
+		}
+
+		/**
+		 * Creates a new CsvFile instance.
+		 * 
+		 * @param fileName
+		 *            The file name.
+		 * @param charset
+		 *            The charset of the file.
+		 * @param delimiter
+		 *            The separator character.
+		 */
+		public CsvFile(final String fileName, final Charset charset, final char delimiter) {
 			this.fileName = fileName;
+			this.charset = charset;
+			this.delimiter = delimiter;
+		}
+
+		/**
+		 * @return {@code true}, if {@link #load()} has already been called.
+		 */
+		public boolean isLoaded() {
+			return lines != null;
 		}
 
 		/**
@@ -158,31 +247,42 @@ public class CsvDataSource extends BaseDataSource {
 			lines = Lists.newLinkedList();
 			headers = null;
 
-			StrTokenizer st = StrTokenizer.getCSVInstance();
-			st.setDelimiterChar(';');
-
-			// Default encoding is used (--> UTF-8).
 			BufferedReader br = null;
 			try {
-				br = new BufferedReader(new FileReader(fileName));
+				br = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), charset));
 				for (String line = null; (line = br.readLine()) != null;) {
-					String trimmedLine = StringUtils.trimToNull(line);
-					if (trimmedLine == null || trimmedLine.startsWith("#")) {
-						continue;
-					}
-					st.reset(line);
-					ArrayList<String> tokens = Lists.newArrayList(st.getTokenArray());
-					if (headers == null) {
-						headers = tokens;
-					} else {
-						lines.add(tokens);
-					}
+					processLine(line);
 				}
 			} finally {
 				IOUtils.closeQuietly(br);
 			}
 		}
 
+		/**
+		 * Tokenizes the specified line and adds it either as header or as data line. Empty lines
+		 * and comments are ignored.
+		 * 
+		 * @param line
+		 *            The line.
+		 */
+		protected void processLine(final String line) {
+			String trimmedLine = StringUtils.trimToNull(line);
+			if (trimmedLine == null || trimmedLine.startsWith("#")) {
+				return;
+			}
+			if (tokenizer == null) {
+				tokenizer = StrTokenizer.getCSVInstance();
+				tokenizer.setDelimiterChar(delimiter);
+			}
+			tokenizer.reset(line);
+			String[] tokens = tokenizer.getTokenArray();
+			if (headers == null) {
+				headers = tokens;
+			} else {
+				lines.add(tokens);
+			}
+		}
+
 		/**
 		 * Polls for the next line in the CSV file.
 		 * 
@@ -190,22 +290,10 @@ public class CsvDataSource extends BaseDataSource {
 		 *         available.
 		 */
 		public Map<String, String> getNextLineMap() {
-			List<String> line = lines.poll();
-			if (line == null) {
+			if (!hasNextLine()) {
 				return null;
 			}
-
-			Map<String, String> result = Maps.newHashMapWithExpectedSize(headers.size());
-			for (ListIterator<String> li = line.listIterator(); li.hasNext();) {
-				int index = li.nextIndex();
-				String header = headers.get(index);
-				String value = li.next();
-				if (StringUtils.isBlank(header)) {
-					continue;
-				}
-				result.put(header, value);
-			}
-			return result;
+			return new LineMap(headers, lines.poll());
 		}
 
 		/**
@@ -216,5 +304,163 @@ public class CsvDataSource extends BaseDataSource {
 		public boolean hasNextLine() {
 			return !lines.isEmpty();
 		}
+
+		/**
+		 * Releases resources held between reads. The whole file is read by {@link #load()}, so
+		 * there is nothing to release here.
+		 */
+		public void close() {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Represents a CSV file which is read on demand. Lines are read ahead in small chunks. The file
+	 * is kept open between chunks and closed when it has been read completely or {@link #close()} is
+	 * called.
+	 */
+	static class StreamingCsvFile extends CsvFile {
+		private final int readAhead;
+		private BufferedReader reader;
+
+		/**
+		 * Creates a new StreamingCsvFile instance.
+		 * 
+		 * @param fileName
+		 *            The file name.
+		 * @param charset
+		 *            The charset of the file.
+		 * @param delimiter
+		 *            The separator character.
+		 * @param readAhead
+		 *            The number of lines to read ahead.
+		 */
+		public StreamingCsvFile(final String fileName, final Charset charset, final char delimiter, final int readAhead) {
+			super(fileName, charset, delimiter);
+			this.readAhead = Math.max(1, readAhead);
+		}
+
+		/**
+		 * Opens the file and reads the header and the first chunk of lines.
+		 */
+		@Override
+		public void load() throws IOException {
+			close();
+			lines = Lists.newLinkedList();
+			headers = null;
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), charset));
+			readChunk();
+		}
+
+		@Override
+		public boolean hasNextLine() {
+			if (lines.isEmpty() && reader != null) {
+				try {
+					readChunk();
+				} catch (IOException e) {
+					throw new IllegalArgumentException("Could not read CSV file " + fileName, e);
+				}
+			}
+			return !lines.isEmpty();
+		}
+
+		private void readChunk() throws IOException {
+			boolean success = false;
+			try {
+				int linesBefore = lines.size();
+				while (lines.size() - linesBefore < readAhead) {
+					String line = reader.readLine();
+					if (line == null) {
+						close();
+						break;
+					}
+					processLine(line);
+				}
+				success = true;
+			} finally {
+				if (!success) {
+					close();
+				}
+			}
+		}
+
+		/**
+		 * @return {@code true}, if the file is open, i. e. it has been loaded but not read completely
+		 */
+		boolean isOpen() {
+			return reader != null;
+		}
+
+		@Override
+		public void close() {
+			IOUtils.closeQuietly(reader);
+			reader = null;
+		}
+	}
+
+	/**
+	 * Immutable map view of a CSV line. Header and values are shared and not copied. Columns with
+	 * blank headers are omitted.
+	 */
+	static class LineMap extends AbstractMap<String, String> {
+		private final String[] headers;
+		private final String[] values;
+
+		LineMap(final String[] headers, final String[] values) {
+			this.headers = headers;
+			this.values = values;
+		}
+
+		@Override
+		public Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<Entry<String, String>>() {
+				@Override
+				public Iterator<Entry<String, String>> iterator() {
+					return new Iterator<Entry<String, String>>() {
+						private final int size = Math.min(headers.length, values.length);
+						private int index = advance(0);
+
+						private int advance(final int start) {
+							int i = start;
+							while (i < size && StringUtils.isBlank(headers[i])) {
+								i++;
+							}
+							return i;
+						}
+
+						@Override
+						public boolean hasNext() {
+							return index < size;
+						}
+
+						@Override
+						public Entry<String, String> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, String> entry = new SimpleImmutableEntry<>(headers[index], values[index]);
+							index = advance(index + 1);
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					int count = 0;
+					for (int i = 0, size = Math.min(headers.length, values.length); i < size; ++i) {
+						if (!StringUtils.isBlank(headers[i])) {
+							count++;
+						}
+					}
+					return count;
+				}
+			};
+		}
 	}
 }
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.data.source.CsvDataSource.CsvFile;
+
+/**
+ * Process-wide registry of {@link Cursor}s over CSV files. A CSV file is loaded only once and its
+ * lines are shared by all threads, which consume disjoint lines through the file's cursor. Cursor
+ * offsets may be persisted to a properties file, so a subsequent run resumes where the previous one
+ * stopped. The registry does not store offsets by itself; they are stored when it is
+ * {@link #release() released} after the run.
+ *
+ */
+@Singleton
+public class SharedCsvCursors implements SharedDataSourceState {
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final ConcurrentMap<String, Cursor> cursors = new ConcurrentHashMap<>();
+	private final ConcurrentMap<File, Properties> offsetFiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the cursor for the specified CSV file, loading the file if necessary.
+	 *
+	 * @param fileName
+	 *            the CSV file
+	 * @param charset
+	 *            the charset of the CSV file
+	 * @param delimiter
+	 *            the separator character
+	 * @param wrap
+	 *            if {@code true}, the cursor starts over with the first line after the last line
+	 *            has been consumed
+	 * @param partitions
+	 *            the number of partitions lines are distributed to round-robin, or {@code 0} if
+	 *            lines are handed out to whichever consumer requests the next line
+	 * @param offsetFile
+	 *            properties file for persisting the cursor offset, may be {@code null}
+	 * @return the cursor
+	 */
+	public Cursor getCursor(final String fileName, final Charset charset, final char delimiter, final boolean wrap,
+			final int partitions, final File offsetFile) {
+		String key = canonicalPath(new File(fileName));
+		Cursor cursor = cursors.get(key);
+		if (cursor == null) {
+			synchronized (cursors) {
+				cursor = cursors.get(key);
+				if (cursor == null) {
+					CsvFile csvFile = new CsvFile(fileName, charset, delimiter);
+					try {
+						csvFile.load();
+					} catch (IOException ex) {
+						throw new JFunkException("Could not load CSV file " + fileName, ex);
+					}
+					long offset = offsetFile == null ? 0L : loadOffset(offsetFile, key);
+					cursor = new Cursor(key, csvFile.headers, csvFile.lines.toArray(new String[0][]), wrap, partitions, offset,
+							offsetFile);
+					log.info("Created shared CSV cursor: {}", cursor);
+					cursors.put(key, cursor);
+				}
+			}
+		}
+		return cursor;
+	}
+
+	/**
+	 * @return an immutable snapshot of the cursors by canonical file path
+	 */
+	public Map<String, Cursor> getCursors() {
+		return ImmutableMap.copyOf(cursors);
+	}
+
+	/**
+	 * Logs the statistics and stores the offsets. Cursors are kept, so a subsequent run in the same
+	 * JVM continues where this one stopped.
+	 */
+	@Override
+	public void release() {
+		logStatistics();
+		storeOffsets();
+	}
+
+	/**
+	 * Logs the number of lines consumed per thread for each cursor.
+	 */
+	public void logStatistics() {
+		for (Cursor cursor : cursors.values()) {
+			log.info("{}: consumed lines per thread: {}", cursor, cursor.getConsumedLinesPerThread());
+		}
+	}
+
+	/**
+	 * Stores the current offsets of all cursors that have an offset file configured.
+	 */
+	public void storeOffsets() {
+		for (Cursor cursor : cursors.values()) {
+			if (cursor.offsetFile != null) {
+				Properties props = getOffsetProperties(cursor.offsetFile);
+				synchronized (props) {
+					props.setProperty(cursor.fileName, String.valueOf(cursor.getOffset()));
+				}
+			}
+		}
+
+		for (Map.Entry<File, Properties> entry : offsetFiles.entrySet()) {
+			Properties props = entry.getValue();
+			OutputStream os = null;
+			try {
+				File file = entry.getKey();
+				File parent = file.getParentFile();
+				if (parent != null) {
+					parent.mkdirs();
+				}
+				os = new FileOutputStream(file);
+				synchronized (props) {
+					props.store(os, "Shared CSV cursor offsets");
+				}
+			} catch (IOException ex) {
+				log.error("Could not store CSV cursor offsets to " + entry.getKey(), ex);
+			} finally {
+				closeQuietly(os);
+			}
+		}
+	}
+
+	private long loadOffset(final File offsetFile, final String key) {
+		Properties props = getOffsetProperties(offsetFile);
+		synchronized (props) {
+			String value = props.getProperty(key);
+			return value == null ? 0L : Long.parseLong(value);
+		}
+	}
+
+	private Properties getOffsetProperties(final File offsetFile) {
+		File key = new File(canonicalPath(offsetFile));
+		Properties props = offsetFiles.get(key);
+		if (props == null) {
+			Properties newProps = new Properties();
+			if (key.exists()) {
+				InputStream is = null;
+				try {
+					is = new FileInputStream(key);
+					newProps.load(is);
+				} catch (IOException ex) {
+					throw new JFunkException("Could not load CSV cursor offsets from " + key, ex);
+				} finally {
+					closeQuietly(is);
+				}
+			}
+			props = offsetFiles.putIfAbsent(key, newProps);
+			if (props == null) {
+				props = newProps;
+			}
+		}
+		return props;
+	}
+
+	private static String canonicalPath(final File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException ex) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Lock-free cursor over the immutable lines of a CSV file. Each line is handed out to exactly one
+	 * caller in file order. If wrapping is enabled, the cursor starts over after the last line.
+	 * <p>
+	 * If lines are distributed round-robin to {@code n} partitions, partition {@code k} gets lines
+	 * {@code k, k + n, k + 2n, ...} counted from the offset, so which consumer gets which line does
+	 * not depend on timing. Consumers are assigned the partitions in turn, see
+	 * {@link #newPartition()}. The persisted offset is the lowest line not yet handed out by any
+	 * partition, so lines some partitions have already consumed may be handed out again in the next
+	 * run.
+	 * </p>
+	 */
+	public static final class Cursor {
+		private final String fileName;
+		private final String[] headers;
+		private final String[][] lines;
+		private final boolean wrap;
+		private final File offsetFile;
+		private final long base;
+		private final AtomicLong next;
+		// lines consumed per partition, null if lines are not distributed round-robin
+		private final AtomicLong[] partitionCounts;
+		private final AtomicInteger nextPartition = new AtomicInteger();
+		private final ConcurrentMap<String, AtomicLong> consumedLinesPerThread = new ConcurrentHashMap<>();
+
+		Cursor(final String fileName, final String[] headers, final String[][] lines, final boolean wrap,
+				final int partitions, final long offset, final File offsetFile) {
+			this.fileName = fileName;
+			this.headers = headers;
+			this.lines = lines;
+			this.wrap = wrap;
+			this.offsetFile = offsetFile;
+			this.base = offset;
+			this.next = new AtomicLong(offset);
+			if (partitions > 0) {
+				partitionCounts = new AtomicLong[partitions];
+				for (int i = 0; i < partitions; ++i) {
+					partitionCounts[i] = new AtomicLong();
+				}
+			} else {
+				partitionCounts = null;
+			}
+		}
+
+		/**
+		 * Gets a partition for a new consumer. If lines are distributed round-robin, consumers are
+		 * assigned the partitions in turn, and consumers sharing a partition consume disjoint lines
+		 * of it. Otherwise, the partition hands out the cursor's next line.
+		 *
+		 * @return the partition
+		 */
+		public Partition newPartition() {
+			if (partitionCounts == null) {
+				return new Partition(this, -1);
+			}
+			return new Partition(this, (nextPartition.getAndIncrement() & Integer.MAX_VALUE) % partitionCounts.length);
+		}
+
+		/**
+		 * Gets the next line. Other than {@link #hasNext()} this operation is atomic.
+		 *
+		 * @return the next line as map of header/value pairs, or {@code null} if all lines have been
+		 *         consumed
+		 */
+		public Map<String, String> next() {
+			if (lines.length == 0) {
+				return null;
+			}
+			return line(next.getAndIncrement());
+		}
+
+		Map<String, String> next(final int partition) {
+			if (lines.length == 0) {
+				return null;
+			}
+			return line(lineIndex(partition, partitionCounts[partition].getAndIncrement()));
+		}
+
+		boolean hasNext(final int partition) {
+			return lines.length > 0 && (wrap || lineIndex(partition, partitionCounts[partition].get()) < lines.length);
+		}
+
+		private long lineIndex(final int partition, final long count) {
+			return base + partition + count * partitionCounts.length;
+		}
+
+		private Map<String, String> line(final long lineIndex) {
+			long index = lineIndex;
+			if (index >= lines.length) {
+				if (!wrap) {
+					return null;
+				}
+				index %= lines.length;
+			}
+
+			String threadName = Thread.currentThread().getName();
+			AtomicLong counter = consumedLinesPerThread.get(threadName);
+			if (counter == null) {
+				AtomicLong newCounter = new AtomicLong();
+				counter = consumedLinesPerThread.putIfAbsent(threadName, newCounter);
+				if (counter == null) {
+					counter = newCounter;
+				}
+			}
+			counter.incrementAndGet();
+
+			return new CsvDataSource.LineMap(headers, lines[(int) index]);
+		}
+
+		/**
+		 * Checks whether another line is available. Note that another thread may consume the line
+		 * before the current thread calls {@link #next()}.
+		 *
+		 * @return {@code true} if another line is available
+		 */
+		public boolean hasNext() {
+			return lines.length > 0 && (wrap || next.get() < lines.length);
+		}
+
+		/**
+		 * @return the offset of the next line, which is persisted for subsequent runs
+		 */
+		public long getOffset() {
+			long offset = next.get();
+			if (partitionCounts != null) {
+				offset = Long.MAX_VALUE;
+				for (int i = 0; i < partitionCounts.length; ++i) {
+					offset = Math.min(offset, lineIndex(i, partitionCounts[i].get()));
+				}
+			}
+			if (lines.length == 0) {
+				return 0L;
+			}
+			return wrap ? offset % lines.length : Math.min(offset, lines.length);
+		}
+
+		/**
+		 * @return the number of lines in the file
+		 */
+		public int getLineCount() {
+			return lines.length;
+		}
+
+		/**
+		 * @return an immutable snapshot of the number of lines consumed by thread name
+		 */
+		public Map<String, Long> getConsumedLinesPerThread() {
+			ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+			for (Map.Entry<String, AtomicLong> entry : consumedLinesPerThread.entrySet()) {
+				builder.put(entry.getKey(), entry.getValue().get());
+			}
+			return builder.build();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Cursor[file=%s, lines=%d, offset=%d, wrap=%s, partitions=%d]", fileName, lines.length,
+					getOffset(), wrap, partitionCounts == null ? 0 : partitionCounts.length);
+		}
+	}
+
+	/**
+	 * A consumer's view of a {@link Cursor}, see {@link Cursor#newPartition()}.
+	 */
+	public static final class Partition {
+		private final Cursor cursor;
+		private final int index;
+
+		Partition(final Cursor cursor, final int index) {
+			this.cursor = cursor;
+			this.index = index;
+		}
+
+		/**
+		 * Gets the next line of the partition. Other than {@link #hasNext()} this operation is
+		 * atomic.
+		 *
+		 * @return the next line as map of header/value pairs, or {@code null} if all lines of the
+		 *         partition have been consumed
+		 */
+		public Map<String, String> next() {
+			return index < 0 ? cursor.next() : cursor.next(index);
+		}
+
+		/**
+		 * Checks whether another line of the partition is available. Note that a consumer sharing
+		 * the partition may consume the line before the current thread calls {@link #next()}.
+		 *
+		 * @return {@code true} if another line is available
+		 */
+		public boolean hasNext() {
+			return index < 0 ? cursor.hasNext() : cursor.hasNext(index);
+		}
+
+		/**
+		 * @return the index of the partition, or {@code -1} if lines are not distributed round-robin
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the cursor
+		 */
+		public Cursor getCursor() {
+			return cursor;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.mgmtp.jfunk.common.config.ScriptScoped;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.data.DefaultDataSet;
+import com.mgmtp.jfunk.data.source.SharedCsvCursors.Partition;
+
+/**
+ * {@link DataSource} implementation for CSV files that are shared by all threads. Other than with
+ * {@link CsvDataSource}, each line of a file is handed out to only one script, so parallel scripts
+ * consume disjoint lines of the same file. By default, lines are handed out in file order to
+ * whichever script requests the next data set. Alternatively, lines may be distributed round-robin,
+ * so each script gets every n-th line. The file format is the same as for {@link CsvDataSource}.
+ * <p>
+ * CSV files are configured per data set key using {@code dataSource.sharedCsv.<dataSetKey>=<file>}.
+ * The following keys are reserved for options and are not interpreted as data set keys:
+ * </p>
+ * <ul>
+ * <li>{@code dataSource.sharedCsv.wrap}: if {@code true}, the first line is handed out again after
+ * the last line has been consumed (default: {@code false})</li>
+ * <li>{@code dataSource.sharedCsv.roundRobin}: the number of partitions lines are distributed to
+ * round-robin, usually the thread count. Scripts are assigned the partitions in turn; partition
+ * {@code k} gets lines {@code k, k + n, k + 2n, ...} (default: {@code 0}, i. e. lines are not
+ * distributed round-robin)</li>
+ * <li>{@code dataSource.sharedCsv.offsetFile}: properties file in which the offsets are stored
+ * after the run, so the next run resumes after the last consumed line (default: none)</li>
+ * <li>{@code dataSource.sharedCsv.charset}: the charset of the files (default: the platform's
+ * default charset)</li>
+ * <li>{@code dataSource.sharedCsv.delimiter}: the separator character (default: {@code ;})</li>
+ * </ul>
+ * <p>
+ * Since lines are shared, {@link #hasMoreData(String)} returning {@code true} does not guarantee
+ * that the next call to {@link #getNextDataSet(String)} returns a data set, because another thread
+ * might have consumed the last line in the meantime.
+ * </p>
+ *
+ */
+@ScriptScoped
+public class SharedCsvDataSource extends BaseDataSource {
+
+	static final String OPTION_WRAP = "wrap";
+	static final String OPTION_OFFSET_FILE = "offsetFile";
+	static final String OPTION_ROUND_ROBIN = "roundRobin";
+
+	private static final Set<String> OPTIONS = ImmutableSet.of(OPTION_WRAP, OPTION_OFFSET_FILE, OPTION_ROUND_ROBIN,
+			CsvDataSource.OPTION_CHARSET, CsvDataSource.OPTION_DELIMITER);
+
+	private final SharedCsvCursors sharedCsvCursors;
+	private Map<String, Partition> cursors;
+
+	@Inject
+	public SharedCsvDataSource(final Configuration configuration, final SharedCsvCursors sharedCsvCursors) {
+		super(configuration);
+		this.sharedCsvCursors = sharedCsvCursors;
+	}
+
+	/**
+	 * Cursors are looked up on-access. The underlying CSV files are loaded only once per JVM.
+	 */
+	protected Map<String, Partition> getCursors() {
+		if (cursors == null) {
+			cursors = Maps.newHashMap();
+
+			String prefix = "dataSource." + getName() + ".";
+			boolean wrap = configuration.getBoolean(prefix + OPTION_WRAP, false);
+			int partitions = configuration.getInteger(prefix + OPTION_ROUND_ROBIN, 0);
+			String offsetFileName = configuration.get(prefix + OPTION_OFFSET_FILE);
+			File offsetFile = StringUtils.isBlank(offsetFileName) ? null : new File(offsetFileName);
+			String charsetName = configuration.get(prefix + CsvDataSource.OPTION_CHARSET);
+			Charset charset = StringUtils.isBlank(charsetName) ? Charset.defaultCharset() : Charset.forName(charsetName);
+			String delimiter = configuration.get(prefix + CsvDataSource.OPTION_DELIMITER, ";");
+			char delimiterChar = "\\t".equals(delimiter) ? '\t' : delimiter.charAt(0);
+
+			for (String key : configuration.keySet()) {
+				if (key.startsWith(prefix)) {
+					String dataKey = key.substring(prefix.length());
+					String fileName = configuration.get(key);
+					if (OPTIONS.contains(dataKey) || StringUtils.isEmpty(fileName)) {
+						continue;
+					}
+					cursors.put(dataKey,
+							sharedCsvCursors.getCursor(fileName, charset, delimiterChar, wrap, partitions, offsetFile).newPartition());
+				}
+			}
+			if (cursors.isEmpty()) {
+				log.warn("SharedCsvDataSource can only be used when CSV files are correctly configured");
+			}
+		}
+		return cursors;
+	}
+
+	@Override
+	protected DataSet getNextDataSetImpl(final String key) {
+		Partition cursor = getCursors().get(key);
+		if (cursor != null) {
+			Map<String, String> data = cursor.next();
+			return data == null ? null : new DefaultDataSet(data);
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasMoreData(final String dataSetKey) {
+		Partition cursor = getCursors().get(dataSetKey);
+		return cursor != null && cursor.hasNext();
+	}
+
+	/**
+	 * Only resets the script's view of the cursors. Shared cursors are not reset, since they are
+	 * used by other threads. If lines are distributed round-robin, the script is assigned the next
+	 * partition in turn.
+	 */
+	@Override
+	public void doReset() {
+		cursors = null;
+	}
+}
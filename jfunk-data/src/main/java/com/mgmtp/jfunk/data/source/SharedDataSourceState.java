@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+/**
+ * Process-wide state shared by the data sources of all scripts, such as cursors or caches of
+ * loaded files. Implementations are bound using
+ * {@link com.mgmtp.jfunk.data.BaseDataSourceModule#bindSharedState()} and released once after the
+ * run.
+ *
+ * @since 3.3.2
+ */
+public interface SharedDataSourceState {
+
+	/**
+	 * Releases the state after the run, e. g. logs statistics, persists offsets, or frees memory.
+	 */
+	void release();
+}
@@ -34,6 +34,7 @@ import com.mgmtp.jfunk.data.DataSet;
  */
 public class CsvDataSourceTest {
 
+	private Configuration config;
 	private CsvDataSource ds;
 
 	/**
@@ -42,7 +43,7 @@ public class CsvDataSourceTest {
 	 */
 	@BeforeMethod
 	public void setUp() throws IOException {
-		Configuration config = new Configuration(Charsets.UTF_8);
+		config = new Configuration(Charsets.UTF_8);
 		InputStream is = null;
 		try {
 			is = Thread.currentThread().getContextClassLoader().getResourceAsStream("test-datasources.properties");
@@ -103,6 +104,63 @@ public class CsvDataSourceTest {
 		Assert.assertEquals(i, 2);
 	}
 
+	@Test
+	public void testStreamingMode() {
+		config.put("dataSource.csv.streaming", "true");
+		config.put("dataSource.csv.readAhead", "1");
+		config.put("dataSource.csv.charset", "UTF-8");
+		ds = new CsvDataSource(config);
+
+		int i = 0;
+		while (ds.hasMoreData("bar")) {
+			DataSet data = ds.getNextDataSet("bar");
+			++i;
+			Assert.assertEquals(data.getValue("quoted-string"), "dummy-" + i % 2);
+			Assert.assertEquals(data.getValue("quote-in-field"), "test\"string-" + i % 2);
+			Assert.assertEquals(data.getValue("unquoted"), "unquoted-" + i % 2);
+		}
+		Assert.assertEquals(i, 2);
+
+		i = 0;
+		while (ds.hasMoreData("foo")) {
+			DataSet data = ds.getNextDataSet("foo");
+			++i;
+			Assert.assertEquals(data.getValue("foo-field1"), "teststring-" + i % 2);
+			Assert.assertEquals(data.getValue("empty-quoted"), "");
+		}
+		Assert.assertEquals(i, 2);
+
+		// option keys must not be interpreted as data set keys
+		Assert.assertFalse(ds.hasMoreData("streaming"));
+	}
+
+	@Test
+	public void testStreamingKeepsFileOpenUntilRead() {
+		config.put("dataSource.csv.streaming", "true");
+		config.put("dataSource.csv.readAhead", "1");
+		ds = new CsvDataSource(config);
+
+		ds.getNextDataSet("foo");
+		CsvDataSource.StreamingCsvFile csvFile = (CsvDataSource.StreamingCsvFile) ds.getCsvFiles().get("foo");
+		Assert.assertTrue(csvFile.isOpen());
+		ds.getNextDataSet("foo");
+		Assert.assertFalse(ds.hasMoreData("foo"));
+		Assert.assertFalse(csvFile.isOpen());
+
+		ds.getNextDataSet("bar");
+		CsvDataSource.StreamingCsvFile barFile = (CsvDataSource.StreamingCsvFile) ds.getCsvFiles().get("bar");
+		Assert.assertTrue(barFile.isOpen());
+		ds.close();
+		Assert.assertFalse(barFile.isOpen());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".*dataSource\\.csv\\.delimiter.*")
+	public void testEmptyDelimiter() {
+		config.put("dataSource.csv.delimiter", "");
+		ds = new CsvDataSource(config);
+		ds.hasMoreData("foo");
+	}
+
 	@Test
 	public void testCopyDataSet() {
 		ds.getNextDataSet("foo");
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.data.source;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.data.DataSet;
+
+/**
+ * Unit test for {@link SharedCsvDataSource}.
+ * 
+ */
+public class SharedCsvDataSourceTest {
+
+	private Configuration config;
+	private SharedCsvCursors cursors;
+
+	/**
+	 * This method is annotated with {@link BeforeMethod}, because we need fresh cursors for every
+	 * test.
+	 */
+	@BeforeMethod
+	public void setUp() {
+		config = new Configuration(Charsets.UTF_8);
+		config.put("dataSource.sharedCsv.foo", "src/test/resources/test-foo.csv");
+		cursors = new SharedCsvCursors();
+	}
+
+	@Test
+	public void testDisjointLines() {
+		SharedCsvDataSource ds1 = new SharedCsvDataSource(config, cursors);
+		SharedCsvDataSource ds2 = new SharedCsvDataSource(config, cursors);
+
+		Assert.assertTrue(ds1.hasMoreData("foo"));
+		DataSet data1 = ds1.getNextDataSet("foo");
+		Assert.assertTrue(ds2.hasMoreData("foo"));
+		DataSet data2 = ds2.getNextDataSet("foo");
+
+		Assert.assertEquals(data1.getValue("foo-field1"), "teststring-1");
+		Assert.assertEquals(data2.getValue("foo-field1"), "teststring-0");
+
+		Assert.assertFalse(ds1.hasMoreData("foo"));
+		Assert.assertFalse(ds2.hasMoreData("foo"));
+		Assert.assertNull(ds1.getNextDataSet("foo"));
+
+		SharedCsvCursors.Cursor cursor = cursors.getCursors().values().iterator().next();
+		Assert.assertEquals(cursor.getConsumedLinesPerThread().get(Thread.currentThread().getName()), Long.valueOf(2L));
+	}
+
+	@Test
+	public void testWrap() {
+		config.put("dataSource.sharedCsv.wrap", "true");
+		SharedCsvDataSource ds = new SharedCsvDataSource(config, cursors);
+
+		for (int i = 1; i <= 5; ++i) {
+			Assert.assertTrue(ds.hasMoreData("foo"));
+			Assert.assertEquals(ds.getNextDataSet("foo").getValue("foo-field1"), "teststring-" + i % 2);
+		}
+		Assert.assertFalse(ds.hasMoreData("wrap"));
+	}
+
+	@Test
+	public void testResumeFromOffsetFile() throws IOException {
+		File offsetFile = File.createTempFile("csv-offsets", ".properties");
+		offsetFile.deleteOnExit();
+		config.put("dataSource.sharedCsv.offsetFile", offsetFile.getPath());
+
+		new SharedCsvDataSource(config, cursors).getNextDataSet("foo");
+		cursors.storeOffsets();
+
+		Properties props = new Properties();
+		InputStream is = null;
+		try {
+			is = new FileInputStream(offsetFile);
+			props.load(is);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+		Assert.assertEquals(props.getProperty(new File("src/test/resources/test-foo.csv").getCanonicalPath()), "1");
+
+		// a new run resumes with the second line
+		DataSet data = new SharedCsvDataSource(config, new SharedCsvCursors()).getNextDataSet("foo");
+		Assert.assertEquals(data.getValue("foo-field1"), "teststring-0");
+	}
+
+	@Test
+	public void testRoundRobin() throws IOException {
+		File csvFile = File.createTempFile("round-robin", ".csv");
+		csvFile.deleteOnExit();
+		Files.write("id\n0\n1\n2\n3\n4\n5\n6\n", csvFile, Charsets.UTF_8);
+		config.put("dataSource.sharedCsv.foo", csvFile.getPath());
+		config.put("dataSource.sharedCsv.roundRobin", "2");
+
+		SharedCsvDataSource ds1 = new SharedCsvDataSource(config, cursors);
+		SharedCsvDataSource ds2 = new SharedCsvDataSource(config, cursors);
+		SharedCsvDataSource ds3 = new SharedCsvDataSource(config, cursors);
+		// partitions are assigned in the order the data sources are first used, ds3 shares the
+		// first partition with ds1
+		for (SharedCsvDataSource ds : new SharedCsvDataSource[] { ds1, ds2, ds3 }) {
+			Assert.assertTrue(ds.hasMoreData("foo"));
+		}
+
+		Assert.assertEquals(ds2.getNextDataSet("foo").getValue("id"), "1");
+		Assert.assertEquals(ds1.getNextDataSet("foo").getValue("id"), "0");
+		Assert.assertEquals(ds3.getNextDataSet("foo").getValue("id"), "2");
+		Assert.assertEquals(ds2.getNextDataSet("foo").getValue("id"), "3");
+		Assert.assertEquals(ds1.getNextDataSet("foo").getValue("id"), "4");
+		Assert.assertEquals(ds3.getNextDataSet("foo").getValue("id"), "6");
+		Assert.assertFalse(ds1.hasMoreData("foo"));
+		Assert.assertNull(ds3.getNextDataSet("foo"));
+
+		// line 5 has not been handed out yet
+		SharedCsvCursors.Cursor cursor = cursors.getCursors().values().iterator().next();
+		Assert.assertEquals(cursor.getOffset(), 5L);
+		Assert.assertTrue(ds2.hasMoreData("foo"));
+		Assert.assertEquals(ds2.getNextDataSet("foo").getValue("id"), "5");
+		Assert.assertEquals(cursor.getOffset(), 7L);
+	}
+}
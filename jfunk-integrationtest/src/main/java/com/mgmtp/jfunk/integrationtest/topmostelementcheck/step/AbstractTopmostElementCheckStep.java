@@ -20,6 +20,7 @@ import org.openqa.selenium.By;
 import com.mgmtp.jfunk.integrationtest.AbstractAppServerModule;
 import com.mgmtp.jfunk.integrationtest.topmostelementcheck.AbstractTopmostElementCheckModule;
 import com.mgmtp.jfunk.web.step.ComplexWebDriverStep;
+import com.mgmtp.jfunk.web.util.TopmostElementCheckResult;
 
 /**
  * @author sstrohmaier
@@ -60,6 +61,15 @@ public abstract class AbstractTopmostElementCheckStep extends ComplexWebDriverSt
 		}
 	}
 
+	protected void verifyTopmostElementCheckStatus(String webElementId, TopmostElementCheckResult.Status expectedStatus) {
+		TopmostElementCheckResult result = wdt.evaluateTopmostElement(By.id(webElementId));
+		if (result.getStatus() != expectedStatus) {
+			throw new AssertionError(String.format(
+					"For WebElement '%s' the topmost element check's actual result '%s' does not have the expected status '%s'",
+							webElementId, result, expectedStatus));
+		}
+	}
+
 	protected void assertNotTopMostElement(String webElementId) {
 		if (!coveredByAssertionErrorOccursWhenPerformingActionOnElement(WdtAction.assertTopmostElement, webElementId, null, null)) {
 			throw new WebDriverToolActionException(WdtAction.assertTopmostElement, webElementId, null);
@@ -17,6 +17,8 @@ package com.mgmtp.jfunk.integrationtest.topmostelementcheck.step;
 
 import org.openqa.selenium.By;
 
+import com.mgmtp.jfunk.web.util.TopmostElementCheckResult.Status;
+
 /**
  * @author sstrohmaier
  */
@@ -36,6 +38,8 @@ public class TopmostElementCheckCornerCasesStep extends AbstractTopmostElementCh
 
 		verifyIsTopmostElement(topMostButton, true);
 		verifyIsTopmostElement(partiallyCoveredButton, false);
+		verifyTopmostElementCheckStatus(topMostButton, Status.TOPMOST);
+		verifyTopmostElementCheckStatus(partiallyCoveredButton, Status.COVERED);
 
 		wdt.assertTopmostElement(By.id(topMostButton));
 		assertNotTopMostElement(partiallyCoveredButton);
@@ -143,6 +147,7 @@ public class TopmostElementCheckCornerCasesStep extends AbstractTopmostElementCh
 		// check the topmost status of the 'body' element
 
 		verifyIsTopmostElement("body1", null);
+		verifyTopmostElementCheckStatus("body1", Status.NOT_APPLICABLE);
 	}
 
 }
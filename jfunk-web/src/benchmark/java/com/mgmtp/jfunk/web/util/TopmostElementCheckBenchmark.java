@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.data.DataSet;
+
+/**
+ * Compares the fused topmost element check with the previous sequence of driver calls against a
+ * simulated remote driver, which waits for the configured latency on every call. The
+ * {@code roundTrips} counter shows the number of driver calls per check. Run with:
+ *
+ * <pre>
+ * mvn -Pbenchmark -pl jfunk-web test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.mgmtp.jfunk.web.util.TopmostElementCheckBenchmark
+ * </pre>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TopmostElementCheckBenchmark {
+	private static final By BY = By.id("button");
+
+	@Param({ "0", "500" })
+	private long latencyMicros;
+
+	private WebDriverTool wdt;
+	private WebElement element;
+	private long calls;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class RoundTrips {
+		public long roundTrips;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { WebDriver.class, JavascriptExecutor.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						roundTrip();
+						if ("findElement".equals(method.getName())) {
+							return element;
+						}
+						if ("executeScript".equals(method.getName())) {
+							return executeScript((String) args[0]);
+						}
+						return null;
+					}
+				});
+		element = (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebElement.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if ("equals".equals(method.getName())) {
+							// a remote element compares its id, which takes another round trip in older drivers
+							roundTrip();
+							return proxy == args[0];
+						}
+						if ("hashCode".equals(method.getName())) {
+							return System.identityHashCode(proxy);
+						}
+						roundTrip();
+						return null;
+					}
+				});
+
+		WebElementFinder wef = WebElementFinder.create().webDriver(driver).noLogging(true);
+		wdt = new WebDriverTool(driver, wef, FormInputHandler.create(), Collections.<String, DataSet>emptyMap(),
+				Providers.of(new Configuration(Charsets.UTF_8)));
+	}
+
+	private Object executeScript(final String script) {
+		if (script.contains("NOT_APPLICABLE")) {
+			return ImmutableMap.of("status", "TOPMOST");
+		}
+		if (script.contains("childElementCount")) {
+			return Boolean.FALSE;
+		}
+		if (script.contains("getBoundingClientRect")) {
+			return ImmutableMap.builder().put("top", 10).put("left", 10).put("bottom", 30).put("right", 110)
+					.put("width", 100).put("height", 20).build();
+		}
+		if (script.contains("clientWidth")) {
+			return ImmutableMap.of("width", 1024, "height", 768);
+		}
+		return element;
+	}
+
+	private void roundTrip() {
+		++calls;
+		if (latencyMicros > 0L) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+		}
+	}
+
+	@Benchmark
+	public boolean fused(final RoundTrips counter) {
+		long before = calls;
+		boolean result = wdt.isTopmostElement(BY);
+		counter.roundTrips += calls - before;
+		return result;
+	}
+
+	/**
+	 * The sequence of calls the topmost element check used to make.
+	 */
+	@Benchmark
+	public boolean separateCalls(final RoundTrips counter) {
+		long before = calls;
+		wdt.executeScript("return arguments[0].childElementCount > 0", wdt.findElement(BY));
+		Rectangle visible = wdt.getViewport().intersection(wdt.getBoundingClientRect(BY));
+		Point center = visible.center();
+		WebElement topmost = wdt.elementFromPoint(center.x, center.y);
+		boolean result = wdt.findElement(BY).equals(topmost);
+		counter.roundTrips += calls - before;
+		return result;
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TopmostElementCheckBenchmark.class.getSimpleName()).build()).run();
+	}
+}
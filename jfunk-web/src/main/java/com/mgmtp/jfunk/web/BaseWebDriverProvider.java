@@ -19,8 +19,10 @@ import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
+import javax.inject.Inject;
 import javax.inject.Provider;
 
 import org.openqa.selenium.WebDriver;
@@ -47,6 +49,9 @@ public abstract class BaseWebDriverProvider implements Provider<WebDriver> {
 	protected final Map<String, DesiredCapabilities> capabilitiesMap;
 	private final EventBus eventBus;
 
+	@Inject
+	WebDriverPool webDriverPool;
+
 	public BaseWebDriverProvider(final Configuration config, final Set<WebDriverEventListener> eventListeners,
 			final Map<String, DesiredCapabilities> capabilitiesMap, final EventBus eventBus) {
 		this.config = config;
@@ -73,12 +78,19 @@ public abstract class BaseWebDriverProvider implements Provider<WebDriver> {
 		// post event so users can customize capabilities
 		eventBus.post(new BeforeWebDriverCreationEvent(webDriverKey, capabilities));
 
-		WebDriver webDriver = createWebDriver(capabilities);
+		boolean pooled = webDriverPool != null && webDriverPool.isEnabled();
+		WebDriver webDriver = pooled
+				? webDriverPool.borrow(getPoolKey(webDriverKey, capabilities), () -> createWebDriver(capabilities))
+				: createWebDriver(capabilities);
+		if (pooled) {
+			preparePooledWebDriver(webDriver);
+		}
 		checkState(!(webDriver instanceof EventFiringWebDriver),
 				"WebDrivers must not be wrapped explicitly into an EventFiringWebDriver. This is implicitly done by jFunk.");
 
 		long implicitWaitSeconds = config.getLong(WebConstants.WEBDRIVER_IMPLICIT_WAIT_SECONDS, 0L);
-		if (implicitWaitSeconds > 0) {
+		// pooled drivers may still have the timeout of a previous script
+		if (implicitWaitSeconds > 0 || pooled) {
 			webDriver.manage().timeouts().implicitlyWait(implicitWaitSeconds, TimeUnit.SECONDS);
 		}
 
@@ -89,5 +101,30 @@ public abstract class BaseWebDriverProvider implements Provider<WebDriver> {
 		return eventFiringWebDriver;
 	}
 
+	/**
+	 * Returns the key identifying pooled drivers that may be used interchangeably. Subclasses must
+	 * add all settings a driver is configured with when it is created.
+	 *
+	 * @param webDriverKey
+	 *            the WebDriver key from the configuration
+	 * @param capabilities
+	 *            the capabilities the driver is created with
+	 * @return the pool key
+	 */
+	protected String getPoolKey(final String webDriverKey, final DesiredCapabilities capabilities) {
+		return webDriverKey + new TreeMap<>(capabilities.asMap());
+	}
+
+	/**
+	 * Adapts a driver taken from the pool, which may have been created by another script, to the
+	 * current script. Does nothing by default.
+	 *
+	 * @param webDriver
+	 *            the pooled driver
+	 */
+	protected void preparePooledWebDriver(final WebDriver webDriver) {
+		// nothing to do by default
+	}
+
 	protected abstract WebDriver createWebDriver(DesiredCapabilities capabilities);
 }
@@ -17,11 +17,15 @@ package com.mgmtp.jfunk.web;
 
 import java.io.File;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
 import org.apache.http.client.CredentialsProvider;
 import org.openqa.selenium.Proxy;
 import org.openqa.selenium.WebDriver;
@@ -32,7 +36,11 @@ import org.openqa.selenium.support.events.WebDriverEventListener;
 import com.gargoylesoftware.htmlunit.AjaxController;
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.WebWindowListener;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.eventbus.EventBus;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.core.config.ModuleArchiveDir;
 import com.mgmtp.jfunk.web.util.DumpFileCreator;
@@ -50,6 +58,9 @@ public class HtmlUnitDriverProvider extends BaseWebDriverProvider {
 	protected final Provider<File> moduleArchiveDirProvider;
 	protected final Provider<Set<WebWindowListener>> listenersProvider;
 
+	@Inject
+	HtmlUnitSharedResources sharedResources;
+
 	@Inject
 	protected HtmlUnitDriverProvider(final Configuration config, final Set<WebDriverEventListener> eventListeners,
 			final HtmlUnitWebDriverParams webDriverParams, final HtmlUnitSSLParams sslParams,
@@ -73,7 +84,43 @@ public class HtmlUnitDriverProvider extends BaseWebDriverProvider {
 	@Override
 	protected WebDriver createWebDriver(final DesiredCapabilities capabilities) {
 		Proxy proxy = capabilities != null ? (Proxy) capabilities.getCapability(CapabilityType.PROXY) : null;
-		return new JFunkHtmlUnitDriverImpl(browserVersion, webDriverParams, ajaxController, sslParams,
-				credentialsProviderMap, htmlFileCreatorProvider, moduleArchiveDirProvider, listenersProvider, proxy);
+		JFunkHtmlUnitDriverImpl webDriver = new JFunkHtmlUnitDriverImpl(browserVersion, webDriverParams, ajaxController,
+				sslParams, credentialsProviderMap, htmlFileCreatorProvider, moduleArchiveDirProvider, listenersProvider, proxy);
+		if (sharedResources != null && sharedResources.isEnabled()) {
+			sharedResources.configure(webDriver.getWebClient(), sslParams);
+		}
+		return webDriver;
+	}
+
+	/**
+	 * HtmlUnit drivers are configured when they are created, so the key includes the HtmlUnit
+	 * settings. Credentials and stores are only included as a hash.
+	 */
+	@Override
+	protected String getPoolKey(final String webDriverKey, final DesiredCapabilities capabilities) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		for (Entry<String, CredentialsProvider> entry : new TreeMap<>(credentialsProviderMap).entrySet()) {
+			Credentials credentials = entry.getValue().getCredentials(AuthScope.ANY);
+			hasher.putString(entry.getKey(), Charsets.UTF_8).putString("=", Charsets.UTF_8);
+			if (credentials != null) {
+				hasher.putString(String.valueOf(credentials.getUserPrincipal()), Charsets.UTF_8);
+				hasher.putString(":" + credentials.getPassword() + ";", Charsets.UTF_8);
+			}
+		}
+		hasher.putString(Joiner.on('|').useForNull("").join(sslParams.getKeyStore(), sslParams.getKeyStorePassword(),
+			sslParams.getKeyStoreType(), sslParams.getTrustStore(), sslParams.getTrustStorePassword(),
+			sslParams.getTrustStoreType()), Charsets.UTF_8);
+		return super.getPoolKey(webDriverKey, capabilities) + browserVersion + webDriverParams + "#" + hasher.hash();
+	}
+
+	/**
+	 * Registers the current script's {@link WebWindowListener}s instead of those of the script that
+	 * created the driver.
+	 */
+	@Override
+	protected void preparePooledWebDriver(final WebDriver webDriver) {
+		if (webDriver instanceof JFunkHtmlUnitDriverImpl) {
+			((JFunkHtmlUnitDriverImpl) webDriver).setWebWindowListeners(listenersProvider.get());
+		}
 	}
 }
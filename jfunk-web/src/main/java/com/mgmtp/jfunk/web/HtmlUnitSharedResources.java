@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.common.exception.JFunkException;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.web.htmlunit.SharedCache;
+import com.mgmtp.jfunk.web.htmlunit.SharedConnectionManager;
+import com.mgmtp.jfunk.web.htmlunit.SharedHttpWebConnection;
+import com.mgmtp.jfunk.web.ssl.SSLContextCache;
+
+/**
+ * Process-wide infrastructure shared by HtmlUnit web clients if {@link WebConstants#HTMLUNIT_SHARED} is
+ * enabled, so parallel scripts hitting the same application reuse connections and static resources:
+ * <ul>
+ * <li>a pool of keep-alive connections per SSL configuration, including
+ * {@link com.gargoylesoftware.htmlunit.WebClientOptions#isUseInsecureSSL()} (at most
+ * {@link WebConstants#HTMLUNIT_SHARED_MAX_CONNECTIONS} in total and
+ * {@link WebConstants#HTMLUNIT_SHARED_MAX_CONNECTIONS_PER_ROUTE} per host),</li>
+ * <li>an {@link SSLContext} per key and trust store configuration, which also lets client
+ * certificates configured in {@link HtmlUnitSSLParams} be used,</li>
+ * <li>a cache of static responses and compiled scripts holding at most
+ * {@link WebConstants#HTMLUNIT_SHARED_CACHE_SIZE} entries.</li>
+ * </ul>
+ * Cookies, credentials and alerts remain per web client. Cached responses are keyed by URL only, so
+ * resources must not differ between users if their HTTP headers mark them as static; responses
+ * that may be user-specific are not shared (see {@link SharedCache}). Connections
+ * are closed and the cache is cleared after the run.
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class HtmlUnitSharedResources {
+	private static final int DEFAULT_MAX_CONNECTIONS = 200;
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+	private static final int DEFAULT_CACHE_SIZE = 500;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<Configuration> configProvider;
+	private final SSLContextCache sslContextCache;
+
+	private final SharedCache cache = new SharedCache();
+
+	// SSL contexts are cached per configuration, so this map holds a connection pool per configuration
+	// and whether certificates and host names are verified
+	private final ConcurrentMap<List<Object>, SharedConnectionManager> connectionManagers = new ConcurrentHashMap<>();
+
+	private final AtomicBoolean unsupportedLogged = new AtomicBoolean();
+
+	@Inject
+	HtmlUnitSharedResources(final Provider<Configuration> configProvider, final SSLContextCache sslContextCache) {
+		this.configProvider = configProvider;
+		this.sslContextCache = sslContextCache;
+	}
+
+	/**
+	 * @return {@code true} if shared resources are enabled in the current configuration
+	 */
+	public boolean isEnabled() {
+		return configProvider.get().getBoolean(WebConstants.HTMLUNIT_SHARED, false);
+	}
+
+	/**
+	 * Plugs the specified web client into the shared cache and connection pool.
+	 *
+	 * @param webClient
+	 *            the web client
+	 * @param sslParams
+	 *            the key and trust stores to use for HTTPS connections
+	 */
+	public void configure(final WebClient webClient, final HtmlUnitSSLParams sslParams) {
+		Configuration config = configProvider.get();
+
+		cache.setMaxSize(config.getInteger(WebConstants.HTMLUNIT_SHARED_CACHE_SIZE, DEFAULT_CACHE_SIZE));
+		webClient.setCache(cache);
+
+		if (!SharedHttpWebConnection.isSupported()) {
+			if (unsupportedLogged.compareAndSet(false, true)) {
+				log.warn("HtmlUnit connections cannot be shared with this HtmlUnit version, only the cache is shared");
+			}
+			return;
+		}
+
+		// as with HtmlUnit's own connections, insecure SSL trusts all certificates and host names
+		boolean insecure = webClient.getOptions().isUseInsecureSSL();
+		SSLContext sslContext = sslContextCache.get(toUrl(sslParams.getKeyStore()), sslParams.getKeyStorePassword(),
+			sslParams.getKeyStoreType(), toUrl(sslParams.getTrustStore()), sslParams.getTrustStorePassword(),
+			sslParams.getTrustStoreType(), insecure);
+		SharedConnectionManager connectionManager = connectionManagers.computeIfAbsent(Arrays.<Object>asList(sslContext, insecure),
+			key -> createConnectionManager(sslContext, insecure, config));
+		webClient.setWebConnection(new SharedHttpWebConnection(webClient, connectionManager));
+	}
+
+	private SharedConnectionManager createConnectionManager(final SSLContext sslContext, final boolean insecure,
+			final Configuration config) {
+		SharedConnectionManager connectionManager = new SharedConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+			.register("http", PlainConnectionSocketFactory.getSocketFactory())
+			.register("https", new SSLConnectionSocketFactory(sslContext,
+				insecure ? NoopHostnameVerifier.INSTANCE : SSLConnectionSocketFactory.getDefaultHostnameVerifier()))
+			.build());
+		connectionManager.setMaxTotal(config.getInteger(WebConstants.HTMLUNIT_SHARED_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+		connectionManager.setDefaultMaxPerRoute(config.getInteger(WebConstants.HTMLUNIT_SHARED_MAX_CONNECTIONS_PER_ROUTE,
+			DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+		log.info("Created shared HtmlUnit connection pool (max. {} connections, {} per route)", connectionManager.getMaxTotal(),
+			connectionManager.getDefaultMaxPerRoute());
+		return connectionManager;
+	}
+
+	private static URL toUrl(final String store) {
+		if (store == null) {
+			return null;
+		}
+		try {
+			return new URL(store);
+		} catch (MalformedURLException ex) {
+			// not a URL, so it is a file as for the javax.net.ssl system properties
+			try {
+				return new File(store).toURI().toURL();
+			} catch (MalformedURLException ex2) {
+				throw new JFunkException("Invalid key or trust store: " + store, ex2);
+			}
+		}
+	}
+
+	SharedCache getCache() {
+		return cache;
+	}
+
+	int getConnectionPoolCount() {
+		return connectionManagers.size();
+	}
+
+	/**
+	 * Closes all pooled connections and clears the cache.
+	 */
+	public void shutdown() {
+		for (SharedConnectionManager connectionManager : connectionManagers.values()) {
+			connectionManager.shutdownShared();
+		}
+		connectionManagers.clear();
+		cache.clearShared();
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		for (SharedConnectionManager connectionManager : connectionManagers.values()) {
+			PoolStats stats = connectionManager.getTotalStats();
+			log.info("Shared HtmlUnit connection pool: {} connection(s) leased, {} available, {} pending",
+				stats.getLeased(), stats.getAvailable(), stats.getPending());
+		}
+		if (cache.getSize() > 0) {
+			log.info("Shared HtmlUnit cache: {} entries, {} compiled script(s) reused, {} SSL context(s)", cache.getSize(),
+				cache.getScriptHits(), sslContextCache.size());
+		}
+		shutdown();
+	}
+}
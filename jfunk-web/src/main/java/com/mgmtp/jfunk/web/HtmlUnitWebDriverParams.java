@@ -15,6 +15,9 @@
  */
 package com.mgmtp.jfunk.web;
 
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
 /**
  * @author rnaegele
  */
@@ -106,4 +109,13 @@ public class HtmlUnitWebDriverParams {
 	public boolean isLogIncorrectCode() {
 		return logIncorrectCode;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("connectionTimeout", connectionTimeout)
+				.append("refuseCookies", refuseCookies).append("redirect", redirect).append("javascriptEnabled", javascriptEnabled)
+				.append("cssEnabled", cssEnabled).append("validateJavascript", validateJavascript)
+				.append("ignoreResponseCode", ignoreResponseCode).append("autoRefresh", autoRefresh)
+				.append("logIncorrectCode", logIncorrectCode).toString();
+	}
+}
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkState;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -68,6 +69,8 @@ public class JFunkHtmlUnitDriverImpl extends HtmlUnitDriver implements Incorrect
 	protected final Provider<File> moduleArchiveDirProvider;
 	protected final Provider<Set<WebWindowListener>> listenersProvider;
 
+	private Set<WebWindowListener> webWindowListeners = Collections.emptySet();
+
 	protected JFunkHtmlUnitDriverImpl(final BrowserVersion browserVersion, final HtmlUnitWebDriverParams webDriverParams,
 			final AjaxController ajaxController, final HtmlUnitSSLParams sslParams,
 			final Map<String, CredentialsProvider> credentialsProviderMap,
@@ -121,9 +124,25 @@ public class JFunkHtmlUnitDriverImpl extends HtmlUnitDriver implements Incorrect
 		client.setIncorrectnessListener(this);
 		client.setRefreshHandler(this);
 
-		for (WebWindowListener listener : listenersProvider.get()) {
+		setWebWindowListeners(listenersProvider.get());
+	}
+
+	/**
+	 * Replaces the {@link WebWindowListener}s registered with the web client, e. g. when a pooled
+	 * driver is used by another script.
+	 *
+	 * @param listeners
+	 *            the new listeners
+	 */
+	public void setWebWindowListeners(final Set<WebWindowListener> listeners) {
+		WebClient client = getWebClient();
+		for (WebWindowListener listener : webWindowListeners) {
+			client.removeWebWindowListener(listener);
+		}
+		for (WebWindowListener listener : listeners) {
 			client.addWebWindowListener(listener);
 		}
+		webWindowListeners = listeners;
 	}
 
 	@Override
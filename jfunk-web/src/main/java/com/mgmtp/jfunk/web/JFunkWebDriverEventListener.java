@@ -15,8 +15,8 @@
  */
 package com.mgmtp.jfunk.web;
 
-import static org.apache.commons.io.FileUtils.copyFile;
 import static org.apache.commons.io.FileUtils.deleteQuietly;
+import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
 
 import java.io.File;
@@ -40,11 +40,13 @@ import org.slf4j.LoggerFactory;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.google.common.base.Charsets;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.config.ScriptScoped;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.common.util.SaveOutput;
 import com.mgmtp.jfunk.core.config.ModuleArchiveDir;
+import com.mgmtp.jfunk.core.scripting.ArchiveSink;
 import com.mgmtp.jfunk.web.util.DumpFileCreator;
 import com.mgmtp.jfunk.web.util.HtmlValidatorUtil;
 import com.mgmtp.jfunk.web.util.WebDriverUtils;
@@ -60,14 +62,16 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 	private final Configuration config;
 	private final Provider<File> moduleArchiveDirProvider;
 	private final Provider<DumpFileCreator> dumpFileCreatorProvider;
+	private final Provider<ArchiveSink> archiveSinkProvider;
 
 	@Inject
 	public JFunkWebDriverEventListener(final Configuration config,
 		@ModuleArchiveDir final Provider<File> moduleArchiveDirProvider,
-		final Provider<DumpFileCreator> dumpFileCreatorProvider) {
+		final Provider<DumpFileCreator> dumpFileCreatorProvider, final Provider<ArchiveSink> archiveSinkProvider) {
 		this.config = config;
 		this.moduleArchiveDirProvider = moduleArchiveDirProvider;
 		this.dumpFileCreatorProvider = dumpFileCreatorProvider;
+		this.archiveSinkProvider = archiveSinkProvider;
 		this.saveOutputMap = new EnumMap<>(SaveOutput.class);
 		for (SaveOutput saveOutput : SaveOutput.values()) {
 			// active flag for every output type
@@ -271,6 +275,8 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 				if (f == null) {
 					return;
 				}
+				// HTML pages and screenshots are streamed into the archive, validated HTML is needed as file
+				String path = saveOutput.getIdentifier() + '/' + f.getName();
 
 				switch (saveOutput) {
 					case HTML:
@@ -280,8 +286,9 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 						html.append(" -->");
 						html.append(IOUtils.LINE_SEPARATOR);
 						html.append(driver.getPageSource());
-						writeStringToFile(f, html.toString(), "UTF-8");
-						copyFile(f, new File(moduleArchiveDir, JFunkConstants.LASTPAGE_HTML));
+						byte[] htmlContent = html.toString().getBytes(Charsets.UTF_8);
+						archiveSinkProvider.get().write(path, htmlContent);
+						writeByteArrayToFile(new File(moduleArchiveDir, JFunkConstants.LASTPAGE_HTML), htmlContent);
 						log.trace("Saving page: filename={}, action={}, trigger={}, response={}",
 							f.getName(), action, triggeredBy, driver.getCurrentUrl());
 						break;
@@ -289,7 +296,7 @@ public class JFunkWebDriverEventListener implements WebDriverEventListener {
 						if (driver instanceof TakesScreenshot) {
 							File tmpFile = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
 							if (tmpFile != null) {
-								copyFile(tmpFile, f);
+								archiveSinkProvider.get().write(path, tmpFile);
 								log.trace("Saving page: filename={}, action={}, trigger={}, response={}",
 									f.getName(), action, triggeredBy, driver.getCurrentUrl());
 								deleteQuietly(tmpFile);
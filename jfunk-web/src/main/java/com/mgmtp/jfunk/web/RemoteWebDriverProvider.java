@@ -61,4 +61,12 @@ public class RemoteWebDriverProvider extends BaseWebDriverProvider {
 		log.info("Starting remote web driver with capabilitiesMap: {}", capabilitiesMap);
 		return new Augmenter().augment(new RemoteWebDriver(url, capabilities));
 	}
+
+	/**
+	 * Sessions of different hubs must not be shared, so the key includes the hub URL.
+	 */
+	@Override
+	protected String getPoolKey(final String webDriverKey, final DesiredCapabilities capabilities) {
+		return super.getPoolKey(webDriverKey, capabilities) + "@" + config.get(WebConstants.REMOTE_WEBDRIVER_URL, "");
+	}
 }
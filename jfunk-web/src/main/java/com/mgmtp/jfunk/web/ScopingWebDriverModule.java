@@ -42,6 +42,7 @@ import com.google.inject.Provides;
 import com.google.inject.TypeLiteral;
 import com.mgmtp.jfunk.common.JFunkConstants;
 import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.web.util.DomChangeWaitStatistics;
 import com.mgmtp.jfunk.web.util.DumpFileCreator;
 import com.mgmtp.jfunk.web.util.FormInputHandler;
 import com.mgmtp.jfunk.web.util.WebDriverTool;
@@ -86,6 +87,12 @@ abstract class ScopingWebDriverModule extends BaseWebDriverModule {
 		bindWebDriver(WebConstants.WEBDRIVER_REMOTE, RemoteWebDriverProvider.class);
 
 		bindDisposable(Key.get(WebDriver.class)).to(WebDriverDisposable.class);
+		bind(WebDriverPool.class);
+		bindEventHandler().to(WebDriverPool.class);
+		bind(HtmlUnitSharedResources.class);
+		bindEventHandler().to(HtmlUnitSharedResources.class);
+		bind(DomChangeWaitStatistics.class);
+		bindEventHandler().to(DomChangeWaitStatistics.class);
 
 		bind(new TypeLiteral<Map<String, DesiredCapabilities>>() {
 			//
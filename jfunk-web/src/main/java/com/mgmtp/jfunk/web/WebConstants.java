@@ -66,11 +66,16 @@ public final class WebConstants {
 	public static final String WEBDRIVER_REMOTE = "remote";
 	public static final String WEBDRIVER_IMPLICIT_WAIT_SECONDS = "webdriver.implicit.wait.seconds";
 	public static final String WEBDRIVER_DONT_QUIT = "webdriver.dont.quit";
+	public static final String WEBDRIVER_POOL = "webdriver.pool";
+	public static final String WEBDRIVER_POOL_MAX_IDLE = "webdriver.pool.maxIdle";
+	public static final String WEBDRIVER_POOL_MAX_USES = "webdriver.pool.maxUses";
+	public static final String WEBDRIVER_POOL_MAX_AGE_SECONDS = "webdriver.pool.maxAgeSeconds";
 
 	/*
 	 * Properties for WebDriverTools
 	 */
 	public static final String WDT_TOPMOST_ELEMENT_CHECK = "wdt.topmostElementCheck";
+	public static final String WDT_BATCH_SCRIPTED_TEXT_INPUT = "wdt.batch.scriptedTextInput";
 
 	/*
 	 * Properties for the default WebElementFinder
@@ -79,6 +84,8 @@ public final class WebConstants {
 	public static final String WEF_DISPLAYED = "wef.displayed";
 	public static final String WEF_TIMEOUT_SECONDS = "wef.timeoutSeconds";
 	public static final String WEF_SLEEP_MILLIS = "wef.sleepMillis";
+	public static final String WEF_EVENT_DRIVEN = "wef.eventDriven";
+	public static final String WEF_EVENT_DRIVEN_MAX_SLEEP_MILLIS = "wef.eventDriven.maxSleepMillis";
 
 	/*
 	 * Properties for the default FormInputHandler
@@ -102,6 +109,10 @@ public final class WebConstants {
 	public static final String HTMLUNIT_VALIDATE_JS = "htmlunit.validate.js";
 	public static final String HTMLUNIT_LOG_INCORRECT_CODE = "htmlunit.log.incorrect.code";
 	public static final String HTMLUNIT_SAVE_COMPLETE = "htmlunit.save.complete";
+	public static final String HTMLUNIT_SHARED = "htmlunit.shared";
+	public static final String HTMLUNIT_SHARED_MAX_CONNECTIONS = "htmlunit.shared.maxConnections";
+	public static final String HTMLUNIT_SHARED_MAX_CONNECTIONS_PER_ROUTE = "htmlunit.shared.maxConnectionsPerRoute";
+	public static final String HTMLUNIT_SHARED_CACHE_SIZE = "htmlunit.shared.cacheSize";
 
 	/*
 	 * RemoteWebDriver constants
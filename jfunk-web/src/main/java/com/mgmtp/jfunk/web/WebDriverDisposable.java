@@ -20,6 +20,7 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,19 +38,27 @@ public class WebDriverDisposable implements Disposable<WebDriver> {
 
 	private final Provider<Configuration> configurationProvider;
 
+	@Inject
+	WebDriverPool webDriverPool;
+
 	@Inject
 	public WebDriverDisposable(final Provider<Configuration> configurationProvider) {
 		this.configurationProvider = configurationProvider;
 	}
 
 	/**
-	 * Calls {@link WebDriver#quit()} on the instance return by the provider.
+	 * Calls {@link WebDriver#quit()} on the instance return by the provider, or returns it to the
+	 * {@link WebDriverPool} if it was borrowed from there.
 	 */
 	@Override
 	public void dispose(final WebDriver source) {
 		if (configurationProvider.get().getBoolean(WebConstants.WEBDRIVER_DONT_QUIT)) {
 			return;
 		}
+		WebDriver driver = source instanceof EventFiringWebDriver ? ((EventFiringWebDriver) source).getWrappedDriver() : source;
+		if (webDriverPool != null && webDriverPool.release(driver)) {
+			return;
+		}
 		logger.info("Quitting WebDriver...");
 		source.quit();
 	}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+
+/**
+ * Keeps warm {@link WebDriver} sessions across scripts and modules if {@link WebConstants#WEBDRIVER_POOL} is
+ * enabled. Sessions are pooled per WebDriver key and capabilities. When its scope ends, a session is reset
+ * (extra windows are closed, storage and cookies are cleared, and {@code about:blank} is loaded) and returned
+ * to the pool. Idle sessions are health-checked before they are handed out again. Sessions are quit instead
+ * of being pooled after {@link WebConstants#WEBDRIVER_POOL_MAX_USES} uses, after
+ * {@link WebConstants#WEBDRIVER_POOL_MAX_AGE_SECONDS}, if the reset fails, or if
+ * {@link WebConstants#WEBDRIVER_POOL_MAX_IDLE} sessions of the same kind are already idle. Remaining idle
+ * sessions are quit after the run.
+ * <p>
+ * Note that WebDriver can only delete the cookies and storage of the current domain. HtmlUnit sessions are
+ * cleared completely. Settings taken from the configuration when a driver is created, e. g. HtmlUnit
+ * credentials, are those of the script that created the session.
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class WebDriverPool {
+	private static final int DEFAULT_MAX_IDLE = 8;
+	private static final int DEFAULT_MAX_USES = 50;
+	private static final long DEFAULT_MAX_AGE_SECONDS = 1800L;
+
+	private static final String JS_CLEAR_STORAGE =
+		"try { window.localStorage.clear(); } catch (e) {} try { window.sessionStorage.clear(); } catch (e) {}";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final Provider<Configuration> configProvider;
+
+	private final ConcurrentMap<String, BlockingDeque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+
+	// WebDrivers do not override equals, so this map is identity-based
+	private final ConcurrentMap<WebDriver, PooledSession> leasedSessions = new ConcurrentHashMap<>();
+
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger reused = new AtomicInteger();
+	private final AtomicInteger recycled = new AtomicInteger();
+	private final AtomicInteger discarded = new AtomicInteger();
+
+	@Inject
+	WebDriverPool(final Provider<Configuration> configProvider) {
+		this.configProvider = configProvider;
+	}
+
+	/**
+	 * @return {@code true} if pooling is enabled in the current configuration
+	 */
+	public boolean isEnabled() {
+		return configProvider.get().getBoolean(WebConstants.WEBDRIVER_POOL, false);
+	}
+
+	/**
+	 * Hands out an idle session for the specified pool key or creates a new one.
+	 *
+	 * @param poolKey
+	 *            identifies sessions that may be used interchangeably
+	 * @param factory
+	 *            creates a new session if no healthy idle one is available
+	 * @return the session's WebDriver
+	 */
+	public WebDriver borrow(final String poolKey, final Supplier<WebDriver> factory) {
+		long maxAgeMillis = getMaxAgeMillis();
+		BlockingDeque<PooledSession> idle = idleSessions.get(poolKey);
+		if (idle != null) {
+			// last in, first out, so the warmest sessions are used and surplus ones can age out
+			for (PooledSession session; (session = idle.pollFirst()) != null;) {
+				if (session.isExpired(maxAgeMillis)) {
+					recycled.incrementAndGet();
+					quit(session.driver);
+				} else if (!isAlive(session.driver)) {
+					discarded.incrementAndGet();
+					quit(session.driver);
+				} else {
+					session.uses++;
+					leasedSessions.put(session.driver, session);
+					reused.incrementAndGet();
+					log.info("Reusing pooled WebDriver session '{}' (use {})", poolKey, session.uses);
+					return session.driver;
+				}
+			}
+		}
+
+		WebDriver driver = factory.get();
+		leasedSessions.put(driver, new PooledSession(poolKey, driver));
+		created.incrementAndGet();
+		return driver;
+	}
+
+	/**
+	 * Returns a session handed out by {@link #borrow(String, Supplier)} to the pool or quits it.
+	 *
+	 * @param driver
+	 *            the session's WebDriver
+	 * @return {@code false} if the WebDriver does not belong to the pool, in which case it is left
+	 *         untouched
+	 */
+	public boolean release(final WebDriver driver) {
+		PooledSession session = leasedSessions.remove(driver);
+		if (session == null) {
+			return false;
+		}
+
+		Configuration config = configProvider.get();
+		int maxUses = config.getInteger(WebConstants.WEBDRIVER_POOL_MAX_USES, DEFAULT_MAX_USES);
+		if (maxUses > 0 && session.uses >= maxUses || session.isExpired(getMaxAgeMillis())) {
+			log.info("Recycling pooled WebDriver session '{}' after {} use(s)", session.poolKey, session.uses);
+			recycled.incrementAndGet();
+			quit(driver);
+			return true;
+		}
+
+		if (!reset(driver)) {
+			discarded.incrementAndGet();
+			quit(driver);
+			return true;
+		}
+
+		BlockingDeque<PooledSession> idle = idleSessions.get(session.poolKey);
+		if (idle == null) {
+			int maxIdle = Math.max(1, config.getInteger(WebConstants.WEBDRIVER_POOL_MAX_IDLE, DEFAULT_MAX_IDLE));
+			BlockingDeque<PooledSession> newIdle = new LinkedBlockingDeque<>(maxIdle);
+			idle = idleSessions.putIfAbsent(session.poolKey, newIdle);
+			if (idle == null) {
+				idle = newIdle;
+			}
+		}
+		if (!idle.offerFirst(session)) {
+			log.info("WebDriver pool for '{}' is full, quitting session", session.poolKey);
+			discarded.incrementAndGet();
+			quit(driver);
+		}
+		return true;
+	}
+
+	private long getMaxAgeMillis() {
+		long maxAgeSeconds = configProvider.get().getLong(WebConstants.WEBDRIVER_POOL_MAX_AGE_SECONDS, DEFAULT_MAX_AGE_SECONDS);
+		return maxAgeSeconds > 0L ? TimeUnit.SECONDS.toMillis(maxAgeSeconds) : Long.MAX_VALUE;
+	}
+
+	private boolean isAlive(final WebDriver driver) {
+		try {
+			driver.getWindowHandle();
+			return true;
+		} catch (WebDriverException ex) {
+			log.warn("Pooled WebDriver session failed health check, discarding it: {}", ex.getMessage());
+			return false;
+		}
+	}
+
+	private boolean reset(final WebDriver driver) {
+		try {
+			Iterator<String> it = driver.getWindowHandles().iterator();
+			String mainWindow = it.next();
+			while (it.hasNext()) {
+				driver.switchTo().window(it.next());
+				driver.close();
+			}
+			driver.switchTo().window(mainWindow);
+
+			// storage and cookies can only be cleared for the current page's origin, about:blank has none
+			if (driver instanceof JavascriptExecutor && !"about:blank".equals(driver.getCurrentUrl())
+					&& !(driver instanceof HtmlUnitDriver && !((HtmlUnitDriver) driver).isJavascriptEnabled())) {
+				((JavascriptExecutor) driver).executeScript(JS_CLEAR_STORAGE);
+			}
+			driver.manage().deleteAllCookies();
+			if (driver instanceof JFunkHtmlUnitWebDriver) {
+				((JFunkHtmlUnitWebDriver) driver).getWebClient().getCookieManager().clearCookies();
+			}
+			if (driver instanceof JFunkHtmlUnitDriverImpl) {
+				((JFunkHtmlUnitDriverImpl) driver).getAlerts().clear();
+			}
+
+			driver.get("about:blank");
+			return true;
+		} catch (WebDriverException ex) {
+			log.warn("Could not reset pooled WebDriver session, discarding it", ex);
+			return false;
+		}
+	}
+
+	private void quit(final WebDriver driver) {
+		try {
+			driver.quit();
+		} catch (WebDriverException ex) {
+			log.warn("Error quitting WebDriver: {}", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Quits all idle sessions.
+	 */
+	public void shutdown() {
+		for (Entry<String, BlockingDeque<PooledSession>> entry : idleSessions.entrySet()) {
+			for (PooledSession session; (session = entry.getValue().pollFirst()) != null;) {
+				quit(session.driver);
+			}
+		}
+	}
+
+	int getCreatedCount() {
+		return created.get();
+	}
+
+	int getReusedCount() {
+		return reused.get();
+	}
+
+	int getRecycledCount() {
+		return recycled.get();
+	}
+
+	int getDiscardedCount() {
+		return discarded.get();
+	}
+
+	int getIdleCount() {
+		int count = 0;
+		for (BlockingDeque<PooledSession> idle : idleSessions.values()) {
+			count += idle.size();
+		}
+		return count;
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		if (created.get() > 0) {
+			log.info("WebDriver pool: {} session(s) created, {} reused, {} recycled, {} discarded, {} idle, {} still in use",
+				created.get(), reused.get(), recycled.get(), discarded.get(), getIdleCount(), leasedSessions.size());
+		}
+		shutdown();
+	}
+
+	private static class PooledSession {
+		private final String poolKey;
+		private final WebDriver driver;
+		private final long createdMillis = System.currentTimeMillis();
+
+		// only accessed by the thread holding the lease
+		private int uses = 1;
+
+		PooledSession(final String poolKey, final WebDriver driver) {
+			this.poolKey = poolKey;
+			this.driver = driver;
+		}
+
+		boolean isExpired(final long maxAgeMillis) {
+			return System.currentTimeMillis() - createdMillis > maxAgeMillis;
+		}
+	}
+}
@@ -23,6 +23,7 @@ import javax.inject.Provider;
 import org.openqa.selenium.WebDriver;
 
 import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.web.util.DomChangeWaitStatistics;
 import com.mgmtp.jfunk.web.util.WebElementFinder;
 
 /**
@@ -32,14 +33,18 @@ import com.mgmtp.jfunk.web.util.WebElementFinder;
  * @since 3.1
  */
 class WebElementFinderProvider implements Provider<WebElementFinder> {
+	private static final long DEFAULT_EVENT_DRIVEN_MAX_SLEEP_MILLIS = 2000L;
 
 	private final Provider<WebDriver> webDriverProvider;
 	private final Provider<Configuration> configProvider;
+	private final DomChangeWaitStatistics waitStatistics;
 
 	@Inject
-	WebElementFinderProvider(final Provider<WebDriver> webDriverProvider, final Provider<Configuration> configProvider) {
+	WebElementFinderProvider(final Provider<WebDriver> webDriverProvider, final Provider<Configuration> configProvider,
+			final DomChangeWaitStatistics waitStatistics) {
 		this.webDriverProvider = webDriverProvider;
 		this.configProvider = configProvider;
+		this.waitStatistics = waitStatistics;
 
 	}
 
@@ -61,6 +66,10 @@ class WebElementFinderProvider implements Provider<WebElementFinder> {
 			long sleepMillis = config.getLong(WebConstants.WEF_SLEEP_MILLIS, 0L);
 			wef = sleepMillis > 0L ? wef.timeout(timeout, sleepMillis) : wef.timeout(timeout);
 		}
+		if (config.getBoolean(WebConstants.WEF_EVENT_DRIVEN, false)) {
+			wef = wef.eventDriven(config.getLong(WebConstants.WEF_EVENT_DRIVEN_MAX_SLEEP_MILLIS, DEFAULT_EVENT_DRIVEN_MAX_SLEEP_MILLIS),
+				waitStatistics);
+		}
 
 		return wef;
 	}
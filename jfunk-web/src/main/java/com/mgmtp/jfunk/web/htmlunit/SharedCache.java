@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.htmlunit;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+import org.w3c.dom.css.CSSStyleSheet;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebResponseWrapper;
+
+/**
+ * {@link Cache} shared by many web clients. As with the default cache, only responses to GET
+ * requests that HTTP caching headers mark as static are cached, keyed by URL. Compiled scripts
+ * are shared along with their responses, so they are neither downloaded nor compiled again.
+ * Parsed style sheets may be modified by scripts and are therefore not shared; they are parsed
+ * from the shared responses.
+ * <p>
+ * Responses that may be specific to a user are not shared: responses marked
+ * {@code Cache-Control: private} or {@code no-store}, responses setting cookies, and responses to
+ * requests that carried credentials or cookies.
+ * <p>
+ * Web clients clear their cache when they are closed, so {@link #clear()} is ignored. Only the
+ * owner of the cache clears it by calling {@link #clearShared()}.
+ *
+ * @since 3.3.2
+ */
+public class SharedCache extends Cache {
+	private static final long serialVersionUID = 1L;
+
+	private final AtomicLong scriptHits = new AtomicLong();
+
+	@Override
+	public boolean cacheIfPossible(final WebRequest request, final WebResponse response, final Object toCache) {
+		if (!isShareable(request, response)) {
+			return false;
+		}
+		return super.cacheIfPossible(request, response, toCache instanceof Script ? toCache : null);
+	}
+
+	static boolean isShareable(final WebRequest request, final WebResponse response) {
+		if (response instanceof UserSpecificResponse || request.getCredentials() != null
+				|| request.isAdditionalHeader("Authorization") || request.isAdditionalHeader("Cookie")) {
+			return false;
+		}
+		for (NameValuePair header : response.getResponseHeaders()) {
+			String name = header.getName();
+			if ("Set-Cookie".equalsIgnoreCase(name) || "Set-Cookie2".equalsIgnoreCase(name)) {
+				return false;
+			}
+			if ("Cache-Control".equalsIgnoreCase(name)) {
+				for (String directive : header.getValue().split(",")) {
+					String token = directive.trim().toLowerCase(Locale.ENGLISH);
+					// private may be followed by field names
+					if (token.equals("no-store") || token.equals("private") || token.startsWith("private=")) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void cache(final String css, final CSSStyleSheet styleSheet) {
+		// style sheets are not shared
+	}
+
+	@Override
+	public Object getCachedObject(final WebRequest request) {
+		Object cachedObject = super.getCachedObject(request);
+		if (cachedObject instanceof Script) {
+			scriptHits.incrementAndGet();
+		}
+		return cachedObject;
+	}
+
+	@Override
+	public void clear() {
+		// called by each web client when it is closed
+	}
+
+	/**
+	 * Removes all cached responses and scripts.
+	 */
+	public void clearShared() {
+		super.clear();
+	}
+
+	/**
+	 * @return how often a compiled script was taken from the cache
+	 */
+	public long getScriptHits() {
+		return scriptHits.get();
+	}
+
+	/**
+	 * Marks a response to a request that carried cookies or credentials, which are added by the
+	 * connection and are therefore not visible in the {@link WebRequest}.
+	 *
+	 * @see SharedHttpWebConnection
+	 */
+	static final class UserSpecificResponse extends WebResponseWrapper {
+		private static final long serialVersionUID = 1L;
+
+		UserSpecificResponse(final WebResponse response) {
+			super(response);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.htmlunit;
+
+import org.apache.http.config.Registry;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Connection pool shared by the {@link SharedHttpWebConnection}s of many web clients. HtmlUnit
+ * shuts down the connection manager when a web client is closed or its SSL or proxy options
+ * change, so {@link #shutdown()} is ignored. Only the owner of the pool shuts it down by calling
+ * {@link #shutdownShared()}.
+ *
+ * @since 3.3.2
+ */
+public class SharedConnectionManager extends PoolingHttpClientConnectionManager {
+
+	public SharedConnectionManager(final Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+		super(socketFactoryRegistry);
+	}
+
+	@Override
+	public void shutdown() {
+		// the pool outlives the web clients using it
+	}
+
+	/**
+	 * Closes all pooled connections.
+	 */
+	public void shutdownShared() {
+		super.shutdown();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.htmlunit;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.HttpWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * {@link HttpWebConnection} that sends its requests over the connections of a
+ * {@link SharedConnectionManager} instead of creating a connection pool per web client. Cookies,
+ * credentials and caches remain those of the web client. Responses to requests that carried
+ * cookies or credentials are marked, so the {@link SharedCache} does not share them.
+ * <p>
+ * {@link HttpWebConnection} does not allow setting the connection manager, so it is set via
+ * reflection. Use {@link #isSupported()} to check whether this works with the HtmlUnit version
+ * on the classpath.
+ *
+ * @since 3.3.2
+ */
+public class SharedHttpWebConnection extends HttpWebConnection {
+	private static final Logger LOG = LoggerFactory.getLogger(SharedHttpWebConnection.class);
+
+	private static final Field CONNECTION_MANAGER_FIELD = findConnectionManagerField();
+
+	private final WebClient webClient;
+	private final SharedConnectionManager connectionManager;
+
+	public SharedHttpWebConnection(final WebClient webClient, final SharedConnectionManager connectionManager) {
+		super(webClient);
+		this.webClient = webClient;
+		this.connectionManager = connectionManager;
+	}
+
+	private static Field findConnectionManagerField() {
+		try {
+			Field field = HttpWebConnection.class.getDeclaredField("connectionManager_");
+			if (field.getType() != PoolingHttpClientConnectionManager.class) {
+				LOG.warn("Unexpected type of HttpWebConnection.connectionManager_: {}", field.getType());
+				return null;
+			}
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException | SecurityException ex) {
+			LOG.warn("Cannot share HtmlUnit connections: {}", ex.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * @return {@code true} if the connection manager can be shared with the HtmlUnit version on the
+	 *         classpath
+	 */
+	public static boolean isSupported() {
+		return CONNECTION_MANAGER_FIELD != null;
+	}
+
+	@Override
+	public WebResponse getResponse(final WebRequest request) throws IOException {
+		// HtmlUnit drops the connection manager when the web client's SSL or proxy options change
+		useSharedConnectionManager();
+		// cookies and credentials are added by the connection, so the request does not show them
+		boolean userSpecific = !webClient.getCookies(request.getUrl()).isEmpty() || hasCredentials(request);
+		WebResponse response = super.getResponse(request);
+		return userSpecific ? new SharedCache.UserSpecificResponse(response) : response;
+	}
+
+	private boolean hasCredentials(final WebRequest request) {
+		if (request.getCredentials() != null || request.getUrlCredentials() != null) {
+			return true;
+		}
+		// credentials configured for the host are sent when the server asks for them
+		CredentialsProvider credentialsProvider = webClient.getCredentialsProvider();
+		return credentialsProvider != null && credentialsProvider.getCredentials(
+			new AuthScope(request.getUrl().getHost(), request.getUrl().getPort())) != null;
+	}
+
+	private void useSharedConnectionManager() {
+		try {
+			if (CONNECTION_MANAGER_FIELD.get(this) != connectionManager) {
+				CONNECTION_MANAGER_FIELD.set(this, connectionManager);
+			}
+		} catch (IllegalAccessException ex) {
+			throw new IllegalStateException("Cannot set the shared connection manager", ex);
+		}
+	}
+
+	@Override
+	protected HttpClientBuilder createHttpClient() {
+		HttpClientBuilder builder = super.createHttpClient();
+		builder.setConnectionManagerShared(true);
+		return builder;
+	}
+}
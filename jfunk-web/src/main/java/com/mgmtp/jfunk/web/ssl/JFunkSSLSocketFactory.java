@@ -65,6 +65,7 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 	private final URL trustStoreUrl;
 	private final char[] trustStorePassword;
 	private final String trustStoreType;
+	private final boolean trustAll;
 
 	private volatile SSLContext sslContext;
 
@@ -87,6 +88,20 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 	 */
 	public JFunkSSLSocketFactory(final URL keyStoreUrl, final String keyStorePassword, final String keyStoreType, final URL trustStoreUrl,
 			final String trustStorePassword, final String trustStoreType) {
+		this(keyStoreUrl, keyStorePassword, keyStoreType, trustStoreUrl, trustStorePassword, trustStoreType, false);
+	}
+
+	/**
+	 * Creates a factory that may trust all server certificates, e. g. for self-signed certificates
+	 * of test systems. The other parameters are those of
+	 * {@link #JFunkSSLSocketFactory(URL, String, String, URL, String, String)}.
+	 * 
+	 * @param trustAll
+	 *            if {@code true}, all server certificates are trusted and the trust store is ignored
+	 * @since 3.3.2
+	 */
+	public JFunkSSLSocketFactory(final URL keyStoreUrl, final String keyStorePassword, final String keyStoreType, final URL trustStoreUrl,
+			final String trustStorePassword, final String trustStoreType, final boolean trustAll) {
 
 		this.keyStoreUrl = keyStoreUrl;
 		this.keyStorePassword = keyStorePassword != null ? keyStorePassword.toCharArray() : null;
@@ -95,6 +110,7 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 		this.trustStoreUrl = trustStoreUrl;
 		this.trustStorePassword = trustStorePassword != null ? trustStorePassword.toCharArray() : null;
 		this.trustStoreType = trustStoreType != null ? trustStoreType : "jks";
+		this.trustAll = trustAll;
 	}
 
 	private KeyStore createStore(final URL url, final char[] password, final String type) throws KeyStoreException, IOException,
@@ -164,7 +180,9 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 				keymanagers = createKeyManagers(keystore, this.keyStorePassword);
 			}
 
-			if (this.trustStoreUrl != null) {
+			if (this.trustAll) {
+				trustmanagers = new TrustManager[] { new JFunkTrustAllManager() };
+			} else if (this.trustStoreUrl != null) {
 				KeyStore keystore = createStore(this.trustStoreUrl, this.trustStorePassword, this.trustStoreType);
 
 				if (log.isDebugEnabled()) {
@@ -204,7 +222,10 @@ public class JFunkSSLSocketFactory implements LayeredSchemeSocketFactory {
 		log.debug("  Issuer DN: {}", cert.getIssuerDN());
 	}
 
-	private SSLContext getSSLContext() {
+	/**
+	 * @return the SSL context, which is initialized from the key and trust stores on first access
+	 */
+	public SSLContext getSSLContext() {
 		if (this.sslContext == null) {
 			synchronized (this) {
 				if (sslContext == null) {
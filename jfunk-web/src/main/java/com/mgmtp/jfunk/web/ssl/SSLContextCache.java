@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.ssl;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Caches an {@link SSLContext} per key and trust store configuration, so the stores are loaded
+ * and the context is initialized only once per process instead of once per connection or
+ * browser instance. An initialized {@link SSLContext} is thread-safe and may be shared.
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class SSLContextCache {
+
+	private final ConcurrentMap<List<String>, JFunkSSLSocketFactory> factories = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the cached {@link SSLContext} for the specified configuration, creating it if
+	 * necessary. The parameters are those of
+	 * {@link JFunkSSLSocketFactory#JFunkSSLSocketFactory(URL, String, String, URL, String, String)}.
+	 */
+	public SSLContext get(final URL keyStoreUrl, final String keyStorePassword, final String keyStoreType,
+			final URL trustStoreUrl, final String trustStorePassword, final String trustStoreType) {
+		return get(keyStoreUrl, keyStorePassword, keyStoreType, trustStoreUrl, trustStorePassword, trustStoreType, false);
+	}
+
+	/**
+	 * Returns the cached {@link SSLContext} for the specified configuration, creating it if
+	 * necessary. The parameters are those of
+	 * {@link JFunkSSLSocketFactory#JFunkSSLSocketFactory(URL, String, String, URL, String, String, boolean)}.
+	 */
+	public SSLContext get(final URL keyStoreUrl, final String keyStorePassword, final String keyStoreType,
+			final URL trustStoreUrl, final String trustStorePassword, final String trustStoreType, final boolean trustAll) {
+		// URL.equals may resolve host names, so the external forms are compared
+		List<String> key = Arrays.asList(keyStoreUrl != null ? keyStoreUrl.toExternalForm() : null, keyStorePassword,
+			keyStoreType, trustStoreUrl != null ? trustStoreUrl.toExternalForm() : null, trustStorePassword,
+			trustStoreType, String.valueOf(trustAll));
+		JFunkSSLSocketFactory factory = factories.computeIfAbsent(key, k -> new JFunkSSLSocketFactory(keyStoreUrl,
+			keyStorePassword, keyStoreType, trustStoreUrl, trustStorePassword, trustStoreType, trustAll));
+		return factory.getSSLContext();
+	}
+
+	/**
+	 * @return the number of cached configurations
+	 */
+	public int size() {
+		return factories.size();
+	}
+}
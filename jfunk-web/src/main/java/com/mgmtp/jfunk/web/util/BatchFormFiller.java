@@ -0,0 +1,580 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.mgmtp.jfunk.common.util.ElementTrafo;
+import com.mgmtp.jfunk.core.step.base.StepMode;
+import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.web.WebConstants;
+import com.mgmtp.jfunk.web.exception.InvalidValueException;
+import com.mgmtp.jfunk.web.util.FormFillResult.FieldOutcome;
+import com.mgmtp.jfunk.web.util.FormFillResult.Status;
+import com.mgmtp.jfunk.web.util.FormInputHandler.DefaultsProvider;
+
+/**
+ * Sets or checks the values of several fields with as few driver round trips as possible. All
+ * fields are located and described (tag, type, value, state, and options) in one script call.
+ * Consecutive changes are then applied in one script call each, in field order, firing
+ * {@code input} and {@code change} events. Text fields are typed into unless scripted text input is
+ * allowed. As earlier changes may affect later fields, e. g. through {@code onchange} handlers,
+ * queued changes compare the current value when they are applied, and the remaining fields are
+ * described again after changes have been applied.
+ * <p>
+ * A field is handled by {@link FormInputHandler#perform()} instead, including its wait, if its
+ * locator cannot be evaluated in JavaScript, if it is not present or does not meet the enabled,
+ * displayed, and selected restrictions yet, if a condition is specified, or if no option matches
+ * the value to select. Fields that are disabled or not displayed are set individually, too, so
+ * they fail or are skipped exactly as with {@link FormInputHandler#perform()}. If a scripted change
+ * fails because the form has changed in the meantime, or a click does not change the state of a
+ * checkbox or radio button, that field and the remaining fields are handled individually.
+ *
+ * @since 3.3.2
+ */
+final class BatchFormFiller {
+
+	// returns the matching elements for each locator, described by plain objects
+	private static final String JS_DESCRIBE_FIELDS = "var locators = arguments[0];"
+			+ "function find(l) {"
+			+ "  var a = [], i, list;"
+			+ "  if (l[0] === 'id') { var e = document.getElementById(l[1]); return e ? [e] : []; }"
+			+ "  if (l[0] === 'xpath') {"
+			+ "    var it = document.evaluate(l[1], document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+			+ "    for (i = 0; i < it.snapshotLength; i++) { if (it.snapshotItem(i).nodeType === 1) { a.push(it.snapshotItem(i)); } }"
+			+ "    return a;"
+			+ "  }"
+			+ "  list = l[0] === 'name' ? document.getElementsByName(l[1])"
+			+ "    : l[0] === 'className' ? document.getElementsByClassName(l[1])"
+			+ "    : l[0] === 'tagName' ? document.getElementsByTagName(l[1]) : document.querySelectorAll(l[1]);"
+			+ "  for (i = 0; i < list.length; i++) { a.push(list[i]); }"
+			+ "  return a;"
+			+ "}"
+			+ "function displayed(e) {"
+			+ "  if (e.tagName.toLowerCase() === 'input' && String(e.type).toLowerCase() === 'hidden') { return false; }"
+			+ "  if (window.getComputedStyle(e).visibility === 'hidden') { return false; }"
+			+ "  for (var n = e; n && n.nodeType === 1; n = n.parentNode) {"
+			+ "    if (window.getComputedStyle(n).display === 'none') { return false; }"
+			+ "  }"
+			+ "  return true;"
+			+ "}"
+			+ "function describe(e) {"
+			+ "  var d = { element: e, tag: e.tagName.toLowerCase(), type: String(e.getAttribute('type') || '').toLowerCase(),"
+			+ "    value: e.value === undefined ? e.getAttribute('value') : e.value, checked: e.checked === true,"
+			+ "    readOnly: e.readOnly === true, enabled: e.disabled !== true, displayed: displayed(e) };"
+			+ "  if (d.tag === 'select') {"
+			+ "    d.options = [];"
+			+ "    for (var i = 0; i < e.options.length; i++) {"
+			+ "      d.options.push([e.options[i].value, (e.options[i].textContent || '').replace(/\\s+/g, ' ').trim()]);"
+			+ "    }"
+			+ "    d.value = e.selectedIndex >= 0 ? e.options[e.selectedIndex].value : null;"
+			+ "  }"
+			+ "  return d;"
+			+ "}"
+			+ "var result = [];"
+			+ "for (var i = 0; i < locators.length; i++) {"
+			+ "  var matches = find(locators[i]), described = [];"
+			+ "  for (var j = 0; j < matches.length; j++) { described.push(describe(matches[j])); }"
+			+ "  result.push(described);"
+			+ "}"
+			+ "return result;";
+
+	// applies the changes in order unless the field already has the value, returns whether each change
+	// was necessary and the previous value, up to the first change that could not be applied; clicks
+	// may be ignored, e. g. by disabled elements or cancelled by handlers, so their effect is checked
+	private static final String JS_SET_FIELDS = "var changes = arguments[0], result = [];"
+			+ "function fire(e, type) {"
+			+ "  var event = document.createEvent('HTMLEvents');"
+			+ "  event.initEvent(type, true, false);"
+			+ "  e.dispatchEvent(event);"
+			+ "}"
+			+ "function text(o) { return (o.textContent || '').replace(/\\s+/g, ' ').trim(); }"
+			+ "for (var i = 0; i < changes.length; i++) {"
+			+ "  var e = changes[i][0], action = changes[i][1], value = changes[i][2], j;"
+			+ "  if (!e.ownerDocument || !e.ownerDocument.documentElement.contains(e)) { return result; }"
+			+ "  if (action === 'checkbox') {"
+			+ "    result.push([e.checked !== (value === 'true'), String(e.checked)]);"
+			+ "    if (e.checked !== (value === 'true')) {"
+			+ "      e.click();"
+			+ "      if (e.checked !== (value === 'true')) { result.pop(); return result; }"
+			+ "    }"
+			+ "  } else if (action === 'radio') {"
+			+ "    result.push([!e.checked, null]);"
+			+ "    if (!e.checked) {"
+			+ "      e.click();"
+			+ "      if (!e.checked) { result.pop(); return result; }"
+			+ "    }"
+			+ "  } else if (action === 'select') {"
+			+ "    var index = -1;"
+			+ "    for (j = 0; j < e.options.length && index < 0; j++) { if (e.options[j].value === value) { index = j; } }"
+			+ "    for (j = 0; j < e.options.length && index < 0; j++) { if (text(e.options[j]) === value) { index = j; } }"
+			+ "    if (index < 0) { return result; }"
+			+ "    result.push([index !== e.selectedIndex, e.selectedIndex >= 0 ? e.options[e.selectedIndex].value : null]);"
+			+ "    if (index !== e.selectedIndex) {"
+			+ "      e.selectedIndex = index;"
+			+ "      fire(e, 'input');"
+			+ "      fire(e, 'change');"
+			+ "    }"
+			+ "  } else {"
+			+ "    result.push([e.value !== value, e.value]);"
+			+ "    if (e.value !== value) {"
+			+ "      if (e.focus) { e.focus(); }"
+			+ "      e.value = value;"
+			+ "      fire(e, 'input');"
+			+ "      fire(e, 'change');"
+			+ "    }"
+			+ "  }"
+			+ "}"
+			+ "return result;";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final FormInputHandler handler;
+	private final WebElementFinder finder;
+	private final DataSet dataSet;
+	private final StepMode stepMode;
+	private final DefaultsProvider defaultsProvider;
+	private final ElementTrafo setTrafo;
+	private final ElementTrafo checkTrafo;
+	private final boolean scriptedTextInput;
+
+	// Field does not override equals, so this map is identity-based
+	private final Map<Field, FieldOutcome> outcomes = newHashMap();
+	private final List<List<Object>> pendingChanges = newArrayList();
+	private final List<Field> pendingFields = newArrayList();
+	private final List<String> pendingValues = newArrayList();
+	private InvalidValueException firstInvalid;
+	private boolean formChanged;
+	// true if values have been changed since the fields were described
+	private boolean descriptionsStale;
+
+	BatchFormFiller(final FormInputHandler handler, final WebElementFinder finder, final DataSet dataSet,
+			final StepMode stepMode, final DefaultsProvider defaultsProvider, final ElementTrafo setTrafo,
+			final ElementTrafo checkTrafo, final boolean scriptedTextInput) {
+		this.handler = handler;
+		this.finder = finder;
+		this.dataSet = dataSet;
+		this.stepMode = stepMode;
+		this.defaultsProvider = defaultsProvider;
+		this.setTrafo = setTrafo;
+		this.checkTrafo = checkTrafo;
+		this.scriptedTextInput = scriptedTextInput;
+	}
+
+	FormFillResult fill(final Map<String, By> fieldsByDataKey) {
+		List<Field> fields = newArrayList();
+		for (Entry<String, By> entry : fieldsByDataKey.entrySet()) {
+			fields.add(new Field(entry.getKey(), entry.getValue()));
+		}
+
+		if (stepMode == StepMode.NONE) {
+			for (Field field : fields) {
+				addOutcome(field, Status.SKIPPED, null, null);
+			}
+			return result(fields);
+		}
+
+		describe(fields);
+
+		for (int i = 0; i < fields.size(); ++i) {
+			Field field = fields.get(i);
+			if (descriptionsStale && pendingChanges.isEmpty() && !formChanged) {
+				// applied changes may have affected the remaining fields, e. g. their options
+				describe(fields.subList(i, fields.size()));
+				descriptionsStale = false;
+			}
+
+			Map<String, Object> description = formChanged ? null : field.getUsableMatch();
+			if (description == null || finder.getCondition() != null
+					|| stepMode == StepMode.SET_VALUE && !isInteractable(description)) {
+				flush();
+				performIndividually(field);
+				continue;
+			}
+
+			switch (stepMode) {
+				case CHECK_VALUE:
+					String checkValue = dataSet.getValue(field.dataKey);
+					if (checkTrafo != null) {
+						checkValue = checkTrafo.trafo(checkValue);
+					}
+					check(field, description, checkValue);
+					break;
+
+				case CHECK_DEFAULT:
+					checkState(defaultsProvider != null, "No DefaultsProvider set when StepMode is CHECK_DEFAULT.");
+					check(field, description, defaultsProvider.get(element(description), dataSet, field.dataKey, null));
+					break;
+
+				case SET_VALUE:
+					String setValue = dataSet.getValue(field.dataKey);
+					if (setTrafo != null) {
+						setValue = setTrafo.trafo(setValue);
+					}
+					set(field, description, setValue);
+					break;
+
+				default:
+					throw new IllegalArgumentException("Unhandled StepMode=" + stepMode);
+			}
+		}
+		flush();
+
+		FormFillResult result = result(fields);
+		if (firstInvalid != null) {
+			throw firstInvalid;
+		}
+		return result;
+	}
+
+	private void describe(final List<Field> fields) {
+		List<List<String>> locators = newArrayList();
+		List<Field> resolvable = newArrayList();
+		for (Field field : fields) {
+			List<String> locator = toLocator(field.by);
+			if (locator != null) {
+				locators.add(locator);
+				resolvable.add(field);
+			}
+		}
+		if (locators.isEmpty()) {
+			return;
+		}
+
+		List<?> descriptions = (List<?>) executor().executeScript(JS_DESCRIBE_FIELDS, locators);
+		for (int i = 0; i < resolvable.size(); ++i) {
+			resolvable.get(i).matches = castDescriptions(descriptions.get(i));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> castDescriptions(final Object descriptions) {
+		return (List<Map<String, Object>>) descriptions;
+	}
+
+	/**
+	 * Translates the standard locators into locators evaluated by {@link #JS_DESCRIBE_FIELDS} and
+	 * {@link DomChangeSleeper}.
+	 *
+	 * @return the strategy and the value, or {@code null} if the locator is not supported
+	 */
+	static List<String> toLocator(final By by) {
+		String[][] strategies = {
+				{ "id", "By.id: " }, { "name", "By.name: " }, { "css", "By.cssSelector: " }, { "xpath", "By.xpath: " },
+				{ "className", "By.className: " }, { "tagName", "By.tagName: " } };
+		Class<?>[] classes = {
+				By.ById.class, By.ByName.class, By.ByCssSelector.class, By.ByXPath.class, By.ByClassName.class,
+				By.ByTagName.class };
+		for (int i = 0; i < classes.length; ++i) {
+			if (by.getClass() == classes[i]) {
+				String string = by.toString();
+				return string.startsWith(strategies[i][1])
+						? Arrays.asList(strategies[i][0], string.substring(strategies[i][1].length()))
+						: null;
+			}
+		}
+		return null;
+	}
+
+	private void set(final Field field, final Map<String, Object> description, final String setValue) {
+		// the description is current unless changes are pending, otherwise the script compares values
+		boolean current = pendingChanges.isEmpty();
+		String tag = (String) description.get("tag");
+		String type = (String) description.get("type");
+		String currentValue = (String) description.get("value");
+
+		if (WebConstants.SELECT.equalsIgnoreCase(tag)) {
+			String optionValue = findOptionValue(description, setValue);
+			if (optionValue == null) {
+				// let the FormInputHandler report the missing option
+				flush();
+				performIndividually(field);
+			} else if (current && optionValue.equals(currentValue)) {
+				addOutcome(field, Status.UNCHANGED, setValue, currentValue);
+			} else {
+				addChange(field, description, "select", setValue, setValue);
+			}
+
+		} else if (WebConstants.INPUT.equalsIgnoreCase(tag) && WebConstants.RADIO.equals(type)) {
+			Map<String, Object> target = null;
+			for (Map<String, Object> radio : field.getUsableMatches()) {
+				if (StringUtils.equals((String) radio.get("value"), setValue)) {
+					target = radio;
+					break;
+				}
+			}
+			if (target != null && !isInteractable(target)) {
+				flush();
+				performIndividually(field);
+			} else if (target != null && !(current && isChecked(target))) {
+				addChange(field, target, "radio", null, setValue);
+			} else {
+				addOutcome(field, Status.UNCHANGED, setValue, null);
+			}
+
+		} else if (WebConstants.CHECKBOX.equals(type)) {
+			boolean checked = isChecked(description);
+			if (!current || Boolean.valueOf(setValue) != checked) {
+				addChange(field, description, "checkbox", String.valueOf(Boolean.valueOf(setValue)), setValue);
+			} else {
+				addOutcome(field, Status.UNCHANGED, setValue, String.valueOf(checked));
+			}
+
+		} else if (Boolean.TRUE.equals(description.get("readOnly"))) {
+			log.warn("Element is invisible or disabled, value cannot be set");
+			addOutcome(field, Status.READ_ONLY, setValue, currentValue);
+
+		} else if (scriptedTextInput) {
+			if (current && StringUtils.equals(currentValue, setValue)) {
+				addOutcome(field, Status.UNCHANGED, setValue, currentValue);
+			} else {
+				addChange(field, description, "value", setValue, setValue);
+			}
+
+		} else {
+			// key events must be real, so type in order with the scripted changes
+			flush();
+			if (formChanged) {
+				performIndividually(field);
+			} else {
+				WebElement element = element(description);
+				element.clear();
+				element.sendKeys(setValue);
+				descriptionsStale = true;
+				addOutcome(field, Status.SET, setValue, currentValue);
+			}
+		}
+	}
+
+	private void check(final Field field, final Map<String, Object> description, final String checkValue) {
+		String type = (String) description.get("type");
+		String tag = (String) description.get("tag");
+
+		if (WebConstants.INPUT.equalsIgnoreCase(tag) && WebConstants.RADIO.equals(type)) {
+			for (Map<String, Object> radio : field.getUsableMatches()) {
+				String radioValue = (String) radio.get("value");
+				if (StringUtils.equals(radioValue, checkValue) && !isChecked(radio)) {
+					invalid(field, element(description), checkValue, radioValue);
+					return;
+				}
+			}
+			addOutcome(field, Status.VALID, checkValue, checkValue);
+
+		} else if (WebConstants.CHECKBOX.equals(type)) {
+			boolean checked = isChecked(description);
+			if (checked != Boolean.valueOf(checkValue)) {
+				invalid(field, element(description), checkValue, String.valueOf(checked));
+			} else {
+				addOutcome(field, Status.VALID, checkValue, String.valueOf(checked));
+			}
+
+		} else {
+			String elementValue = (String) description.get("value");
+			if (!Objects.equal(checkValue, elementValue)) {
+				invalid(field, element(description), checkValue, elementValue);
+			} else {
+				addOutcome(field, Status.VALID, checkValue, elementValue);
+			}
+		}
+	}
+
+	private static String findOptionValue(final Map<String, Object> description, final String setValue) {
+		@SuppressWarnings("unchecked")
+		List<List<String>> options = (List<List<String>>) description.get("options");
+		// a matching value takes precedence over a matching visible text
+		for (List<String> option : options) {
+			if (StringUtils.equals(option.get(0), setValue)) {
+				return option.get(0);
+			}
+		}
+		for (List<String> option : options) {
+			if (StringUtils.equals(option.get(1), setValue)) {
+				return option.get(0);
+			}
+		}
+		return null;
+	}
+
+	private void addChange(final Field field, final Map<String, Object> description, final String action,
+			final String value, final String setValue) {
+		pendingChanges.add(Arrays.<Object>asList(description.get("element"), action, value == null ? "" : value));
+		pendingFields.add(field);
+		pendingValues.add(setValue);
+	}
+
+	/**
+	 * Applies the pending scripted changes. If one of them fails, it and the following fields are
+	 * handled individually.
+	 */
+	private void flush() {
+		if (pendingChanges.isEmpty()) {
+			return;
+		}
+		List<?> results;
+		try {
+			results = (List<?>) executor().executeScript(JS_SET_FIELDS, pendingChanges);
+		} catch (WebDriverException ex) {
+			log.warn("Setting fields in a batch failed, setting them individually: {}", ex.getMessage());
+			results = Collections.emptyList();
+		}
+
+		for (int i = 0; i < results.size(); ++i) {
+			List<?> applied = (List<?>) results.get(i);
+			boolean changed = Boolean.TRUE.equals(applied.get(0));
+			addOutcome(pendingFields.get(i), changed ? Status.SET : Status.UNCHANGED, pendingValues.get(i),
+					(String) applied.get(1));
+			descriptionsStale |= changed;
+		}
+		List<Field> failedFields = newArrayList(pendingFields.subList(results.size(), pendingFields.size()));
+		pendingChanges.clear();
+		pendingFields.clear();
+		pendingValues.clear();
+
+		if (!failedFields.isEmpty()) {
+			formChanged = true;
+			for (Field field : failedFields) {
+				performIndividually(field);
+			}
+		}
+	}
+
+	private void performIndividually(final Field field) {
+		try {
+			handler.by(field.by).dataKey(field.dataKey).perform();
+			descriptionsStale |= stepMode == StepMode.SET_VALUE;
+			addIndividualOutcome(field, stepMode == StepMode.SET_VALUE ? Status.SET : Status.VALID, null);
+		} catch (InvalidValueException ex) {
+			if (firstInvalid == null) {
+				firstInvalid = ex;
+			}
+			addIndividualOutcome(field, Status.INVALID, ex.getMessage());
+		}
+	}
+
+	private void invalid(final Field field, final WebElement element, final String expectedValue, final String actualValue) {
+		InvalidValueException ex = new InvalidValueException(element, expectedValue, actualValue);
+		if (firstInvalid == null) {
+			firstInvalid = ex;
+		}
+		outcomes.put(field, new FieldOutcome(field.dataKey, field.by, Status.INVALID, expectedValue, actualValue, true,
+				ex.getMessage()));
+	}
+
+	private void addOutcome(final Field field, final Status status, final String expectedValue, final String actualValue) {
+		outcomes.put(field, new FieldOutcome(field.dataKey, field.by, status, expectedValue, actualValue, true, null));
+	}
+
+	private void addIndividualOutcome(final Field field, final Status status, final String message) {
+		outcomes.put(field, new FieldOutcome(field.dataKey, field.by, status, null, null, false, message));
+	}
+
+	private FormFillResult result(final List<Field> fields) {
+		List<FieldOutcome> ordered = newArrayList();
+		for (Field field : fields) {
+			ordered.add(outcomes.get(field));
+		}
+		FormFillResult result = new FormFillResult(stepMode, ordered);
+		for (FieldOutcome outcome : result.getOutcomes()) {
+			log.info(outcome.toString());
+		}
+		log.info(result.toString());
+		return result;
+	}
+
+	private JavascriptExecutor executor() {
+		WebDriver webDriver = finder.getWebDriver();
+		checkState(webDriver != null, "No WebDriver specified.");
+		return (JavascriptExecutor) webDriver;
+	}
+
+	private static WebElement element(final Map<String, Object> description) {
+		return (WebElement) description.get("element");
+	}
+
+	/**
+	 * @return {@code true} if the element can be changed like a user would, i. e. if it is enabled
+	 *         and displayed, regardless of the restrictions of the {@link WebElementFinder}
+	 */
+	private static boolean isInteractable(final Map<String, Object> description) {
+		return Boolean.TRUE.equals(description.get("enabled")) && Boolean.TRUE.equals(description.get("displayed"));
+	}
+
+	private static boolean isChecked(final Map<String, Object> description) {
+		return Boolean.TRUE.equals(description.get("checked"));
+	}
+
+	private final class Field {
+		private final String dataKey;
+		private final By by;
+
+		// null if the locator cannot be evaluated in JavaScript
+		private List<Map<String, Object>> matches;
+
+		Field(final String dataKey, final By by) {
+			this.dataKey = dataKey;
+			this.by = by;
+		}
+
+		List<Map<String, Object>> getUsableMatches() {
+			List<Map<String, Object>> usable = newArrayList();
+			if (matches != null) {
+				for (Map<String, Object> match : matches) {
+					if (isUsable(match)) {
+						usable.add(match);
+					}
+				}
+			}
+			return usable;
+		}
+
+		/**
+		 * @return the first match meeting the restrictions of the {@link WebElementFinder}, or
+		 *         {@code null} if the field must be handled individually
+		 */
+		Map<String, Object> getUsableMatch() {
+			if (matches == null || matches.isEmpty()) {
+				return null;
+			}
+			// FormInputHandler fails if the first match does not meet the restrictions
+			Map<String, Object> first = matches.get(0);
+			return isUsable(first) ? first : null;
+		}
+
+		private boolean isUsable(final Map<String, Object> match) {
+			return (finder.getEnabled() == null || finder.getEnabled().equals(match.get("enabled")))
+					&& (finder.getDisplayed() == null || finder.getDisplayed().equals(match.get("displayed")))
+					&& (finder.getSelected() == null || finder.getSelected().equals(match.get("checked")));
+		}
+	}
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.FluentWait;
+import org.openqa.selenium.support.ui.Sleeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindowEvent;
+import com.gargoylesoftware.htmlunit.WebWindowListener;
+import com.gargoylesoftware.htmlunit.html.CharacterDataChangeEvent;
+import com.gargoylesoftware.htmlunit.html.CharacterDataChangeListener;
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
+import com.gargoylesoftware.htmlunit.html.DomChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeEvent;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.mgmtp.jfunk.web.JFunkHtmlUnitWebDriver;
+
+/**
+ * {@link Sleeper} for a {@link FluentWait} that returns early as soon as the DOM of the current
+ * page changes, so the wait's condition is checked again right away instead of after the full
+ * polling interval. The polling interval still applies as an upper bound, because not every
+ * condition is reflected in the DOM.
+ * <p>
+ * If the wait is for an element whose locator can be evaluated in JavaScript (see
+ * {@link BatchFormFiller#toLocator(By)}), the asynchronous script only returns once the DOM has
+ * changed and the locator matches, so unrelated changes do not cause driver round trips. For
+ * other waits, the condition is checked again at most every {@value #MIN_RECHECK_MILLIS} ms, so a
+ * page that keeps changing, e. g. because of an animation, is not polled continuously.
+ * <p>
+ * For HtmlUnit, DOM change listeners are registered on the current page while waiting. Other
+ * drivers supporting JavaScript wait in an asynchronous script using a {@code MutationObserver}.
+ * If the browser does not support this, or the driver's script timeout is shorter than the
+ * polling interval, the sleeper falls back to sleeping for the rest of the wait.
+ * <p>
+ * A sleeper is used for one wait at a time: {@link #begin()} must be called before the wait and
+ * {@link #finish(boolean)} after it.
+ *
+ * @since 3.3.2
+ */
+public abstract class DomChangeSleeper implements Sleeper {
+
+	/**
+	 * The polling interval of a {@link FluentWait} if none is specified.
+	 */
+	public static final long DEFAULT_POLLING_MILLIS = 500L;
+
+	/**
+	 * The minimum time between two checks of a wait's condition if DOM changes are not filtered by
+	 * a locator.
+	 */
+	static final long MIN_RECHECK_MILLIS = 50L;
+
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final long pollingMillis;
+	private final DomChangeWaitStatistics statistics;
+
+	private long startNanos;
+	private int sleeps;
+	private int wakeUps;
+
+	DomChangeSleeper(final long pollingMillis, final DomChangeWaitStatistics statistics) {
+		this.pollingMillis = pollingMillis > 0L ? pollingMillis : DEFAULT_POLLING_MILLIS;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Creates a sleeper for the specified {@link WebDriver}.
+	 *
+	 * @param webDriver
+	 *            the {@link WebDriver}, possibly wrapped into an event-firing one
+	 * @param pollingMillis
+	 *            the polling interval a wait without this sleeper would use; used for computing
+	 *            how many polls were saved
+	 * @param statistics
+	 *            the statistics to record waits in; may be {@code null}
+	 * @return the sleeper, or {@code null} if the driver does not support waiting for DOM changes
+	 */
+	public static DomChangeSleeper create(final WebDriver webDriver, final long pollingMillis,
+			final DomChangeWaitStatistics statistics) {
+		return create(webDriver, pollingMillis, statistics, null);
+	}
+
+	/**
+	 * Creates a sleeper for the specified {@link WebDriver} that waits for an element.
+	 *
+	 * @param webDriver
+	 *            the {@link WebDriver}, possibly wrapped into an event-firing one
+	 * @param pollingMillis
+	 *            the polling interval a wait without this sleeper would use; used for computing
+	 *            how many polls were saved
+	 * @param statistics
+	 *            the statistics to record waits in; may be {@code null}
+	 * @param by
+	 *            the locator of the element waited for; DOM changes are ignored until it matches
+	 *            if it can be evaluated in JavaScript; may be {@code null}
+	 * @return the sleeper, or {@code null} if the driver does not support waiting for DOM changes
+	 */
+	public static DomChangeSleeper create(final WebDriver webDriver, final long pollingMillis,
+			final DomChangeWaitStatistics statistics, final By by) {
+		WebDriver driver = WebDriverUtils.getWrappedDriver(webDriver);
+		if (driver instanceof JFunkHtmlUnitWebDriver) {
+			return new HtmlUnitSleeper(((JFunkHtmlUnitWebDriver) driver).getWebClient(), pollingMillis, statistics);
+		}
+		if (driver instanceof JavascriptExecutor) {
+			return new MutationObserverSleeper((JavascriptExecutor) driver, pollingMillis, statistics,
+					by != null ? BatchFormFiller.toLocator(by) : null);
+		}
+		return null;
+	}
+
+	/**
+	 * Must be called before a wait using this sleeper starts.
+	 */
+	public void begin() {
+		startNanos = System.nanoTime();
+		sleeps = 0;
+		wakeUps = 0;
+		doBegin();
+	}
+
+	/**
+	 * Must be called after a wait using this sleeper has finished, successfully or not.
+	 *
+	 * @param found
+	 *            {@code true} if the wait's condition was met
+	 */
+	public void finish(final boolean found) {
+		doFinish();
+		if (statistics != null) {
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			// the number of sleeps a wait with a fixed polling interval would have needed
+			long fixedSleeps = elapsedMillis / pollingMillis;
+			statistics.record(found, elapsedMillis, sleeps, wakeUps, Math.max(0L, fixedSleeps - sleeps));
+		}
+	}
+
+	@Override
+	public void sleep(final Duration duration) throws InterruptedException {
+		++sleeps;
+		long start = System.nanoTime();
+		if (awaitChange(duration.toMillis())) {
+			++wakeUps;
+			if (!isLocatorEvaluated()) {
+				long minMillis = Math.min(MIN_RECHECK_MILLIS, duration.toMillis());
+				long remaining = minMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				if (remaining > 0L) {
+					Thread.sleep(remaining);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blocks until the DOM changes or the timeout expires.
+	 *
+	 * @return {@code true} if a DOM change ended the sleep
+	 */
+	protected abstract boolean awaitChange(long timeoutMillis) throws InterruptedException;
+
+	/**
+	 * @return {@code true} if {@link #awaitChange(long)} only returns early once the element waited
+	 *         for is present
+	 */
+	protected boolean isLocatorEvaluated() {
+		return false;
+	}
+
+	protected void doBegin() {
+		// nothing to do by default
+	}
+
+	protected void doFinish() {
+		// nothing to do by default
+	}
+
+	/**
+	 * Listens to DOM changes of HtmlUnit's current page. Page loads count as changes, and the
+	 * listeners are moved to the new page.
+	 */
+	static class HtmlUnitSleeper extends DomChangeSleeper implements WebWindowListener, DomChangeListener,
+			HtmlAttributeChangeListener, CharacterDataChangeListener {
+
+		private final WebClient webClient;
+
+		// HtmlUnit calls the listeners from JavaScript threads, so HtmlUnit is never called while
+		// holding the lock guarding the change counters
+		private final Object changeLock = new Object();
+		private long changes;
+		private long seenChanges;
+
+		// guarded by this
+		private HtmlPage page;
+
+		HtmlUnitSleeper(final WebClient webClient, final long pollingMillis, final DomChangeWaitStatistics statistics) {
+			super(pollingMillis, statistics);
+			this.webClient = webClient;
+		}
+
+		@Override
+		protected void doBegin() {
+			synchronized (changeLock) {
+				changes = 0L;
+				seenChanges = 0L;
+			}
+			webClient.addWebWindowListener(this);
+			listenTo(webClient.getCurrentWindow().getTopWindow().getEnclosedPage());
+		}
+
+		@Override
+		protected void doFinish() {
+			webClient.removeWebWindowListener(this);
+			listenTo(null);
+		}
+
+		private synchronized void listenTo(final Page newPage) {
+			if (page != null) {
+				page.removeDomChangeListener(this);
+				page.removeHtmlAttributeChangeListener(this);
+				page.removeCharacterDataChangeListener(this);
+			}
+			page = newPage instanceof HtmlPage ? (HtmlPage) newPage : null;
+			if (page != null) {
+				page.addDomChangeListener(this);
+				page.addHtmlAttributeChangeListener(this);
+				page.addCharacterDataChangeListener(this);
+			}
+		}
+
+		@Override
+		protected boolean awaitChange(final long timeoutMillis) throws InterruptedException {
+			synchronized (changeLock) {
+				// changes since the last sleep, i. e. while the condition was checked, count, too
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+				for (long remaining = timeoutMillis; changes == seenChanges && remaining > 0L;) {
+					changeLock.wait(remaining);
+					remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				}
+				boolean changed = changes != seenChanges;
+				seenChanges = changes;
+				return changed;
+			}
+		}
+
+		private void changed() {
+			synchronized (changeLock) {
+				++changes;
+				changeLock.notifyAll();
+			}
+		}
+
+		@Override
+		public void webWindowContentChanged(final WebWindowEvent event) {
+			if (event.getWebWindow() == event.getWebWindow().getTopWindow()) {
+				listenTo(event.getNewPage());
+			}
+			changed();
+		}
+
+		@Override
+		public void webWindowOpened(final WebWindowEvent event) {
+			changed();
+		}
+
+		@Override
+		public void webWindowClosed(final WebWindowEvent event) {
+			changed();
+		}
+
+		@Override
+		public void nodeAdded(final DomChangeEvent event) {
+			changed();
+		}
+
+		@Override
+		public void nodeDeleted(final DomChangeEvent event) {
+			changed();
+		}
+
+		@Override
+		public void attributeAdded(final HtmlAttributeChangeEvent event) {
+			changed();
+		}
+
+		@Override
+		public void attributeRemoved(final HtmlAttributeChangeEvent event) {
+			changed();
+		}
+
+		@Override
+		public void attributeReplaced(final HtmlAttributeChangeEvent event) {
+			changed();
+		}
+
+		@Override
+		public void characterDataChanged(final CharacterDataChangeEvent event) {
+			changed();
+		}
+	}
+
+	/**
+	 * Waits in an asynchronous script for a {@code MutationObserver} to report a change. The
+	 * observer is installed once per document and counts changes, so changes made while the
+	 * condition was checked are not missed. If a locator is given, the script keeps waiting after
+	 * a change until the locator matches.
+	 */
+	static class MutationObserverSleeper extends DomChangeSleeper {
+
+		static final String JS_AWAIT_DOM_CHANGE = "var last = arguments[0], timeout = arguments[1], l = arguments[2],"
+				+ "  callback = arguments[arguments.length - 1];"
+				+ "if (!window.MutationObserver || !document.documentElement) { callback(null); return; }"
+				+ "function matches() {"
+				+ "  if (!l || !l.length) { return true; }"
+				+ "  try {"
+				+ "    if (l[0] === 'id') { return document.getElementById(l[1]) !== null; }"
+				+ "    if (l[0] === 'xpath') {"
+				+ "      return document.evaluate(l[1], document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue !== null;"
+				+ "    }"
+				+ "    if (l[0] === 'name') { return document.getElementsByName(l[1]).length > 0; }"
+				+ "    if (l[0] === 'className') { return document.getElementsByClassName(l[1]).length > 0; }"
+				+ "    if (l[0] === 'tagName') { return document.getElementsByTagName(l[1]).length > 0; }"
+				+ "    return document.querySelector(l[1]) !== null;"
+				+ "  } catch (e) {"
+				+ "    return true;"
+				+ "  }"
+				+ "}"
+				+ "var state = window.__jfunkDomChanges;"
+				+ "if (!state) {"
+				+ "  state = window.__jfunkDomChanges = { id: String(Math.random()).substring(2), count: 0, listeners: [] };"
+				+ "  new MutationObserver(function() {"
+				+ "    state.count++;"
+				+ "    var listeners = state.listeners;"
+				+ "    state.listeners = [];"
+				+ "    for (var i = 0; i < listeners.length; i++) { listeners[i](); }"
+				+ "  }).observe(document.documentElement, { childList: true, subtree: true, attributes: true, characterData: true });"
+				+ "}"
+				+ "var token = function() { return state.id + ':' + state.count; };"
+				+ "if (last && last !== token() && matches()) { callback(token()); return; }"
+				+ "var done = false;"
+				+ "var finish = function() { if (!done) { done = true; clearTimeout(timer); callback(token()); } };"
+				+ "var check = function() { if (matches()) { finish(); } else if (!done) { state.listeners.push(check); } };"
+				+ "var timer = setTimeout(finish, timeout);"
+				+ "state.listeners.push(check);";
+
+		private final JavascriptExecutor executor;
+		private final List<String> locator;
+
+		private String lastToken;
+		private boolean fallback;
+
+		MutationObserverSleeper(final JavascriptExecutor executor, final long pollingMillis,
+				final DomChangeWaitStatistics statistics, final List<String> locator) {
+			super(pollingMillis, statistics);
+			this.executor = executor;
+			this.locator = locator;
+		}
+
+		@Override
+		protected boolean isLocatorEvaluated() {
+			return locator != null && !fallback;
+		}
+
+		@Override
+		protected void doBegin() {
+			lastToken = "";
+			fallback = false;
+		}
+
+		@Override
+		protected boolean awaitChange(final long timeoutMillis) throws InterruptedException {
+			if (!fallback) {
+				long start = System.nanoTime();
+				try {
+					// some drivers do not support null arguments
+					Object token = executor.executeAsyncScript(JS_AWAIT_DOM_CHANGE, lastToken, timeoutMillis,
+							locator != null ? locator : Collections.<String>emptyList());
+					if (token != null) {
+						boolean changed = !lastToken.isEmpty() && !lastToken.equals(token);
+						lastToken = (String) token;
+						return changed || TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < timeoutMillis;
+					}
+					log.debug("MutationObserver not supported, falling back to polling");
+				} catch (WebDriverException ex) {
+					// e. g. script timeout too short, page unloaded, or alert open
+					log.debug("Waiting for DOM changes failed, falling back to polling: {}", ex.getMessage());
+				}
+				fallback = true;
+				long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				if (remaining > 0L) {
+					Thread.sleep(remaining);
+				}
+				return false;
+			}
+			Thread.sleep(timeoutMillis);
+			return false;
+		}
+	}
+}
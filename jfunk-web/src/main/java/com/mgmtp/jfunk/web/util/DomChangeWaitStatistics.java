@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+import com.mgmtp.jfunk.core.event.AfterRunEvent;
+import com.mgmtp.jfunk.core.metrics.LatencyHistogram;
+
+/**
+ * Counts waits using a {@link DomChangeSleeper} and logs them after the run: the number of polls,
+ * how many of them were started early by a DOM change, how many polls a fixed polling interval
+ * would have needed in addition, and the time it took for awaited elements to appear.
+ *
+ * @since 3.3.2
+ */
+@Singleton
+public class DomChangeWaitStatistics {
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong wakeUps = new AtomicLong();
+	private final AtomicLong pollsSaved = new AtomicLong();
+	private final LatencyHistogram timeToAppear = new LatencyHistogram();
+
+	void record(final boolean found, final long elapsedMillis, final int sleeps, final int domWakeUps, final long saved) {
+		waits.incrementAndGet();
+		polls.addAndGet(sleeps);
+		wakeUps.addAndGet(domWakeUps);
+		pollsSaved.addAndGet(saved);
+		if (found) {
+			timeToAppear.record(elapsedMillis);
+		} else {
+			timeouts.incrementAndGet();
+		}
+	}
+
+	public long getWaits() {
+		return waits.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getPolls() {
+		return polls.get();
+	}
+
+	public long getWakeUps() {
+		return wakeUps.get();
+	}
+
+	public long getPollsSaved() {
+		return pollsSaved.get();
+	}
+
+	/**
+	 * @return the histogram of milliseconds successful waits took
+	 */
+	public LatencyHistogram getTimeToAppear() {
+		return timeToAppear;
+	}
+
+	@Subscribe
+	public void handleEvent(@SuppressWarnings("unused") final AfterRunEvent event) {
+		if (waits.get() == 0L) {
+			return;
+		}
+		log.info("Event-driven waits: {} wait(s), {} timed out, {} poll(s), {} started by DOM changes, {} poll(s) saved",
+			waits.get(), timeouts.get(), polls.get(), wakeUps.get(), pollsSaved.get());
+		if (timeToAppear.getCount() > 0L) {
+			log.info("Time to appear (ms): mean={}, p50={}, p90={}, p99={}, max={}", Math.round(timeToAppear.getMean()),
+				timeToAppear.getValueAtPercentile(50d), timeToAppear.getValueAtPercentile(90d),
+				timeToAppear.getValueAtPercentile(99d), timeToAppear.getMax());
+		}
+	}
+}
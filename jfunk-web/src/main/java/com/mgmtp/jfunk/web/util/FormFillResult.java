@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.openqa.selenium.By;
+
+import com.google.common.collect.ImmutableList;
+import com.mgmtp.jfunk.core.step.base.StepMode;
+
+/**
+ * The outcome of filling or checking a form with {@link FormInputHandler#performAll(java.util.Map, boolean)}, one
+ * {@link FieldOutcome} per field in the order the fields were processed.
+ *
+ * @since 3.3.2
+ */
+public final class FormFillResult {
+
+	/**
+	 * What happened to a field.
+	 */
+	public enum Status {
+		/**
+		 * The value was set ({@link StepMode#SET_VALUE}).
+		 */
+		SET,
+
+		/**
+		 * The field already had the value to set ({@link StepMode#SET_VALUE}).
+		 */
+		UNCHANGED,
+
+		/**
+		 * The field is read-only, so the value was not set ({@link StepMode#SET_VALUE}).
+		 */
+		READ_ONLY,
+
+		/**
+		 * The field has the expected value ({@link StepMode#CHECK_VALUE}, {@link StepMode#CHECK_DEFAULT}).
+		 */
+		VALID,
+
+		/**
+		 * The field does not have the expected value ({@link StepMode#CHECK_VALUE}, {@link StepMode#CHECK_DEFAULT}).
+		 */
+		INVALID,
+
+		/**
+		 * Nothing was done ({@link StepMode#NONE}).
+		 */
+		SKIPPED
+	}
+
+	private final StepMode stepMode;
+	private final List<FieldOutcome> outcomes;
+
+	FormFillResult(final StepMode stepMode, final List<FieldOutcome> outcomes) {
+		this.stepMode = stepMode;
+		this.outcomes = ImmutableList.copyOf(outcomes);
+	}
+
+	/**
+	 * @return the step mode the form was processed with
+	 */
+	public StepMode getStepMode() {
+		return stepMode;
+	}
+
+	/**
+	 * @return the outcomes of all fields in the order the fields were processed
+	 */
+	public List<FieldOutcome> getOutcomes() {
+		return outcomes;
+	}
+
+	/**
+	 * @param dataKey
+	 *            the data key of the field
+	 * @return the field's outcome, or {@code null} if no field with this data key was processed
+	 */
+	public FieldOutcome getOutcome(final String dataKey) {
+		for (FieldOutcome outcome : outcomes) {
+			if (outcome.getDataKey().equals(dataKey)) {
+				return outcome;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return {@code true} if no field has status {@link Status#INVALID}
+	 */
+	public boolean isValid() {
+		for (FieldOutcome outcome : outcomes) {
+			if (outcome.getStatus() == Status.INVALID) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of fields processed individually instead of in a batch
+	 */
+	public int getFallbackCount() {
+		int count = 0;
+		for (FieldOutcome outcome : outcomes) {
+			if (!outcome.isBatched()) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		ToStringBuilder tsb = new ToStringBuilder(this, ShortToStringStyle.INSTANCE);
+		tsb.append("stepMode", stepMode);
+		tsb.append("fields", outcomes.size());
+		tsb.append("fallbacks", getFallbackCount());
+		tsb.append("valid", isValid());
+		return tsb.toString();
+	}
+
+	/**
+	 * The outcome for a single field.
+	 */
+	public static final class FieldOutcome {
+		private final String dataKey;
+		private final By by;
+		private final Status status;
+		private final String expectedValue;
+		private final String actualValue;
+		private final boolean batched;
+		private final String message;
+
+		FieldOutcome(final String dataKey, final By by, final Status status, final String expectedValue,
+				final String actualValue, final boolean batched, final String message) {
+			this.dataKey = dataKey;
+			this.by = by;
+			this.status = status;
+			this.expectedValue = expectedValue;
+			this.actualValue = actualValue;
+			this.batched = batched;
+			this.message = message;
+		}
+
+		public String getDataKey() {
+			return dataKey;
+		}
+
+		public By getBy() {
+			return by;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return the value to set or the expected value
+		 */
+		public String getExpectedValue() {
+			return expectedValue;
+		}
+
+		/**
+		 * @return the value the field had before, or {@code null} if the field was processed individually
+		 */
+		public String getActualValue() {
+			return actualValue;
+		}
+
+		/**
+		 * @return {@code false} if the field was processed individually by {@link FormInputHandler#perform()}
+		 */
+		public boolean isBatched() {
+			return batched;
+		}
+
+		/**
+		 * @return the validation message for {@link Status#INVALID} fields, {@code null} otherwise
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			ToStringBuilder tsb = new ToStringBuilder(this, ShortToStringStyle.INSTANCE);
+			tsb.append("dataKey", dataKey);
+			tsb.append("by", by);
+			tsb.append("status", status);
+			tsb.append("expectedValue", expectedValue);
+			tsb.append("actualValue", actualValue);
+			tsb.append("batched", batched);
+			if (message != null) {
+				tsb.append("message", message);
+			}
+			return tsb.toString();
+		}
+	}
+}
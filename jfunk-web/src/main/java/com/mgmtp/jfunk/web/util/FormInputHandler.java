@@ -19,6 +19,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -459,6 +460,30 @@ public final class FormInputHandler {
 		}
 	}
 
+	/**
+	 * Sets or checks the values of several fields depending on the {@link StepMode}, retrieving the values from the
+	 * {@link DataSet} associated with this {@link FormInputHandler}. Instead of calling {@link #perform()} for each field, all
+	 * fields are located and read in a single script call, and values are set in as few script calls as possible. Fields that
+	 * are not ready yet, or cannot be handled this way, are processed by {@link #perform()} individually.
+	 * 
+	 * @param fieldsByDataKey
+	 *            the locators of the fields by the data keys of their values, in the order the fields are to be processed
+	 * @param scriptedTextInput
+	 *            {@code true} if text fields may be set by script, firing {@code input} and {@code change} events only;
+	 *            {@code false} if text is to be typed into the fields as {@link #perform()} does
+	 * @return the outcome for each field
+	 * @throws InvalidValueException
+	 *             for the first field with an unexpected value, after all fields have been checked
+	 * @since 3.3.2
+	 */
+	public FormFillResult performAll(final Map<String, By> fieldsByDataKey, final boolean scriptedTextInput) {
+		checkState(dataSet != null, "Cannot process fields. Please specify a DataSet first.");
+		checkState(value == null, "Cannot process fields with a directly specified value.");
+
+		return new BatchFormFiller(this, finder, dataSet, stepMode, defaultsProvider, setTrafo, checkTrafo, scriptedTextInput)
+				.fill(fieldsByDataKey);
+	}
+
 	private void checkValue(final WebElement element, final String checkValue) {
 		String elementValue = element.getTagName().equalsIgnoreCase(WebConstants.SELECT)
 				? new Select(element).getFirstSelectedOption().getAttribute(WebConstants.VALUE)
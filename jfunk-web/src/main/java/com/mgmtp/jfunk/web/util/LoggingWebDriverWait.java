@@ -21,6 +21,7 @@ import java.util.function.Function;
 import org.openqa.selenium.NotFoundException;
 import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.SystemClock;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,8 @@ public class LoggingWebDriverWait extends WebDriverWait {
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
+	private final DomChangeSleeper domChangeSleeper;
+
 	public LoggingWebDriverWait(final WebDriver driver, final long timeOutInSeconds) {
 		this(driver, timeOutInSeconds, WebDriverWait.DEFAULT_SLEEP_TIMEOUT);
 	}
@@ -46,12 +49,45 @@ public class LoggingWebDriverWait extends WebDriverWait {
 	public LoggingWebDriverWait(final WebDriver driver, final long timeOutInSeconds, final long sleepInMillis) {
 		super(driver, timeOutInSeconds, sleepInMillis);
 		ignoreAll(IGNORED_EXCEPTIONS);
+		this.domChangeSleeper = null;
+	}
+
+	/**
+	 * Creates a wait that checks again as soon as the DOM changes.
+	 *
+	 * @param driver
+	 *            the {@link WebDriver}
+	 * @param domChangeSleeper
+	 *            the sleeper waiting for DOM changes
+	 * @param timeOutInSeconds
+	 *            the timeout in seconds
+	 * @param sleepInMillis
+	 *            the maximum time in milliseconds to sleep between polls
+	 * @since 3.3.2
+	 */
+	public LoggingWebDriverWait(final WebDriver driver, final DomChangeSleeper domChangeSleeper, final long timeOutInSeconds,
+			final long sleepInMillis) {
+		super(driver, new SystemClock(), domChangeSleeper, timeOutInSeconds, sleepInMillis);
+		ignoreAll(IGNORED_EXCEPTIONS);
+		this.domChangeSleeper = domChangeSleeper;
 	}
 
 	@Override
 	public <V> V until(final Function<? super WebDriver, V> function) {
 		log.info("Waiting for {}", function);
-		V result = super.until(function);
+		V result;
+		if (domChangeSleeper == null) {
+			result = super.until(function);
+		} else {
+			boolean found = false;
+			domChangeSleeper.begin();
+			try {
+				result = super.until(function);
+				found = true;
+			} finally {
+				domChangeSleeper.finish(found);
+			}
+		}
 		log.info("Successfully waited for {}", function);
 		return result;
 	}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.openqa.selenium.WebElement;
+
+/**
+ * The result of {@link WebDriverTool#evaluateTopmostElement(org.openqa.selenium.By)}.
+ *
+ * @since 3.3.2
+ */
+public final class TopmostElementCheckResult {
+
+	public enum Status {
+		/** The element is not covered by any other element. */
+		TOPMOST,
+		/** The element is covered by another element. */
+		COVERED,
+		/** The element is not a leaf node in the document tree and thus cannot be checked. */
+		NOT_APPLICABLE,
+		/** The element could not be moved into the viewport. */
+		OUTSIDE_VIEWPORT
+	}
+
+	private final Status status;
+	private final WebElement element;
+	private final WebElement topmostElement;
+	private final String elementHtml;
+	private final String topmostElementHtml;
+
+	private TopmostElementCheckResult(final Status status, final WebElement element, final WebElement topmostElement,
+			final String elementHtml, final String topmostElementHtml) {
+		this.status = status;
+		this.element = element;
+		this.topmostElement = topmostElement;
+		this.elementHtml = elementHtml;
+		this.topmostElementHtml = topmostElementHtml;
+	}
+
+	/**
+	 * Creates a result from the object returned by the check's JavaScript.
+	 */
+	static TopmostElementCheckResult of(final WebElement element, final Map<String, Object> scriptResult) {
+		Status status = Status.valueOf((String) scriptResult.get("status"));
+		WebElement topmostElement = status == Status.TOPMOST ? element : (WebElement) scriptResult.get("topmost");
+		return new TopmostElementCheckResult(status, element, topmostElement, (String) scriptResult.get("elementHtml"),
+				(String) scriptResult.get("topmostHtml"));
+	}
+
+	/**
+	 * @return the status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the element checked
+	 */
+	public WebElement getElement() {
+		return element;
+	}
+
+	/**
+	 * @return the topmost element at the center of the element's visible area, or {@code null} if
+	 *         the status is {@link Status#NOT_APPLICABLE} or {@link Status#OUTSIDE_VIEWPORT}
+	 */
+	public WebElement getTopmostElement() {
+		return topmostElement;
+	}
+
+	/**
+	 * @return a preview of the element's outer HTML if the status is {@link Status#COVERED},
+	 *         otherwise {@code null}
+	 */
+	public String getElementHtml() {
+		return elementHtml;
+	}
+
+	/**
+	 * @return a preview of the covering element's outer HTML if the status is
+	 *         {@link Status#COVERED}, otherwise {@code null}
+	 */
+	public String getTopmostElementHtml() {
+		return topmostElementHtml;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("status", status)
+				.append("elementHtml", elementHtml).append("topmostElementHtml", topmostElementHtml).toString();
+	}
+}
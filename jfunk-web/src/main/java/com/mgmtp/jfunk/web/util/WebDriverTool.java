@@ -20,8 +20,10 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Sets.SetView;
 import com.mgmtp.jfunk.common.util.Configuration;
 import com.mgmtp.jfunk.common.util.JFunkUtils;
+import com.mgmtp.jfunk.core.step.base.StepMode;
 import com.mgmtp.jfunk.data.DataSet;
 import com.mgmtp.jfunk.web.WebConstants;
+import com.mgmtp.jfunk.web.exception.InvalidValueException;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.openqa.selenium.*;
@@ -100,8 +102,28 @@ public final class WebDriverTool implements SearchContext {
 			"return {width:document.documentElement.clientWidth,"
 			+ "height:document.documentElement.clientHeight};";
 
-	private static final String JS_ELEMENT_HAS_CHILDREN =
-			"return arguments[0].childElementCount > 0";
+	// performs the complete topmost element check in a single round trip, see evaluateTopmostElement()
+	private static final String JS_CHECK_TOPMOST_ELEMENT =
+			"var el = arguments[0];"
+			+ "if (el.childElementCount > 0) { return {status:'NOT_APPLICABLE'}; }"
+			+ "function center() {"
+			+ "  var r = el.getBoundingClientRect();"
+			+ "  var left = Math.max(0, r.left | 0), top = Math.max(0, r.top | 0);"
+			+ "  var right = Math.min(document.documentElement.clientWidth, r.right | 0);"
+			+ "  var bottom = Math.min(document.documentElement.clientHeight, r.bottom | 0);"
+			+ "  return right >= left && bottom >= top"
+			+ "    ? [left + ((right - left) / 2 | 0), top + ((bottom - top) / 2 | 0)] : null;"
+			+ "}"
+			+ "function preview(e) {"
+			+ "  var html = e.outerHTML;"
+			+ "  return html.length > 256 ? html.substring(0, 256) + '...' : html;"
+			+ "}"
+			+ "var c = center();"
+			+ "if (!c) { el.scrollIntoView(); c = center(); }"
+			+ "var topmost = c ? document.elementFromPoint(c[0], c[1]) : null;"
+			+ "if (!topmost) { return {status:'OUTSIDE_VIEWPORT'}; }"
+			+ "if (topmost === el) { return {status:'TOPMOST'}; }"
+			+ "return {status:'COVERED', topmost:topmost, elementHtml:preview(el), topmostHtml:preview(topmost)};";
 
 	private static final String JS_OPEN_NEW_WINDOW_BLANK = "window.open('about:blank','_blank');";
 
@@ -109,6 +131,7 @@ public final class WebDriverTool implements SearchContext {
 	private final WebElementFinder wef;
 	private final FormInputHandler fih;
 	private final Map<String, DataSet> dataSets;
+	private final boolean batchScriptedTextInput;
 
 	private boolean topmostElementCheck;
 
@@ -125,6 +148,7 @@ public final class WebDriverTool implements SearchContext {
 		if (value != null) {
 			topmostElementCheck = Boolean.parseBoolean(value);
 		}
+		batchScriptedTextInput = config.getBoolean(WebConstants.WDT_BATCH_SCRIPTED_TEXT_INPUT, false);
 	}
 
 	public void get(final String url) {
@@ -356,7 +380,10 @@ public final class WebDriverTool implements SearchContext {
 	 * @return the newly created {@link WebDriverWait} instance
 	 */
 	public WebDriverWait newWebDriverWait(final long timeoutSeconds) {
-		return new LoggingWebDriverWait(webDriver, timeoutSeconds);
+		DomChangeSleeper sleeper = newDomChangeSleeper(DomChangeSleeper.DEFAULT_POLLING_MILLIS);
+		return sleeper != null
+			? new LoggingWebDriverWait(webDriver, sleeper, timeoutSeconds, DomChangeSleeper.DEFAULT_POLLING_MILLIS)
+				: new LoggingWebDriverWait(webDriver, timeoutSeconds);
 	}
 
 	/**
@@ -370,7 +397,20 @@ public final class WebDriverTool implements SearchContext {
 	 * @return the newly created {@link WebDriverWait} instance
 	 */
 	public WebDriverWait newWebDriverWait(final long timeoutSeconds, final long sleepMillis) {
-		return new LoggingWebDriverWait(webDriver, timeoutSeconds, sleepMillis);
+		DomChangeSleeper sleeper = newDomChangeSleeper(sleepMillis);
+		return sleeper != null
+			? new LoggingWebDriverWait(webDriver, sleeper, timeoutSeconds, sleepMillis)
+				: new LoggingWebDriverWait(webDriver, timeoutSeconds, sleepMillis);
+	}
+
+	/**
+	 * Arbitrary conditions need not be reflected in the DOM, so the polling interval is kept, but
+	 * sleeping ends early on DOM changes if the default {@link WebElementFinder} is event-driven.
+	 */
+	private DomChangeSleeper newDomChangeSleeper(final long sleepMillis) {
+		return wef.getEventDrivenMaxSleepMillis() > 0L
+			? DomChangeSleeper.create(webDriver, sleepMillis, wef.getWaitStatistics())
+				: null;
 	}
 
 	/**
@@ -669,6 +709,51 @@ public final class WebDriverTool implements SearchContext {
 		fih.by(by).value(value).perform();
 	}
 
+	/**
+	 * Uses the internal {@link FormInputHandler} to set several form fields in a batch, locating and
+	 * reading all fields in a single round trip. Text is typed into text fields unless
+	 * {@link WebConstants#WDT_BATCH_SCRIPTED_TEXT_INPUT} is enabled.
+	 *
+	 * @param dataSetKey
+	 *            the data set key
+	 * @param fieldsByDataKey
+	 *            the {@link By}s used to locate the fields by the keys used to retrieve their
+	 *            values from the data set, in the order the fields are to be set
+	 * @return the outcome for each field
+	 * @see FormInputHandler#performAll(Map, boolean)
+	 * @since 3.3.2
+	 */
+	public FormFillResult processFields(final String dataSetKey, final Map<String, By> fieldsByDataKey) {
+		return processFields(dataSetKey, fieldsByDataKey, StepMode.SET_VALUE);
+	}
+
+	/**
+	 * Uses the internal {@link FormInputHandler} to set or check several form fields in a batch,
+	 * locating and reading all fields in a single round trip. Text is typed into text fields unless
+	 * {@link WebConstants#WDT_BATCH_SCRIPTED_TEXT_INPUT} is enabled.
+	 *
+	 * @param dataSetKey
+	 *            the data set key
+	 * @param fieldsByDataKey
+	 *            the {@link By}s used to locate the fields by the keys used to retrieve their
+	 *            values from the data set, in the order the fields are to be processed
+	 * @param stepMode
+	 *            determines whether values are set or checked
+	 * @return the outcome for each field
+	 * @throws InvalidValueException
+	 *             for the first field with an unexpected value, after all fields have been
+	 *             checked
+	 * @see FormInputHandler#performAll(Map, boolean)
+	 * @since 3.3.2
+	 */
+	public FormFillResult processFields(final String dataSetKey, final Map<String, By> fieldsByDataKey,
+			final StepMode stepMode) {
+		for (By by : fieldsByDataKey.values()) {
+			checkTopmostElement(by);
+		}
+		return fih.dataSet(dataSets.get(dataSetKey)).stepMode(stepMode).performAll(fieldsByDataKey, batchScriptedTextInput);
+	}
+
 	/**
 	 * Returns the size of an element and its position relative to the viewport. Uses JavaScript
 	 * calling Element.getBoundingClientRect().
@@ -862,18 +947,21 @@ public final class WebDriverTool implements SearchContext {
 	 * 				if the element is covered by some other element.
 	 */
 	public void assertTopmostElement(By by) {
-		if (!isTopmostElementCheckApplicable(by)) {
-			LOGGER.warn("The element identified by '{}' is not a leaf node in the "
-					+ "document tree. Thus, it cannot be checked if the element is topmost. "
-					+ "The topmost element check cannot be performed and is skipped.", by);
-			return;
-		}
 		LOGGER.info("Checking whether the element identified by '{}' is the topmost element.", by);
-		WebElement topmostElement = findTopmostElement(by);
-		WebElement element = findElement(by);
-		if (!element.equals(topmostElement)) {
-			throw new AssertionError(format("The element '%s' identified by '%s' is covered by '%s'.",
-					outerHtmlPreview(element), by, outerHtmlPreview(topmostElement)));
+		TopmostElementCheckResult result = evaluateTopmostElement(by);
+		switch (result.getStatus()) {
+			case NOT_APPLICABLE:
+				LOGGER.warn("The element identified by '{}' is not a leaf node in the "
+						+ "document tree. Thus, it cannot be checked if the element is topmost. "
+						+ "The topmost element check cannot be performed and is skipped.", by);
+				break;
+			case OUTSIDE_VIEWPORT:
+				throw new WebElementException(format("The element identified by '%s' is outside the viewport.", by));
+			case COVERED:
+				throw new AssertionError(format("The element '%s' identified by '%s' is covered by '%s'.",
+						result.getElementHtml(), by, result.getTopmostElementHtml()));
+			default:
+				break;
 		}
 	}
 
@@ -889,12 +977,35 @@ public final class WebDriverTool implements SearchContext {
 	 *
 	 */
 	public Boolean isTopmostElement(By by) {
-		if (!isTopmostElementCheckApplicable(by)) {
-			return null;
+		TopmostElementCheckResult result = evaluateTopmostElement(by);
+		switch (result.getStatus()) {
+			case NOT_APPLICABLE:
+				return null;
+			case OUTSIDE_VIEWPORT:
+				throw new WebElementException(format("The element identified by '%s' is outside the viewport.", by));
+			default:
+				return result.getStatus() == TopmostElementCheckResult.Status.TOPMOST;
 		}
-		WebElement topmostElement = findTopmostElement(by);
+	}
+
+	/**
+	 * Checks if an element is covered by some other element. Apart from locating the element, the
+	 * check takes a single JavaScript call, which tests whether the element is a leaf node,
+	 * scrolls it into the viewport if necessary, and looks up the topmost element at the center of
+	 * the element's visible area.
+	 *
+	 * @param by
+	 *            the {@link By} used to locate the element.
+	 * @return the result of the check
+	 */
+	public TopmostElementCheckResult evaluateTopmostElement(By by) {
 		WebElement element = findElement(by);
-		return element.equals(topmostElement);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> result = (Map<String, Object>) ((JavascriptExecutor) webDriver).executeScript(
+				JS_CHECK_TOPMOST_ELEMENT, element);
+		TopmostElementCheckResult checkResult = TopmostElementCheckResult.of(element, result);
+		LOGGER.debug("Topmost element check for {}: {}", by, checkResult);
+		return checkResult;
 	}
 
 	/**
@@ -920,45 +1031,4 @@ public final class WebDriverTool implements SearchContext {
 			assertTopmostElement(by);
 		}
 	}
-
-	private boolean elementHasChildren(By by) {
-		WebElement el = findElement(by);
-		return (Boolean) executeScript(JS_ELEMENT_HAS_CHILDREN, el);
-	}
-
-	private boolean isTopmostElementCheckApplicable(By by) {
-		return !elementHasChildren(by);
-	}
-
-	private WebElement findTopmostElement(By by) {
-		Point elementsVisibleCenterPoint = getElementsVisibleRectangle(by).center();
-		WebElement topmostElement = elementFromPoint(elementsVisibleCenterPoint.x, elementsVisibleCenterPoint.y);
-		if (topmostElement == null) {
-			throw new WebElementException(format("The element identified by '%s' is outside the viewport.", by));
-		}
-		return topmostElement;
-	}
-
-	private Rectangle getElementsVisibleRectangle(By by) {
-		Rectangle viewport = getViewport();
-		Rectangle intersection = viewport.intersection(getBoundingClientRect(by));
-		if (intersection == null) {
-			LOGGER.info("Scrolling the element identified by '{}' into the viewport.", by);
-			new Actions(webDriver).moveToElement(findElement(by)).perform();
-			intersection = viewport.intersection(getBoundingClientRect(by));
-			if (intersection == null) {
-				throw new WebElementException(format("The element identified by '%s' is outside the viewport.", by));
-			}
-		}
-		return intersection;
-	}
-
-	private String outerHtmlPreview(WebElement webElement) {
-		String outerHtml = webElement.getAttribute("outerHTML");
-		int maxPreviewLength = 256;
-		if (outerHtml.length() > maxPreviewLength) {
-			outerHtml = outerHtml.substring(0, maxPreviewLength) + "...";
-		}
-		return outerHtml;
-	}
 }
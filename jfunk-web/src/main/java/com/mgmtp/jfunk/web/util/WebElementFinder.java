@@ -29,6 +29,7 @@ import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.SystemClock;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,10 +75,12 @@ public final class WebElementFinder {
 	private final Boolean selected;
 	private final Predicate<WebElement> condition;
 	private final boolean noLogging;
+	private final long eventDrivenMaxSleepMillis;
+	private final DomChangeWaitStatistics waitStatistics;
 
 	private WebElementFinder(final WebDriver webDriver, final By by, final long timeoutSeconds, final long sleepMillis,
 			final Boolean enabled, final Boolean displayed, final Boolean selected, final Predicate<WebElement> condition,
-			final boolean noLogging) {
+			final boolean noLogging, final long eventDrivenMaxSleepMillis, final DomChangeWaitStatistics waitStatistics) {
 		this.webDriver = webDriver;
 		this.by = by;
 		this.timeoutSeconds = timeoutSeconds;
@@ -87,11 +90,13 @@ public final class WebElementFinder {
 		this.selected = selected;
 		this.condition = condition;
 		this.noLogging = noLogging;
+		this.eventDrivenMaxSleepMillis = eventDrivenMaxSleepMillis;
+		this.waitStatistics = waitStatistics;
 	}
 
 	private WebElementFinder(final Fields fields) {
 		this(fields.webDriver, fields.by, fields.timeoutSeconds, fields.sleepMillis, fields.enabled, fields.displayed,
-				fields.selected, fields.condition, fields.noLogging);
+				fields.selected, fields.condition, fields.noLogging, fields.eventDrivenMaxSleepMillis, fields.waitStatistics);
 	}
 
 	/**
@@ -100,7 +105,7 @@ public final class WebElementFinder {
 	 * @return the new {@link WebElementFinder} instance
 	 */
 	public static WebElementFinder create() {
-		return new WebElementFinder(null, null, 0L, 0L, null, null, null, null, false);
+		return new WebElementFinder(null, null, 0L, 0L, null, null, null, null, false, 0L, null);
 	}
 
 	/**
@@ -233,6 +238,27 @@ public final class WebElementFinder {
 		return new WebElementFinder(fields);
 	}
 
+	/**
+	 * Creates a new {@link WebElementFinder} based on this {@link WebElementFinder} that, when waiting for elements, checks
+	 * again as soon as the DOM changes instead of polling at a fixed interval. Without DOM changes, elements are checked
+	 * again after the specified time at the latest. Drivers that do not support this fall back to polling.
+	 * 
+	 * @param theMaxSleepMillis
+	 *            the maximum time in milliseconds to wait for a DOM change between checks, {@code 0} to poll at a fixed
+	 *            interval
+	 * @param theWaitStatistics
+	 *            the statistics to record waits in, may be {@code null}
+	 * @return the new {@link WebElementFinder} instance
+	 * @see DomChangeSleeper
+	 */
+	public WebElementFinder eventDriven(final long theMaxSleepMillis, final DomChangeWaitStatistics theWaitStatistics) {
+		checkArgument(theMaxSleepMillis >= 0, "'theMaxSleepMillis' must be greater than or equal to zero");
+		Fields fields = new Fields(this);
+		fields.eventDrivenMaxSleepMillis = theMaxSleepMillis;
+		fields.waitStatistics = theWaitStatistics;
+		return new WebElementFinder(fields);
+	}
+
 	/**
 	 * Finds the first element.
 	 * 
@@ -249,8 +275,9 @@ public final class WebElementFinder {
 		WebElement element;
 
 		if (timeoutSeconds > 0L) {
-			WebDriverWait wait = createWebDriverWait();
-			element = wait.until(new Function<WebDriver, WebElement>() {
+			DomChangeSleeper sleeper = createDomChangeSleeper();
+			WebDriverWait wait = createWebDriverWait(sleeper);
+			element = until(wait, sleeper, new Function<WebDriver, WebElement>() {
 				@Override
 				public WebElement apply(final WebDriver input) {
 					WebElement el = input.findElement(by);
@@ -292,8 +319,9 @@ public final class WebElementFinder {
 
 		try {
 			if (timeoutSeconds > 0L) {
-				WebDriverWait wait = createWebDriverWait();
-				wait.until(new Function<WebDriver, List<WebElement>>() {
+				DomChangeSleeper sleeper = createDomChangeSleeper();
+				WebDriverWait wait = createWebDriverWait(sleeper);
+				until(wait, sleeper, new Function<WebDriver, List<WebElement>>() {
 					@Override
 					public List<WebElement> apply(final WebDriver input) {
 						doFindElements(result, input);
@@ -394,14 +422,40 @@ public final class WebElementFinder {
 		}
 	}
 
-	private WebDriverWait createWebDriverWait() {
-		WebDriverWait webDriverWait = sleepMillis > 0L
-				? new WebDriverWait(webDriver, timeoutSeconds, sleepMillis)
-				: new WebDriverWait(webDriver, timeoutSeconds);
+	private DomChangeSleeper createDomChangeSleeper() {
+		return eventDrivenMaxSleepMillis > 0L ? DomChangeSleeper.create(webDriver, sleepMillis, waitStatistics, by) : null;
+	}
+
+	private WebDriverWait createWebDriverWait(final DomChangeSleeper sleeper) {
+		WebDriverWait webDriverWait;
+		if (sleeper != null) {
+			// the polling interval only applies if the DOM does not change
+			long pollingMillis = Math.max(eventDrivenMaxSleepMillis, sleepMillis);
+			webDriverWait = new WebDriverWait(webDriver, new SystemClock(), sleeper, timeoutSeconds, pollingMillis);
+		} else {
+			webDriverWait = sleepMillis > 0L
+					? new WebDriverWait(webDriver, timeoutSeconds, sleepMillis)
+					: new WebDriverWait(webDriver, timeoutSeconds);
+		}
 		webDriverWait.ignoreAll(IGNORED_EXCEPTIONS);
 		return webDriverWait;
 	}
 
+	private static <V> V until(final WebDriverWait wait, final DomChangeSleeper sleeper, final Function<WebDriver, V> function) {
+		if (sleeper == null) {
+			return wait.until(function);
+		}
+		boolean found = false;
+		sleeper.begin();
+		try {
+			V result = wait.until(function);
+			found = true;
+			return result;
+		} finally {
+			sleeper.finish(found);
+		}
+	}
+
 	/**
 	 * @return the webDriver
 	 */
@@ -430,6 +484,20 @@ public final class WebElementFinder {
 		return sleepMillis;
 	}
 
+	/**
+	 * @return the maximum time in milliseconds to wait for a DOM change, {@code 0} if polling at a fixed interval
+	 */
+	public long getEventDrivenMaxSleepMillis() {
+		return eventDrivenMaxSleepMillis;
+	}
+
+	/**
+	 * @return the statistics event-driven waits are recorded in
+	 */
+	public DomChangeWaitStatistics getWaitStatistics() {
+		return waitStatistics;
+	}
+
 	/**
 	 * @return the enabled
 	 */
@@ -467,6 +535,9 @@ public final class WebElementFinder {
 			if (sleepMillis > 0L) {
 				tsb.append("sleepMillis", sleepMillis);
 			}
+			if (eventDrivenMaxSleepMillis > 0L) {
+				tsb.append("eventDrivenMaxSleepMillis", eventDrivenMaxSleepMillis);
+			}
 		}
 		if (enabled != null) {
 			tsb.append("enabled", enabled);
@@ -490,6 +561,8 @@ public final class WebElementFinder {
 		private Boolean selected;
 		private Predicate<WebElement> condition;
 		private boolean noLogging;
+		private long eventDrivenMaxSleepMillis;
+		private DomChangeWaitStatistics waitStatistics;
 
 		private Fields(final WebElementFinder finder) {
 			this.webDriver = finder.webDriver;
@@ -501,6 +574,8 @@ public final class WebElementFinder {
 			this.selected = finder.selected;
 			this.condition = finder.condition;
 			this.noLogging = finder.noLogging;
+			this.eventDrivenMaxSleepMillis = finder.eventDrivenMaxSleepMillis;
+			this.waitStatistics = finder.waitStatistics;
 		}
 	}
 }
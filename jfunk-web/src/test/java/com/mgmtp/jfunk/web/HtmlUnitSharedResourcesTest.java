@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+import com.google.common.base.Charsets;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.web.htmlunit.SharedHttpWebConnection;
+import com.mgmtp.jfunk.web.ssl.SSLContextCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * @since 3.3.2
+ */
+public class HtmlUnitSharedResourcesTest {
+
+	private static final String PAGE = "<html><head><script src='/app.js'></script></head><body></body></html>";
+	private static final String SCRIPT = "document.title = 'loaded';";
+
+	private HttpServer server;
+	private final AtomicInteger scriptRequests = new AtomicInteger();
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+	private SSLContextCache sslContextCache;
+	private HtmlUnitSharedResources sharedResources;
+	private final HtmlUnitSSLParams sslParams = new HtmlUnitSSLParams(null, null, null, null, null, null);
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		scriptRequests.set(0);
+		clientPorts.clear();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/page.html", exchange -> respond(exchange, "text/html", PAGE, false));
+		server.createContext("/app.js", exchange -> {
+			scriptRequests.incrementAndGet();
+			respond(exchange, "application/javascript", SCRIPT, true);
+		});
+		server.start();
+
+		Configuration config = new Configuration(Charsets.UTF_8);
+		config.put(WebConstants.HTMLUNIT_SHARED, "true");
+		sslContextCache = new SSLContextCache();
+		sharedResources = new HtmlUnitSharedResources(Providers.of(config), sslContextCache);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		sharedResources.shutdown();
+		server.stop(0);
+	}
+
+	private void respond(final HttpExchange exchange, final String contentType, final String content,
+			final boolean cacheable) throws IOException {
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		byte[] bytes = content.getBytes(Charsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		if (cacheable) {
+			exchange.getResponseHeaders().set("Last-Modified", "Thu, 01 Jan 2015 00:00:00 GMT");
+			exchange.getResponseHeaders().set("Expires", "Fri, 01 Jan 2100 00:00:00 GMT");
+		}
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+	@Test
+	public void testSharedConnectionsAndCache() throws IOException {
+		assertTrue(sharedResources.isEnabled());
+		assertTrue(SharedHttpWebConnection.isSupported());
+
+		String url = "http://localhost:" + server.getAddress().getPort() + "/page.html";
+		for (int i = 0; i < 3; ++i) {
+			// a web client closing must neither close the shared connections nor clear the cache
+			try (WebClient webClient = new WebClient()) {
+				sharedResources.configure(webClient, sslParams);
+				assertTrue(webClient.getWebConnection() instanceof SharedHttpWebConnection);
+				assertSame(webClient.getCache(), sharedResources.getCache());
+
+				HtmlPage page = webClient.getPage(url);
+				assertEquals(page.getTitleText(), "loaded");
+			}
+		}
+
+		assertEquals(scriptRequests.get(), 1);
+		assertEquals(sharedResources.getCache().getScriptHits(), 2L);
+		assertEquals(sharedResources.getConnectionPoolCount(), 1);
+		assertEquals(clientPorts.size(), 1, "connection was not reused: " + clientPorts);
+	}
+
+	@Test
+	public void testResponsesToRequestsWithCookiesAreNotShared() throws IOException {
+		String url = "http://localhost:" + server.getAddress().getPort() + "/page.html";
+		for (int i = 0; i < 2; ++i) {
+			try (WebClient webClient = new WebClient()) {
+				sharedResources.configure(webClient, sslParams);
+				webClient.getCookieManager().addCookie(new Cookie("localhost", "session", "user" + i));
+
+				HtmlPage page = webClient.getPage(url);
+				assertEquals(page.getTitleText(), "loaded");
+			}
+		}
+
+		// the script may depend on the session
+		assertEquals(scriptRequests.get(), 2);
+		assertEquals(sharedResources.getCache().getSize(), 0);
+	}
+
+	@Test
+	public void testInsecureSSL() throws IOException, GeneralSecurityException {
+		HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+		httpsServer.setHttpsConfigurator(new HttpsConfigurator(selfSignedContext()));
+		httpsServer.createContext("/page.html", exchange -> respond(exchange, "text/html",
+			"<html><head><title>secure</title></head><body></body></html>", false));
+		httpsServer.start();
+		try {
+			String url = "https://localhost:" + httpsServer.getAddress().getPort() + "/page.html";
+
+			// the self-signed certificate is rejected by default
+			try (WebClient webClient = new WebClient()) {
+				sharedResources.configure(webClient, sslParams);
+				webClient.getPage(url);
+				assertFalse(true, "self-signed certificate accepted");
+			} catch (IOException ex) {
+				// expected
+			}
+
+			try (WebClient webClient = new WebClient()) {
+				webClient.getOptions().setUseInsecureSSL(true);
+				sharedResources.configure(webClient, sslParams);
+				HtmlPage page = webClient.getPage(url);
+				assertEquals(page.getTitleText(), "secure");
+			}
+			assertEquals(sharedResources.getConnectionPoolCount(), 2);
+		} finally {
+			httpsServer.stop(0);
+		}
+	}
+
+	private static SSLContext selfSignedContext() throws IOException, GeneralSecurityException {
+		KeyStore keyStore = KeyStore.getInstance("jks");
+		try (InputStream is = HtmlUnitSharedResourcesTest.class.getResourceAsStream("/selfsigned.jks")) {
+			keyStore.load(is, "changeit".toCharArray());
+		}
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(keyStore, "changeit".toCharArray());
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(kmf.getKeyManagers(), null, null);
+		return context;
+	}
+
+	@Test
+	public void testSSLContextCache() {
+		assertSame(sslContextCache.get(null, null, null, null, null, null),
+			sslContextCache.get(null, null, null, null, null, null));
+		assertEquals(sslContextCache.size(), 1);
+
+		WebClient webClient = new WebClient();
+		WebClient otherWebClient = new WebClient();
+		try {
+			sharedResources.configure(webClient, sslParams);
+			sharedResources.configure(otherWebClient, new HtmlUnitSSLParams(null, null, null, null, null, null));
+			assertEquals(sharedResources.getConnectionPoolCount(), 1);
+			assertEquals(sslContextCache.size(), 1);
+		} finally {
+			webClient.close();
+			otherWebClient.close();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.CredentialsProvider;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+import org.openqa.selenium.support.events.WebDriverEventListener;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.NicelyResynchronizingAjaxController;
+import com.gargoylesoftware.htmlunit.WebWindowEvent;
+import com.gargoylesoftware.htmlunit.WebWindowListener;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.inject.util.Providers;
+import com.mgmtp.jfunk.common.util.Configuration;
+import com.mgmtp.jfunk.web.util.DumpFileCreator;
+
+/**
+ * @since 3.3.2
+ */
+public class WebDriverPoolTest {
+
+	private Configuration config;
+	private WebDriverPool pool;
+
+	@BeforeMethod
+	public void setUp() {
+		config = new Configuration(Charsets.UTF_8);
+		config.put(WebConstants.WEBDRIVER_POOL, "true");
+		pool = new WebDriverPool(Providers.of(config));
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testReuse() {
+		assertTrue(pool.isEnabled());
+
+		WebDriver first = pool.borrow("htmlunit", HtmlUnitDriver::new);
+		assertTrue(pool.release(first));
+		assertEquals(pool.getIdleCount(), 1);
+
+		WebDriver second = pool.borrow("htmlunit", HtmlUnitDriver::new);
+		assertSame(second, first);
+		assertEquals(second.getCurrentUrl(), "about:blank");
+		assertEquals(pool.getCreatedCount(), 1);
+		assertEquals(pool.getReusedCount(), 1);
+
+		WebDriver other = pool.borrow("htmlunit", HtmlUnitDriver::new);
+		assertNotSame(other, first);
+		assertEquals(pool.getCreatedCount(), 2);
+
+		pool.release(second);
+		pool.release(other);
+		assertEquals(pool.getIdleCount(), 2);
+	}
+
+	@Test
+	public void testPoolKeys() {
+		WebDriver first = pool.borrow("htmlunit{javascriptEnabled=true}", HtmlUnitDriver::new);
+		pool.release(first);
+
+		WebDriver second = pool.borrow("htmlunit{javascriptEnabled=false}", HtmlUnitDriver::new);
+		assertNotSame(second, first);
+		pool.release(second);
+	}
+
+	@Test
+	public void testMaxUses() {
+		config.put(WebConstants.WEBDRIVER_POOL_MAX_USES, "2");
+
+		WebDriver first = pool.borrow("htmlunit", HtmlUnitDriver::new);
+		pool.release(first);
+		pool.release(pool.borrow("htmlunit", HtmlUnitDriver::new));
+		assertEquals(pool.getRecycledCount(), 1);
+		assertEquals(pool.getIdleCount(), 0);
+
+		assertNotSame(pool.borrow("htmlunit", HtmlUnitDriver::new), first);
+		assertEquals(pool.getCreatedCount(), 2);
+	}
+
+	@Test
+	public void testMaxIdle() {
+		config.put(WebConstants.WEBDRIVER_POOL_MAX_IDLE, "1");
+
+		WebDriver first = pool.borrow("htmlunit", HtmlUnitDriver::new);
+		WebDriver second = pool.borrow("htmlunit", HtmlUnitDriver::new);
+		pool.release(first);
+		pool.release(second);
+		assertEquals(pool.getIdleCount(), 1);
+		assertEquals(pool.getDiscardedCount(), 1);
+
+		// the session released into the full pool has been quit
+		assertSame(pool.borrow("htmlunit", HtmlUnitDriver::new), first);
+	}
+
+	@Test
+	public void testUnknownDriverIsNotReleased() {
+		WebDriver driver = new HtmlUnitDriver();
+		try {
+			assertFalse(pool.release(driver));
+			assertEquals(pool.getIdleCount(), 0);
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testHtmlUnitSettingsArePartOfPoolKey() {
+		WebDriver first = unwrap(htmlUnitDriverProvider(true, Collections.<WebWindowListener>emptySet()).get());
+		assertTrue(((HtmlUnitDriver) first).isJavascriptEnabled());
+		pool.release(first);
+
+		// htmlunit.enable_javascript=false in the next script
+		WebDriver second = unwrap(htmlUnitDriverProvider(false, Collections.<WebWindowListener>emptySet()).get());
+		assertNotSame(second, first);
+		assertFalse(((HtmlUnitDriver) second).isJavascriptEnabled());
+		pool.release(second);
+
+		assertSame(unwrap(htmlUnitDriverProvider(true, Collections.<WebWindowListener>emptySet()).get()), first);
+	}
+
+	@Test
+	public void testRemoteUrlIsPartOfPoolKey() {
+		config.put(WebConstants.REMOTE_WEBDRIVER_URL, "http://hub1.example.com:4444/wd/hub");
+		WebDriver first = unwrap(remoteWebDriverProvider().get());
+		pool.release(first);
+
+		// the next script uses another hub
+		config.put(WebConstants.REMOTE_WEBDRIVER_URL, "http://hub2.example.com:4444/wd/hub");
+		WebDriver second = unwrap(remoteWebDriverProvider().get());
+		assertNotSame(second, first);
+		pool.release(second);
+
+		config.put(WebConstants.REMOTE_WEBDRIVER_URL, "http://hub1.example.com:4444/wd/hub");
+		assertSame(unwrap(remoteWebDriverProvider().get()), first);
+	}
+
+	@Test
+	public void testWebWindowListenersAreReplaced() {
+		CountingWebWindowListener firstListener = new CountingWebWindowListener();
+		WebDriver first = unwrap(htmlUnitDriverProvider(true, Collections.<WebWindowListener>singleton(firstListener)).get());
+		pool.release(first);
+		int firstCount = firstListener.contentChanges.get();
+		assertTrue(firstCount > 0);
+
+		CountingWebWindowListener secondListener = new CountingWebWindowListener();
+		WebDriver second = unwrap(htmlUnitDriverProvider(true, Collections.<WebWindowListener>singleton(secondListener)).get());
+		assertSame(second, first);
+		second.get("about:blank");
+		assertEquals(firstListener.contentChanges.get(), firstCount);
+		assertTrue(secondListener.contentChanges.get() > 0);
+		pool.release(second);
+	}
+
+	private HtmlUnitDriverProvider htmlUnitDriverProvider(final boolean javascriptEnabled,
+			final Set<WebWindowListener> listeners) {
+		config.put(WebConstants.WEBDRIVER_KEY, WebConstants.WEBDRIVER_HTMLUNIT);
+		HtmlUnitWebDriverParams webDriverParams =
+				new HtmlUnitWebDriverParams(300000, false, true, javascriptEnabled, true, false, false, true, true);
+		HtmlUnitDriverProvider provider = new HtmlUnitDriverProvider(config, Collections.<WebDriverEventListener>emptySet(),
+			webDriverParams, new HtmlUnitSSLParams(null, null, null, null, null, null), BrowserVersion.BEST_SUPPORTED,
+			new NicelyResynchronizingAjaxController(), Collections.<String, CredentialsProvider>emptyMap(),
+			Providers.<DumpFileCreator>of(null), Providers.<File>of(null), Providers.of(listeners),
+			ImmutableMap.of(WebConstants.WEBDRIVER_HTMLUNIT, DesiredCapabilities.htmlUnit()), new EventBus());
+		provider.webDriverPool = pool;
+		return provider;
+	}
+
+	private RemoteWebDriverProvider remoteWebDriverProvider() {
+		config.put(WebConstants.WEBDRIVER_KEY, WebConstants.WEBDRIVER_REMOTE);
+		RemoteWebDriverProvider provider = new RemoteWebDriverProvider(config, Collections.<WebDriverEventListener>emptySet(),
+			ImmutableMap.of(WebConstants.WEBDRIVER_REMOTE, DesiredCapabilities.chrome()), new EventBus()) {
+			@Override
+			protected WebDriver createWebDriver(final DesiredCapabilities capabilities) {
+				// stands in for a session on the configured hub
+				return new HtmlUnitDriver();
+			}
+		};
+		provider.webDriverPool = pool;
+		return provider;
+	}
+
+	private static WebDriver unwrap(final WebDriver webDriver) {
+		return ((EventFiringWebDriver) webDriver).getWrappedDriver();
+	}
+
+	private static class CountingWebWindowListener implements WebWindowListener {
+		private final AtomicInteger contentChanges = new AtomicInteger();
+
+		@Override
+		public void webWindowOpened(final WebWindowEvent event) {
+			// not counted
+		}
+
+		@Override
+		public void webWindowContentChanged(final WebWindowEvent event) {
+			contentChanges.incrementAndGet();
+		}
+
+		@Override
+		public void webWindowClosed(final WebWindowEvent event) {
+			// not counted
+		}
+	}
+}
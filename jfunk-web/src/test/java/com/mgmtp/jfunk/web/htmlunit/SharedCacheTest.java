@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.htmlunit;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.List;
+
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.testng.annotations.Test;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * @since 3.3.2
+ */
+public class SharedCacheTest {
+
+	private static final List<NameValuePair> STATIC_HEADERS = ImmutableList.of(
+		new NameValuePair("Content-Type", "application/javascript"),
+		new NameValuePair("Last-Modified", "Thu, 01 Jan 2015 00:00:00 GMT"),
+		new NameValuePair("Expires", "Fri, 01 Jan 2100 00:00:00 GMT"));
+
+	@Test
+	public void testStaticResponseIsCached() throws Exception {
+		WebRequest request = request();
+		SharedCache cache = new SharedCache();
+		assertTrue(cache.cacheIfPossible(request, response(request), null));
+		assertTrue(cache.getSize() == 1);
+	}
+
+	@Test
+	public void testUserSpecificResponsesAreNotCached() throws Exception {
+		assertNotCached(request(), new NameValuePair("Cache-Control", "max-age=3600, private"));
+		assertNotCached(request(), new NameValuePair("Cache-Control", "private=\"Set-Cookie\""));
+		assertNotCached(request(), new NameValuePair("cache-control", "No-Store"));
+		assertNotCached(request(), new NameValuePair("Set-Cookie", "session=1"));
+
+		WebRequest withCredentials = request();
+		withCredentials.setCredentials(new UsernamePasswordCredentials("user", "password"));
+		assertNotCached(withCredentials);
+
+		WebRequest withCookie = request();
+		withCookie.setAdditionalHeader("Cookie", "session=1");
+		assertNotCached(withCookie);
+
+		WebRequest request = request();
+		assertFalse(new SharedCache().cacheIfPossible(request, new SharedCache.UserSpecificResponse(response(request)), null));
+	}
+
+	private static void assertNotCached(final WebRequest request, final NameValuePair... headers) {
+		SharedCache cache = new SharedCache();
+		assertFalse(cache.cacheIfPossible(request, response(request, headers), null));
+		assertTrue(cache.getSize() == 0);
+	}
+
+	private static WebRequest request() throws Exception {
+		return new WebRequest(new URL("http://localhost/app.js"));
+	}
+
+	private static WebResponse response(final WebRequest request, final NameValuePair... headers) {
+		List<NameValuePair> responseHeaders = Lists.newArrayList(STATIC_HEADERS);
+		responseHeaders.addAll(ImmutableList.copyOf(headers));
+		WebResponseData data = new WebResponseData("document.title = 'x';".getBytes(Charsets.UTF_8), 200, "OK",
+			responseHeaders);
+		return new WebResponse(data, request, 0L);
+	}
+}
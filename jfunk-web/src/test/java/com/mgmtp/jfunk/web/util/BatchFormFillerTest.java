@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.pagefactory.ByChained;
+import org.openqa.selenium.support.ui.Select;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.core.step.base.StepMode;
+import com.mgmtp.jfunk.data.DataSet;
+import com.mgmtp.jfunk.data.DefaultDataSet;
+import com.mgmtp.jfunk.web.exception.InvalidValueException;
+import com.mgmtp.jfunk.web.util.FormFillResult.Status;
+
+/**
+ * @since 3.3.2
+ */
+public class BatchFormFillerTest {
+
+	private static final String PAGE = "<html><body><form id='form'>"
+			+ "<input id='name' type='text' onchange=\"document.getElementById('log').innerHTML += 'name;'\">"
+			+ "<input id='fixed' type='text' value='fixed' readonly>"
+			+ "<select name='country' onchange=\"var city = document.getElementById('city');"
+			+ " city.innerHTML = ''; city.appendChild(new Option('Munich', 'muc'));\">"
+			+ "<option value=''>-</option><option value='de'>Germany</option></select>"
+			+ "<select id='city' name='city'></select>"
+			+ "<input class='newsletter' type='checkbox'>"
+			+ "<input id='terms' type='checkbox' disabled><input id='locked' type='checkbox' onclick='return false'>"
+			+ "<input name='gender' type='radio' value='f'><input name='gender' type='radio' value='m'>"
+			+ "<select id='region' onchange=\"var district = document.getElementById('district');"
+			+ " district.innerHTML = ''; district.appendChild(new Option('-', ''));"
+			+ " district.appendChild(new Option('Schwabing', 'sw'));\">"
+			+ "<option value=''>-</option><option value='by'>Bavaria</option></select>"
+			+ "<select id='district'><option value=''>-</option><option value='sw' selected>Schwabing</option></select>"
+			+ "</form><div id='log'></div></body></html>";
+
+	private static final Map<String, By> FIELDS = ImmutableMap.<String, By>builder()
+			.put("name", By.id("name"))
+			.put("fixed", By.id("fixed"))
+			.put("country", By.name("country"))
+			.put("city", By.cssSelector("#city"))
+			.put("newsletter", By.className("newsletter"))
+			.put("gender", By.xpath("//input[@name='gender']"))
+			.build();
+
+	private File page;
+	private WebDriver webDriver;
+	private DataSet dataSet;
+
+	@BeforeClass
+	public void createPage() throws IOException {
+		page = File.createTempFile("batch-form", ".html");
+		Files.write(PAGE, page, Charsets.UTF_8);
+	}
+
+	@AfterClass
+	public void deletePage() {
+		page.delete();
+	}
+
+	@BeforeMethod
+	public void setUp() {
+		webDriver = new HtmlUnitDriver(true);
+		webDriver.get(page.toURI().toString());
+
+		dataSet = new DefaultDataSet();
+		dataSet.setValue("name", "Jane");
+		dataSet.setValue("fixed", "other");
+		dataSet.setValue("country", "Germany");
+		dataSet.setValue("city", "muc");
+		dataSet.setValue("newsletter", "true");
+		dataSet.setValue("gender", "f");
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		webDriver.quit();
+	}
+
+	@Test
+	public void testToLocator() {
+		assertEquals(BatchFormFiller.toLocator(By.id("a")), ImmutableList.of("id", "a"));
+		assertEquals(BatchFormFiller.toLocator(By.cssSelector("a > b")).get(1), "a > b");
+		assertNull(BatchFormFiller.toLocator(By.linkText("a")));
+		assertNull(BatchFormFiller.toLocator(new ByChained(By.id("a"), By.id("b"))));
+	}
+
+	@Test
+	public void testSetScripted() {
+		FormFillResult result = handler(StepMode.SET_VALUE).performAll(FIELDS, true);
+
+		assertEquals(result.getOutcomes().size(), FIELDS.size());
+		assertEquals(result.getOutcome("name").getStatus(), Status.SET);
+		assertEquals(result.getOutcome("fixed").getStatus(), Status.READ_ONLY);
+		assertEquals(result.getOutcome("country").getStatus(), Status.SET);
+		// the city's options are only added when the country changes
+		assertFalse(result.getOutcome("city").isBatched());
+		assertEquals(result.getFallbackCount(), 1);
+
+		assertEquals(value(By.id("name")), "Jane");
+		assertEquals(value(By.id("fixed")), "fixed");
+		assertEquals(selectedValue(By.name("country")), "de");
+		assertEquals(selectedValue(By.id("city")), "muc");
+		assertTrue(webDriver.findElement(By.className("newsletter")).isSelected());
+		assertTrue(webDriver.findElement(By.cssSelector("input[value='f']")).isSelected());
+		assertEquals(webDriver.findElement(By.id("log")).getText(), "name;");
+
+		// setting the same values again changes nothing
+		result = handler(StepMode.SET_VALUE).performAll(FIELDS, true);
+		assertEquals(result.getOutcome("name").getStatus(), Status.UNCHANGED);
+		assertEquals(result.getOutcome("city").getStatus(), Status.UNCHANGED);
+		assertEquals(result.getOutcome("newsletter").getStatus(), Status.UNCHANGED);
+		assertEquals(result.getFallbackCount(), 0);
+	}
+
+	@Test
+	public void testSetDependentField() {
+		dataSet.setValue("region", "by");
+		dataSet.setValue("district", "sw");
+		dataSet.setValue("name", "John");
+
+		// the district is already set, but changing the region resets it
+		FormFillResult result = handler(StepMode.SET_VALUE).performAll(ImmutableMap.of("region", By.id("region"),
+			"district", By.id("district"), "name", By.id("name")), false);
+		assertEquals(result.getOutcome("region").getStatus(), Status.SET);
+		assertEquals(result.getOutcome("district").getStatus(), Status.SET);
+		assertTrue(result.getOutcome("district").isBatched());
+		assertEquals(result.getOutcome("name").getStatus(), Status.SET);
+		assertEquals(result.getFallbackCount(), 0);
+
+		assertEquals(selectedValue(By.id("region")), "by");
+		assertEquals(selectedValue(By.id("district")), "sw");
+		assertEquals(value(By.id("name")), "John");
+	}
+
+	@Test
+	public void testSetDisabledAndIgnoredClicks() {
+		dataSet.setValue("terms", "true");
+		dataSet.setValue("locked", "true");
+
+		FormFillResult result = handler(StepMode.SET_VALUE).performAll(ImmutableMap.of("terms", By.id("terms"),
+			"locked", By.id("locked"), "name", By.id("name")), true);
+		// disabled fields are set like FormInputHandler.perform() does
+		assertFalse(result.getOutcome("terms").isBatched());
+		// the click is cancelled, so the field and the following ones are handled individually
+		assertFalse(result.getOutcome("locked").isBatched());
+		assertFalse(result.getOutcome("name").isBatched());
+
+		assertFalse(webDriver.findElement(By.id("terms")).isSelected());
+		assertFalse(webDriver.findElement(By.id("locked")).isSelected());
+		assertEquals(value(By.id("name")), "Jane");
+	}
+
+	@Test
+	public void testSetTyped() {
+		FormFillResult result = handler(StepMode.SET_VALUE).performAll(ImmutableMap.of("name", By.id("name")), false);
+		assertEquals(result.getOutcome("name").getStatus(), Status.SET);
+		assertTrue(result.getOutcome("name").isBatched());
+		assertEquals(value(By.id("name")), "Jane");
+	}
+
+	@Test
+	public void testUnsupportedLocator() {
+		FormFillResult result = handler(StepMode.SET_VALUE).performAll(
+			ImmutableMap.<String, By>of("name", new ByChained(By.id("form"), By.id("name"))), true);
+		assertFalse(result.getOutcome("name").isBatched());
+		assertEquals(value(By.id("name")), "Jane");
+	}
+
+	@Test
+	public void testCheck() {
+		handler(StepMode.SET_VALUE).performAll(FIELDS, true);
+
+		dataSet.setValue("fixed", "fixed");
+		// selects are checked against the option value
+		dataSet.setValue("country", "de");
+		FormFillResult result = handler(StepMode.CHECK_VALUE).performAll(FIELDS, true);
+		assertTrue(result.isValid());
+		assertEquals(result.getOutcome("country").getStatus(), Status.VALID);
+	}
+
+	@Test(expectedExceptions = InvalidValueException.class)
+	public void testCheckInvalid() {
+		handler(StepMode.CHECK_VALUE).performAll(FIELDS, true);
+	}
+
+	private FormInputHandler handler(final StepMode stepMode) {
+		return FormInputHandler.create().webDriver(webDriver).dataSet(dataSet).stepMode(stepMode);
+	}
+
+	private String value(final By by) {
+		return webDriver.findElement(by).getAttribute("value");
+	}
+
+	private String selectedValue(final By by) {
+		return new Select(webDriver.findElement(by)).getFirstSelectedOption().getAttribute("value");
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2015 mgm technology partners GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mgmtp.jfunk.web.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.mgmtp.jfunk.web.JFunkHtmlUnitWebDriver;
+
+/**
+ * @since 3.3.2
+ */
+public class DomChangeSleeperTest {
+
+	private static final String PAGE = "<html><body><script>"
+			+ "setTimeout(function() { var div = document.createElement('div'); div.id = 'late'; document.body.appendChild(div); }, 300);"
+			+ "</script></body></html>";
+
+	// HtmlUnit's MutationObserver only reports attribute changes
+	private static final String ATTRIBUTE_PAGE = "<html><body><div id='early'></div><script>"
+			+ "setTimeout(function() { document.getElementById('early').id = 'late'; }, 300);"
+			+ "</script></body></html>";
+
+	// the page keeps changing before the element appears
+	private static final String TICKING_PAGE = "<html><body><div id='early'></div><script>"
+			+ "var ticks = 0, timer = setInterval(function() { document.body.setAttribute('data-tick', ++ticks); }, 20);"
+			+ "setTimeout(function() { document.getElementById('early').id = 'late'; }, 600);"
+			+ "</script></body></html>";
+
+	private File page;
+	private File attributePage;
+	private File tickingPage;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		page = File.createTempFile("dom-change", ".html");
+		Files.write(PAGE, page, Charsets.UTF_8);
+		attributePage = File.createTempFile("dom-change", ".html");
+		Files.write(ATTRIBUTE_PAGE, attributePage, Charsets.UTF_8);
+		tickingPage = File.createTempFile("dom-change", ".html");
+		Files.write(TICKING_PAGE, tickingPage, Charsets.UTF_8);
+	}
+
+	@AfterClass
+	public void tearDown() {
+		page.delete();
+		attributePage.delete();
+		tickingPage.delete();
+	}
+
+	@Test
+	public void testHtmlUnitListeners() {
+		WebDriver driver = new ListeningHtmlUnitDriver();
+		try {
+			assertTrue(DomChangeSleeper.create(driver, 0L, null) instanceof DomChangeSleeper.HtmlUnitSleeper);
+			assertElementAppearsEarly(driver, page);
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testMutationObserver() {
+		WebDriver driver = new HtmlUnitDriver(true);
+		try {
+			driver.manage().timeouts().setScriptTimeout(30L, TimeUnit.SECONDS);
+			assertTrue(DomChangeSleeper.create(driver, 0L, null) instanceof DomChangeSleeper.MutationObserverSleeper);
+			assertElementAppearsEarly(driver, attributePage);
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testLocatorEvaluatedInScript() {
+		WebDriver driver = new HtmlUnitDriver(true);
+		try {
+			driver.manage().timeouts().setScriptTimeout(30L, TimeUnit.SECONDS);
+			DomChangeWaitStatistics statistics = new DomChangeWaitStatistics();
+			driver.get(tickingPage.toURI().toString());
+			WebElementFinder.create().webDriver(driver).by(By.id("late")).timeout(20L, 100L).eventDriven(10000L, statistics).find();
+
+			// the changes before the element appears do not end the sleep
+			assertEquals(statistics.getTimeouts(), 0L);
+			assertTrue(statistics.getPolls() <= 2L, "polls: " + statistics.getPolls());
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testMinimumRecheckInterval() {
+		WebDriver driver = new HtmlUnitDriver(true);
+		try {
+			driver.manage().timeouts().setScriptTimeout(30L, TimeUnit.SECONDS);
+			DomChangeWaitStatistics statistics = new DomChangeWaitStatistics();
+			driver.get(tickingPage.toURI().toString());
+
+			// cannot be evaluated in JavaScript
+			By by = new By() {
+				@Override
+				public List<WebElement> findElements(final SearchContext context) {
+					return context.findElements(By.id("late"));
+				}
+			};
+			long start = System.nanoTime();
+			WebElementFinder.create().webDriver(driver).by(by).timeout(20L, 100L).eventDriven(10000L, statistics).find();
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertEquals(statistics.getTimeouts(), 0L);
+			assertTrue(statistics.getWakeUps() >= 1L);
+			assertTrue(statistics.getPolls() <= elapsedMillis / DomChangeSleeper.MIN_RECHECK_MILLIS + 1L,
+				"polls: " + statistics.getPolls() + " in " + elapsedMillis + " ms");
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testFallbackToPolling() {
+		WebDriver driver = new HtmlUnitDriver(true);
+		try {
+			// the default script timeout is too short for waiting asynchronously
+			driver.manage().timeouts().setScriptTimeout(0L, TimeUnit.SECONDS);
+			DomChangeWaitStatistics statistics = new DomChangeWaitStatistics();
+			driver.get(page.toURI().toString());
+			WebElementFinder.create().webDriver(driver).by(By.id("late")).timeout(5L, 100L).eventDriven(200L, statistics).find();
+			assertEquals(statistics.getWaits(), 1L);
+			assertEquals(statistics.getTimeouts(), 0L);
+		} finally {
+			driver.quit();
+		}
+	}
+
+	private void assertElementAppearsEarly(final WebDriver driver, final File testPage) {
+		DomChangeWaitStatistics statistics = new DomChangeWaitStatistics();
+		driver.get(testPage.toURI().toString());
+
+		// without DOM changes, the element would only be checked again after ten seconds
+		long start = System.nanoTime();
+		WebElementFinder.create().webDriver(driver).by(By.id("late")).timeout(20L, 100L).eventDriven(10000L, statistics).find();
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000L);
+
+		assertEquals(statistics.getWaits(), 1L);
+		assertEquals(statistics.getTimeouts(), 0L);
+		assertTrue(statistics.getWakeUps() >= 1L);
+		assertEquals(statistics.getTimeToAppear().getCount(), 1L);
+	}
+
+	private static class ListeningHtmlUnitDriver extends HtmlUnitDriver implements JFunkHtmlUnitWebDriver {
+		ListeningHtmlUnitDriver() {
+			super(true);
+		}
+
+		@Override
+		public WebClient getWebClient() {
+			return super.getWebClient();
+		}
+	}
+}